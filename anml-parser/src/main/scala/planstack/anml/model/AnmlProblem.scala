@@ -6,7 +6,7 @@ import java.{util => ju}
 import planstack.anml.model.abs._
 import planstack.anml.model.abs.statements.AbstractStatement
 import planstack.anml.model.concrete._
-import planstack.anml.parser.{PSimpleType, TypeDecl, ANMLFactory, ParseResult}
+import planstack.anml.parser.{PSimpleType, TypeDecl, ANMLFactory, ParseCache, ParseResult}
 import planstack.anml.{ANMLException, parser}
 
 import scala.collection.JavaConversions._
@@ -88,6 +88,22 @@ class AnmlProblem extends TemporalInterval {
    */
   val chronicles = new java.util.LinkedList[Chronicle]()
 
+  /** Digest of all ANML inputs (files and strings) this problem was built from, in the order they were given. */
+  private val inputsDigest = java.security.MessageDigest.getInstance("SHA-256")
+
+  /** Records an ANML input in the digest of the problem. */
+  private def recordInput(content: Array[Byte]) {
+    inputsDigest.update(java.nio.ByteBuffer.allocate(4).putInt(content.length).array())
+    inputsDigest.update(content)
+  }
+
+  /** Hexadecimal hash of all ANML inputs this problem was built from.
+    * Two problems built from the same sequence of files/strings have the same hash. */
+  def inputsHash : String = {
+    val digest = inputsDigest.clone().asInstanceOf[java.security.MessageDigest]
+    digest.digest().map(b => "%02x".format(b)).mkString
+  }
+
   // create an initial chronicle containing the predefined instances (true and false)
   {
     val initialChronicle = new BaseChronicle(this)
@@ -134,19 +150,31 @@ class AnmlProblem extends TemporalInterval {
     *
     * @param filename File in which the anml text can be found.
    */
-  def extendWithAnmlFile(filename: String) : Unit = {
+  def extendWithAnmlFile(filename: String) : Unit = extendWithAnmlFile(filename, null)
+
+  /**
+   * Same as extendWithAnmlFile(filename) except that the domain file (xxxxxx.dom.anml) is parsed through
+   * the given cache (if not null), so that it is parsed only once for all problems of a domain.
+   */
+  def extendWithAnmlFile(filename: String, domainCache: ParseCache) : Unit = {
     if(filename.endsWith(".pb.anml")) {
       val f = new File(filename)
       f.getName.split("\\.").toList match {
         case base :: num :: "pb" :: "anml" :: Nil =>
           val domainFile = new File(f.getParentFile, base+".dom.anml")
-          addAnml(ANMLFactory.parseAnmlFromFiles(List(domainFile.getAbsolutePath, filename)))
+          if(domainCache == null)
+            addAnml(ANMLFactory.parseAnmlFromFiles(List(domainFile.getAbsolutePath, filename)))
+          else
+            addAnml(new ParseResult(domainCache.get(domainFile).blocks ++ ANMLFactory.parseAnmlFromFile(filename).blocks))
+          recordInput(java.nio.file.Files.readAllBytes(domainFile.toPath))
+          recordInput(java.nio.file.Files.readAllBytes(f.toPath))
         case _ =>
           throw new ANMLException("Error: file name does not follow the convention: "+filename+"."+
            "It should be in the form domainName.xxx.pb.anml and have an associated domainName.dom.anml file.")
       }
     } else {
       addAnml(ANMLFactory.parseAnmlFromFile(filename))
+      recordInput(java.nio.file.Files.readAllBytes(new File(filename).toPath))
     }
   }
 
@@ -159,6 +187,7 @@ class AnmlProblem extends TemporalInterval {
    */
   def extendWithAnmlText(anml: String) : Unit = {
     addAnml(ANMLFactory.parseAnmlString(anml))
+    recordInput(anml.getBytes("UTF-8"))
   }
 
   /**
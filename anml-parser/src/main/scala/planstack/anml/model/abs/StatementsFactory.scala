@@ -14,10 +14,10 @@ trait Mod {
 }
 
 object DefaultMod extends Mod {
-  private var nextID = 0
+  private val nextID = new java.util.concurrent.atomic.AtomicInteger(0)
   def varNameMod(name: String) = name
   def idModifier(id:String) =
-    if(id.isEmpty) "__id__"+{nextID+=1; nextID-1}
+    if(id.isEmpty) "__id__"+nextID.getAndIncrement()
     else id
 }
 
@@ -68,6 +68,17 @@ object StatementsFactory {
       case EBiStatement(vleft@EVariable(_,_,Some(f)), ":=", ENumber(value), id) =>
         (Nil, List(new AbstractIntAssignmentConstraint(asSv(f), value, asRef(id))))
 
+      case EBiStatement(f:EFunction, op, ENumber(value), id) if f.func.valueType.isNumeric && !f.func.isConstant =>
+        val statement = op match {
+          case ":=" => new AbstractSetResource(asSv(f), value, asRef(id))
+          case ":produce" => new AbstractProduceResource(asSv(f), value, asRef(id))
+          case ":consume" => new AbstractConsumeResource(asSv(f), value, asRef(id))
+          case ":use" => new AbstractUseResource(asSv(f), value, asRef(id))
+          case "<" | "<=" | ">" | ">=" => new AbstractRequireResource(asSv(f), op, value, asRef(id))
+          case _ => throw new ANMLException(s"Unsupported operator '$op' on the numeric function ${f.func.name}")
+        }
+        (List(statement), Nil)
+
       case EBiStatement(vleft:EVariable, "==", vright:EVariable, id) =>
         (Nil, List(new AbstractVarEqualityConstraint(asVar(vleft), asVar(vright), asRef(id))))
 
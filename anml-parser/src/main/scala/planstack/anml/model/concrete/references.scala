@@ -8,6 +8,11 @@ class RefCounter(protected var nextTPRef:Int, protected var nextActRef:Int, prot
   def nextTP() : Int = { nextTPRef += 1 ; nextTPRef -1 }
   def nextAct() : Int = { nextActRef += 1 ; nextActRef -1 }
   final def nextVar() : Int = { nextVarRef += 1  ; nextVarRef -1 }
+
+  /** IDs that will be given to the next time point, action and variable (none is consumed). */
+  final def peekTP : Int = nextTPRef
+  final def peekAct : Int = nextActRef
+  final def peekVar : Int = nextVarRef
 }
 
 object GlobalRef {
@@ -112,6 +117,10 @@ class TPRef(id:Int) extends GlobalRef(id) {
   }
   final def isAttached : Boolean = { assert(isVirtual, "Only virtual timepoints can be attached.") ; realTP != null }
   final def attachmentToReal : (TPRef,Int) = { assert(isAttached) ; (realTP, distToReal) }
+  /** Real time point to which this virtual time point is attached (first element of attachmentToReal) */
+  final def attachedRealTP : TPRef = { assert(isAttached) ; realTP }
+  /** Delay from the attached real time point to this one (second element of attachmentToReal) */
+  final def attachmentDelay : Int = { assert(isAttached) ; distToReal }
 }
 
 
@@ -3,8 +3,8 @@ package planstack.anml.model
 object LocalRef {
   type T = String
   val NullID : T = ""
-  private var next = 0
-  def getNext = {next+=1; "locRef$"+(next-1)}
+  private val next = new java.util.concurrent.atomic.AtomicInteger(0)
+  def getNext = "locRef$"+next.getAndIncrement()
 }
 
 import planstack.anml.model.LocalRef._
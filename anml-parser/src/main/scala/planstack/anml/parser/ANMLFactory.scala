@@ -1,5 +1,7 @@
 package planstack.anml.parser
 
+import java.io.{FileReader, Reader, StringReader}
+
 import planstack.anml.ANMLException
 import planstack.anml.parser.AnmlParser._
 
@@ -32,26 +34,28 @@ object ANMLFactory {
 
   def lines(in:String) = in.replaceAll("""//[^\n]*""", "")
 
-  def parseAnmlFromFiles(files: List[String]) = {
-    val anmlString =
-      files.foldLeft("")((acc,curFile) => {
-        val reader = scala.io.Source.fromFile(curFile)
-        val fileContent = reader.mkString
-        reader.close()
-        acc+"\n"+fileContent
-      })
-    parseAnmlString(anmlString)
-  }
+  def parseAnmlFromFiles(files: List[String]) : ParseResult =
+    new ParseResult(files.flatMap(file => parseAnmlFromFile(file).blocks))
 
   def parseAnmlFromFile(file:String) : ParseResult = {
-    val reader = scala.io.Source.fromFile(file)
-    val anmlString = reader.mkString
-    reader.close()
-
-    parseAnmlString(anmlString)
+    val reader = new FileReader(file)
+    try {
+      parseAnml(reader)
+    } finally {
+      reader.close()
+    }
   }
 
-  def parseAnmlString(anmlString:String) : ParseResult = {
+  def parseAnmlString(anmlString:String) : ParseResult =
+    parseAnml(new StringReader(anmlString))
+
+  /** Parses all ANML blocks that can be read from the reader, the reader is not closed. */
+  def parseAnml(reader: Reader) : ParseResult =
+    new ParseResult(new StreamingParser(reader).anml())
+
+  /** Parses the given string with the parser combinators of AnmlParser.
+    * This is much slower than parseAnmlString and only kept as a reference implementation. */
+  def parseAnmlStringWithCombinators(anmlString:String) : ParseResult = {
     val commentFree = withoutComments(anmlString+"\n")
 
     parseAll(anml, commentFree) match {
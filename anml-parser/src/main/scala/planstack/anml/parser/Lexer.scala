@@ -0,0 +1,149 @@
+package planstack.anml.parser
+
+import java.io.Reader
+
+import scala.collection.mutable
+
+private[parser] object Token {
+  final val IDENT = 0
+  /** A number matching `\d+(\.\d*)?` */
+  final val DECIMAL = 1
+  /** A number with an exponent or a type suffix (e.g. `1e5`, `2.5f`) */
+  final val NUMBER = 2
+  final val SYMBOL = 3
+  final val EOF = 4
+}
+
+/**
+ * @param adjacent True if there is no white space (or comment) between this token and the previous one.
+ */
+private[parser] final class Token(val kind: Int, val text: String, val line: Int, val column: Int, val adjacent: Boolean) {
+  override def toString = if(kind == Token.EOF) "end of input" else s"'$text'"
+}
+
+/**
+ * Splits a stream of characters into the tokens of ANML: identifiers, numbers and symbols.
+ * Comments and white spaces are skipped.
+ *
+ * Symbols made of several characters are "==", "!=", "<=", ">=", ":=" and ":->". Other symbols are made of a single
+ * character, in particular keywords such as ":decomposition" or ":in" are read as the symbol ':' followed by an
+ * identifier.
+ */
+private[parser] final class Lexer(reader: Reader) {
+
+  private val buf = new Array[Char](1 << 16)
+  private var pos = 0
+  private var limit = 0
+  private var eof = false
+
+  private var line = 1
+  private var column = 1
+
+  /** Identifiers are shared between all tokens with the same text. */
+  private val identifiers = mutable.HashMap[String, String]()
+  private val sb = new java.lang.StringBuilder()
+
+  /** Returns the character at offset k from the current position or -1 if the end of the input was reached */
+  private def peek(k: Int): Int = {
+    if(pos + k >= limit && !eof) {
+      // move the remaining characters to the beginning of the buffer and fill the rest
+      System.arraycopy(buf, pos, buf, 0, limit - pos)
+      limit -= pos
+      pos = 0
+      while(limit < buf.length && !eof) {
+        val read = reader.read(buf, limit, buf.length - limit)
+        if(read == -1) eof = true
+        else limit += read
+      }
+    }
+    if(pos + k < limit) buf(pos + k) else -1
+  }
+
+  private def advance(): Char = {
+    val c = buf(pos)
+    pos += 1
+    if(c == '\n') { line += 1 ; column = 1 }
+    else column += 1
+    c
+  }
+
+  /** Skips white spaces and comments, returns true if anything was skipped */
+  private def skipBlanks(): Boolean = {
+    var skipped = false
+    var blank = true
+    while(blank) {
+      val c = peek(0)
+      if(c != -1 && Character.isWhitespace(c)) {
+        advance()
+        skipped = true
+      } else if(c == '/' && peek(1) == '/') {
+        while(peek(0) != -1 && peek(0) != '\n' && peek(0) != '\r')
+          advance()
+        skipped = true
+      } else if(c == '/' && peek(1) == '*') {
+        advance() ; advance()
+        while(peek(0) != -1 && !(peek(0) == '*' && peek(1) == '/'))
+          advance()
+        if(peek(0) != -1) { advance() ; advance() }
+        skipped = true
+      } else {
+        blank = false
+      }
+    }
+    skipped
+  }
+
+  private def isDigit(c: Int) = c >= '0' && c <= '9'
+
+  private def readDigits(): Unit =
+    while(isDigit(peek(0)))
+      sb.append(advance())
+
+  def next(): Token = {
+    val adjacent = !skipBlanks()
+    val tokLine = line
+    val tokColumn = column
+    val c = peek(0)
+    if(c == -1) {
+      new Token(Token.EOF, "", tokLine, tokColumn, adjacent)
+    } else if(Character.isJavaIdentifierStart(c)) {
+      sb.setLength(0)
+      sb.append(advance())
+      while(peek(0) != -1 && Character.isJavaIdentifierPart(peek(0)))
+        sb.append(advance())
+      val text = sb.toString
+      new Token(Token.IDENT, identifiers.getOrElseUpdate(text, text), tokLine, tokColumn, adjacent)
+    } else if(isDigit(c)) {
+      sb.setLength(0)
+      readDigits()
+      if(peek(0) == '.') {
+        sb.append(advance())
+        readDigits()
+      }
+      var kind = Token.DECIMAL
+      if((peek(0) == 'e' || peek(0) == 'E') &&
+        (isDigit(peek(1)) || (peek(1) == '-' || peek(1) == '+') && isDigit(peek(2)))) {
+        sb.append(advance()).append(advance())
+        readDigits()
+        kind = Token.NUMBER
+      }
+      if(peek(0) == 'f' || peek(0) == 'F' || peek(0) == 'd' || peek(0) == 'D') {
+        sb.append(advance())
+        kind = Token.NUMBER
+      }
+      new Token(kind, sb.toString, tokLine, tokColumn, adjacent)
+    } else {
+      advance()
+      val text = c.toChar match {
+        case '=' if peek(0) == '=' => advance() ; "=="
+        case '!' if peek(0) == '=' => advance() ; "!="
+        case '<' if peek(0) == '=' => advance() ; "<="
+        case '>' if peek(0) == '=' => advance() ; ">="
+        case ':' if peek(0) == '=' => advance() ; ":="
+        case ':' if peek(0) == '-' && peek(1) == '>' => advance() ; advance() ; ":->"
+        case other => other.toString
+      }
+      new Token(Token.SYMBOL, text, tokLine, tokColumn, adjacent)
+    }
+  }
+}
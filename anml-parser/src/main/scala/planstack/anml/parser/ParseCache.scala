@@ -0,0 +1,35 @@
+package planstack.anml.parser
+
+import java.io.File
+import java.util.concurrent.ConcurrentHashMap
+
+/** Keeps the result of parsing ANML files in memory, to avoid parsing again files that are shared by many problems
+  * (typically the domain file xxx.dom.anml of problems xxx.yyy.pb.anml).
+  *
+  * An entry is parsed again if its file was modified since it was cached. The cache can be used concurrently.
+  */
+class ParseCache {
+
+  private class Entry(val lastModified: Long, val length: Long, val result: ParseResult)
+
+  private val entries = new ConcurrentHashMap[String, Entry]()
+
+  /** Returns the result of parsing the given file, from the cache if the file did not change. */
+  def get(file: File) : ParseResult = {
+    val path = file.getCanonicalPath
+    val lastModified = file.lastModified()
+    val length = file.length()
+    val cached = entries.get(path)
+    if(cached != null && cached.lastModified == lastModified && cached.length == length) {
+      cached.result
+    } else {
+      val result = ANMLFactory.parseAnmlFromFile(path)
+      entries.put(path, new Entry(lastModified, length, result))
+      result
+    }
+  }
+
+  def size : Int = entries.size()
+
+  def clear() { entries.clear() }
+}
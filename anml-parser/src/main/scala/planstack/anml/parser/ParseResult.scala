@@ -2,5 +2,8 @@ package planstack.anml.parser
 
 class ParseResult(val blocks:List[AnmlBlock]) {
 
+  /** Returns a parse result with the blocks of this one followed by the ones of other */
+  def append(other: ParseResult) = new ParseResult(blocks ++ other.blocks)
+
   override def toString = blocks.mkString("\n")
 }
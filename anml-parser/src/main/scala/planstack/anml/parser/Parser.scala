@@ -180,6 +180,9 @@ case class FloatFunction(
 
 class Constant(override val name :String, override val tipe:PType)
   extends Function(name, Nil, tipe, true) with DecompositionContent with ActionContent
+{
+  override def toString = s"Constant($name,$tipe)"
+}
 
 case class TypeDecl(name:PSimpleType, parent:Option[PSimpleType], content:List[TypeContent]) extends AnmlBlock
 
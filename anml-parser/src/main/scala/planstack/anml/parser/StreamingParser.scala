@@ -0,0 +1,752 @@
+package planstack.anml.parser
+
+import java.io.Reader
+
+import planstack.anml.ANMLException
+
+import scala.collection.mutable.{ArrayBuffer, ListBuffer}
+
+/**
+ * Hand written parser for ANML, producing the same blocks as the combinators of [[AnmlParser]].
+ *
+ * Each rule of the grammar is a method that returns null (with an unspecified position) if it does not match
+ * the input at the current position. Alternatives are tried in the same order as in AnmlParser, restoring the
+ * position before each of them.
+ *
+ * Tokens are read lazily from the reader and only the tokens of the block being parsed are kept in memory.
+ */
+class StreamingParser(reader: Reader) {
+  import Token._
+
+  private val lexer = new Lexer(reader)
+
+  /** Tokens of the block being parsed */
+  private val tokens = ArrayBuffer[Token]()
+
+  /** Index of the current token in tokens */
+  private var pos = 0
+
+  /** Token at which the parser went the furthest before failing, used for error messages */
+  private var furthest : Token = null
+  private var furthestIndex = -1
+  private var numDiscarded = 0
+
+  private def tok(k: Int) : Token = {
+    while(tokens.size <= pos + k)
+      tokens += lexer.next()
+    tokens(pos + k)
+  }
+
+  private def peek = tok(0)
+
+  private def fail[T >: Null]() : T = {
+    if(numDiscarded + pos > furthestIndex) {
+      furthestIndex = numDiscarded + pos
+      furthest = peek
+    }
+    null
+  }
+
+  /** Consumes the current token if it is a symbol or an identifier with the given text */
+  private def accept(text: String) : Boolean =
+    if((peek.kind == SYMBOL || peek.kind == IDENT) && peek.text == text) {
+      pos += 1
+      true
+    } else {
+      fail()
+      false
+    }
+
+  /** Consumes a keyword of the form ":in" */
+  private def acceptColon(keyword: String) : Boolean =
+    if(peek.kind == SYMBOL && peek.text == ":" && tok(1).kind == IDENT && tok(1).text == keyword && tok(1).adjacent) {
+      pos += 2
+      true
+    } else {
+      fail()
+      false
+    }
+
+  private def ident() : String =
+    if(peek.kind == IDENT) {
+      pos += 1
+      tok(-1).text
+    } else {
+      fail()
+    }
+
+  private def isKeyword(s: String) = s match {
+    case "float" | "integer" | "boolean" | "start" | "end" | "motivated" | "duration" | "ordered" | "unordered" => true
+    case _ => false
+  }
+
+  private def word() : String =
+    if(peek.kind == IDENT && !isKeyword(peek.text)) ident()
+    else fail()
+
+  private def decimalNumber() : String =
+    if(peek.kind == DECIMAL) {
+      pos += 1
+      tok(-1).text
+    } else if(peek.kind == SYMBOL && peek.text == "." && tok(1).kind == DECIMAL && tok(1).adjacent && tok(1).text.forall(_.isDigit)) {
+      pos += 2
+      "."+tok(-1).text
+    } else {
+      fail()
+    }
+
+  private def floatingPointNumber() : String =
+    if(peek.kind == DECIMAL || peek.kind == NUMBER) {
+      pos += 1
+      tok(-1).text
+    } else if(peek.kind == SYMBOL && peek.text == "-" && (tok(1).kind == DECIMAL || tok(1).kind == NUMBER) && tok(1).adjacent) {
+      pos += 2
+      "-"+tok(-1).text
+    } else {
+      fail()
+    }
+
+  private def rep[T >: Null](p: => T) : List[T] = {
+    val res = ListBuffer[T]()
+    var start = pos
+    var x = p
+    while(x != null) {
+      res += x
+      start = pos
+      x = p
+    }
+    pos = start
+    res.toList
+  }
+
+  private def repsep[T >: Null](p: => T, sep: String) : List[T] = {
+    val start = pos
+    val first = p
+    if(first == null) {
+      pos = start
+      Nil
+    } else {
+      val res = ListBuffer[T](first)
+      var last = pos
+      while(accept(sep) && { val x = p ; if(x != null) res += x ; x != null })
+        last = pos
+      pos = last
+      res.toList
+    }
+  }
+
+  private def rep1sep[T >: Null](p: => T, sep: String) : List[T] = repsep(p, sep) match {
+    case Nil => null
+    case l => l
+  }
+
+  private def error() : ANMLException = {
+    val t = if(furthest != null) furthest else peek
+    new ANMLException(s"Unable to parse ANML:\n[${t.line}.${t.column}] failure: unexpected $t")
+  }
+
+  /** Parses the whole input */
+  def anml() : List[AnmlBlock] = {
+    val blocks = ListBuffer[AnmlBlock]()
+    while(peek.kind != EOF) {
+      val b = block()
+      if(b == null)
+        throw error()
+      blocks ++= b
+      // the block is done, forget its tokens
+      tokens.remove(0, pos)
+      numDiscarded += pos
+      pos = 0
+    }
+    blocks.toList
+  }
+
+  private def block() : List[AnmlBlock] = {
+    val start = pos
+    val a = action()
+    if(a != null) return List(a)
+    pos = start
+    val ts = temporalStatements()
+    if(ts != null) return ts
+    pos = start
+    val tc = tempConstraint()
+    if(tc != null) return List(tc)
+    pos = start
+    val f = functionDecl()
+    if(f != null) return List(f)
+    pos = start
+    val t = typeDecl()
+    if(t != null) return List(t)
+    pos = start
+    val is = instanceDecl()
+    if(is != null) return is
+    pos = start
+    val fa = forallBlock()
+    if(fa != null) return List(fa)
+    null
+  }
+
+  private def annotation() : TemporalAnnotation = {
+    val base = annotationBase()
+    if(base == null) return null
+    val afterBase = pos
+    if(accept("contains"))
+      TemporalAnnotation(base.start, base.end, "contains")
+    else {
+      pos = afterBase
+      base
+    }
+  }
+
+  private def annotationBase() : TemporalAnnotation = {
+    val start = pos
+    if(accept("[") && accept("all") && accept("]"))
+      return TemporalAnnotation(new RelativeTimepoint("start"), new RelativeTimepoint("end"), "is")
+    pos = start
+    if(!accept("[")) return null
+    val tps = repsep(timepoint(), ",")
+    if(!accept("]")) return null
+    tps match {
+      case List(tp) => TemporalAnnotation(tp, tp, "is")
+      case List(tp1, tp2) => TemporalAnnotation(tp1, tp2, "is")
+      case _ => throw new ANMLException(s"Invalid temporal annotation at line ${tok(-1).line}: "+tps)
+    }
+  }
+
+  private def timepoint() : RelativeTimepoint = {
+    val start = pos
+    val tp = timepointRef()
+    if(tp == null) pos = start
+    val sign = peek.text
+    if(peek.kind == SYMBOL && (sign == "+" || sign == "-")) {
+      pos += 1
+      val delta = decimalNumber()
+      if(delta != null)
+        return RelativeTimepoint(Option(tp), if(sign == "+") delta.toInt else -delta.toInt)
+    }
+    pos = start
+    val abs = decimalNumber()
+    if(abs != null)
+      return RelativeTimepoint(None, abs.toInt)
+    pos = start
+    val ref = timepointRef()
+    if(ref != null)
+      return RelativeTimepoint(Some(ref), 0)
+    null
+  }
+
+  private def timepointRef() : TimepointRef = {
+    val start = pos
+    if(peek.kind == IDENT && (peek.text == "start" || peek.text == "end")) {
+      val kw = ident()
+      if(accept("(")) {
+        val id = word()
+        if(id != null && accept(")"))
+          return ExtractedTimepoint(kw, id)
+      }
+    }
+    pos = start
+    val id = ident()
+    if(id != null) Timepoint(id)
+    else null
+  }
+
+  private def statement() : Statement = {
+    val start = pos
+    val id = word()
+    if(id != null && accept(":")) {
+      val s = statementWithoutID()
+      if(s != null)
+        return s match {
+          case SingleTermStatement(e, "") => SingleTermStatement(e, id)
+          case TwoTermsStatement(e1, o, e2, "") => TwoTermsStatement(e1, o, e2, id)
+          case ThreeTermsStatement(e1, o1, e2, o2, e3, "") => ThreeTermsStatement(e1, o1, e2, o2, e3, id)
+          case _ => throw new ANMLException("Problem while parsing: id was detected by statementWithoutID")
+        }
+    }
+    pos = start
+    statementWithoutID()
+  }
+
+  private def statementWithoutID() : Statement = {
+    val start = pos
+    val e1 = literal()
+    if(e1 != null) {
+      // three terms, two terms and single term statements share their prefix
+      val afterFirst = pos
+      val o1 = op()
+      val e2 = if(o1 != null) literal() else null
+      if(e2 == null) {
+        pos = afterFirst
+        return new SingleTermStatement(e1, "")
+      }
+      val afterSecond = pos
+      val o2 = op()
+      val e3 = if(o2 != null) literal() else null
+      if(e3 == null) {
+        pos = afterSecond
+        return new TwoTermsStatement(e1, o1, e2, "")
+      }
+      return new ThreeTermsStatement(e1, o1, e2, o2, e3, "")
+    }
+    pos = start
+    if(accept("ordered") && accept("(")) {
+      val l = rep1sep(statement(), ",")
+      if(l != null && accept(")"))
+        return new OrderedStatements(l, "")
+    }
+    pos = start
+    if(accept("unordered") && accept("(")) {
+      val l = rep1sep(statement(), ",")
+      if(l != null && accept(")"))
+        return new UnorderedStatements(l, "")
+    }
+    null
+  }
+
+  private def tempConstraint() : TemporalConstraint = {
+    val start = pos
+    val tp1 = timepointRef()
+    if(tp1 == null) return null
+    val d1 = constantAddition()
+    val operator = peek.text
+    if(peek.kind == SYMBOL && (operator == "=" || operator == "<=" || operator == ">=" || operator == "<" || operator == ">")) {
+      pos += 1
+      val tp2 = timepointRef()
+      if(tp2 != null) {
+        val d2 = constantAddition()
+        if(accept(";"))
+          return operator match {
+            case "<" => ReqTemporalConstraint(tp1, "<", tp2, d2 - d1)
+            case "=" => ReqTemporalConstraint(tp1, "=", tp2, d2 - d1)
+            case "<=" => ReqTemporalConstraint(tp1, "<", tp2, d2 - d1 + 1)
+            case ">" => ReqTemporalConstraint(tp2, "<", tp1, d1 - d2)
+            case ">=" => ReqTemporalConstraint(tp2, "<", tp1, d1 - d2 + 1)
+          }
+      }
+    }
+    pos = start
+    val dst = timepointRef()
+    if(dst != null && acceptColon("in")) {
+      val src = timepointRef()
+      if(src != null && accept("+") && accept("[")) {
+        val min = decimalNumber()
+        if(min != null && accept(",")) {
+          val max = decimalNumber()
+          if(max != null && accept("]") && accept(";"))
+            return ContingentConstraint(src, dst, min.toInt, max.toInt)
+        }
+      }
+    }
+    null
+  }
+
+  /** Any string of the form `+ 10`, `- 2`, ... Returns 0 if there is none */
+  private def constantAddition() : Int = {
+    val sign = peek.text
+    if(peek.kind == SYMBOL && (sign == "+" || sign == "-")) {
+      pos += 1
+      val num = decimalNumber()
+      if(num != null)
+        return if(sign == "+") num.toInt else -num.toInt
+      pos -= 1
+    }
+    0
+  }
+
+  private def unchainedLiteral() : Expr = {
+    val start = pos
+    val num = decimalNumber()
+    if(num != null) return NumExpr(num.toFloat)
+    pos = start
+    if(accept("-")) {
+      val neg = decimalNumber()
+      if(neg != null) return NumExpr(-neg.toFloat)
+    }
+    pos = start
+    val f = word()
+    if(f != null) {
+      val afterWord = pos
+      val args = refArgs()
+      if(args == null) {
+        pos = afterWord
+        return VarExpr(f)
+      } else {
+        return FuncExpr(VarExpr(f), args)
+      }
+    }
+    pos = start
+    if(accept("{")) {
+      val l = rep1sep(literal(), ",")
+      if(l != null && accept("}"))
+        return SetExpr(l.toSet)
+    }
+    null
+  }
+
+  private def literal() : Expr =
+    rep1sep(unchainedLiteral(), ".") match {
+      case null => null
+      case List(variable) => variable
+      case l => l.tail.foldLeft(l.head)((acc,cur) => ChainedExpr(acc, cur))
+    }
+
+  private def refArgs() : List[Expr] = {
+    if(!accept("(")) return null
+    val args = repsep(literal(), ",")
+    if(accept(")")) args
+    else null
+  }
+
+  private def op() : Operator = {
+    val t = peek
+    if(t.kind == SYMBOL) {
+      t.text match {
+        case "==" | ":=" | ":->" | "<" | ">=" | ">" | "!=" =>
+          pos += 1
+          return Operator(t.text)
+        case ":" if tok(1).kind == IDENT && tok(1).adjacent =>
+          tok(1).text match {
+            case "produce" | "consume" | "use" =>
+              pos += 2
+              return Operator(":"+tok(-1).text)
+            case _ =>
+          }
+        case _ =>
+      }
+    } else if(t.kind == IDENT && t.text == "in") {
+      pos += 1
+      return Operator("in")
+    }
+    fail()
+  }
+
+  private def action() : Action = {
+    if(!accept("action")) return null
+    val name = word()
+    if(name == null || !accept("(")) return null
+    val args = repsep(argument(), ",")
+    if(!accept(")")) return null
+    val body = actionBody()
+    if(body == null) return null
+    new Action(name, args, body)
+  }
+
+  private def actionBody() : List[ActionContent] = {
+    if(!accept("{")) return null
+    val content = rep(actionContent())
+    if(accept("}") && accept(";")) content.flatten
+    else null
+  }
+
+  private def actionContent() : List[ActionContent] = {
+    val start = pos
+    val ts = temporalStatements()
+    if(ts != null) return ts
+    pos = start
+    val d = decomposition()
+    if(d != null) return List(d)
+    pos = start
+    val tc = tempConstraint()
+    if(tc != null) return List(tc)
+    pos = start
+    if(accept("motivated") && accept(";"))
+      return List(Motivated)
+    pos = start
+    val c = constant()
+    if(c != null) return List(c)
+    pos = start
+    if(accept("duration") && accept(":=")) {
+      val dur = literal()
+      if(dur != null && accept(";"))
+        return List(ExactDuration(dur))
+    }
+    pos = start
+    if(accept("duration") && acceptColon("in") && accept("[")) {
+      val min = literal()
+      if(min != null && accept(",")) {
+        val max = literal()
+        if(max != null && accept("]") && accept(";"))
+          return List(UncertainDuration(min, max))
+      }
+    }
+    null
+  }
+
+  private def constant() : Constant = {
+    if(!accept("constant")) return null
+    val tipe = typ()
+    if(tipe == null) return null
+    val name = word()
+    if(name != null && accept(";")) new Constant(name, tipe)
+    else null
+  }
+
+  private def decomposition() : Decomposition = {
+    if(!acceptColon("decomposition") || !accept("{")) return null
+    val content = rep(decompositionContent())
+    if(accept("}") && accept(";")) Decomposition(content.flatten)
+    else null
+  }
+
+  private def decompositionContent() : List[DecompositionContent] = {
+    val start = pos
+    val tc = tempConstraint()
+    if(tc != null) return List(tc)
+    pos = start
+    val ts = temporalStatements()
+    if(ts != null) return ts
+    pos = start
+    val c = constant()
+    if(c != null) List(c)
+    else null
+  }
+
+  private def argument() : Argument = {
+    val tipe = typ()
+    if(tipe == null) return null
+    val name = word()
+    if(name != null) new Argument(tipe, name)
+    else null
+  }
+
+  private def temporalStatements() : List[TemporalStatement] = {
+    val start = pos
+    val annot = annotation()
+    if(annot != null) {
+      val ss = statements()
+      if(ss != null) return ss.map(new TemporalStatement(Some(annot), _))
+    }
+    pos = start
+    val s = statementSemi()
+    if(s != null) List(new TemporalStatement(None, s))
+    else null
+  }
+
+  private def statementSemi() : Statement = {
+    val s = statement()
+    if(s != null && accept(";")) s
+    else null
+  }
+
+  private def statements() : List[Statement] = {
+    val start = pos
+    if(accept("{")) {
+      val ss = rep(statementSemi())
+      if(accept("}") && accept(";"))
+        return ss
+    }
+    pos = start
+    val s = statementSemi()
+    if(s != null) List(s)
+    else null
+  }
+
+  private def forallBlock() : ForAll = {
+    if(!accept("forall") || !accept("(")) return null
+    val args = rep1sep(argument(), ",")
+    if(args == null || !accept(")") || !accept("{")) return null
+    val content = decompositionContent()
+    if(content != null && accept("}") && accept(";")) ForAll(args, content)
+    else null
+  }
+
+  private def argList() : List[Argument] = {
+    if(!accept("(")) return null
+    val args = repsep(argument(), ",")
+    if(accept(")")) args
+    else null
+  }
+
+  private def optArgList() : List[Argument] = {
+    val start = pos
+    val args = argList()
+    if(args == null) {
+      pos = start
+      Nil
+    } else {
+      args
+    }
+  }
+
+  private def functionDecl() : Function = {
+    val start = pos
+    val num = numFunctionDecl()
+    if(num != null) return num
+    pos = start
+    symFunctionDecl()
+  }
+
+  private def symFunctionDecl() : SymFunction = {
+    val start = pos
+    if(accept("constant")) {
+      val t = typ()
+      val name = if(t != null) word() else null
+      if(name != null) {
+        val args = optArgList()
+        if(accept(";"))
+          return SymFunction(name, args, t, isConstant = true)
+      }
+    }
+    pos = start
+    if(accept("fluent")) {
+      val t = typ()
+      val name = if(t != null) word() else null
+      if(name != null) {
+        val args = optArgList()
+        if(accept(";"))
+          return SymFunction(name, args, t, isConstant = false)
+      }
+    }
+    pos = start
+    if(accept("variable")) {
+      val t = typ()
+      val name = if(t != null) word() else null
+      if(name != null && accept(";"))
+        return SymFunction(name, List(), t, isConstant = false)
+    }
+    pos = start
+    if(accept("function")) {
+      val t = typ()
+      val name = if(t != null) word() else null
+      if(name != null) {
+        val args = argList()
+        if(args != null && accept(";"))
+          return SymFunction(name, args, t, isConstant = false)
+      }
+    }
+    pos = start
+    if(accept("predicate")) {
+      val name = word()
+      if(name != null) {
+        val args = argList()
+        if(args != null && accept(";"))
+          return SymFunction(name, args, PSimpleType("boolean"), isConstant = false)
+      }
+    }
+    null
+  }
+
+  private def numFunctionDecl() : NumFunction = {
+    val fType = peek.text
+    fType match {
+      case "constant" | "variable" | "function" | "consumable" | "producible" | "reusable" | "replenishable" if peek.kind == IDENT =>
+        pos += 1
+      case _ =>
+        return fail()
+    }
+    val resourceType =
+      if(fType == "constant" || fType == "variable" || fType == "function") None
+      else Some(fType)
+
+    // integer and float functions only differ by their type and the type of their bounds
+    val isInteger = accept("integer")
+    if(!isInteger && !accept("float"))
+      return null
+    val beforeInterval = pos
+    val interval = numInterval()
+    if(interval == null) pos = beforeInterval
+    val name = word()
+    if(name == null) return null
+    val args = optArgList()
+    if(!accept(";")) return null
+
+    if(isInteger) {
+      val (min, max) =
+        if(interval == null) (Int.MinValue, Int.MaxValue)
+        else (interval._1.toInt, if(interval._2 == null) Int.MaxValue else interval._2.toInt)
+      new IntFunction(name, args, PSimpleType("integer"), fType == "constant", min, max, resourceType)
+    } else {
+      val (min, max) =
+        if(interval == null) (Float.MinValue, Float.MaxValue)
+        else (interval._1.toFloat, if(interval._2 == null) Float.MaxValue else interval._2.toFloat)
+      new FloatFunction(name, args, PSimpleType("float"), fType == "constant", min, max, resourceType)
+    }
+  }
+
+  /** Bounds of an interval such as `[0, 10]` or `[0, infinity]`. The upper bound is null for infinity. */
+  private def numInterval() : (String, String) = {
+    if(!accept("[")) return null
+    val min = floatingPointNumber()
+    if(min == null || !accept(",")) return null
+    val start = pos
+    val max = floatingPointNumber()
+    if(max != null) {
+      if(accept("]")) (min, max)
+      else null
+    } else {
+      pos = start
+      if(accept("infinity") && accept("]")) (min, null)
+      else null
+    }
+  }
+
+  private def simpleType() : PSimpleType = {
+    if(peek.kind != IDENT) return fail()
+    peek.text match {
+      case "float" | "integer" | "boolean" => PSimpleType(ident())
+      case _ =>
+        val t = word()
+        if(t != null) PSimpleType(t)
+        else null
+    }
+  }
+
+  private def typ() : PType = {
+    val start = pos
+    if(accept("(")) {
+      val l = rep1sep(simpleType(), "or")
+      if(l != null && accept(")"))
+        return PDisjunctiveType(l.toSet)
+    }
+    pos = start
+    simpleType()
+  }
+
+  private def typeDecl() : TypeDecl = {
+    if(!accept("type")) return null
+    val name = simpleType()
+    if(name == null) return null
+    val afterName = pos
+    if(accept("<")) {
+      val parent = simpleType()
+      if(parent == null) return null
+      val afterParent = pos
+      if(accept("with")) {
+        val body = typeBody()
+        if(body != null && accept(";"))
+          return TypeDecl(name, Some(parent), body)
+      }
+      pos = afterParent
+      if(accept(";")) TypeDecl(name, Some(parent), List())
+      else null
+    } else {
+      pos = afterName
+      if(accept("with")) {
+        val body = typeBody()
+        if(body != null && accept(";")) TypeDecl(name, None, body)
+        else null
+      } else if(accept(";")) {
+        TypeDecl(name, None, List())
+      } else {
+        null
+      }
+    }
+  }
+
+  private def typeBody() : List[TypeContent] = {
+    if(!accept("{")) return null
+    val content = rep(functionDecl())
+    if(accept("}")) content
+    else null
+  }
+
+  private def instanceDecl() : List[Instance] = {
+    if(!accept("instance")) return null
+    val tipe = simpleType()
+    if(tipe == null) return null
+    val names = repsep(word(), ",")
+    if(accept(";")) names.map(Instance(tipe, _))
+    else null
+  }
+}
@@ -0,0 +1,35 @@
+package planstack.anml.model
+
+import java.util.concurrent.{Callable, Executors, TimeUnit}
+
+import org.scalatest.FunSuite
+import planstack.anml.model.abs.DefaultMod
+
+import scala.collection.JavaConverters._
+
+/** Problems can be built concurrently (e.g. by the planning server): the IDs generated while doing so must be unique. */
+class ConcurrentIDsSuite extends FunSuite {
+
+  def generatedConcurrently(gen: () => String) : Seq[String] = {
+    val pool = Executors.newFixedThreadPool(8)
+    try {
+      val tasks = List.fill(8)(new Callable[Seq[String]] { def call() = Seq.fill(10000)(gen()) })
+      pool.invokeAll(tasks.asJava).asScala.flatMap(_.get())
+    } finally {
+      pool.shutdown()
+      pool.awaitTermination(10, TimeUnit.SECONDS)
+    }
+  }
+
+  test("Local references are unique") {
+    val ids = generatedConcurrently(() => LocalRef.getNext)
+    assert(ids.size == 80000)
+    assert(ids.toSet.size == ids.size)
+  }
+
+  test("Statement IDs are unique") {
+    val ids = generatedConcurrently(() => DefaultMod.idModifier(""))
+    assert(ids.toSet.size == 80000)
+    assert(DefaultMod.idModifier("s1") == "s1")
+  }
+}
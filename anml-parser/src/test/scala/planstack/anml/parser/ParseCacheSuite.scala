@@ -0,0 +1,72 @@
+package planstack.anml.parser
+
+import java.io.File
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.util.concurrent.{Callable, Executors, TimeUnit}
+
+import org.scalatest.FunSuite
+
+import scala.collection.JavaConverters._
+
+class ParseCacheSuite extends FunSuite {
+
+  val domain = "type Loc;\ninstance Loc l1, l2;\npredicate at(Loc l);\n"
+
+  def withFile(content: String)(f: File => Unit) {
+    val file = File.createTempFile("parse-cache", ".dom.anml")
+    try {
+      Files.write(file.toPath, content.getBytes(StandardCharsets.UTF_8))
+      f(file)
+    } finally {
+      file.delete()
+    }
+  }
+
+  test("A file is parsed once") {
+    withFile(domain) { file =>
+      val cache = new ParseCache
+      val res = cache.get(file)
+      assert(res.toString == ANMLFactory.parseAnmlFromFile(file.getPath).toString)
+      assert(cache.get(file) eq res)
+      // same file through another path
+      assert(cache.get(new File(file.getParentFile, "./"+file.getName)) eq res)
+      assert(cache.size == 1)
+    }
+  }
+
+  test("A modified file is parsed again") {
+    withFile(domain) { file =>
+      val cache = new ParseCache
+      val res = cache.get(file)
+      Files.write(file.toPath, (domain + "instance Loc l3;\n").getBytes(StandardCharsets.UTF_8))
+      file.setLastModified(file.lastModified() + 2000)
+      val updated = cache.get(file)
+      assert(!(updated eq res))
+      assert(updated.blocks.size == res.blocks.size + 1)
+      assert(cache.get(file) eq updated)
+      assert(cache.size == 1)
+
+      cache.clear()
+      assert(cache.size == 0)
+      assert(!(cache.get(file) eq updated))
+    }
+  }
+
+  test("Concurrent accesses give the same content") {
+    withFile(domain) { file =>
+      val cache = new ParseCache
+      val expected = ANMLFactory.parseAnmlFromFile(file.getPath).toString
+      val pool = Executors.newFixedThreadPool(8)
+      try {
+        val tasks = List.fill(64)(new Callable[ParseResult] { def call() = cache.get(file) })
+        for(res <- pool.invokeAll(tasks.asJava).asScala)
+          assert(res.get().toString == expected)
+        assert(cache.size == 1)
+      } finally {
+        pool.shutdown()
+        pool.awaitTermination(10, TimeUnit.SECONDS)
+      }
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package planstack.anml.parser
+
+import java.io.File
+import java.nio.charset.Charset
+import java.nio.file.Files
+
+import org.scalatest.FunSuite
+import planstack.anml.ANMLException
+
+class StreamingParserSuite extends FunSuite {
+
+  val domainsDir = List("planning/domains", "../planning/domains", "domains").map(new File(_)).find(_.isDirectory)
+    .getOrElse(throw new ANMLException("Unable to find the planning/domains folder."))
+
+  /** Problem files above this size are only parsed with the streaming parser: the combinators take minutes on them. */
+  val maxCombinatorsSize = 256 * 1024
+
+  def read(f: File) = new String(Files.readAllBytes(f.toPath), Charset.defaultCharset())
+
+  /** Returns the blocks of the file (as a string) or the class of the exception thrown by the parser. */
+  def outcome(parse: => ParseResult) : Either[String,String] =
+    try { Right(parse.toString) } catch { case e: Exception => Left(e.getClass.getName) }
+
+  for(dir <- domainsDir.listFiles().filter(_.isDirectory).sortBy(_.getName)) {
+    test(s"Both parsers give the same blocks on ${dir.getName}") {
+      val files = dir.listFiles().filter(_.getName.endsWith(".anml")).sortBy(_.getName)
+      for(f <- files) {
+        val streaming = outcome(ANMLFactory.parseAnmlFromFile(f.getPath))
+        if(f.getName.endsWith(".dom.anml") || f.length() <= maxCombinatorsSize)
+          assert(streaming == outcome(ANMLFactory.parseAnmlStringWithCombinators(read(f))), s"Different results on $f")
+        else
+          assert(streaming.isRight, s"Unable to parse $f")
+      }
+    }
+  }
+
+  /** Returns the message of the exception raised when parsing the string with the streaming parser. */
+  def errorOf(anml: String) : String = {
+    intercept[ANMLException] { ANMLFactory.parseAnmlStringWithCombinators(anml) }
+    intercept[ANMLException] { ANMLFactory.parseAnmlString(anml) }.getMessage
+  }
+
+  test("Errors are reported at the unexpected token") {
+    val msg = errorOf(
+      "action Go(Loc a) {\n" +
+      "  duration := 10;\n" +
+      "  [start] at(a) == true;\n" +
+      "  [end] at(a) == ;\n" +
+      "};\n")
+    assert(msg.contains("[4.18] failure: unexpected ';'"), msg)
+  }
+
+  test("Errors positions take comments into account") {
+    val msg = errorOf(
+      "// types\n" +
+      "/* multi\n" +
+      "   line */ type Loc;\n" +
+      "instance Loc l1 l2;\n")
+    assert(msg.contains("[4.17] failure: unexpected 'l2'"), msg)
+  }
+
+  test("Errors at the end of the input") {
+    val missingSemicolon = errorOf("type Loc;\ninstance Loc l1, l2")
+    assert(missingSemicolon.contains("[2.20] failure: unexpected end of input"), missingSemicolon)
+
+    val unterminated = errorOf("action A() {\n  duration := 1;\n")
+    assert(unterminated.contains("[3.1] failure: unexpected end of input"), unterminated)
+  }
+
+  test("Errors in a block following valid blocks") {
+    val msg = errorOf("type Loc;\ninstance Loc l1;\ntype Robot < Loc\ninstance Robot r1;\n")
+    assert(msg.contains("[4.1] failure: unexpected 'instance'"), msg)
+  }
+}
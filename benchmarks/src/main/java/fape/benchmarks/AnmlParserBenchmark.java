@@ -0,0 +1,67 @@
+package fape.benchmarks;
+
+import fape.exceptions.FAPEException;
+import org.openjdk.jmh.annotations.*;
+import planstack.anml.parser.ANMLFactory;
+import planstack.anml.parser.ParseResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing alone (without conversion into an AnmlProblem) of a domain and its problem,
+ * with the streaming parser and with the parser combinators it replaced.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AnmlParserBenchmark {
+
+    @Param({
+            "blocks_ipc2/blocks_ipc2.p04-0.pb.anml",
+            "rovers_ipc5/rovers_ipc5.p01.pb.anml",
+            "dwr/dwr.1.pb.anml",
+            "airport_ipc4_timewindows/airport_ipc4_timewindows.p50_airport5muc_p15_w10.pb.anml",
+            "satellite_ipc4_timewindows/satellite_ipc4_timewindows.p33_hc_pfile13.pb.anml"
+    })
+    public String problem;
+
+    @Param({"streaming", "combinators"})
+    public String parser;
+
+    private String domainFile;
+    private String problemFile;
+
+    @Setup
+    public void setup() throws IOException {
+        File pb = Fixtures.problemFile(problem);
+        problemFile = pb.getAbsolutePath();
+        domainFile = new File(pb.getParentFile(), pb.getName().substring(0, pb.getName().indexOf('.')) + ".dom.anml").getAbsolutePath();
+
+        // both parsers must give the same blocks
+        if(!parseWith("streaming").toString().equals(parseWith("combinators").toString()))
+            throw new FAPEException("The streaming parser and the parser combinators disagree on "+problem);
+    }
+
+    private ParseResult parseWith(String parser) throws IOException {
+        if(parser.equals("streaming"))
+            return ANMLFactory.parseAnmlFromFile(domainFile).append(ANMLFactory.parseAnmlFromFile(problemFile));
+        else
+            return ANMLFactory.parseAnmlStringWithCombinators(read(domainFile) + "\n" + read(problemFile));
+    }
+
+    private static String read(String file) throws IOException {
+        return new String(Files.readAllBytes(new File(file).toPath()), Charset.defaultCharset());
+    }
+
+    @Benchmark
+    public ParseResult parse() throws IOException {
+        return parseWith(parser);
+    }
+}
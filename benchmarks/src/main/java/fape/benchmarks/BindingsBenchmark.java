@@ -0,0 +1,71 @@
+package fape.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import planstack.anml.model.SimpleType;
+import planstack.anml.model.concrete.Label;
+import planstack.anml.model.concrete.VarRef;
+import planstack.constraints.bindings.BindingConstraintNetwork;
+import scala.Option;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Propagation in the binding constraint network: a chain of variables that must take different values
+ * (like successive locations of an object), every other variable being unified with the next one of its parity.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BindingsBenchmark {
+
+    @Param({"50", "200"})
+    public int numVariables;
+
+    @Param({"10", "50"})
+    public int domainSize;
+
+    private List<String> values;
+    private VarRef[] vars;
+    private BindingConstraintNetwork network;
+
+    @Setup
+    public void setup() {
+        SimpleType type = new SimpleType("object", Option.<SimpleType>empty());
+        values = new ArrayList<>();
+        for(int i=0 ; i<domainSize ; i++)
+            values.add("o"+i);
+
+        network = new BindingConstraintNetwork();
+        for(String val : values)
+            network.addPossibleValue(val);
+        vars = new VarRef[numVariables];
+        for(int i=0 ; i<numVariables ; i++) {
+            vars[i] = new VarRef(i, type, new Label("benchmark", "v"+i));
+            network.addVariable(vars[i], values);
+        }
+        for(int i=0 ; i+1<numVariables ; i++)
+            network.addSeparationConstraint(vars[i], vars[i+1]);
+        for(int i=0 ; i+4<numVariables ; i+=4)
+            network.AddUnificationConstraint(vars[i], vars[i+2]);
+        network.isConsistent();
+    }
+
+    /** Copies the network and binds a variable, which propagates along the separation chain. */
+    @Benchmark
+    public boolean bindAndPropagate() {
+        BindingConstraintNetwork copy = network.DeepCopy();
+        copy.restrictDomain(vars[numVariables / 2], Collections.singletonList(values.get(0)));
+        return copy.isConsistent();
+    }
+
+    @Benchmark
+    public BindingConstraintNetwork copy() {
+        return network.DeepCopy();
+    }
+}
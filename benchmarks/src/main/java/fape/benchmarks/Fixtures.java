@@ -0,0 +1,73 @@
+package fape.benchmarks;
+
+import fape.core.planning.heuristics.temporal.DGHandler;
+import fape.core.planning.planner.Planner;
+import fape.core.planning.planner.PlanningOptions;
+import fape.core.planning.search.Handler;
+import fape.core.planning.states.State;
+import fape.exceptions.FAPEException;
+import planstack.anml.model.AnmlProblem;
+import planstack.constraints.stnu.Controllability;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Problems and initial states used by the benchmarks.
+ *
+ * Problems are looked up in the folder given by the system property "fape.domains" (set by the build)
+ * and fall back to planning/domains relative to the working directory.
+ */
+public class Fixtures {
+
+    /** Small problems of various flavors (flat, hierarchical, temporal) from planning/domains */
+    public static final String[] PROBLEMS = {
+            "blocks_ipc2/blocks_ipc2.p04-0.pb.anml",
+            "logistics_ipc2/logistics_ipc2.p04-0.pb.anml",
+            "rovers_ipc5/rovers_ipc5.p01.pb.anml",
+            "satellite_ipc8-hier/satellite_ipc8-hier.p01.pb.anml",
+            "dwr/dwr.1.pb.anml"
+    };
+
+    public static File domainsDir() {
+        String prop = System.getProperty("fape.domains");
+        if(prop != null && new File(prop).isDirectory())
+            return new File(prop);
+        for(String candidate : Arrays.asList("planning/domains", "../planning/domains"))
+            if(new File(candidate).isDirectory())
+                return new File(candidate);
+        throw new FAPEException("Unable to find the planning/domains folder, please set the fape.domains property.");
+    }
+
+    public static File problemFile(String problem) {
+        File f = new File(domainsDir(), problem);
+        if(!f.isFile())
+            throw new FAPEException("No such problem file: "+f.getAbsolutePath());
+        return f;
+    }
+
+    public static AnmlProblem loadProblem(String problem) {
+        AnmlProblem pb = new AnmlProblem();
+        pb.extendWithAnmlFile(problemFile(problem).getAbsolutePath());
+        return pb;
+    }
+
+    /**
+     * Returns the initial state of the given problem, bound to a planner with default options.
+     * If withReachability is true, the planner uses the dependency graph (DGHandler) like the default
+     * configuration of the command line planner.
+     */
+    public static State initialState(AnmlProblem pb, boolean withReachability) {
+        PlanningOptions options = new PlanningOptions(
+                Collections.singletonList("minspan"),
+                Arrays.asList("hier","ogf","abs","lcf","eogf"));
+        if(withReachability)
+            options.handlers.add(new DGHandler());
+        State st = new State(pb, Controllability.PSEUDO_CONTROLLABILITY);
+        Planner planner = new Planner(st, options);
+        st.setPlanner(planner);
+        st.notify(Handler.StateLifeTime.PRE_QUEUE_INSERTION);
+        return st;
+    }
+}
@@ -0,0 +1,44 @@
+package fape.benchmarks;
+
+import fape.core.planning.grounding.GAction;
+import fape.core.planning.grounding.GroundProblem;
+import fape.core.planning.states.State;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import planstack.anml.model.abs.AbstractAction;
+
+import java.util.concurrent.TimeUnit;
+
+/** Instantiation of all ground actions of a problem (GAction.groundActions). */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@org.openjdk.jmh.annotations.State(Scope.Benchmark)
+public class GroundingBenchmark {
+
+    @Param({
+            "blocks_ipc2/blocks_ipc2.p04-0.pb.anml",
+            "logistics_ipc2/logistics_ipc2.p04-0.pb.anml",
+            "rovers_ipc5/rovers_ipc5.p01.pb.anml",
+            "satellite_ipc8-hier/satellite_ipc8-hier.p01.pb.anml",
+            "dwr/dwr.1.pb.anml"
+    })
+    public String problem;
+
+    private State initialState;
+    private GroundProblem groundProblem;
+
+    @Setup
+    public void setup() {
+        initialState = Fixtures.initialState(Fixtures.loadProblem(problem), false);
+        groundProblem = initialState.pl.preprocessor.getGroundProblem();
+    }
+
+    @Benchmark
+    public void groundActions(Blackhole bh) {
+        for(AbstractAction aa : initialState.pb.abstractActions())
+            bh.consume(GAction.groundActions(groundProblem, aa, initialState.pl));
+    }
+}
@@ -0,0 +1,97 @@
+package fape.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import planstack.anml.model.concrete.TPRef;
+import planstack.constraints.stnu.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Temporal networks shaped like partial plans: a sequence of actions (pairs of time points with a bounded duration)
+ * partially ordered with respect to each other.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class STNBenchmark {
+
+    @Param({"minimal", "pseudo", "compact-pseudo", "dynamic"})
+    public String manager;
+
+    @Param({"50", "200"})
+    public int numTimePoints;
+
+    private TPRef[] tps;
+    private GenSTNUManager<String> network;
+    private int nextConstraint = 0;
+
+    private GenSTNUManager<String> newManager() {
+        switch (manager) {
+            case "minimal": return new MinimalSTNUManager<>();
+            case "pseudo": return new PseudoSTNUManager<>();
+            case "compact-pseudo": return new PseudoSTNUManager<>(new CompactSTN<String>());
+            case "dynamic": return new STNUManager<>();
+            default: throw new IllegalArgumentException("Unknown STN manager: "+manager);
+        }
+    }
+
+    private GenSTNUManager<String> buildNetwork() {
+        GenSTNUManager<String> stn = newManager();
+        Random rand = new Random(0);
+        stn.recordTimePointAsStart(tps[0]);
+        stn.recordTimePointAsEnd(tps[1]);
+        for(int i=2 ; i<numTimePoints ; i++)
+            stn.recordTimePoint(tps[i]);
+        for(int i=2 ; i+1<numTimePoints ; i+=2) {
+            // action with a duration in [5, 15+]
+            stn.enforceConstraint(tps[i], tps[i+1], 5, 15 + rand.nextInt(10));
+            // ordered after the end of a random previous action
+            if(i >= 4 && rand.nextBoolean())
+                stn.enforceBefore(tps[3 + 2 * rand.nextInt((i-2) / 2)], tps[i]);
+        }
+        return stn;
+    }
+
+    @Setup
+    public void setup() {
+        tps = new TPRef[numTimePoints];
+        for(int i=0 ; i<numTimePoints ; i++)
+            tps[i] = new TPRef(i);
+        network = buildNetwork();
+    }
+
+    @Benchmark
+    public GenSTNUManager<String> build() {
+        return buildNetwork();
+    }
+
+    /** Copy of the network followed by the insertion of an ordering constraint, as done when resolving a threat. */
+    @Benchmark
+    public boolean copyAndOrder() {
+        GenSTNUManager<String> copy = network.deepCopy();
+        // end of an action before the start of a later one: always consistent
+        final int numActions = (numTimePoints - 2) / 2;
+        nextConstraint = (nextConstraint + 1) % (numActions - 1);
+        final int first = nextConstraint;
+        final int second = first + 1 + (7 * first) % (numActions - 1 - first);
+        copy.enforceBefore(tps[3 + 2 * first], tps[2 + 2 * second]);
+        return copy.isConsistent();
+    }
+
+    @Benchmark
+    public void canBeBefore(Blackhole bh) {
+        for(int i=2 ; i<numTimePoints ; i++)
+            bh.consume(network.canBeBefore(tps[i], tps[numTimePoints + 1 - i]));
+    }
+
+    @Benchmark
+    public void earliestStart(Blackhole bh) {
+        for(int i=0 ; i<numTimePoints ; i++)
+            bh.consume(network.getEarliestStartTime(tps[i]));
+    }
+}
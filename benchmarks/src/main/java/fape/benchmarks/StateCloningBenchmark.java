@@ -0,0 +1,37 @@
+package fape.benchmarks;
+
+import fape.core.planning.states.State;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/** Cost of copying a partial plan, which happens for every generated search node. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@org.openjdk.jmh.annotations.State(Scope.Benchmark)
+public class StateCloningBenchmark {
+
+    @Param({
+            "blocks_ipc2/blocks_ipc2.p04-0.pb.anml",
+            "logistics_ipc2/logistics_ipc2.p04-0.pb.anml",
+            "rovers_ipc5/rovers_ipc5.p01.pb.anml",
+            "satellite_ipc8-hier/satellite_ipc8-hier.p01.pb.anml",
+            "dwr/dwr.1.pb.anml"
+    })
+    public String problem;
+
+    private State initialState;
+
+    @Setup
+    public void setup() {
+        initialState = Fixtures.initialState(Fixtures.loadProblem(problem), true);
+    }
+
+    @Benchmark
+    public State cc() {
+        return initialState.cc(initialState.mID + 1);
+    }
+}
@@ -0,0 +1,104 @@
+package fape.core.planning.heuristics.temporal;
+
+import fape.benchmarks.Fixtures;
+import fape.core.planning.search.Handler;
+import fape.core.planning.search.flaws.finders.FlawFinder;
+import fape.core.planning.search.flaws.flaws.Flaw;
+import fape.core.planning.search.flaws.resolvers.Resolver;
+import fape.core.planning.states.State;
+import fape.exceptions.FAPEException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Propagation of the dependency graph (reachability analysis) done on each selected state.
+ * Lives in the package of DGHandler to have access to its propagation methods.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@org.openjdk.jmh.annotations.State(Scope.Benchmark)
+public class DGHandlerBenchmark {
+
+    @Param({
+            "blocks_ipc2/blocks_ipc2.p04-0.pb.anml",
+            "logistics_ipc2/logistics_ipc2.p04-0.pb.anml",
+            "rovers_ipc5/rovers_ipc5.p01.pb.anml",
+            "satellite_ipc8-hier/satellite_ipc8-hier.p01.pb.anml",
+            "dwr/dwr.1.pb.anml"
+    })
+    public String problem;
+
+    private State initialState;
+    private DGHandler handler;
+    private Resolver resolver;
+    private State child;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        initialState = Fixtures.initialState(Fixtures.loadProblem(problem), true);
+        handler = (DGHandler) initialState.pl.getHandlers().stream()
+                .filter(h -> h instanceof DGHandler)
+                .findFirst().get();
+
+        // look for a resolver whose application changes the facts of the dependency graph,
+        // otherwise the propagation would simply reuse the graph of the initial state
+        final StateDepGraph initialGraph = initialState.getExtension(DepGraphCore.StateExt.class).currentGraph;
+        for(FlawFinder ff : initialState.pl.options.flawFinders) {
+            for(Flaw f : ff.getFlaws(initialState, initialState.pl)) {
+                for(Resolver res : f.getResolvers(initialState, initialState.pl)) {
+                    State st = childWith(res);
+                    if(!st.isConsistent())
+                        continue;
+                    handler.apply(st, Handler.StateLifeTime.SELECTION, st.pl);
+                    if(st.isConsistent() && st.getExtension(DepGraphCore.StateExt.class).currentGraph.facts != initialGraph.facts) {
+                        resolver = res;
+                        return;
+                    }
+                }
+            }
+        }
+        throw new FAPEException("No resolver of the initial state modifies the facts of the dependency graph.");
+    }
+
+    /** Returns a new child of the initial state, on which the given resolver was applied. */
+    private State childWith(Resolver res) {
+        State st = initialState.cc();
+        if(!res.apply(st, st.pl, false) || !st.csp.propagateMixedConstraints())
+            st.setDeadEnd();
+        st.checkConsistency();
+        return st;
+    }
+
+    /**
+     * A fresh child of the initial state for each invocation (propagation modifies the state).
+     * The child has a resolver applied, so that its facts differ from the ones of the initial state.
+     */
+    @Setup(Level.Invocation)
+    public void newChild() {
+        child = childWith(resolver);
+    }
+
+    /**
+     * DGHandler.propagateNetwork on a child of the initial state, including the restriction of the CSP domains.
+     * The propagation starts from the graph of the initial state and processes the facts that changed.
+     */
+    @Benchmark
+    public State propagateNetwork() {
+        handler.apply(child, Handler.StateLifeTime.SELECTION, child.pl);
+        return child;
+    }
+
+    /** Dijkstra propagation on the (reduced) core graph with the facts of the initial state, without any ancestor. */
+    @Benchmark
+    public StateDepGraph propagateFromScratch() {
+        DepGraphCore.StateExt ext = initialState.getExtension(DepGraphCore.StateExt.class);
+        StateDepGraph graph = new StateDepGraph(ext.getCoreGraph(), ext.currentGraph.facts.getEffects(), initialState.pl);
+        graph.propagate(Optional.empty());
+        return graph;
+    }
+}
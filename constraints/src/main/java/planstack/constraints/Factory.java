@@ -5,6 +5,7 @@ import planstack.UniquelyIdentified;
 import planstack.anml.model.concrete.TPRef;
 import planstack.anml.model.concrete.VarRef;
 import planstack.constraints.bindings.BindingConstraintNetwork;
+import planstack.constraints.stnu.CompactSTN;
 import planstack.constraints.stnu.Controllability;
 import planstack.constraints.stnu.MinimalSTNUManager;
 import planstack.constraints.stnu.PseudoSTNUManager;
@@ -15,9 +16,18 @@ import scala.collection.immutable.Map$;
 public class Factory {
 
     public static <TPRef extends UniquelyIdentified,ID> MetaCSP<ID> getMetaWithGivenControllability(Controllability controllability) {
+        return getMetaWithGivenControllability(controllability, false);
+    }
+
+    /**
+     * Returns a MetaCSP checking the given controllability.
+     * If useCompactSTN is true, STN and pseudo-controllability checks are built on a CompactSTN
+     * (copy-on-write rows, constant time queries). This option has no effect on dynamic controllability.
+     */
+    public static <ID> MetaCSP<ID> getMetaWithGivenControllability(Controllability controllability, boolean useCompactSTN) {
         switch (controllability) {
-            case STN_CONSISTENCY: return getMetaWithoutControllability();
-            case PSEUDO_CONTROLLABILITY: return getMetaWithPseudoControllability();
+            case STN_CONSISTENCY: return useCompactSTN ? getMetaWithCompactSTN() : getMetaWithoutControllability();
+            case PSEUDO_CONTROLLABILITY: return useCompactSTN ? getMetaWithCompactPseudoControllability() : getMetaWithPseudoControllability();
             case DYNAMIC_CONTROLLABILITY: return getMetaWithDynamicControllability();
             default: throw new RuntimeException("No MetaCSP for controllability: "+controllability);
         }
@@ -47,4 +57,20 @@ public class Factory {
                 new MinimalSTNUManager<ID>(),
                 Map$.MODULE$.<VarRef, List<PendingConstraint<VarRef,TPRef,ID>>>empty());
     }
+
+    /** Same as getMetaWithoutControllability but on a CompactSTN */
+    public static <ID> MetaCSP<ID> getMetaWithCompactSTN() {
+        return new MetaCSP<>(
+                new BindingConstraintNetwork(),
+                new MinimalSTNUManager<ID>(new CompactSTN<ID>()),
+                Map$.MODULE$.<VarRef, List<PendingConstraint<VarRef,TPRef,ID>>>empty());
+    }
+
+    /** Same as getMetaWithPseudoControllability but on a CompactSTN */
+    public static <ID> MetaCSP<ID> getMetaWithCompactPseudoControllability() {
+        return new MetaCSP<>(
+                new BindingConstraintNetwork(),
+                new PseudoSTNUManager<ID>(new CompactSTN<ID>()),
+                Map$.MODULE$.<VarRef, List<PendingConstraint<VarRef,TPRef,ID>>>empty());
+    }
 }
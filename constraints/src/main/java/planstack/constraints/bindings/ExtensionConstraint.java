@@ -35,16 +35,18 @@ public class ExtensionConstraint {
         return numVariables;
     }
 
-    /** Matches the possible values of a variable to the bindings they appear in. For instance:
-     * [ { a1 -> {0,1}, a2 -> {2,3} },
-     *   { b1 -> {0,2}, b2 -> {1,3} } ]
-     *  means:
-     *   - the value a1 of the first variable appears in the 0th and 1st bindings
-     *   - the value a2 of the first variable appears in the 2nd and 3rd bindings
-     *   - the value b1 of the second variable appears in the 0th and 2nd bindings
-     *   - the value b2 of the second variable appears in the 1st and 3rd bindings
+    /**
+     * Index of the tuples (used by the compact-table propagation): supports[var][val] is the set of tuples
+     * (as the words of a bitset) in which the variable var takes the value val (null if there is none).
+     * Rebuilt whenever tuples were added since the last indexing.
      */
-    LinkedList<Map<Integer, BitSet>> relevantConstraints = new LinkedList<>();
+    private long[][][] supports = new long[0][][];
+
+    /** For each variable and value, index of the last word of a table in which a support was found. Only a hint. */
+    private int[][] residues = new int[0][];
+
+    /** Number of tuples when the index was built. */
+    private volatile int numIndexedTuples = -1;
 
     /** Add a possible binding <a,b,c...> to this constraint */
     public void addValues(List<Integer> vals) {
@@ -54,20 +56,130 @@ public class ExtensionConstraint {
             bindings = Arrays.copyOf(bindings, bindings.length*2);
 
         int[] valsArray = new int[vals.size()];
-        for(int i=0 ; i<vals.size() ; i ++)
+        for(int i=0 ; i<vals.size() ; i ++) {
+            assert vals.get(i) >= 0 : "Negative values are not supported.";
             valsArray[i] = vals.get(i);
+        }
         this.bindings[numBindings++] = valsArray;
+    }
+
+    /** Number of tuples in this constraint. */
+    public int numTuples() { return numBindings; }
+
+    /**
+     * Makes sure the index of the tuples is up to date. Must be called before any of the methods working on tables.
+     * Constraints are shared between networks that might be propagated concurrently, hence the synchronization.
+     */
+    public void ensureIndexed() {
+        if(numIndexedTuples != numBindings)
+            buildIndex();
+    }
 
-        if(relevantConstraints.size() == 0) {
-            for(int i=0 ; i<vals.size() ; i++)
-                relevantConstraints.add(new HashMap<Integer, BitSet>());
+    private synchronized void buildIndex() {
+        if(numIndexedTuples == numBindings)
+            return;
+        final int numWords = (numBindings + 63) >>> 6;
+        long[][][] sup = new long[numVariables][][];
+        int[][] res = new int[numVariables][];
+        for(int var=0 ; var<numVariables ; var++) {
+            int maxValue = -1;
+            for(int t=0 ; t<numBindings ; t++)
+                maxValue = Math.max(maxValue, bindings[t][var]);
+            sup[var] = new long[maxValue+1][];
+            res[var] = new int[maxValue+1];
         }
+        for(int t=0 ; t<numBindings ; t++) {
+            for(int var=0 ; var<numVariables ; var++) {
+                final int val = bindings[t][var];
+                if(sup[var][val] == null)
+                    sup[var][val] = new long[numWords];
+                sup[var][val][t >>> 6] |= 1L << t;
+            }
+        }
+        supports = sup;
+        residues = res;
+        numIndexedTuples = numBindings;
+    }
+
+    /** Returns a table (bitset words) in which all tuples are valid. */
+    public long[] allTuples() {
+        long[] table = new long[(numBindings + 63) >>> 6];
+        for(int t=0 ; t<numBindings ; t+=64)
+            table[t >>> 6] = numBindings - t >= 64 ? -1L : (1L << (numBindings - t)) - 1;
+        return table;
+    }
 
-        for(int i=0 ; i<vals.size() ; i++) {
-            if(!relevantConstraints.get(i).containsKey(vals.get(i)))
-                relevantConstraints.get(i).put(vals.get(i), new BitSet());
-            relevantConstraints.get(i).get(vals.get(i)).set(numBindings-1);
+    /**
+     * Removes from a table all tuples in which the variable var takes a value that is not in the given domain.
+     * @param table Valid tuples, as bitset words. Modified in place.
+     * @param domain Values of the variable, as bitset words.
+     * @return True if at least one tuple was removed.
+     */
+    public boolean filterTable(long[] table, int var, long[] domain) {
+        final long[][] sup = supports[var];
+        boolean changed = false;
+        for(int w=0 ; w<table.length ; w++) {
+            if(table[w] == 0)
+                continue;
+            long mask = 0;
+            search:
+            for(int dw=0 ; dw<domain.length ; dw++) {
+                long vals = domain[dw];
+                while(vals != 0) {
+                    final int val = (dw << 6) + Long.numberOfTrailingZeros(vals);
+                    vals &= vals - 1;
+                    if(val < sup.length && sup[val] != null) {
+                        mask |= sup[val][w];
+                        if((table[w] & ~mask) == 0)
+                            break search; // all tuples of this word are supported
+                    }
+                }
+            }
+            if((table[w] & ~mask) != 0) {
+                table[w] &= mask;
+                changed = true;
+            }
         }
+        return changed;
+    }
+
+    /**
+     * Restricts a domain to the values that appear in at least one valid tuple of the table.
+     * @param table Valid tuples, as bitset words.
+     * @param domain Values of the variable var, as bitset words. Left untouched.
+     * @return The words of the restricted domain, or null if no value was removed.
+     */
+    public long[] restrictDomain(long[] table, int var, long[] domain) {
+        long[] restricted = null;
+        for(int dw=0 ; dw<domain.length ; dw++) {
+            long vals = domain[dw];
+            while(vals != 0) {
+                final int val = (dw << 6) + Long.numberOfTrailingZeros(vals);
+                vals &= vals - 1;
+                if(!hasSupport(table, var, val)) {
+                    if(restricted == null)
+                        restricted = domain.clone();
+                    restricted[dw] &= ~(1L << val);
+                }
+            }
+        }
+        return restricted;
+    }
+
+    private boolean hasSupport(long[] table, int var, int val) {
+        if(val >= supports[var].length || supports[var][val] == null)
+            return false;
+        final long[] sup = supports[var][val];
+        final int residue = residues[var][val];
+        if(residue < table.length && (sup[residue] & table[residue]) != 0)
+            return true;
+        for(int w=0 ; w<table.length ; w++) {
+            if((sup[w] & table[w]) != 0) {
+                residues[var][val] = w;
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -77,45 +189,27 @@ public class ExtensionConstraint {
     @SuppressWarnings({"unchecked","rawtypes"})
     public Set<Integer>[] restrictedDomains(Set<Integer>[] domains) {
         assert domains.length == numVars();
+        ensureIndexed();
 
-        if(numBindings == 0) { // no possible value in this constraint, all domains are empty
-            Set<Integer>[] emptyDoms = new Set[domains.length];
-            for(int i=0 ; i<emptyDoms.length ; i++)
-                emptyDoms[i] = new HashSet<>();
-            return emptyDoms;
-        }
-
-
-        // will contain a booleans stating if the ith binding is valid according to the given domains
-        BitSet toConsider = new BitSet(numBindings);
-        // at first they are all interesting
-        toConsider.set(0, numBindings);
-
+        // tuples that are valid according to the given domains
+        long[] table = allTuples();
+        long[][] words = new long[domains.length][];
         for(int var=0 ; var<domains.length ; var++) {
-            // for all variables
-            BitSet local = new BitSet(numBindings);
-            for(int val : domains[var]) {
-                if(relevantConstraints.get(var).containsKey(val)) {
-                    // add all values that are flagged are relevant for the (var, val) pair
-                    local.or(relevantConstraints.get(var).get(val));
-                }
-            }
-            // relevant constraints are those that were flagged interesting for this variable and all previous ones
-            toConsider.and(local);
+            BitSet bs = new BitSet();
+            for(int val : domains[var])
+                bs.set(val);
+            words[var] = bs.toLongArray();
+            filterTable(table, var, words[var]);
         }
 
         Set<Integer>[] finalDomains = new Set[domains.length];
-        for(int i=0 ; i<finalDomains.length ; i++)
-            finalDomains[i] = new HashSet<>();
-
-        // get all the valid bindings and augment the domain with those
-        for(int bindingId=0 ; bindingId<numBindings ; bindingId++) {
-            if(toConsider.get(bindingId)) {
-                for(int var=0 ; var<numVars() ; var++)
-                    finalDomains[var].add(bindings[bindingId][var]);
-            }
+        for(int var=0 ; var<finalDomains.length ; var++) {
+            long[] restricted = restrictDomain(table, var, words[var]);
+            BitSet bs = BitSet.valueOf(restricted != null ? restricted : words[var]);
+            finalDomains[var] = new HashSet<>();
+            for(int val = bs.nextSetBit(0) ; val >= 0 ; val = bs.nextSetBit(val+1))
+                finalDomains[var].add(val);
         }
-
         return finalDomains;
     }
-}
\ No newline at end of file
+}
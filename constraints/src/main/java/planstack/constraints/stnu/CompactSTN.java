@@ -0,0 +1,347 @@
+package planstack.constraints.stnu;
+
+import planstack.constraints.stn.AllPairsSTN;
+import planstack.structures.IList;
+import scala.None$;
+import scala.Option;
+import scala.Some;
+import scala.Tuple5;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedList;
+
+/**
+ * Simple Temporal Network maintaining all-pairs shortest paths in flat primitive arrays.
+ *
+ * The distance matrix is stored row by row: dist[u][v] is the length of the shortest path from u to v,
+ * i.e. an upper bound on (v - u). Rows are shared between an STN and its clones and are only copied
+ * when one of them needs to modify it (copy-on-write). Cloning is thus linear in the number of time points
+ * and an update only copies the rows of time points whose distances actually changed.
+ *
+ * Adding a constraint u --w--> v only updates the distances from the time points I whose path to v is
+ * improved by the new edge to the time points J whose path from u is improved. All queries (earliest/latest
+ * start times and possibility of a constraint) are answered in constant time without any allocation.
+ */
+public class CompactSTN<ID> extends AllPairsSTN<ID> {
+
+    /** Distance between two time points that are not connected. Same value as FullSTN's infinity. */
+    private static final int INF = 2000000000;
+
+    /** Immutable list of constraints, shared between an STN and its clones. */
+    private static final class Edge<ID> {
+        final int u, v, w;
+        final ID id;
+        final Edge<ID> next;
+        Edge(int u, int v, int w, ID id, Edge<ID> next) {
+            this.u = u; this.v = v; this.w = w; this.id = id; this.next = next;
+        }
+    }
+
+    /** dist[u][v] is the length of the shortest path from u to v. Rows might be shared with other STNs */
+    private int[][] dist;
+    /** True if the corresponding row was allocated by this STN and is not shared with any other one. */
+    private boolean[] ownsRow;
+    /** Number of time points that fit in each row */
+    private int capacity;
+    /** Number of time points allocated (including removed ones) */
+    private int top;
+    /** Time points that were removed and whose id can be reused. */
+    private BitSet emptySpots;
+    /** All constraints in the network, the latest one first. */
+    private Edge<ID> constraints;
+    private boolean consistent;
+
+    /** Scratch buffers of the propagation, allocated lazily and never shared. */
+    private int[] sources = null;
+    private int[] targets = null;
+
+    public CompactSTN() {
+        this(10);
+    }
+
+    public CompactSTN(int initialCapacity) {
+        this.capacity = Math.max(initialCapacity, 2);
+        this.emptySpots = new BitSet();
+        this.constraints = null;
+        initNetwork();
+        enforceBefore(start(), end());
+    }
+
+    /** Copy constructor: rows are shared with the original, both STNs will copy them before any modification. */
+    private CompactSTN(CompactSTN<ID> s) {
+        this.dist = Arrays.copyOf(s.dist, s.dist.length);
+        this.ownsRow = new boolean[s.ownsRow.length];
+        // the rows of the original are now shared with this copy: the original must also copy them before
+        // writing to them, hence this modification of s (which is otherwise left untouched)
+        Arrays.fill(s.ownsRow, false);
+        this.capacity = s.capacity;
+        this.top = s.top;
+        this.emptySpots = (BitSet) s.emptySpots.clone();
+        this.constraints = s.constraints;
+        this.consistent = s.consistent;
+    }
+
+    /** Resets the distance matrix to contain the top time points without any constraint between them. */
+    private void initNetwork() {
+        final int numTimePoints = Math.max(top, 2);
+        if(capacity < numTimePoints)
+            capacity = numTimePoints;
+        dist = new int[capacity][];
+        ownsRow = new boolean[capacity];
+        top = 0;
+        consistent = true;
+        while(top < numTimePoints)
+            newRow(top++);
+    }
+
+    private void newRow(int u) {
+        dist[u] = new int[capacity];
+        Arrays.fill(dist[u], INF);
+        dist[u][u] = 0;
+        ownsRow[u] = true;
+    }
+
+    /** Returns the row of u, copying it first if it is shared with another STN. */
+    private int[] writableRow(int u) {
+        if(!ownsRow[u]) {
+            dist[u] = Arrays.copyOf(dist[u], capacity);
+            ownsRow[u] = true;
+        }
+        return dist[u];
+    }
+
+    private void ensureCapacity(int numTimePoints) {
+        if(numTimePoints <= capacity)
+            return;
+        final int newCapacity = Math.max(numTimePoints, capacity * 2);
+        final int[][] newDist = new int[newCapacity][];
+        for(int i=0 ; i<top ; i++) {
+            newDist[i] = Arrays.copyOf(dist[i], newCapacity);
+            Arrays.fill(newDist[i], capacity, newCapacity, INF);
+        }
+        dist = newDist;
+        ownsRow = new boolean[newCapacity];
+        Arrays.fill(ownsRow, 0, top, true);
+        capacity = newCapacity;
+    }
+
+    @Override
+    public int distance(int u, int v) {
+        return dist[u][v];
+    }
+
+    /**
+     * Sum of two distances, computed on longs so that large finite weights do not overflow:
+     * INF if any of them is INF or if the sum reaches INF, bounded by -INF otherwise.
+     */
+    private static int plus(int a, int b) {
+        if(a == INF || b == INF)
+            return INF;
+        final long sum = (long) a + (long) b;
+        if(sum >= INF)
+            return INF;
+        else if(sum <= -INF)
+            return -INF;
+        else
+            return (int) sum;
+    }
+
+    /**
+     * Adds the edge u --w--> v and updates all shortest paths going through it.
+     * Marks the network as inconsistent if this edge closes a negative cycle.
+     */
+    private void propagate(int u, int v, int w) {
+        if(!consistent)
+            return;
+        if(w >= dist[u][v])
+            return; // no tightening
+
+        if(plus(w, dist[v][u]) < 0) {
+            consistent = false;
+            return;
+        }
+
+        if(sources == null || sources.length < top) {
+            sources = new int[capacity];
+            targets = new int[capacity];
+        }
+
+        // all time points whose distance to v is improved by going through u --> v
+        int numSources = 0;
+        for(int i=0 ; i<top ; i++) {
+            final int[] rowI = dist[i];
+            if(plus(rowI[u], w) < rowI[v])
+                sources[numSources++] = i;
+        }
+        // all time points whose distance from u is improved by going through u --> v
+        final int[] rowU = dist[u];
+        final int[] rowV = dist[v];
+        int numTargets = 0;
+        for(int j=0 ; j<top ; j++) {
+            if(plus(w, rowV[j]) < rowU[j])
+                targets[numTargets++] = j;
+        }
+
+        // v is never a source and u never a target (otherwise there would be a negative cycle),
+        // hence the row of v and the column of u are left untouched by the following updates
+        for(int s=0 ; s<numSources ; s++) {
+            final int[] rowI = writableRow(sources[s]);
+            final int toV = plus(rowI[u], w);
+            for(int t=0 ; t<numTargets ; t++) {
+                final int j = targets[t];
+                final int d = plus(toV, rowV[j]);
+                if(d < rowI[j])
+                    rowI[j] = d;
+            }
+        }
+    }
+
+    private void addConstraintUnsafe(int u, int v, int w, ID id, boolean record) {
+        if(record)
+            constraints = new Edge<>(u, v, w, id, constraints);
+        propagate(u, v, w);
+    }
+
+    @Override
+    public boolean consistent() {
+        return consistent;
+    }
+
+    @Override
+    public int addVar() {
+        final int u;
+        if(emptySpots.isEmpty()) {
+            ensureCapacity(top + 1);
+            u = top++;
+        } else {
+            u = emptySpots.nextSetBit(0);
+            emptySpots.clear(u);
+        }
+        newRow(u);
+        enforceBefore(start(), u);
+        enforceBefore(u, end());
+        return u;
+    }
+
+    @Override
+    public IList<Object> events() {
+        LinkedList<Object> events = new LinkedList<>();
+        for(int i=0 ; i<top ; i++) {
+            if(!emptySpots.get(i))
+                events.add(i);
+        }
+        return new IList<>(events);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public IList<Tuple5<Object, Object, Object, ElemStatus, Option<ID>>> constraints() {
+        IList<Tuple5<Object, Object, Object, ElemStatus, Option<ID>>> list = new IList<>();
+        for(Edge<ID> c = constraints ; c != null ; c = c.next) {
+            Option<ID> optID = c.id != null ? new Some<>(c.id) : None$.empty();
+            list = list.with(new Tuple5<>(c.u, c.v, c.w, ElemStatus.CONTROLLABLE, optID));
+        }
+        return list;
+    }
+
+    @Override
+    public int size() {
+        return top - emptySpots.cardinality();
+    }
+
+    @Override
+    public boolean addConstraint(int u, int v, int w) {
+        addConstraintUnsafe(u, v, w, null, true);
+        return consistent;
+    }
+
+    @Override
+    public boolean addConstraintWithID(int u, int v, int w, ID id) {
+        addConstraintUnsafe(u, v, w, id, true);
+        return consistent;
+    }
+
+    @Override
+    public boolean checkConsistency() {
+        return consistent;
+    }
+
+    @Override
+    public boolean checkConsistencyFromScratch() {
+        initNetwork();
+        // replay constraints in the order they were added
+        LinkedList<Edge<ID>> ordered = new LinkedList<>();
+        for(Edge<ID> c = constraints ; c != null ; c = c.next)
+            ordered.addFirst(c);
+        for(Edge<ID> c : ordered)
+            addConstraintUnsafe(c.u, c.v, c.w, c.id, false);
+        return consistent;
+    }
+
+    /** Writes the constraints of the network (not the shortest paths) to a graphviz file. */
+    @Override
+    public void writeToDotFile(String file) {
+        try(PrintWriter out = new PrintWriter(new FileWriter(file))) {
+            out.println("digraph stn {");
+            for(int u=0 ; u<top ; u++)
+                if(!emptySpots.get(u))
+                    out.println("  "+u+" [label=\""+u+" ["+earliestStart(u)+","+latestStart(u)+"]\"];");
+            for(Edge<ID> c = constraints ; c != null ; c = c.next)
+                out.println("  "+c.u+" -> "+c.v+" [label=\""+c.w+"\"];");
+            out.println("}");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public int earliestStart(int u) {
+        final int d = dist[u][start()];
+        return d == INF ? -INF : -d;
+    }
+
+    @Override
+    public int latestStart(int u) {
+        return dist[start()][u];
+    }
+
+    @Override
+    public boolean isConstraintPossible(int u, int v, int w) {
+        return consistent && plus(w, dist[v][u]) >= 0;
+    }
+
+    @Override
+    public boolean removeConstraintsWithID(ID id) {
+        constraints = filter(constraints, c -> c.id == null || !c.id.equals(id));
+        return checkConsistencyFromScratch();
+    }
+
+    @Override
+    public boolean removeVar(int u) {
+        constraints = filter(constraints, c -> c.u != u && c.v != u);
+        emptySpots.set(u);
+        return checkConsistencyFromScratch();
+    }
+
+    /** Returns a list containing the constraints satisfying the predicate, in the same order. */
+    private static <ID> Edge<ID> filter(Edge<ID> list, java.util.function.Predicate<Edge<ID>> pred) {
+        LinkedList<Edge<ID>> kept = new LinkedList<>();
+        for(Edge<ID> c = list ; c != null ; c = c.next)
+            if(pred.test(c))
+                kept.addFirst(c);
+        Edge<ID> res = null;
+        for(Edge<ID> c : kept)
+            res = new Edge<>(c.u, c.v, c.w, c.id, res);
+        return res;
+    }
+
+    @Override
+    public CompactSTN<ID> cc() {
+        return new CompactSTN<>(this);
+    }
+}
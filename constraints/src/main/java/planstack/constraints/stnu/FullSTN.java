@@ -1,6 +1,6 @@
 package planstack.constraints.stnu;
 
-import planstack.constraints.stn.ISTN;
+import planstack.constraints.stn.AllPairsSTN;
 import planstack.structures.IList;
 import planstack.structures.ISet;
 import scala.*;
@@ -24,7 +24,7 @@ import java.util.LinkedList;
  * too many points we need to remember for backtracking.
  * @author Filip Dvořák
  */
-public class FullSTN<ID> extends ISTN<ID> {
+public class FullSTN<ID> extends AllPairsSTN<ID> {
 
     private static int pos(int i, int j) {
         return i*(i-1)/2 + j;
@@ -119,6 +119,11 @@ public class FullSTN<ID> extends ISTN<ID> {
         else if(var1 < var2) return (- minDelay(var2, var1));
         else return edge_b[pos(var1, var2)];
     }
+    @Override
+    public int distance(int u, int v) {
+        return maxDelay(u, v);
+    }
+
     /**
      * sets value of the lower bound on time between time point var1 and var2, uses symmetry of the network
      *
@@ -2,12 +2,13 @@ package planstack.constraints.bindings
 
 import java.util
 
+import fr.laas.fape.structures.{CowArray, CowIntArray}
 import planstack.anml.model.Type
 import planstack.anml.model.concrete.VarRef
 import planstack.constraints.bindings.BindingConstraintNetwork.ExtID
 
 import scala.collection.JavaConverters._
-import scala.collection.mutable
+import scala.collection.immutable.IntMap
 import scala.collection.mutable.ArrayBuffer
 
 
@@ -18,20 +19,31 @@ object BindingConstraintNetwork {
   var cnt = 0
 }
 
+/** Binding constraint network: domains of variables, unification, separation and n-ary constraints.
+  *
+  * Variables that are unified share the same domain ID. Domains, variables of each domain and separation
+  * constraints are stored in copy-on-write chunked arrays, and constraints are stored in persistent collections,
+  * so that copying a network (which happens for every new partial plan) only copies the tables of chunks and
+  * the bitset of constraints to propagate.
+  * Separation constraints are stored as a sparse adjacency relation: each domain ID is mapped to the bitset of the
+  * domain IDs it must be different from (null if none).
+  */
 class BindingConstraintNetwork(toCopy: Option[BindingConstraintNetwork]) {
 
   def this() = this(None)
 
   import BindingConstraintNetwork.DomID
 
-  private val increment = 10
-
-  var domIds : Array[DomID] = null
-  var variables : Array[VarRef] = null
-  var domains : Array[Domain] = null
-
-  var vars : ArrayBuffer[ArrayBuffer[VarRef]] = null
-  var different : Array[Array[Boolean]] = null
+  /** Domain ID of each variable (indexed by the ID of the variable), -1 if the variable is not in the network. */
+  private var domIds : CowIntArray = null
+  /** Domain associated to each domain ID (null if the ID is unused) */
+  private var domains : CowArray[Domain] = null
+  /** Variables sharing each domain, the first one is used as a representative of the domain. */
+  private var vars : CowArray[List[VarRef]] = null
+  /** Number of domain IDs that were allocated (including unused ones). */
+  private var numDomIds = 0
+  /** For each domain ID, IDs of the domains it must be different from (null if none). This relation is symmetric. */
+  private var different : CowArray[IBitSet] = null
   var values : ArrayBuffer[String] = null
   var valuesIds : Map[String, Int] = null
 
@@ -40,57 +52,69 @@ class BindingConstraintNetwork(toCopy: Option[BindingConstraintNetwork]) {
   /** Extension constraints */
   var extensionConstraints : Map[String, ExtensionConstraint] = null
 
-  var constraints : mutable.Buffer[Constraint] = null
+  /** All constraints, each constraint being identified by its index. */
+  private var constraints : Vector[Constraint] = null
+
+  /** Indices of the constraints involving each variable, indexed by the ID of the variable */
+  private var constraintsOfVar : IntMap[List[Int]] = null
+
+  /** State kept by each constraint between two propagations, indexed by the index of the constraint (null if none). */
+  private var constraintStates : CowArray[AnyRef] = null
 
-  var pendingConstraints : mutable.Set[Constraint] = null
+  /** Indices of the constraints that need to be propagated. */
+  private var pendingConstraints : util.BitSet = null
 
-  var unusedDomainIds : mutable.Set[DomID] = null
+  private var unusedDomainIds : Set[DomID] = null
 
   var hasEmptyDomains = false
 
+  /** Number of modifications of domains or separation constraints since the creation of the original network.
+    * Copied with the network: two copies with the same value have the same domains and separation constraints. */
+  var numChanges : Long = 0
+
   var listener : IntBindingListener[VarRef] = null
 
   toCopy match {
     case Some(o) =>
-      domIds = o.domIds.clone()
-      domains = o.domains.clone()
-      variables = o.variables.clone()
-      vars = o.vars.map(x => x.clone())
-      different = o.different.map(x => x.clone())
+      domIds = o.domIds.copy()
+      domains = o.domains.copy()
+      vars = o.vars.copy()
+      numDomIds = o.numDomIds
+      different = o.different.copy()
       values = o.values
       valuesIds = o.valuesIds
       defaultIntDomain = o.defaultIntDomain
       extensionConstraints = o.extensionConstraints
-      constraints = o.constraints.clone()
-      unusedDomainIds = o.unusedDomainIds.clone()
-      pendingConstraints = o.pendingConstraints.clone()
+      constraints = o.constraints
+      constraintsOfVar = o.constraintsOfVar
+      constraintStates = o.constraintStates.copy()
+      unusedDomainIds = o.unusedDomainIds
+      numChanges = o.numChanges
+      pendingConstraints = o.pendingConstraints.clone().asInstanceOf[util.BitSet]
     case None =>
       BindingConstraintNetwork.cnt += 1
-      domIds = Array.fill(10)(-1) //mutable.Map[VarRef, DomID]()
-      variables = Array.fill(10)(null)
-      domains = Array.fill(10)(null) //mutable.Map[DomID, ValuesHolder]()
-      vars = ArrayBuffer[ArrayBuffer[VarRef]]()
-      different = new Array[Array[Boolean]](increment)
-      for(i <- different.indices)
-        different(i) = Array.fill(increment)(false)
+      domIds = new CowIntArray(-1)
+      domains = new CowArray[Domain]()
+      vars = new CowArray[List[VarRef]]()
+      different = new CowArray[IBitSet]()
 
       values = ArrayBuffer[String]()
       valuesIds = Map[String, Int]()
       defaultIntDomain = ArrayBuffer(new Domain(Set()))
 
       extensionConstraints = Map()
-      constraints = ArrayBuffer()
+      constraints = Vector()
+      constraintsOfVar = IntMap()
+      constraintStates = new CowArray[AnyRef]()
 
-      unusedDomainIds = mutable.Set()
-      pendingConstraints = mutable.Set()
+      unusedDomainIds = Set()
+      pendingConstraints = new util.BitSet()
   }
 
-  protected[bindings] def allVars = variables
-
-  def domID(v: VarRef) : DomID = domIds(v.id)
-  def rawDomainByID(id: DomID) = domains(id)
+  def domID(v: VarRef) : DomID = domIds.get(v.id)
+  def rawDomainByID(id: DomID) = domains.get(id)
 
-  private def allDomIds = vars.indices.filterNot(unusedDomainIds.contains)
+  private def allDomIds = (0 until numDomIds).filterNot(unusedDomainIds.contains)
 
   private def newDomID() : DomID = {
     val id =
@@ -99,69 +123,71 @@ class BindingConstraintNetwork(toCopy: Option[BindingConstraintNetwork]) {
         unusedDomainIds -= next
         next
       } else {
-        val next = vars.size
-        next
+        numDomIds += 1
+        numDomIds - 1
       }
+    vars.set(id, Nil)
+    id
+  }
 
-    if(vars.size > id) vars(id) = ArrayBuffer[VarRef]()
-    else vars += ArrayBuffer[VarRef]()
-
-    if(id == different.length) {
-      // replace with bigger
-      val newConstraints = new Array[Array[Boolean]](different.length *2)
-      for(i <- newConstraints.indices)
-        newConstraints(i) = Array.fill(different.length *2)(false)
+  def rawDomain(v: VarRef) : Domain = domains.get(domID(v))
 
-      for(i <- different.indices)
-        Array.copy(different(i), 0, newConstraints(i), 0, different(i).length)
-      different = newConstraints
-    }
+  private def areDifferent(id1: DomID, id2: DomID) : Boolean = {
+    val diff = different.get(id1)
+    diff != null && diff.contains(id2)
+  }
 
-    id
+  private def setDifferent(id1: DomID, id2: DomID) : Unit = {
+    numChanges += 1
+    val diff = different.get(id1)
+    different.set(id1, if(diff == null) new IBitSet() + id2 else diff + id2)
   }
 
-  def rawDomain(v: VarRef) : Domain = domains(domID(v))
+  private def unsetDifferent(id1: DomID, id2: DomID) : Unit = {
+    val diff = different.get(id1)
+    if(diff != null)
+      different.set(id1, diff - id2)
+  }
 
   def isDiff(v1: VarRef, v2: VarRef) = {
-    assert(different(domID(v1))(domID(v2)) == different(domID(v2))(domID(v1)))
-    different(domID(v1))(domID(v2))
+    assert(areDifferent(domID(v1), domID(v2)) == areDifferent(domID(v2), domID(v1)))
+    areDifferent(domID(v1), domID(v2))
   }
 
   private def domainChanged(id: DomID, causedByExtended: Option[Constraint]): Unit = {
-    if(domains(id).size() == 0) {
+    numChanges += 1
+    if(domains.get(id).size() == 0) {
       hasEmptyDomains = true
-      throw new VarWithEmptyDomain(vars(id).toList.asJava)
+      throw new VarWithEmptyDomain(vars.get(id).asJava)
     }
 
-    if(domains(id).size() == 1) {
+    val diff = different.get(id)
+    if(domains.get(id).size() == 1 && diff != null) {
       // check difference constraints
-      val uniqueValue = domains(id).head()
-      for (o <- vars.indices
-           if !unusedDomainIds.contains(o)
-           if different(id)(o)
-           if domains(o).contains(uniqueValue))
+      val uniqueValue = domains.get(id).head()
+      for (o <- diff
+           if domains.get(o).contains(uniqueValue))
       {
-        domains(o) = domains(o).remove(uniqueValue)
+        domains.set(o, domains.get(o).remove(uniqueValue))
 
         try {
           domainChanged(o, None)
         } catch {
           case e:InconsistentBindingConstraintNetwork =>
-            vars(id).map(_.label)
-            throw new InconsistentConstraintPropagation(vars(id).map(_.label).mkString("==")+" != "+vars(o).map(_.label).mkString("=="), e)
+            throw new InconsistentConstraintPropagation(vars.get(id).map(_.label).mkString("==")+" != "+vars.get(o).map(_.label).mkString("=="), e)
         }
       }
     }
 
     // add extended constraints to the queue
-    pendingConstraints ++= constraints
-      .filter(c => !causedByExtended.contains(c))
-      .filter(c => vars(id).exists(v => c.involves(v)))
+    for(v <- vars.get(id) ; c <- constraintsOfVar.getOrElse(v.id, Nil)
+        if !causedByExtended.exists(_ eq constraints(c)))
+      pendingConstraints.set(c)
 
     // if it is a integer varaible that got binded, notify the listener if any
-    if(listener != null && domains(id).size() == 1 && isIntegerVar(vars(id).head)) {
-      val value = domains(id).head()
-      for(v <- vars(id)) {
+    if(listener != null && domains.get(id).size() == 1 && isIntegerVar(vars.get(id).head)) {
+      val value = domains.get(id).head()
+      for(v <- vars.get(id)) {
         assert(isIntegerVar(v))
         listener.onBinded(v, value)
       }
@@ -246,8 +272,11 @@ class BindingConstraintNetwork(toCopy: Option[BindingConstraintNetwork]) {
   }
 
   def addConstraint(c: Constraint): Unit = {
-    constraints += c
-    pendingConstraints += c
+    val index = constraints.size
+    constraints = constraints :+ c
+    for(v <- c.involvedVariables)
+      constraintsOfVar = constraintsOfVar.updated(v.id, index :: constraintsOfVar.getOrElse(v.id, Nil))
+    pendingConstraints.set(index)
   }
 
   def restrictIntDomain(v: VarRef, toValues: util.Collection[Integer]): Unit =
@@ -259,8 +288,8 @@ class BindingConstraintNetwork(toCopy: Option[BindingConstraintNetwork]) {
       throw new VarWithEmptyDomain(List(a, b).asJava)
     }
 
-    different(domID(a))(domID(b)) = true
-    different(domID(b))(domID(a)) = true
+    setDifferent(domID(a), domID(b))
+    setDifferent(domID(b), domID(a))
 
     if(domainSize(a) == 1)
       domainChanged(domID(a), None)
@@ -269,16 +298,21 @@ class BindingConstraintNetwork(toCopy: Option[BindingConstraintNetwork]) {
   }
 
   def isConsistent: Boolean = {
-    while(pendingConstraints.nonEmpty && !hasEmptyDomains) {
-      val cur = pendingConstraints.head
-      pendingConstraints -= cur
+    while(!pendingConstraints.isEmpty && !hasEmptyDomains) {
+      val cur = pendingConstraints.nextSetBit(0)
+      pendingConstraints.clear(cur)
 
-      checkConstraint(cur)
+      constraints(cur).propagate(this, cur)
     }
 
     !hasEmptyDomains
   }
 
+  /** State recorded by the constraint with the given index at its last propagation in this network (null if none). */
+  def constraintState(index: Int) : AnyRef = constraintStates.get(index)
+
+  def setConstraintState(index: Int, state: AnyRef) : Unit = constraintStates.set(index, state)
+
   def checkConstraint(constraint: Constraint): Unit = {
     constraint.propagate(this)
   }
@@ -290,33 +324,45 @@ class BindingConstraintNetwork(toCopy: Option[BindingConstraintNetwork]) {
       "{"+ rawDomain(v).vals.map(values(_)).mkString(", ") +"}"
 
   def report(): String =
-    allDomIds.map(id => (id, "["+ vars(id).mkString(", ") +"]", "  "+domainAsString(vars(id).head))).mkString("\n")
+    allDomIds.map(id => (id, "["+ vars.get(id).mkString(", ") +"]", "  "+domainAsString(vars.get(id).head))).mkString("\n")
+
+  /** Groups of unified variables: all variables of a group share the same domain. */
+  def variableGroups : util.List[util.List[VarRef]] = allDomIds.map(id => vars.get(id).asJava).asJava
+
+  /** One variable of each group of variables that the group of `v` is separated from. */
+  def separatedFrom(v: VarRef) : util.List[VarRef] = different.get(domID(v)) match {
+    case null => util.Collections.emptyList[VarRef]()
+    case diff => diff.toList.map(id => vars.get(id).head).asJava
+  }
+
+  /** All constraints that were added to this network. */
+  def allConstraints : util.List[Constraint] = constraints.asJava
 
   private def merge(id1: DomID, id2: DomID) : Unit = {
-    val newDom = domains(id1).intersect(domains(id2))
-    val domainUpdated = newDom.size() < domains(id1).size() || newDom.size() < domains(id2).size()
-
-    domains(id1) = newDom
-    vars(id1) = vars(id1) ++ vars(id2)
-    for(i <- 0 until different(id1).size) {
-      different(id1)(i) = different(id1)(i) || different(id2)(i)
-      different(i)(id1) = different(i)(id1) || different(i)(id2)
+    domains.set(id1, domains.get(id1).intersect(domains.get(id2)))
+    vars.set(id1, vars.get(id1) ++ vars.get(id2))
+
+    // id1 must now be different from all domains id2 was different from
+    val diff2 = different.get(id2)
+    if(diff2 != null) {
+      for(o <- diff2) {
+        setDifferent(id1, o)
+        setDifferent(o, id1)
+        unsetDifferent(o, id2)
+      }
+      different.set(id2, null)
     }
-    for(v <- vars(id2))
-      domIds(v.id) = id1
+    for(v <- vars.get(id2))
+      domIds.set(v.id, id1)
 
     unusedDomainIds += id2
-    vars(id2) = new ArrayBuffer[VarRef]()
-    for(i <- different.indices) {
-      different(i)(id2) = false
-      different(id2)(i) = false
-    }
-    domains(id2) = null // -= id2
+    vars.set(id2, Nil)
+    domains.set(id2, null)
 
     // make sure new constraints are propagated
     domainChanged(id1, None)
 
-    assert(allDomIds.forall(id => vars(id).nonEmpty))
+    assert(allDomIds.forall(id => vars.get(id).nonEmpty))
   }
 
   def AddUnificationConstraint(a: VarRef, b: VarRef): Unit = {
@@ -328,10 +374,11 @@ class BindingConstraintNetwork(toCopy: Option[BindingConstraintNetwork]) {
   def restrictDomain(v: VarRef, domain: Domain): Boolean = restrictDomain(v, domain, None)
 
   def restrictDomain(v: VarRef, domain: Domain, origin: Option[Constraint]): Boolean = {
-    val newDom = rawDomain(v).intersect(domain)
-    val modified = newDom.size() < rawDomain(v).size()
+    val current = rawDomain(v)
+    val newDom = current.intersect(domain)
+    val modified = (newDom ne current) && newDom.size() < current.size()
     if(modified) {
-      domains(domID(v)) = newDom
+      domains.set(domID(v), newDom)
       domainChanged(domID(v), origin)
     }
     modified
@@ -346,7 +393,7 @@ class BindingConstraintNetwork(toCopy: Option[BindingConstraintNetwork]) {
     val initialDomain = domainOfIntVar(v).asScala
     val newDomain = initialDomain.filter(i => i >= min)
     if(newDomain.size < initialDomain.size) {
-      domains(domID(v)) = intValuesAsDomain(newDomain.asJava)
+      domains.set(domID(v), intValuesAsDomain(newDomain.asJava))
       domainChanged(domID(v), None)
     }
   }
@@ -356,16 +403,16 @@ class BindingConstraintNetwork(toCopy: Option[BindingConstraintNetwork]) {
     val initialDomain = domainOfIntVar(v).asScala
     val newDomain = initialDomain.filter(i => i <= max)
     if(newDomain.size < initialDomain.size) {
-      domains(domID(v)) = intValuesAsDomain(newDomain.asJava)
+      domains.set(domID(v), intValuesAsDomain(newDomain.asJava))
       domainChanged(domID(v), None)
     }
   }
 
   def getUnboundVariables: util.List[VarRef] = {
     val unboundDomains =
-      for (domId <- domains.indices ; if domains(domId) != null && domains(domId).size() != 1)
+      for (domId <- 0 until numDomIds ; if domains.get(domId) != null && domains.get(domId).size() != 1)
         yield domId
-    unboundDomains.map(vars(_).head).filter(!isIntegerVar(_)).toList.asJava
+    unboundDomains.map(vars.get(_).head).filter(!isIntegerVar(_)).toList.asJava
   }
 
   def defaultDomain(t: Type) : Domain = {
@@ -381,37 +428,18 @@ class BindingConstraintNetwork(toCopy: Option[BindingConstraintNetwork]) {
     addVariable(v, stringValuesAsDomain(domain))
   }
 
-  private def ensureSpaceForVar(v:VarRef, futureDomID: Int): Unit = {
-    if(v.id >= domIds.length) {
-      val tmp = domIds
-      domIds = Array.fill(Math.max(domIds.length*2, v.id+1))(-1)
-      Array.copy(tmp, 0, domIds, 0, tmp.length)
-      variables = util.Arrays.copyOf(variables, Math.max(variables.length*2, v.id+1))
-    }
-    if(futureDomID >= domains.length) {
-      domains = util.Arrays.copyOf(domains, Math.max(domains.length*2, futureDomID+1))
-    }
-
-    assert(domIds(v.id) == -1)
-    assert(variables(v.id) == null)
-    assert(domains(futureDomID) == null)
-  }
-
   private def addVariable(v:VarRef, dom: Domain) {
     assert(!contains(v))
     val domID = newDomID()
-    ensureSpaceForVar(v, domID)
+    assert(domains.get(domID) == null)
 
-    domIds(v.id) = domID
-    variables(v.id) = v
-    vars(domID) += v
-    domains(domID) = dom
+    domIds.set(v.id, domID)
+    vars.set(domID, List(v))
+    domains.set(domID, dom)
     domainChanged(domID, None)
-
-    assert(vars(domID).size == 1)
   }
 
-  def isRecorded(v: VarRef) : Boolean = domIds.length > v.id && domIds(v.id) != -1
+  def isRecorded(v: VarRef) : Boolean = domIds.get(v.id) != -1
 
   def contains(v: VarRef): Boolean = isRecorded(v)
 
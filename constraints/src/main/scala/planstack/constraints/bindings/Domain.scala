@@ -35,6 +35,15 @@ class Domain(val vals: scala.collection.Set[Int]) {
     case _ => throw new RuntimeException("Unsupported conversion from non-IBitSet collection.")
   }
 
+  /** Values of this domain as the words of a bitset. */
+  lazy val words : Array[Long] = vals match {
+    case bs: IBitSet => bs.elems
+    case _ =>
+      val bs = new java.util.BitSet()
+      for(v <- vals) bs.set(v)
+      bs.toLongArray
+  }
+
   lazy private val _isEmpty = vals.isEmpty
   lazy private val _size = vals.size
 
@@ -44,12 +53,15 @@ class Domain(val vals: scala.collection.Set[Int]) {
 
   def head() : Integer = vals.head
 
+  /** Returns the intersection of the two domains. No domain is allocated if one of them is a subset of the other. */
   def intersect(other: Domain) : Domain = {
-    val intersection = (vals, other.vals) match {
-      case (v1: IBitSet, v2:IBitSet) => v1 & v2 // should be significantly faster as it is just and 'and' on two bitset
-      case (v1, v2) => v1 & v2
+    (vals, other.vals) match {
+      case (v1: IBitSet, v2:IBitSet) =>
+        if(v1.isSubsetOf(v2)) this
+        else if(v2.isSubsetOf(v1)) other
+        else new Domain(v1 & v2) // should be significantly faster as it is just and 'and' on two bitset
+      case (v1, v2) => new Domain(v1 & v2)
     }
-    new Domain(intersection)
   }
 
   def union(other: Domain) : Domain = {
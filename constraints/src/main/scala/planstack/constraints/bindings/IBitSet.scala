@@ -89,6 +89,17 @@ class IBitSet(val elems: Array[Long]) extends Set[Int] {
     new IBitSet(union)
   }
 
+  /** Returns true if all elements of this set are in o. */
+  def isSubsetOf(o: IBitSet) : Boolean = {
+    var i = 0
+    while(i < nwords) {
+      if((words(i) & ~o.words(i)) != 0)
+        return false
+      i += 1
+    }
+    true
+  }
+
   def sharesOneElement(o: IBitSet) : Boolean = {
     val newSize = Math.min(nwords, o.nwords)
     var i = 0
@@ -10,28 +10,91 @@ import scala.collection.JavaConverters._
 
 trait Constraint {
   def involves(v:VarRef)  : Boolean
+  /** All variables v such that involves(v) is true. */
+  def involvedVariables : Iterable[VarRef]
   def propagate(csp: BindingConstraintNetwork)
+
+  /** Propagates the constraint in a network where it is identified by the given index.
+    * Constraints that keep some state between two propagations in a network (see
+    * BindingConstraintNetwork.constraintState) override it. */
+  def propagate(csp: BindingConstraintNetwork, index: Int): Unit = propagate(csp)
 }
 
+/** Tuples of an extension constraint that are still valid in a network, and for each variable the domain
+  * according to which they were filtered (null if they must be filtered again). Never modified once built. */
+private[bindings] class TableState(val validTuples: Array[Long], val numTuples: Int, val filteredWith: Array[Domain])
+
+/** Constraint enforcing a tuple of variables to take one of the tuples of values of an extension constraint.
+  *
+  * Propagation follows the compact-table algorithm: the tuples that are still valid are kept (as a bitset) between
+  * two propagations in the same network. Only the variables whose domain changed since the last propagation are
+  * used to filter this table, and each domain is then restricted to the values that have a support in the table.
+  */
 class NAryConstraint(val vars:Seq[VarRef], val allowedTuple: ExtensionConstraint) extends Constraint {
   require(vars.size == allowedTuple.numVars())
   val varSet : collection.Set[Int] = mutable.Set[Int](vars.map(_.id): _*)
+  private val varsArray = vars.toArray
   override def involves(v: VarRef) = varSet.contains(v.id)
+  override def involvedVariables = vars
 
 
   override def propagate(csp: BindingConstraintNetwork) {
+    propagateFrom(csp, null)
+  }
 
-    val domains = vars.map(v => csp.rawDomain(v))
-
-    val initialDomains = domains.map(_.values()).toArray //domainsIDs.map(id => domains(id).values()).toArray
-    assert(initialDomains.nonEmpty, "Domain of constraint "+allowedTuple.name+" is empty")
-    val restrictedDomains = allowedTuple.restrictedDomains(initialDomains)
+  override def propagate(csp: BindingConstraintNetwork, index: Int): Unit = {
+    val previous = csp.constraintState(index).asInstanceOf[TableState]
+    val next = propagateFrom(csp, previous)
+    if(next ne previous)
+      csp.setConstraintState(index, next)
+  }
 
-    for(i <- initialDomains.indices) {
-      if(initialDomains(i).size() > restrictedDomains(i).size()) {
-        csp.restrictDomain(vars(i), new Domain(restrictedDomains(i)))
+  /** Restricts the domains of the variables, starting from the state of a previous propagation (if not null).
+    * @return The state after propagation. */
+  private def propagateFrom(csp: BindingConstraintNetwork, previous: TableState) : TableState = {
+    assert(varsArray.nonEmpty, "Domain of constraint "+allowedTuple.name+" is empty")
+    allowedTuple.ensureIndexed()
+    val fresh = previous == null || previous.numTuples != allowedTuple.numTuples()
+    var table = if(fresh) allowedTuple.allTuples() else previous.validTuples
+    var tableCopied = fresh
+    val filteredWith = if(fresh) new Array[Domain](varsArray.length) else previous.filteredWith.clone()
+
+    // remove tuples that are not compatible with the domains that changed since the last propagation
+    var changed = fresh
+    var i = 0
+    while(i < varsArray.length) {
+      val dom = csp.rawDomain(varsArray(i))
+      if(dom ne filteredWith(i)) {
+        if(!tableCopied) {
+          table = table.clone()
+          tableCopied = true
+        }
+        allowedTuple.filterTable(table, i, dom.words)
+        filteredWith(i) = dom
+        changed = true
+      }
+      i += 1
+    }
+    if(!changed)
+      return previous // all domains were already restricted with respect to this table
+
+    // restrict domains to supported values
+    i = 0
+    while(i < varsArray.length) {
+      val dom = csp.rawDomain(varsArray(i))
+      val restricted = allowedTuple.restrictDomain(table, i, dom.words)
+      if(restricted != null) {
+        val newDom = new Domain(new IBitSet(restricted))
+        csp.restrictDomain(varsArray(i), newDom)
+        // the table is still filtered with respect to the restricted domain, unless the domain was modified
+        // by the propagation of another variable after the table was filtered
+        filteredWith(i) = if(dom eq filteredWith(i)) newDom else null
+      } else if(dom ne filteredWith(i)) {
+        filteredWith(i) = null
       }
+      i += 1
     }
+    new TableState(table, allowedTuple.numTuples(), filteredWith)
   }
 }
 
@@ -45,6 +108,7 @@ class InSetConstraint(val left:VarRef, val right:Set[VarRef]) extends Constraint
   }
 
   override def involves(v: VarRef): Boolean = right.contains(v)
+  override def involvedVariables = right
 }
 
 
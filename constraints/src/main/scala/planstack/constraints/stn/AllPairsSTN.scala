@@ -0,0 +1,12 @@
+package planstack.constraints.stn
+
+/** An STN that maintains the shortest path between any pair of time points (e.g. FullSTN or CompactSTN). */
+abstract class AllPairsSTN[ID] extends ISTN[ID] {
+
+  /**
+   * Returns the length of the shortest path from u to v, i.e. the upper bound on (v - u).
+   */
+  def distance(u:Int, v:Int) : Int
+
+  override def cc() : AllPairsSTN[ID]
+}
@@ -1,7 +1,7 @@
 package planstack.constraints.stnu
 
 import planstack.anml.model.concrete.TPRef
-import planstack.constraints.stn.{GenSTNManager, ISTN}
+import planstack.constraints.stn.{AllPairsSTN, GenSTNManager, ISTN}
 import planstack.constraints.stnu.Controllability._
 import planstack.constraints.stnu.ElemStatus._
 import planstack.structures.Converters._
@@ -25,6 +25,10 @@ abstract class GenSTNUManager[ID]
 {
   type Const = Constraint[ID]
 
+  /** Number of modifications (constraints committed or removed, time points removed) since the creation of the
+    * original STN. Copied with the STN: two copies with the same value have the same constraints. */
+  var numChanges : Long = 0
+
   final def hasTimePoint(tp: TPRef) = id.length > tp.id && id(tp.id) != -2 //tps.containsKey(tp.id) || isVirtual(tp)
   final def isVirtual(tp: TPRef) = tp.isVirtual //tps.containsKey(tp.id) && tps.get(tp.id).isVirtual
   final def isPendingVirtual(tp: TPRef) = isVirtual(tp) && !tp.isAttached //tps.get(tp.id).refToReal.isEmpty
@@ -95,6 +99,7 @@ abstract class GenSTNUManager[ID]
   }
 
   override final def removeTimePoint(tp: TPRef): Unit = {
+    numChanges += 1
     stn.removeVar(tp.id)
     rm(tp)
   }
@@ -102,6 +107,7 @@ abstract class GenSTNUManager[ID]
   /** Removes all constraints that were recorded with this id */
   final override def removeConstraintsWithID(id: ID): Boolean = {
     rawConstraints = rawConstraints.filter(c => c.optID.isEmpty || c.optID.get != id)
+    numChanges += 1
     performRemoveConstraintWithID(id)
   }
 
@@ -190,12 +196,11 @@ abstract class GenSTNUManager[ID]
   }
 
   override protected final def isConstraintPossible(u: TPRef, v: TPRef, w: Int): Boolean = {
-    val (source, sourceDist) =
-      if (isVirtual(u)) refToReal(u)
-      else (u, 0)
-    val (dest, destDist) =
-      if (isVirtual(v)) refToReal(v)
-      else (v, 0)
+    // this is among the most frequent queries: avoid building tuples for the attachments of virtual time points
+    val source = if (isVirtual(u)) u.attachedRealTP else u
+    val sourceDist = if (isVirtual(u)) u.attachmentDelay else 0
+    val dest = if (isVirtual(v)) v.attachedRealTP else v
+    val destDist = if (isVirtual(v)) v.attachmentDelay else 0
 
     assert(hasTimePoint(source) && !isVirtual(source))
     assert(hasTimePoint(dest) && !isVirtual(dest))
@@ -203,11 +208,25 @@ abstract class GenSTNUManager[ID]
     isConstraintPossible(id(source.id), id(dest.id), sourceDist + w - destDist)
   }
 
+  /** Length of the shortest path from u to v (i.e. upper bound on v - u), taking virtual time points into account.
+    * The underlying STN must maintain all pairs shortest paths. */
+  protected final def distance(u: TPRef, v: TPRef) : Int = {
+    val src = if (isVirtual(u)) u.attachedRealTP else u
+    val addDelay = if (isVirtual(u)) u.attachmentDelay else 0
+    val dst = if (isVirtual(v)) v.attachedRealTP else v
+    val subDelay = if (isVirtual(v)) v.attachmentDelay else 0
+    stn match {
+      case apsp: AllPairsSTN[_] => (- addDelay) + apsp.distance(id(src.id), id(dst.id)) + subDelay
+      case _ => throw new UnsupportedOperationException(stn.getClass.getSimpleName+" does not maintain all pairs shortest paths.")
+    }
+  }
+
   /** Is this constraint possible in the underlying stnu ? */
   protected def isConstraintPossible(u: Int, v: Int, w: Int): Boolean
 
   private final def commit(c : Const): Unit = {
     assert(!isPendingVirtual(c.u) && !isPendingVirtual(c.v), "One of the time points is a pending virtual")
+    numChanges += 1
 
     /** returns the real time point attached to a virtual time point and the distance between the two */
     def getSourceAndDist(source: TPRef, dist: Int) : (TPRef, Int) =
@@ -260,8 +279,7 @@ abstract class GenSTNUManager[ID]
   override final def getEarliestStartTime(u:TPRef) : Int = {
     assert(!isPendingVirtual(u), "Timepoint is virtual but has not been unified yet.")
     if(isVirtual(u)) {
-      val (real, dist) = refToReal(u)
-      getEarliestStartTime(real) + dist
+      getEarliestStartTime(u.attachedRealTP) + u.attachmentDelay
     } else {
       earliestStart(id(u.id))
     }
@@ -271,8 +289,7 @@ abstract class GenSTNUManager[ID]
   override final def getLatestStartTime(u:TPRef) : Int = {
     assert(!isPendingVirtual(u), "Timepoint is virtual but has not been unified yet.")
     if(isVirtual(u)) {
-      val (real, dist) = refToReal(u)
-      getLatestStartTime(real) + dist
+      getLatestStartTime(u.attachedRealTP) + u.attachmentDelay
     } else {
       latestStart(id(u.id))
     }
@@ -16,11 +16,15 @@ class MinimalSTNUManager[ID](val stn:ISTN[ID],
                                    _end : Option[TPRef])
   extends GenSTNUManager[ID](_tps, _ids, _rawConstraints, _start, _end)
 {
-  def this() = this(new STNIncBellmanFord[ID](), Array(), Array(), List(), None, None)
+  def this() = this(new STNIncBellmanFord[ID]())
+  def this(stn : ISTN[ID]) = this(stn, Array(), Array(), List(), None, None)
 
   /** Makes an independent clone of this STN. */
-  override def deepCopy(): MinimalSTNUManager[ID] =
-    new MinimalSTNUManager(stn.cc(), tps.clone(), id.clone(), rawConstraints, start, end)
+  override def deepCopy(): MinimalSTNUManager[ID] = {
+    val copy = new MinimalSTNUManager(stn.cc(), tps.clone(), id.clone(), rawConstraints, start, end)
+    copy.numChanges = numChanges
+    copy
+  }
 
   override def controllability: Controllability = Controllability.STN_CONSISTENCY
 
@@ -75,7 +79,9 @@ class MinimalSTNUManager[ID](val stn:ISTN[ID],
       case None => stn.addConstraint(u, v, w)
     }
 
-  override def getMinDelay(u: TPRef, v: TPRef): Int = ???
+  /** Only supported if the underlying STN maintains all pairs shortest paths (e.g. CompactSTN) */
+  override def getMinDelay(u: TPRef, v: TPRef): Int = - distance(v, u)
 
-  override def getMaxDelay(u: TPRef, v: TPRef): Int = ???
+  /** Only supported if the underlying STN maintains all pairs shortest paths (e.g. CompactSTN) */
+  override def getMaxDelay(u: TPRef, v: TPRef): Int = distance(u, v)
 }
@@ -1,6 +1,7 @@
 package planstack.constraints.stnu
 
 import planstack.anml.model.concrete.TPRef
+import planstack.constraints.stn.AllPairsSTN
 import planstack.constraints.stnu.Controllability._
 import planstack.constraints.stnu.ElemStatus._
 import planstack.graph.core.LabeledEdge
@@ -8,7 +9,7 @@ import planstack.graph.printers.NodeEdgePrinter
 
 protected class TConstraint[ID](val u:TPRef, val v:TPRef, val min:Int, val max:Int, val optID:Option[ID])
 
-class PseudoSTNUManager[ID](val stn : FullSTN[ID],
+class PseudoSTNUManager[ID](val stn : AllPairsSTN[ID],
                                   _tps : Array[TPRef],
                                   _ids : Array[Int],
                                   _rawConstraints : List[Constraint[ID]],
@@ -16,9 +17,13 @@ class PseudoSTNUManager[ID](val stn : FullSTN[ID],
                                   _end : Option[TPRef])
   extends GenSTNUManager[ID](_tps, _ids, _rawConstraints, _start, _end)
 {
-  def this() = this(new FullSTN[ID](), Array(), Array(), List(), None, None)
-  def this(toCopy:PseudoSTNUManager[ID]) =
+  def this() = this(new FullSTN[ID]())
+  /** Creates an empty manager on top of the given STN. */
+  def this(stn : AllPairsSTN[ID]) = this(stn, Array(), Array(), List(), None, None)
+  def this(toCopy:PseudoSTNUManager[ID]) = {
     this(toCopy.stn.cc(), toCopy.tps.clone(), toCopy.id.clone(), toCopy.rawConstraints, toCopy.start, toCopy.end)
+    numChanges = toCopy.numChanges
+  }
 
   override def controllability = PSEUDO_CONTROLLABILITY
 
@@ -71,17 +76,7 @@ class PseudoSTNUManager[ID](val stn : FullSTN[ID],
   /** Returns the earliest time for the time point with id u */
   override protected def earliestStart(u: Int): Int = stn.earliestStart(u)
 
-  private def dist(u :TPRef, v:TPRef) : Int = {
-    val (src, addDelay) =
-      if(u.isVirtual) u.attachmentToReal
-      else (u, 0)
-    val (dst, subDelay) =
-      if(v.isVirtual) v.attachmentToReal
-      else (v, 0)
-    (- addDelay) + stn.maxDelay(id(src.id), id(dst.id)) + subDelay
-  }
-
-  override def getMinDelay(u: TPRef, v: TPRef): Int = - dist(v, u)
+  override def getMinDelay(u: TPRef, v: TPRef): Int = - distance(v, u)
 
-  override def getMaxDelay(u: TPRef, v: TPRef): Int = dist(u,v)
+  override def getMaxDelay(u: TPRef, v: TPRef): Int = distance(u,v)
 }
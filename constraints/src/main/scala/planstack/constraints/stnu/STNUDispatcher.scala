@@ -0,0 +1,199 @@
+package planstack.constraints.stnu
+
+import planstack.anml.model.concrete.TPRef
+import planstack.constraints.stnu.ElemStatus._
+
+import scala.collection.JavaConverters._
+import scala.collection.mutable
+
+/**
+ * Dispatcher for the STNU of a plan.
+ *
+ * The STNU is compiled once in a dispatchable form: its constraints are given to an MMV whose incremental
+ * propagation makes the requirement graph all-pairs shortest paths and derives the wait constraints needed for
+ * dynamic controllability. This compiled network is never modified afterwards.
+ *
+ * Execution then follows the dispatching algorithm of Morris, Muscettola and Vidal: when an event happens, its
+ * time is only propagated to its neighbours in the compiled network (updating their execution windows and
+ * their number of unexecuted predecessors), which is sufficient in a dispatchable network.
+ * Events that are enabled (all predecessors executed) and controllable are kept sorted by earliest start time,
+ * so that asking for the events that can be executed at a given time only looks at those events.
+ *
+ * Structural time points (neither dispatchable nor contingent) are executed by the dispatcher itself, as soon
+ * as they are enabled and live.
+ */
+class STNUDispatcher[ID](manager: GenSTNUManager[ID]) {
+
+  private val stnu = new MMV[ID]()
+
+  /** Variable in the compiled STNU of each real time point, indexed by the ID of the time point. */
+  private val vars : Array[Int] = Array.fill(manager.tps.length)(-1)
+
+  private val tps : mutable.ArrayBuffer[TPRef] = mutable.ArrayBuffer(null, null)
+
+  // compilation: create all real time points and the constraints between them
+  for(tp <- manager.timepoints.asScala ; if !tp.isVirtual) {
+    vars(tp.id) =
+      if(manager.getStartTimePoint.contains(tp)) stnu.start
+      else if(manager.getEndTimePoint.contains(tp)) stnu.end
+      else if(tp.isContingent) stnu.addContingentVar()
+      else stnu.addDispatchable()
+    if(vars(tp.id) >= tps.size)
+      tps += tp
+    else
+      tps(vars(tp.id)) = tp
+  }
+  for(c <- manager.constraints.asScala ; if attached(c.u) && attached(c.v)) {
+    val (u, uDist) = real(c.u)
+    val (v, vDist) = real(c.v)
+    if(c.tipe == CONTINGENT)
+      stnu.addContingent(vars(u.id), vars(v.id), c.d)
+    else
+      stnu.addRequirement(vars(u.id), vars(v.id), uDist + c.d - vDist)
+  }
+
+  private var consistent = stnu.checkConsistency()
+
+  private final val n = stnu.requirements.numVertices
+
+  private final def dist(u: Int, v: Int) = stnu.requirements.edgeValue(u, v)
+
+  private final def finite(d: Int) = d < MMV.inf
+
+  /** Variables with a finite distance from or to each variable. */
+  private val neighbours : Array[Array[Int]] = Array.tabulate(n)(u =>
+    (0 until n).filter(v => v != u && (finite(dist(u, v)) || finite(dist(v, u)))).toArray)
+
+  /** Wait constraints of each variable, as (node, v, value): the variable cannot be executed before
+    * time(v) - value unless node was executed. */
+  private val waits : Array[Array[(Int,Int,Int)]] = Array.tabulate(n)(u =>
+    stnu.conditionals.outEdges(u).map(e => (e.l.node, e.v, e.l.value)).toArray)
+
+  private val executed = new Array[Boolean](n)
+  private val time = new Array[Int](n)
+  private val lb = Array.tabulate(n)(u => stnu.earliestStart(u))
+  private val ub = Array.tabulate(n)(u => stnu.latestStart(u))
+
+  /** Number of unexecuted variables that must happen before each variable. */
+  private val numPredecessors = Array.tabulate(n)(u => neighbours(u).count(v => precedes(v, u)))
+
+  /** Enabled controllable variables that are not executed yet, as (earliest start, variable). */
+  private val ready = mutable.TreeSet[(Int,Int)]()
+
+  for(u <- 0 until n ; if numPredecessors(u) == 0 && !stnu.isContingent(u))
+    ready += ((lb(u), u))
+  if(consistent)
+    execute(stnu.start, 0)
+
+  private def attached(tp: TPRef) = !tp.isVirtual || tp.isAttached
+
+  /** Returns the real time point to which tp is attached and the delay from this real time point to tp */
+  private def real(tp: TPRef) : (TPRef, Int) =
+    if(!tp.isVirtual) (tp, 0)
+    else real(tp.attachedRealTP) match {
+      case (r, d) => (r, d + tp.attachmentDelay)
+    }
+
+  private def variable(tp: TPRef) : Int = {
+    val r = real(tp)._1
+    assert(vars.length > r.id && vars(r.id) != -1, "Time point not in the dispatched STNU: "+tp)
+    vars(r.id)
+  }
+
+  /** Structural time points are the controllable ones that are not given to the executive. */
+  private def isStructural(u: Int) = !stnu.isContingent(u) && (tps(u) == null || !tps(u).isDispatchable)
+
+  /** Returns true if v must be executed before u can be.
+    * Structural time points also wait for the controllable ones that can happen at the same time, as they are
+    * executed as soon as possible. */
+  private def precedes(v: Int, u: Int) =
+    if(stnu.isContingent(v)) dist(u, v) <= 0
+    else if(isStructural(u) && !(isStructural(v) && dist(v, u) <= 0)) dist(u, v) <= 0
+    else dist(u, v) < 0
+
+  /** Returns false if the plan could not be compiled in a dispatchable form (i.e. it is not dynamically
+    * controllable) or if an event happened outside of its execution window. */
+  def isConsistent : Boolean = consistent
+
+  /** Records that the time point tp happened at the given time. */
+  def setHappened(tp: TPRef, atTime: Int): Unit = {
+    val (r, d) = real(tp)
+    val u = vars(r.id)
+    assert(!executed(u), "Time point already executed: "+tp)
+    execute(u, atTime - d)
+  }
+
+  def isExecuted(tp: TPRef) : Boolean = executed(variable(tp))
+
+  /** Returns true if all events that must precede tp were executed and all its wait constraints are over. */
+  def isEnabled(tp: TPRef, currentTime: Int) : Boolean = {
+    val u = variable(tp)
+    !executed(u) && numPredecessors(u) == 0 && waitsOver(u, currentTime)
+  }
+
+  /** Current bounds of the execution window of the time point. */
+  def getEarliestStartTime(tp: TPRef) : Int = { val u = variable(tp) ; if(executed(u)) time(u) else lb(u) }
+  def getLatestStartTime(tp: TPRef) : Int = { val u = variable(tp) ; if(executed(u)) time(u) else ub(u) }
+
+  def getMinDelay(from: TPRef, to: TPRef) : Int = -dist(variable(to), variable(from))
+  def getMaxDelay(from: TPRef, to: TPRef) : Int = dist(variable(from), variable(to))
+
+  /**
+   * Returns all dispatchable time points that can be executed at currentTime. Structural time points that can
+   * be executed at this time are executed as a side effect.
+   *
+   * Only the enabled events whose earliest start time is not after currentTime are considered.
+   */
+  def getDispatchable(currentTime: Int) : java.util.List[TPRef] = {
+    val dispatchable = new java.util.ArrayList[TPRef]()
+    var changed = true
+    while(changed && consistent) {
+      changed = false
+      dispatchable.clear()
+      val live = ready.iterator.takeWhile(_._1 <= currentTime).map(_._2).filter(waitsOver(_, currentTime)).toList
+      for(u <- live) {
+        if(!isStructural(u)) {
+          dispatchable.add(tps(u))
+        } else {
+          execute(u, currentTime)
+          changed = true
+        }
+      }
+    }
+    dispatchable
+  }
+
+  private def waitsOver(u: Int, currentTime: Int) : Boolean =
+    waits(u).forall { case (node, v, value) =>
+      executed(node) || (if(executed(v)) time(v) else lb(v)) - value <= currentTime
+    }
+
+  /** Sets the time of u and propagates it to its neighbours. */
+  private def execute(u: Int, atTime: Int): Unit = {
+    if(atTime < lb(u) || atTime > ub(u))
+      consistent = false
+    executed(u) = true
+    time(u) = atTime
+    ready -= ((lb(u), u))
+
+    for(v <- neighbours(u) ; if !executed(v)) {
+      val isReady = numPredecessors(v) == 0 && !stnu.isContingent(v)
+      if(finite(dist(v, u)) && atTime - dist(v, u) > lb(v)) {
+        // lb is part of the key in the ready set
+        if(isReady) ready -= ((lb(v), v))
+        lb(v) = atTime - dist(v, u)
+        if(isReady) ready += ((lb(v), v))
+      }
+      if(finite(dist(u, v)))
+        ub(v) = Math.min(ub(v), atTime + dist(u, v))
+      if(lb(v) > ub(v))
+        consistent = false
+
+      if(precedes(u, v)) {
+        numPredecessors(v) -= 1
+        if(numPredecessors(v) == 0 && !stnu.isContingent(v))
+          ready += ((lb(v), v))
+      }
+    }
+  }
+}
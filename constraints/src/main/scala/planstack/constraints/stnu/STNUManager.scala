@@ -24,8 +24,11 @@ class STNUManager[ID](val stnu : ISTNU[ID],
   override def controllability = stnu.controllability
 
   /** Makes an independent clone of this STN. */
-  override def deepCopy(): STNUManager[ID] =
-    new STNUManager[ID](stnu.cc(), tps.clone(), id.clone(), rawConstraints, start, end)
+  override def deepCopy(): STNUManager[ID] = {
+    val copy = new STNUManager[ID](stnu.cc(), tps.clone(), id.clone(), rawConstraints, start, end)
+    copy.numChanges = numChanges
+    copy
+  }
 
   /** Returns true if the STN is consistent (might trigger a propagation */
   override def isConsistent(): Boolean = stnu.consistent
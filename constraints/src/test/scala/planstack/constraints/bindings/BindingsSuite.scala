@@ -2,9 +2,138 @@ package planstack.constraints.bindings
 
 
 import org.scalatest.FunSuite
+import planstack.anml.model.SimpleType
+import planstack.anml.model.concrete.{Label, VarRef}
+
+import scala.collection.JavaConverters._
 
 class BindingsSuite extends FunSuite {
 
+  val typ = new SimpleType("object", None)
+  val values = List("a", "b", "c")
+
+  /** Returns a network with the given number of variables (IDs from 0), all with the domain {a, b, c}.
+    * Domains and variables are stored in chunks of 64 elements, that are shared with copies. */
+  def network(numVars: Int) : (BindingConstraintNetwork, IndexedSeq[VarRef]) = {
+    val net = new BindingConstraintNetwork()
+    values.foreach(v => net.addPossibleValue(v))
+    val vars = for(i <- 0 until numVars) yield new VarRef(i, typ, Label("test", "v"+i))
+    vars.foreach(v => net.addVariable(v, values.asJava))
+    (net, vars)
+  }
+
+  def domain(net: BindingConstraintNetwork, v: VarRef) = net.domainOf(v).asScala.toSet
+
+  test("Domains restricted after a copy are only visible in the modified network") {
+    val (parent, vars) = network(150)
+    val child = parent.DeepCopy()
+
+    child.restrictDomain(vars(0), List("a").asJava)
+    parent.restrictDomain(vars(1), List("b").asJava) // in the same chunk as vars(0)
+    parent.restrictDomain(vars(140), List("c").asJava) // in another chunk
+    assert(child.isConsistent && parent.isConsistent)
+
+    assert(domain(child, vars(0)) == Set("a"))
+    assert(domain(parent, vars(0)) == values.toSet)
+    assert(domain(parent, vars(1)) == Set("b"))
+    assert(domain(child, vars(1)) == values.toSet)
+    assert(domain(parent, vars(140)) == Set("c"))
+    assert(domain(child, vars(140)) == values.toSet)
+  }
+
+  test("Unification and separation after a copy are only visible in the modified network") {
+    val (parent, vars) = network(100)
+    val child = parent.DeepCopy()
+
+    child.AddUnificationConstraint(vars(2), vars(70))
+    parent.addSeparationConstraint(vars(3), vars(80))
+    assert(child.isConsistent && parent.isConsistent)
+
+    assert(child.unified(vars(2), vars(70)))
+    assert(!parent.unified(vars(2), vars(70)))
+    assert(parent.separated(vars(3), vars(80)))
+    assert(!child.separated(vars(3), vars(80)))
+
+    // a value bound in the child is propagated through its unification only
+    child.restrictDomain(vars(2), List("a").asJava)
+    assert(domain(child, vars(70)) == Set("a"))
+    assert(domain(parent, vars(70)) == values.toSet)
+
+    // and a value bound in the parent is removed from the separated variable in the parent only
+    parent.restrictDomain(vars(3), List("b").asJava)
+    assert(domain(parent, vars(80)) == Set("a", "c"))
+    assert(domain(child, vars(80)) == values.toSet)
+  }
+
+  test("Variables added after a copy are only recorded in the modified network") {
+    val (parent, vars) = network(10)
+    val child = parent.DeepCopy()
+    val inParent = new VarRef(64, typ, Label("test", "in-parent"))
+    val inChild = new VarRef(65, typ, Label("test", "in-child"))
+
+    parent.addVariable(inParent, List("a", "b").asJava)
+    child.addVariable(inChild, List("b", "c").asJava)
+
+    assert(parent.contains(inParent) && !parent.contains(inChild))
+    assert(child.contains(inChild) && !child.contains(inParent))
+    assert(domain(parent, inParent) == Set("a", "b"))
+    assert(domain(child, inChild) == Set("b", "c"))
+  }
+
+  test("Copies of a copy are independent of each other and of their ancestors") {
+    val (root, vars) = network(130)
+    val child = root.DeepCopy()
+    child.restrictDomain(vars(5), List("a", "b").asJava)
+    val grandChild1 = child.DeepCopy()
+    val grandChild2 = child.DeepCopy()
+
+    grandChild1.restrictDomain(vars(5), List("a").asJava)
+    grandChild2.restrictDomain(vars(5), List("b").asJava)
+    child.restrictDomain(vars(129), List("c").asJava)
+    root.AddUnificationConstraint(vars(5), vars(6))
+
+    assert(domain(root, vars(5)) == values.toSet)
+    assert(domain(child, vars(5)) == Set("a", "b"))
+    assert(domain(grandChild1, vars(5)) == Set("a"))
+    assert(domain(grandChild2, vars(5)) == Set("b"))
+    assert(domain(grandChild1, vars(129)) == values.toSet)
+    assert(domain(grandChild2, vars(129)) == values.toSet)
+    assert(!child.unified(vars(5), vars(6)))
+    assert(!grandChild1.unified(vars(5), vars(6)))
+  }
+
+  test("Every restriction, unification and separation is counted, in the modified network only") {
+    val (net, vars) = network(10)
+    var last = net.numChanges
+    def changed(n: BindingConstraintNetwork) : Boolean = {
+      val ret = n.numChanges > last
+      last = n.numChanges
+      ret
+    }
+
+    net.restrictDomain(vars(0), List("a", "b").asJava)
+    assert(changed(net))
+    net.restrictDomain(vars(0), List("a", "b").asJava) // no-op
+    assert(!changed(net))
+    net.addSeparationConstraint(vars(1), vars(2))
+    assert(changed(net))
+    net.AddUnificationConstraint(vars(3), vars(4))
+    assert(changed(net))
+    net.AddUnificationConstraint(vars(3), vars(4)) // already unified
+    assert(!changed(net))
+
+    val copy = net.DeepCopy()
+    assert(copy.numChanges == net.numChanges)
+    copy.addSeparationConstraint(vars(5), vars(6))
+    assert(changed(copy))
+    assert(net.numChanges < copy.numChanges)
+    val copyChanges = copy.numChanges
+    last = net.numChanges
+    net.restrictDomain(vars(7), List("c").asJava)
+    assert(changed(net))
+    assert(copy.numChanges == copyChanges)
+  }
+
   /*
 
   for(cn <- List(new BindingConstraintNetwork[String](), new ConservativeConstraintNetwork[String]())) {
@@ -1,9 +1,127 @@
 package planstack.constraints.bindings
 
 import org.scalatest.FunSuite
+import planstack.anml.model.SimpleType
+import planstack.anml.model.concrete.{Label, VarRef}
+
+import scala.collection.JavaConverters._
+import scala.util.Random
 
 class ExtensionConstraintsSuite extends FunSuite {
 
+  val typ = new SimpleType("object", None)
+  val values = (0 until 5).map("v"+_)
+
+  /** A table constraint as the indices of its variables and its allowed tuples. */
+  type Table = (Seq[Int], Seq[Seq[String]])
+
+  /** Propagation as done by the previous implementation (restrictedDomains, applied until a fixpoint): the domain
+    * of a variable is restricted to the values appearing in a tuple whose values are all in the current domains. */
+  def referencePropagation(domains: Vector[Set[String]], tables: Seq[Table]) : Vector[Set[String]] = {
+    var doms = domains
+    var changed = true
+    while(changed) {
+      changed = false
+      for((scope, tuples) <- tables) {
+        val valid = tuples.filter(t => t.indices.forall(i => doms(scope(i)).contains(t(i))))
+        for(i <- scope.indices) {
+          val supported = doms(scope(i)).filter(v => valid.exists(_(i) == v))
+          if(supported.size < doms(scope(i)).size) {
+            doms = doms.updated(scope(i), supported)
+            changed = true
+          }
+        }
+      }
+    }
+    doms
+  }
+
+  /** Returns a network with the given variables (all with all values in their domain) and table constraints. */
+  def network(vars: Seq[VarRef], tables: Seq[Table]) : BindingConstraintNetwork = {
+    val net = new BindingConstraintNetwork()
+    values.foreach(v => net.addPossibleValue(v))
+    vars.foreach(v => net.addVariable(v, values.asJava))
+    for(((scope, tuples), i) <- tables.zipWithIndex) {
+      net.recordEmptyNAryConstraint("table"+i, false, scope.size)
+      tuples.foreach(t => net.addAllowedTupleToNAryConstraint("table"+i, t.asJava))
+      net.addNAryConstraint(scope.map(vars).asJava, "table"+i)
+    }
+    net
+  }
+
+  def variables(n: Int) = for(i <- 0 until n) yield new VarRef(i, typ, Label("test", "x"+i))
+
+  def propagate(net: BindingConstraintNetwork) : Boolean =
+    try { net.isConsistent } catch { case _: InconsistentBindingConstraintNetwork => false }
+
+  def domain(net: BindingConstraintNetwork, v: VarRef) = net.domainOf(v).asScala.toSet
+
+  /** Propagates the network and checks the result against the reference. Then restricts one domain in a copy and
+    * in the network itself (in this order) and checks both recursively. */
+  def check(net: BindingConstraintNetwork, vars: Seq[VarRef], doms: Vector[Set[String]], tables: Seq[Table],
+            depth: Int, rand: Random) {
+    val expected = referencePropagation(doms, tables)
+    val consistent = propagate(net)
+    assert(consistent == expected.forall(_.nonEmpty))
+    if(consistent) {
+      for(i <- vars.indices)
+        assert(domain(net, vars(i)) == expected(i), s"Domain of ${vars(i).label}")
+      if(depth > 0) {
+        for(n <- List(net.DeepCopy(), net)) {
+          val i = rand.nextInt(vars.size)
+          val kept = rand.shuffle(expected(i).toList).take(if(rand.nextBoolean()) 1 else 1 + rand.nextInt(expected(i).size)).toSet
+          n.restrictDomain(vars(i), kept.asJava)
+          check(n, vars, expected.updated(i, kept), tables, depth -1, rand)
+        }
+      }
+    }
+  }
+
+  test("Propagation of random tables is the same as the one of the previous implementation") {
+    val rand = new Random(0)
+    for(run <- 0 until 300) {
+      val vars = variables(5)
+      val tables = for(c <- 0 until 1 + rand.nextInt(3)) yield {
+        val scope = rand.shuffle(vars.indices.toList).take(2 + rand.nextInt(2))
+        // some tables are empty or have a single tuple
+        val tuples = Seq.fill(rand.nextInt(15))(scope.map(_ => values(rand.nextInt(values.size))))
+        (scope, tuples)
+      }
+      check(network(vars, tables), vars, Vector.fill(vars.size)(values.toSet), tables, 3, rand)
+    }
+  }
+
+  test("Partially bound variables only keep values of compatible tuples") {
+    val vars = variables(3)
+    val tables = Seq((Seq(0, 1, 2), Seq(Seq("v0", "v1", "v2"), Seq("v0", "v2", "v2"), Seq("v1", "v1", "v0"))))
+    val net = network(vars, tables)
+    assert(propagate(net))
+    assert(domain(net, vars(0)) == Set("v0", "v1"))
+
+    net.restrictDomain(vars(0), List("v0").asJava)
+    assert(propagate(net))
+    assert(domain(net, vars(1)) == Set("v1", "v2"))
+    assert(domain(net, vars(2)) == Set("v2"))
+
+    val copy = net.DeepCopy()
+    copy.restrictDomain(vars(1), List("v2").asJava)
+    assert(propagate(copy))
+    assert(domain(copy, vars(1)) == Set("v2"))
+    assert(domain(net, vars(1)) == Set("v1", "v2"))
+
+  }
+
+  test("A table without tuples or with no tuple left makes the network inconsistent") {
+    val vars = variables(2)
+    assert(!propagate(network(vars, Seq((Seq(0, 1), Seq())))))
+
+    val net = network(vars, Seq((Seq(0, 1), Seq(Seq("v0", "v1"), Seq("v1", "v0")))))
+    assert(propagate(net))
+    net.restrictDomain(vars(0), List("v0", "v2").asJava)
+    net.restrictDomain(vars(1), List("v0", "v2").asJava)
+    assert(!propagate(net))
+  }
+
   /*
   for(cn <- List(new BindingConstraintNetwork[String](), new ConservativeConstraintNetwork[String]())) {
 
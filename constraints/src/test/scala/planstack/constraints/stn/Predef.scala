@@ -9,6 +9,7 @@ object Predef {
     new STNIncBellmanFord[ID](),
     new FastIDC[ID](),
     new FullSTN[ID](10),
+    new CompactSTN[ID](10),
     new MMV[ID]()
   )
 
@@ -21,12 +22,14 @@ object Predef {
   def getAllSTNUManager[ID] : List[GenSTNUManager[ID]] = List(
     new MinimalSTNUManager[ID](),
     new PseudoSTNUManager[ID](),
+    new PseudoSTNUManager[ID](new CompactSTN[ID]()),
     new STNUManager[ID]()
   )
 
   def getAllSTNManager[ID] : List[GenSTNManager[TPRef,ID]] = List(
     new MinimalSTNUManager[ID](),
     new PseudoSTNUManager[ID](),
+    new PseudoSTNUManager[ID](new CompactSTN[ID]()),
     new STNUManager[ID]()
   )
 
@@ -1,7 +1,7 @@
 package planstack.constraints.stn
 
 import org.scalatest.FunSuite
-import planstack.constraints.stnu.FullSTN
+import planstack.constraints.stnu.{CompactSTN, FullSTN}
 
 class STNSuite extends FunSuite {
 
@@ -11,7 +11,7 @@ class STNSuite extends FunSuite {
     }
   }
 
-  for(stn <- List(new STNIncBellmanFord[String](), new FullSTN[String](10))) {
+  for(stn <- List(new STNIncBellmanFord[String](), new FullSTN[String](10), new CompactSTN[String](10))) {
 
     test("[" + stn.getClass.getSimpleName + "] Simple Consistency") {
       val u = stn.addVar()
@@ -73,6 +73,21 @@ class STNSuite extends FunSuite {
     }
   }
 
+  test("[CompactSTN] No overflow with large weights") {
+    val stn = new CompactSTN[String](10)
+    val u = stn.addVar()
+    val v = stn.addVar()
+    val x = stn.addVar()
+    stn.addConstraint(u, v, 1500000000)
+    stn.addConstraint(v, x, 1500000000)
+    assert(stn.consistent)
+
+    // the path from u to x is longer than INF and must not wrap around to a negative distance
+    assert(stn.isConstraintPossible(x, u, -1000000000))
+    stn.addConstraint(x, u, -1000000000)
+    assert(stn.consistent)
+  }
+
   test("Edges sorted for STNIncBellmanFord") {
     val stn = new STNIncBellmanFord[String]()
 
@@ -0,0 +1,58 @@
+package planstack.constraints.stnu
+
+import org.scalatest.FunSuite
+import planstack.anml.model.concrete.TPRef
+import planstack.constraints.stn.Predef._
+
+/** The number of changes of a manager is used to know whether derived information (e.g. threats) must be
+  * verified again: every added or removed constraint must increase it, in the modified manager only. */
+class NumChangesSuite extends FunSuite {
+
+  for(stn <- getAllSTNUManager[String]) {
+    test("[" + stn.getClass.getSimpleName + "] Every constraint added or removed is counted") {
+      val start = new TPRef(0)
+      val end = new TPRef(1)
+      val a = new TPRef(2)
+      val b = new TPRef(3)
+      val c = new TPRef(4)
+      stn.recordTimePointAsStart(start)
+      stn.recordTimePointAsEnd(end)
+      stn.addDispatchableTimePoint(a)
+      stn.addContingentTimePoint(b)
+      stn.recordTimePoint(c)
+
+      var last = stn.numChanges
+      def changed(m: GenSTNUManager[String]) : Boolean = {
+        val ret = m.numChanges > last
+        last = m.numChanges
+        ret
+      }
+
+      stn.enforceBefore(a, c)
+      assert(changed(stn))
+      stn.enforceStrictlyBefore(start, a)
+      assert(changed(stn))
+      stn.enforceMaxDelay(a, c, 20)
+      assert(changed(stn))
+      stn.enforceMinDelayWithID(c, end, 3, "c")
+      assert(changed(stn))
+      stn.enforceContingent(a, b, 5, 10)
+      assert(changed(stn))
+      stn.removeConstraintsWithID("c")
+      assert(changed(stn))
+      assert(stn.isConsistent())
+
+      // the count is copied, and later changes are only counted in the modified manager
+      val copy = stn.deepCopy()
+      assert(copy.numChanges == stn.numChanges)
+      copy.enforceBefore(b, c)
+      assert(changed(copy))
+      assert(stn.numChanges < copy.numChanges)
+      val copyChanges = copy.numChanges
+      last = stn.numChanges
+      stn.enforceConstraint(start, c, 0, 100)
+      assert(changed(stn))
+      assert(copy.numChanges == copyChanges)
+    }
+  }
+}
@@ -0,0 +1,46 @@
+package planstack.constraints.stnu
+
+import org.scalatest.FunSuite
+import planstack.anml.model.concrete.TPRef
+
+import scala.collection.JavaConverters._
+
+class STNUDispatcherSuite extends FunSuite {
+
+  test("Events are dispatched once their predecessors happened") {
+    val stn = new STNUManager[String]()
+    val start = new TPRef(0)
+    val end = new TPRef(1)
+    val a = new TPRef(2)
+    val b = new TPRef(3)
+    val c = new TPRef(4)
+    stn.recordTimePointAsStart(start)
+    stn.recordTimePointAsEnd(end)
+    stn.addDispatchableTimePoint(a)
+    stn.addContingentTimePoint(b)
+    stn.addDispatchableTimePoint(c)
+    stn.enforceMinDelay(start, a, 2)
+    stn.enforceContingent(a, b, 5, 10)
+    stn.enforceBefore(b, c)
+
+    val dispatcher = new STNUDispatcher[String](stn)
+    assert(dispatcher.isConsistent)
+
+    assert(dispatcher.getDispatchable(0).isEmpty)
+    assert(dispatcher.getDispatchable(2).asScala == List(a))
+
+    dispatcher.setHappened(a, 3)
+    assert(dispatcher.getDispatchable(3).isEmpty)
+    assert(dispatcher.getEarliestStartTime(c) == 8)
+    assert(!dispatcher.isEnabled(c, 8))
+
+    dispatcher.setHappened(b, 9)
+    assert(dispatcher.isEnabled(c, 9))
+    assert(dispatcher.getDispatchable(9).asScala == List(c))
+
+    dispatcher.setHappened(c, 10)
+    assert(dispatcher.getDispatchable(10).isEmpty)
+    assert(dispatcher.isExecuted(end))
+    assert(dispatcher.isConsistent)
+  }
+}
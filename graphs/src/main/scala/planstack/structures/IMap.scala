@@ -0,0 +1,47 @@
+package planstack.structures
+
+import scala.collection.JavaConverters._
+import scala.collection.immutable.HashMap
+
+/**
+ * Immutable map to be used from java, backed by a hash trie.
+ *
+ * Updates return a new map that shares most of its structure with this one: adding or removing a key
+ * takes O(log n) time and memory, and copying a map is free.
+ */
+class IMap[K,V](val m : HashMap[K,V]) extends java.lang.Iterable[(K,V)] {
+
+  def this() = this(HashMap[K,V]())
+
+  def asScala = m
+
+  def size(): Int = m.size
+
+  def isEmpty: Boolean = m.isEmpty
+
+  def containsKey(k: K): Boolean = m.contains(k)
+
+  /** Returns the value associated to k or null if there is none. */
+  def get(k: K): V = m.getOrElse(k, null.asInstanceOf[V])
+
+  def `with`(k: K, v: V): IMap[K,V] =
+    new IMap(m.updated(k, v))
+
+  def without(k: K): IMap[K,V] =
+    if(m.contains(k))
+      new IMap(m - k)
+    else
+      this
+
+  def withoutAll(ks: java.util.Collection[K]): IMap[K,V] =
+    if(ks.isEmpty)
+      this
+    else
+      new IMap(m -- ks.asScala)
+
+  def keySet: ISet[K] = new ISet(m.keySet)
+
+  override def iterator(): java.util.Iterator[(K,V)] = m.iterator.asJava
+
+  override def toString = m.toString()
+}
@@ -0,0 +1,70 @@
+package planstack.structures
+
+import org.scalatest.FunSuite
+
+import scala.collection.JavaConverters._
+import scala.util.Random
+
+class IMapSuite extends FunSuite {
+
+  def content[K,V](m: IMap[K,V]) : Map[K,V] = m.iterator().asScala.toMap
+
+  test("Updates give the same content as a mutable map") {
+    val rand = new Random(0)
+    var m = new IMap[Int,String]()
+    val expected = scala.collection.mutable.Map[Int,String]()
+
+    for(i <- 0 until 5000) {
+      val k = rand.nextInt(300)
+      rand.nextInt(4) match {
+        case 0 =>
+          m = m.without(k)
+          expected -= k
+        case 1 =>
+          val ks = List.fill(rand.nextInt(5))(rand.nextInt(300))
+          m = m.withoutAll(ks.asJava)
+          expected --= ks
+        case _ =>
+          m = m.`with`(k, "v"+i)
+          expected += ((k, "v"+i))
+      }
+      assert(m.size() == expected.size)
+      assert(m.isEmpty == expected.isEmpty)
+      assert(m.containsKey(k) == expected.contains(k))
+      assert(m.get(k) == expected.getOrElse(k, null))
+    }
+    assert(content(m) == expected)
+    assert(m.keySet.asScala == expected.keySet)
+  }
+
+  test("Updates leave previous versions unchanged") {
+    val rand = new Random(0)
+    val versions = scala.collection.mutable.ArrayBuffer((new IMap[Int,Int](), Map[Int,Int]()))
+    for(i <- 0 until 1000) {
+      // update a random previous version
+      val (m, expected) = versions(rand.nextInt(versions.size))
+      val k = rand.nextInt(100)
+      if(rand.nextBoolean())
+        versions += ((m.`with`(k, i), expected.updated(k, i)))
+      else
+        versions += ((m.without(k), expected - k))
+    }
+    for((m, expected) <- versions)
+      assert(content(m) == expected)
+  }
+
+  test("Get returns null for missing keys") {
+    val m = new IMap[String,String]().`with`("a", "b")
+    assert(m.get("a") == "b")
+    assert(m.get("b") == null)
+    assert(m.without("a").get("a") == null)
+  }
+
+  test("Removing absent keys returns the same map") {
+    val m = new IMap[Int,Int]().`with`(1, 1).`with`(2, 2)
+    assert(m.without(3) eq m)
+    assert(m.withoutAll(List[Int]().asJava) eq m)
+    assert(content(m.withoutAll(List(1, 3).asJava)) == Map(2 -> 2))
+    assert(content(m) == Map(1 -> 1, 2 -> 2))
+  }
+}
@@ -1,6 +1,7 @@
 package fape;
 
 import com.martiansoftware.jsap.*;
+import fape.core.planning.Plan;
 import fape.core.planning.heuristics.temporal.DGHandler;
 import fape.core.planning.planner.GlobalOptions;
 import fape.core.planning.planner.Planner;
@@ -11,6 +12,7 @@ import fape.core.planning.states.Printer;
 import fape.core.planning.states.State;
 import fape.exceptions.FAPEException;
 import fape.util.Configuration;
+import fape.util.Telemetry;
 import fape.util.TinyLogger;
 import fape.util.Utils;
 import fr.laas.fape.exceptions.InconsistencyException;
@@ -20,8 +22,10 @@ import planstack.constraints.stnu.Controllability;
 import java.io.*;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 public class Planning {
 
@@ -35,6 +39,10 @@ public class Planning {
     final private static boolean flat_use_epsilon = true;
     final private static boolean hier_use_epsilon = false;
 
+    /** Header of the CSV output, one row is written for each run of the planner. */
+    final static String CSV_HEADER = "iter, runtime, planning-time, anml-file, opened-states, generated-states, " +
+            "fast-forwarded, sol-depth, flaw-sel, plan-sel, reachability, fast-forward, ae\n";
+
     public static SimpleJSAP getCommandLineParser(boolean isAnmlFileRequired) throws JSAPException {
         return new SimpleJSAP(
                 "FAPE",
@@ -63,6 +71,14 @@ public class Planning {
                                 .setDefault("999999")
                                 .setHelp("Maximum depth of a solution plan. Any partial plan beyond this depth "
                                         +"will be ignored."),
+                        new FlaggedOption("threads")
+                                .setStringParser(JSAP.INTEGER_PARSER)
+                                .setShortFlag(JSAP.NO_SHORTFLAG)
+                                .setLongFlag("threads")
+                                .setDefault("1")
+                                .setHelp("Number of threads used to expand partial plans. With more than one thread, " +
+                                        "workers share the queue of partial plans and expand them concurrently. " +
+                                        "This is not compatible with A-Epsilon search and with the display of the search tree."),
                         new FlaggedOption("inc-deep")
                                 .setStringParser(JSAP.BOOLEAN_PARSER)
                                 .setShortFlag(JSAP.NO_SHORTFLAG)
@@ -162,12 +178,37 @@ public class Planning {
                                 "- 'eogf': Gives higher priority to open goals that are close to the time origin.\n" +
                                 "- 'hier-fifo': always selects the unrefined task that has been pending for the longest time.\n" +
                                 "The default is "+hier_flaw_sel+" for entirely hierarchical domains and "+flat_flaw_sel+" for others."),
+                        new FlaggedOption("jobs")
+                                .setStringParser(JSAP.INTEGER_PARSER)
+                                .setShortFlag('j')
+                                .setLongFlag("jobs")
+                                .setDefault("1")
+                                .setHelp("Number of problems solved concurrently. With more than one job, each run of the " +
+                                        "planner takes place in a separate JVM and its row is written to the output as soon " +
+                                        "as it finishes (rows might thus not be in the order of the problems). A run that " +
+                                        "does not finish within 30 seconds after its timeout is killed."),
+                        new FlaggedOption("job-memory")
+                                .setStringParser(JSAP.STRING_PARSER)
+                                .setShortFlag(JSAP.NO_SHORTFLAG)
+                                .setLongFlag("job-memory")
+                                .setRequired(false)
+                                .setHelp("Maximum heap size of the JVM of each job (e.g. \"2g\"), only used with more than one job. " +
+                                        "By default, it is chosen by the JVM."),
                         new FlaggedOption("output")
                                 .setStringParser(JSAP.STRING_PARSER)
                                 .setShortFlag('o')
                                 .setLongFlag("output")
                                 .setDefault("stdout")
                                 .setHelp("File to which the CSV formatted output will be written."),
+                        new FlaggedOption("telemetry")
+                                .setStringParser(JSAP.STRING_PARSER)
+                                .setShortFlag(JSAP.NO_SHORTFLAG)
+                                .setLongFlag("telemetry")
+                                .setRequired(false)
+                                .setHelp("File to which the number of calls and the time spent in each phase of search " +
+                                        "(flaw finders, resolvers, handlers, heuristics, ...) will be written. " +
+                                        "The report is in JSON if the file name ends with '.json' and in CSV otherwise. " +
+                                        "Telemetry is not recorded if this option is not set."),
                         new FlaggedOption("needed-observations")
                                 .setStringParser(JSAP.BOOLEAN_PARSER)
                                 .setShortFlag(JSAP.NO_SHORTFLAG)
@@ -203,6 +244,79 @@ public class Planning {
         return confFile.getPath();
     }
 
+    /**
+     * Builds the options of the planner for the given problem, from the given configuration
+     * (default strategies depend on whether the problem is entirely hierarchical).
+     */
+    public static PlanningOptions getPlanningOptions(Configuration config, AnmlProblem pb) {
+        List<String> planStrat =
+                config.specified("plan-selection") ?
+                        Arrays.asList(config.getStringArray("plan-selection")) :
+                        pb.allActionsAreMotivated() ?
+                                hier_plan_sel : flat_plan_sel;
+        List<String> flawStrat =
+                config.specified("flaw-selection") ?
+                        Arrays.asList(config.getStringArray("flaw-selection")) :
+                        pb.allActionsAreMotivated() ?
+                                hier_flaw_sel : flat_flaw_sel;
+
+        PlanningOptions options = new PlanningOptions(planStrat, flawStrat);
+        options.useFastForward = config.getBoolean("fast-forward");
+
+        options.numThreads = config.getInt("threads");
+        if(options.numThreads < 1)
+            throw new FAPEException("Invalid number of threads: "+options.numThreads);
+
+        options.useAEpsilon = config.specified("a-epsilon") ?
+                config.getBoolean("a-epsilon") :
+                options.numThreads == 1 && (pb.allActionsAreMotivated() ?
+                        hier_use_epsilon : flat_use_epsilon);
+        if(options.useAEpsilon && options.numThreads > 1)
+            throw new FAPEException("A-Epsilon search cannot be used with more than one thread.");
+
+        options.displaySearch = config.getBoolean("display-search");
+        options.actionsSupportMultipleTasks = config.getBoolean("multi-supports");
+        options.checkUnsolvableThreatsForOpenGoalsResolvers = config.getBoolean("threats-early-check");
+
+        if(config.getBoolean("needed-observations"))
+            options.flawFinders.add(new NeededObservationsFinder());
+
+        switch(config.getString("action-insertion")) {
+            case "local":
+                options.actionInsertionStrategy = PlanningOptions.ActionInsertionStrategy.UP_OR_DOWN;
+                break;
+            case "dec":
+                options.actionInsertionStrategy = PlanningOptions.ActionInsertionStrategy.DOWNWARD_ONLY;
+                break;
+            default:
+                throw new FAPEException("Invalid option for action insertion: "+config.getString("action-insertion"));
+        }
+
+        if(config.getBoolean("reachability-graph") && !config.getString("reachability-graph").equals("none")) {
+            options.handlers.add(new DGHandler());
+            String degGraphOption = config.getString("reachability-graph");
+            switch (degGraphOption) {
+                case "full":
+                    options.depGraphStyle = "full";
+                    break;
+                case "popf":
+                    options.depGraphStyle = "popf";
+                    break;
+                case "base":
+                    options.depGraphStyle = "base";
+                    break;
+                default:
+                    assert degGraphOption.startsWith("maxiter") : "Invalid parameter for the dependency graph option: "+degGraphOption;
+                    options.depGraphStyle = "full";
+                    options.depGraphMaxIters = Integer.parseInt(degGraphOption.replaceFirst("maxiter", ""));
+            }
+        }
+        if(config.getBoolean("mutex")) {
+            options.handlers.add(new MutexesHandler());
+        }
+        return options;
+    }
+
     public static void main(String[] args) throws Exception {
         SimpleJSAP jsap = getCommandLineParser(true);
 
@@ -218,6 +332,17 @@ public class Planning {
             writer = new FileWriter(commandLineConfig.getString("output"));
         }
 
+        final Writer telemetryWriter;
+        final boolean telemetryAsJSON = commandLineConfig.contains("telemetry") && commandLineConfig.getString("telemetry").endsWith(".json");
+        if(commandLineConfig.contains("telemetry")) {
+            Telemetry.enabled = true;
+            telemetryWriter = new FileWriter(commandLineConfig.getString("telemetry"));
+            telemetryWriter.write(telemetryAsJSON ? "[" : Telemetry.CSV_HEADER);
+        } else {
+            telemetryWriter = null;
+        }
+        boolean firstTelemetryRecord = true;
+
         TinyLogger.logging = commandLineConfig.getBoolean("verbose");
         Planning.quiet = commandLineConfig.getBoolean("quiet");
         Planning.verbose = commandLineConfig.getBoolean("verbose");
@@ -249,13 +374,21 @@ public class Planning {
         Collections.sort(anmlFiles);
 
         // output format
-        writer.write("iter, runtime, planning-time, anml-file, opened-states, generated-states, " +
-                "fast-forwarded, sol-depth, flaw-sel, plan-sel, reachability, fast-forward, ae\n");
+        writer.write(CSV_HEADER);
 
         boolean allSolved = true;
 
         final int repetitions = commandLineConfig.getInt("repetitions");
-        for (int i = 0; i < repetitions; i++) {
+        final int jobs = commandLineConfig.getInt("jobs");
+        if(jobs < 1)
+            throw new FAPEException("Invalid number of jobs: "+jobs);
+        if(jobs > 1) {
+            PlanningBatch batch = new PlanningBatch(args, commandLineConfig, writer, telemetryWriter, telemetryAsJSON);
+            allSolved = batch.run(anmlFiles, repetitions, jobs);
+        }
+
+        // with a single job, all runs take place in this JVM
+        for (int i = 0; jobs == 1 && i < repetitions; i++) {
 
             for (String anmlFile : anmlFiles) {
 
@@ -276,22 +409,13 @@ public class Planning {
 
 
                 // creates the planner that will be tested for this problem
-                List<String> planStrat =
-                        config.specified("plan-selection") ?
-                                Arrays.asList(config.getStringArray("plan-selection")) :
-                                pb.allActionsAreMotivated() ?
-                                        hier_plan_sel : flat_plan_sel;
-                List<String> flawStrat =
-                        config.specified("flaw-selection") ?
-                                Arrays.asList(config.getStringArray("flaw-selection")) :
-                                pb.allActionsAreMotivated() ?
-                                        hier_flaw_sel : flat_flaw_sel;
+                PlanningOptions options = getPlanningOptions(config, pb);
 
                 if(!quiet) {
                     System.out.println(pb.allActionsAreMotivated() ?
                             "Problem is entirely hierarchical (all actions are motivated)": "Non-hierarchical problem (some actions are not motivated)");
-                    System.out.println("Plan selection strategy: "+planStrat);
-                    System.out.println("Flaw selection strategy: "+flawStrat);
+                    System.out.println("Plan selection strategy: "+options.planSelStrategies);
+                    System.out.println("Flaw selection strategy: "+options.flawSelStrategies);
                 }
 
                 final int maxtime = config.getInt("max-time");
@@ -303,56 +427,9 @@ public class Planning {
 
                 long start = System.currentTimeMillis();
 
-                PlanningOptions options = new PlanningOptions(planStrat, flawStrat);
-                options.useFastForward = config.getBoolean("fast-forward");
-
-                options.useAEpsilon = config.specified("a-epsilon") ?
-                        config.getBoolean("a-epsilon") :
-                        pb.allActionsAreMotivated() ?
-                                hier_use_epsilon : flat_use_epsilon;
-
-                options.displaySearch = config.getBoolean("display-search");
-                options.actionsSupportMultipleTasks = config.getBoolean("multi-supports");
-                options.checkUnsolvableThreatsForOpenGoalsResolvers = config.getBoolean("threats-early-check");
-
-                if(config.getBoolean("needed-observations"))
-                    options.flawFinders.add(new NeededObservationsFinder());
-
-                switch(config.getString("action-insertion")) {
-                    case "local":
-                        options.actionInsertionStrategy = PlanningOptions.ActionInsertionStrategy.UP_OR_DOWN;
-                        break;
-                    case "dec":
-                        options.actionInsertionStrategy = PlanningOptions.ActionInsertionStrategy.DOWNWARD_ONLY;
-                        break;
-                    default:
-                        throw new FAPEException("Invalid option for action insertion: "+config.getString("action-insertion"));
-                }
-
-                if(config.getBoolean("reachability-graph") && !config.getString("reachability-graph").equals("none")) {
-                    options.handlers.add(new DGHandler());
-                    String degGraphOption = config.getString("reachability-graph");
-                    switch (degGraphOption) {
-                        case "full":
-                            options.depGraphStyle = "full";
-                            break;
-                        case "popf":
-                            options.depGraphStyle = "popf";
-                            break;
-                        case "base":
-                            options.depGraphStyle = "base";
-                            break;
-                        default:
-                            assert degGraphOption.startsWith("maxiter") : "Invalid parameter for the dependency graph option: "+degGraphOption;
-                            options.depGraphStyle = "full";
-                            options.depGraphMaxIters = Integer.parseInt(degGraphOption.replaceFirst("maxiter", ""));
-                    }
-                }
-                if(config.getBoolean("mutex")) {
-                    options.handlers.add(new MutexesHandler());
-                }
                 State iniState = null;
                 Planner planner = null;
+                Telemetry.reset();
                 try {
                     iniState = new State(pb, Controllability.PSEUDO_CONTROLLABILITY);
                     planner = new Planner(iniState, options);
@@ -392,9 +469,9 @@ public class Planning {
                 }
 
                 if (!failure && !config.getBoolean("quiet")) {
-                    System.out.println("Expanded states: "+planner.numExpandedStates);
-                    System.out.println("Generated states: "+planner.numGeneratedStates);
-                    System.out.println("Fast-Forwarded states: "+planner.numFastForwardedStates);
+                    System.out.println("Expanded states: "+planner.numExpandedStates.get());
+                    System.out.println("Generated states: "+planner.numGeneratedStates.get());
+                    System.out.println("Fast-Forwarded states: "+planner.numFastForwardedStates.get());
                     System.out.println("Makespan: "+sol.getMakespan());
                     System.out.println("Num actions: "+sol.getAllActions().size());
                     System.out.println();
@@ -402,6 +479,15 @@ public class Planning {
                     System.out.println("\n=== Actions ===\n"+Printer.actionsInState(sol));
                 }
 
+                if (!failure && config.getBoolean("dispatchable")) {
+                    long compilationStart = System.currentTimeMillis();
+                    Plan plan = new Plan(sol);
+                    if (!plan.isConsistent())
+                        System.err.println("The plan for " + anmlFile + " is not dynamically controllable and cannot be dispatched.");
+                    else if (verbose)
+                        System.out.println("Dispatchable plan built in " + (System.currentTimeMillis() - compilationStart) + " ms");
+                }
+
                 final String reachStr = config.getString("reachability-graph");
                 final String ffStr = config.getBoolean("fast-forward") ? "ff" : "no-ff";
                 final String aeStr = options.useAEpsilon ? "ae" : "no-ae";
@@ -411,9 +497,9 @@ public class Planning {
                                 + time + ", "
                                 + planningTime + ", "
                                 + anmlFile + ", "
-                                + planner.numExpandedStates + ", "
-                                + planner.numGeneratedStates + ", "
-                                + planner.numFastForwardedStates + ", "
+                                + planner.numExpandedStates.get() + ", "
+                                + planner.numGeneratedStates.get() + ", "
+                                + planner.numFastForwardedStates.get() + ", "
                                 + (failure ? "-" : sol.getDepth()) + ", "
                                 + Utils.print(planner.options.flawSelStrategies, ":") + ", "
                                 + Utils.print(planner.options.planSelStrategies, ":") + ", "
@@ -423,10 +509,31 @@ public class Planning {
                                 + "\n");
                 writer.flush();
 
+                if(telemetryWriter != null) {
+                    if(telemetryAsJSON) {
+                        Map<String,Object> counters = new LinkedHashMap<>();
+                        counters.put("runtime", time);
+                        counters.put("planning-time", planningTime);
+                        counters.put("expanded-states", planner.numExpandedStates.get());
+                        counters.put("generated-states", planner.numGeneratedStates.get());
+                        counters.put("fast-forwarded-states", planner.numFastForwardedStates.get());
+                        telemetryWriter.write(firstTelemetryRecord ? "\n" : ",\n");
+                        Telemetry.writeJSON(telemetryWriter, i, anmlFile, counters);
+                    } else {
+                        Telemetry.writeCSV(telemetryWriter, i, anmlFile);
+                    }
+                    firstTelemetryRecord = false;
+                    telemetryWriter.flush();
+                }
             }
         }
         if (!commandLineConfig.getString("output").equals("stdout"))
             writer.close();
+        if(telemetryWriter != null) {
+            if(telemetryAsJSON)
+                telemetryWriter.write("\n]\n");
+            telemetryWriter.close();
+        }
 
         if(!allSolved && !commandLineConfig.getBoolean("display-search"))
             System.exit(1);
@@ -0,0 +1,170 @@
+package fape;
+
+import com.martiansoftware.jsap.JSAPResult;
+import fape.util.Configuration;
+import fape.util.Telemetry;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs the planner on many problems concurrently (option "--jobs").
+ *
+ * Each run takes place in a separate JVM, started with the same JVM options and command line
+ * (except for the problem files, the output files and the number of repetitions). This isolates runs from the
+ * static state of the planner (global options, telemetry, caches, ...) and allows to bound the memory of
+ * each of them (option "--job-memory").
+ * Each run writes its results to temporary files whose rows are appended to the outputs of the batch as soon
+ * as the run finishes.
+ */
+class PlanningBatch {
+
+    /** Delay (in seconds) after the timeout of a run before its JVM is killed. */
+    private static final int GRACE_PERIOD = 30;
+
+    /** Options that are set by the batch for each run and must not be forwarded from the command line. */
+    private static final List<String> NOT_FORWARDED = Arrays.asList(
+            "-o", "--output", "-n", "-j", "--jobs", "--job-memory", "--telemetry");
+    private static final List<String> NOT_FORWARDED_SHORT = Arrays.asList("-o", "-n", "-j");
+
+    private final JSAPResult commandLineConfig;
+    private final List<String> forwardedArgs = new ArrayList<>();
+    private final Writer writer;
+    private final Writer telemetryWriter;
+    private final boolean telemetryAsJSON;
+    private boolean firstTelemetryRecord = true;
+
+    PlanningBatch(String[] args, JSAPResult commandLineConfig, Writer writer, Writer telemetryWriter, boolean telemetryAsJSON) {
+        this.commandLineConfig = commandLineConfig;
+        this.writer = writer;
+        this.telemetryWriter = telemetryWriter;
+        this.telemetryAsJSON = telemetryAsJSON;
+
+        Set<String> problemArgs = new HashSet<>(Arrays.asList(commandLineConfig.getStringArray("anml-file")));
+        for(int i=0 ; i<args.length ; i++) {
+            final String arg = args[i];
+            final String flag = arg.contains("=") ? arg.substring(0, arg.indexOf('=')) : arg;
+            if(NOT_FORWARDED.contains(flag)) {
+                if(!arg.contains("="))
+                    i++; // skip value
+            } else if(!arg.startsWith("--") && arg.length() > 2 && NOT_FORWARDED_SHORT.contains(arg.substring(0, 2))) {
+                // short flag with its value, e.g. "-n5"
+            } else if(!problemArgs.contains(arg)) {
+                forwardedArgs.add(arg);
+            }
+        }
+    }
+
+    /**
+     * Runs all problems the given number of times, with at most numJobs concurrent runs.
+     * Returns true if all runs found a solution.
+     */
+    boolean run(List<String> anmlFiles, int repetitions, int numJobs) throws InterruptedException {
+        final AtomicBoolean allSolved = new AtomicBoolean(true);
+        final ExecutorService pool = Executors.newFixedThreadPool(numJobs);
+        for(int i=0 ; i<repetitions ; i++) {
+            final int iteration = i;
+            for(String anmlFile : anmlFiles) {
+                pool.submit(() -> {
+                    try {
+                        if(!runInNewJVM(iteration, anmlFile))
+                            allSolved.set(false);
+                    } catch (IOException | InterruptedException e) {
+                        e.printStackTrace();
+                        System.err.println("Planning finished for " + anmlFile + " with failure: "+e);
+                        allSolved.set(false);
+                    }
+                });
+            }
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        return allSolved.get();
+    }
+
+    /** Runs the planner on one problem in a new JVM and appends its results to the outputs. */
+    private boolean runInNewJVM(int iteration, String anmlFile) throws IOException, InterruptedException {
+        final int maxTime = new Configuration(commandLineConfig, Planning.getAssociatedConfigFile(anmlFile)).getInt("max-time");
+        final File output = File.createTempFile("fape-run-", ".csv");
+        final File telemetry = telemetryWriter != null ? File.createTempFile("fape-run-", telemetryAsJSON ? ".json" : ".csv") : null;
+        try {
+            List<String> cmd = new ArrayList<>();
+            cmd.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+            for(String jvmArg : ManagementFactory.getRuntimeMXBean().getInputArguments())
+                if(!jvmArg.startsWith("-Xmx") && !jvmArg.startsWith("-agentlib"))
+                    cmd.add(jvmArg);
+            if(commandLineConfig.contains("job-memory"))
+                cmd.add("-Xmx" + commandLineConfig.getString("job-memory"));
+            cmd.add("-cp");
+            cmd.add(System.getProperty("java.class.path"));
+            cmd.add(Planning.class.getName());
+            cmd.addAll(forwardedArgs);
+            if(!commandLineConfig.getBoolean("quiet"))
+                cmd.add("-q");
+            cmd.addAll(Arrays.asList("-n", "1", "--output", output.getPath()));
+            if(telemetry != null)
+                cmd.addAll(Arrays.asList("--telemetry", telemetry.getPath()));
+            cmd.add(anmlFile);
+
+            Process p = new ProcessBuilder(cmd).inheritIO().start();
+            if(!p.waitFor(maxTime + GRACE_PERIOD, TimeUnit.SECONDS)) {
+                p.destroyForcibly().waitFor();
+                writeRow(iteration + ", TIMEOUT, -, " + anmlFile + ", -, -, -, -, -, -, -, -, -\n");
+                return false;
+            }
+
+            List<String> rows = Files.readAllLines(output.toPath(), StandardCharsets.UTF_8);
+            if(rows.size() < 2) {
+                // the JVM died before writing its results (e.g. out of memory)
+                writeRow(iteration + ", CRASHED, -, " + anmlFile + ", -, -, -, -, -, -, -, -, -\n");
+                return false;
+            }
+            assert (rows.get(0)+"\n").equals(Planning.CSV_HEADER);
+            // rows of the run are numbered 0
+            writeRow(iteration + rows.get(1).substring(rows.get(1).indexOf(',')) + "\n");
+            if(telemetry != null)
+                appendTelemetry(iteration, telemetry);
+            return p.exitValue() == 0;
+        } finally {
+            output.delete();
+            if(telemetry != null)
+                telemetry.delete();
+        }
+    }
+
+    private synchronized void writeRow(String row) throws IOException {
+        writer.write(row);
+        writer.flush();
+    }
+
+    private synchronized void appendTelemetry(int iteration, File runTelemetry) throws IOException {
+        String content = new String(Files.readAllBytes(runTelemetry.toPath()), StandardCharsets.UTF_8).trim();
+        if(telemetryAsJSON) {
+            // a single record surrounded by brackets
+            if(!content.startsWith("[") || !content.endsWith("]")) {
+                System.err.println("Ignoring malformed telemetry report of a run on iteration "+iteration);
+                return;
+            }
+            String record = content.substring(1, content.length()-1).trim();
+            if(record.isEmpty())
+                return;
+            telemetryWriter.write(firstTelemetryRecord ? "\n" : ",\n");
+            telemetryWriter.write(record.replaceFirst("^\\{\"iter\": 0", "{\"iter\": "+iteration));
+        } else {
+            for(String line : content.split("\n")) {
+                if((line+"\n").equals(Telemetry.CSV_HEADER) || line.isEmpty())
+                    continue;
+                telemetryWriter.write(iteration + line.substring(line.indexOf(',')) + "\n");
+            }
+        }
+        firstTelemetryRecord = false;
+        telemetryWriter.flush();
+    }
+}
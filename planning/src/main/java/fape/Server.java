@@ -1,69 +1,246 @@
 package fape;
 
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
+import com.martiansoftware.jsap.*;
+import fape.core.planning.planner.Planner;
+import fape.core.planning.planner.PlanningOptions;
+import fape.core.planning.states.Printer;
+import fape.core.planning.states.State;
+import fape.util.Configuration;
+import fape.util.TinyLogger;
+import planstack.anml.model.AnmlProblem;
+import planstack.anml.model.concrete.Action;
+import planstack.anml.parser.ParseCache;
+import planstack.constraints.stnu.Controllability;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
 import java.net.SocketException;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-public class Server extends Thread {
+/**
+ * Long-lived planning service, listening for TCP connections on the local host.
+ *
+ * Each message (in both directions) is a 4 bytes big endian length followed by that many bytes of UTF-8 text.
+ * A request contains the command line arguments of the planner for a single problem, one argument per line
+ * (e.g. "--timeout\n10\ndomains/logistics/logistics.p01.pb.anml"); the timeout of the request is the one of
+ * this command line. The special request "exit" stops the server.
+ * Each request is answered with a JSON object giving the status of the search ("SOLVED", "TIMEOUT",
+ * "INFEASIBLE" or "ERROR"), search statistics and, if a solution was found, its actions.
+ * An "ERROR" response has an "error-type" (the kind of failure: "invalid-request" or the class of the exception
+ * that stopped planning) and an "error" message.
+ *
+ * Requests of different connections are received and answered concurrently, while a connection is served
+ * sequentially. Problems are however solved one at a time: the planner relies on state that is global to the JVM
+ * (options, logging, telemetry, caches of the handlers), several servers must be started to plan in parallel.
+ * Domain files (xxx.dom.anml) are parsed once and kept in memory for all problems that share them.
+ */
+public class Server {
 
     public static final int PORT = 9876;
     public static final String HOST = "localhost";
 
-    public static final LinkedBlockingQueue<String> msgs = new LinkedBlockingQueue<>();
+    /** Maximum size of a request, in bytes. */
+    private static final int MAX_REQUEST_SIZE = 1 << 20;
+
+    private final ParseCache domainCache = new ParseCache();
+    private final ServerSocket serverSocket;
+    private final ExecutorService workers;
+
+    private Server(int port, int numWorkers) throws IOException {
+        serverSocket = new ServerSocket(port, 50, InetAddress.getByName(HOST));
+        workers = Executors.newFixedThreadPool(numWorkers);
+    }
+
+    public static void main(String[] args) throws Exception {
+        SimpleJSAP jsap = new SimpleJSAP(
+                "FAPE server",
+                "Planning service answering requests on a local TCP socket",
+                new Parameter[]{
+                        new FlaggedOption("port")
+                                .setStringParser(JSAP.INTEGER_PARSER)
+                                .setShortFlag('p')
+                                .setLongFlag("port")
+                                .setDefault(Integer.toString(PORT))
+                                .setHelp("Port on which to listen."),
+                        new FlaggedOption("workers")
+                                .setStringParser(JSAP.INTEGER_PARSER)
+                                .setShortFlag('w')
+                                .setLongFlag("workers")
+                                .setDefault("1")
+                                .setHelp("Maximum number of connections served concurrently. Problems are still solved one at a time."),
+                        new Switch("verbose")
+                                .setShortFlag('v')
+                                .setLongFlag("verbose")
+                                .setHelp("Verbose output, as for the planner: logs connections, requests and searches."),
+                });
+        JSAPResult config = jsap.parse(args);
+        if(jsap.messagePrinted())
+            return;
 
-    public void run() {
-        String argLine;
+        Planning.quiet = true;
+        TinyLogger.logging = config.getBoolean("verbose");
+        Planning.verbose = config.getBoolean("verbose");
+        Server server = new Server(config.getInt("port"), config.getInt("workers"));
+        TinyLogger.LogInfo("Listening on port " + config.getInt("port"));
+        server.serve();
+        TinyLogger.LogInfo("Server stopped");
+        System.exit(0);
+    }
 
+    /** Accepts connections until an "exit" request is received. */
+    private void serve() {
         try {
-            while((argLine = msgs.poll(1, TimeUnit.HOURS)) != null) {
-                System.out.println("Going for: "+argLine);
+            while(true) {
+                final Socket client = serverSocket.accept();
+                workers.submit(() -> handleConnection(client));
+            }
+        } catch (SocketException e) {
+            // socket was closed by an exit request
+        } catch (IOException e) {
+            System.err.println("Server stopped after a failure to accept connections: "+e);
+        }
+        workers.shutdownNow();
+    }
 
-                String[] args = argLine.split(" ");
+    private void handleConnection(Socket client) {
+        try (Socket socket = client;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            while(true) {
+                final int length;
                 try {
-                    Planning.main(args);
-                } catch (Exception e) {
-                    System.err.println("Arguments were not valid: "+argLine);
-                    e.printStackTrace();
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    return; // client closed the connection
+                }
+                if(length < 0 || length > MAX_REQUEST_SIZE) {
+                    write(out, invalidRequest("Invalid request size: "+length));
+                    return;
+                }
+                byte[] bytes = new byte[length];
+                try {
+                    in.readFully(bytes);
+                } catch (EOFException e) {
+                    write(out, invalidRequest("Incomplete request: expected "+length+" bytes"));
+                    return;
+                }
+                String request = new String(bytes, StandardCharsets.UTF_8).trim();
+                if(request.equals("exit")) {
+                    TinyLogger.LogInfo("Exit requested by "+socket.getRemoteSocketAddress());
+                    serverSocket.close();
+                    return;
                 }
+                TinyLogger.LogInfo("Request from "+socket.getRemoteSocketAddress()+": "+request.replace('\n', ' '));
+                write(out, answer(request.split("\n")));
             }
-        } catch (InterruptedException e) {
-            System.exit(0);
+        } catch (IOException e) {
+            // the connection is broken, no response can be sent
+            System.err.println("Connection with "+client.getRemoteSocketAddress()+" lost: "+e);
         }
     }
 
-    public static void main(String[] args) {
-        Server server = new Server();
-        server.setDaemon(true);
-        server.start();
+    private static void write(DataOutputStream out, String response) throws IOException {
+        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        out.flush();
+    }
 
+    /**
+     * Solves the problem given by the command line arguments and returns the corresponding JSON response.
+     * Synchronized: planning must never run concurrently in the same JVM.
+     */
+    private synchronized String answer(String[] args) {
+        String anmlFile = null;
         try {
-            DatagramSocket serverSocket = new DatagramSocket(PORT);
-            System.out.println("Listening on port " + PORT);
-
-            boolean exit = false;
-            while (!exit) {
-                byte[] receiveData = new byte[1024];
-                DatagramPacket receivePacket = new DatagramPacket(receiveData, receiveData.length);
-                serverSocket.receive(receivePacket);
-                String data = new String(receivePacket.getData());
-                data = data.trim();
-                if (data.startsWith("exit")) {
-                    exit = true;
-                } else {
-                    System.out.println("RECEIVED: " + data);
-                    msgs.add(data);
+            SimpleJSAP jsap = Planning.getCommandLineParser(true);
+            JSAPResult commandLineConfig = jsap.parse(args);
+            if(!commandLineConfig.success())
+                return invalidRequest("Invalid arguments: "+Arrays.toString(args));
+            // those are global to the JVM and would affect all following requests
+            if(commandLineConfig.userSpecified("bind"))
+                return invalidRequest("Option --bind is not supported in requests, bind options when starting the server.");
+
+            String[] anmlFiles = commandLineConfig.getStringArray("anml-file");
+            if(anmlFiles.length != 1 || !anmlFiles[0].endsWith(".anml"))
+                return invalidRequest("A request must give exactly one ANML problem file.");
+            anmlFile = anmlFiles[0];
+
+            final long start = System.currentTimeMillis();
+            final AnmlProblem pb = new AnmlProblem();
+            pb.extendWithAnmlFile(anmlFile, domainCache);
+
+            Configuration config = new Configuration(commandLineConfig, Planning.getAssociatedConfigFile(anmlFile));
+            PlanningOptions options = Planning.getPlanningOptions(config, pb);
+            options.displaySearch = false;
+
+            Planner planner = new Planner(new State(pb, Controllability.PSEUDO_CONTROLLABILITY), options);
+            final long planningStart = System.currentTimeMillis();
+            State sol = planner.search(planningStart + 1000 * config.getInt("max-time"),
+                    config.getInt("max-depth"), config.getBoolean("inc-deep"));
+            final long end = System.currentTimeMillis();
+
+            final String status;
+            if(sol != null)
+                status = "SOLVED";
+            else if(planner.planState == Planner.EPlanState.TIMEOUT)
+                status = "TIMEOUT";
+            else if(planner.planState == Planner.EPlanState.INFEASIBLE)
+                status = "INFEASIBLE";
+            else
+                status = "UNKNOWN PROBLEM";
+
+            StringBuilder sb = new StringBuilder();
+            sb.append("{\"status\": ").append(json(status));
+            sb.append(", \"anml-file\": ").append(json(anmlFile));
+            sb.append(", \"runtime\": ").append((end - start) / 1000f);
+            sb.append(", \"planning-time\": ").append((end - planningStart) / 1000f);
+            sb.append(", \"expanded-states\": ").append(planner.numExpandedStates.get());
+            sb.append(", \"generated-states\": ").append(planner.numGeneratedStates.get());
+            sb.append(", \"fast-forwarded-states\": ").append(planner.numFastForwardedStates.get());
+            if(sol != null) {
+                sb.append(", \"depth\": ").append(sol.getDepth());
+                sb.append(", \"makespan\": ").append(sol.getMakespan());
+                sb.append(", \"actions\": [");
+                List<Action> actions = new ArrayList<>(sol.getAllActions());
+                actions.sort(Comparator.comparingInt(a -> sol.getEarliestStartTime(a.start())));
+                for(int i=0 ; i<actions.size() ; i++) {
+                    Action a = actions.get(i);
+                    sb.append(i == 0 ? "\n  " : ",\n  ");
+                    sb.append("{\"name\": ").append(json(Printer.action(sol, a)));
+                    sb.append(", \"start\": ").append(sol.getEarliestStartTime(a.start()));
+                    sb.append(", \"end\": ").append(sol.getEarliestStartTime(a.end()));
+                    sb.append("}");
                 }
+                sb.append("]");
             }
-
-        } catch (SocketException e) {
-            e.printStackTrace();
-        } catch (Throwable throwable) {
-            throwable.printStackTrace();
+            sb.append("}");
+            return sb.toString();
+        } catch (Exception e) {
+            System.err.println("Failure while answering request "+Arrays.toString(args)+": "+e);
+            return error(e.getClass().getName(), String.valueOf(e.getMessage()), anmlFile);
         }
+    }
 
-        System.out.println("EXITING");
-        System.exit(0);
+    private static String invalidRequest(String msg) {
+        return error("invalid-request", msg, null);
+    }
+
+    /** Returns the response to a request that failed, anmlFile being null if it is not known. */
+    private static String error(String type, String msg, String anmlFile) {
+        return "{\"status\": \"ERROR\", \"error-type\": "+json(type)
+                +(anmlFile != null ? ", \"anml-file\": "+json(anmlFile) : "")
+                +", \"error\": "+json(msg)+"}";
+    }
+
+    /** Returns the given string as a JSON string literal. */
+    private static String json(String s) {
+        return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"")
+                .replace("\n", "\\n").replace("\r", "\\r").replace("\t", "\\t") + "\"";
     }
 }
@@ -20,6 +20,7 @@ import planstack.anml.pending.IntExpression;
 import planstack.anml.pending.LStateVariable;
 
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Ident(GAction.class)
@@ -113,15 +114,12 @@ public class GAction implements Identifiable {
 
     public final int id;
 
-    public GroundProblem.Invariant invariantOf(AbstractParameterizedStateVariable sv, GroundProblem gPb) {
-        List<InstanceRef> params = new LinkedList<>();
+    /** Returns the value of the invariant on the given (grounded) state variable, null if there is none. */
+    public InstanceRef invariantOf(AbstractParameterizedStateVariable sv, GroundProblem gPb) {
+        List<InstanceRef> params = new ArrayList<>(sv.jArgs().size());
         for(LVarRef v : sv.jArgs())
             params.add(valueOf(v, gPb.liftedPb));
-        for(GroundProblem.Invariant inv : gPb.invariants) {
-            if(inv.matches(sv.func(), params))
-                return inv;
-        }
-        return null;
+        return gPb.invariantValue(sv.func(), params);
     }
 
     public GLogStatement statementWithRef(LStatementRef ref) {
@@ -179,14 +177,14 @@ public class GAction implements Identifiable {
         for(AbstractConstraint as : abs.jConstraints()) {
             if (as instanceof AbstractEqualityConstraint) {
                 AbstractEqualityConstraint ec = (AbstractEqualityConstraint) as;
-                GroundProblem.Invariant inv = invariantOf(ec.sv(), gPb);
-                if (inv == null || inv.value != valueOf(ec.variable(), pb)) {
+                InstanceRef inv = invariantOf(ec.sv(), gPb);
+                if (inv == null || inv != valueOf(ec.variable(), pb)) {
                     throw new NotValidGroundAction("Action not valid1");
                 }
             } else if (as instanceof AbstractInequalityConstraint) {
                 AbstractInequalityConstraint ec = (AbstractInequalityConstraint) as;
-                GroundProblem.Invariant inv = invariantOf(ec.sv(), gPb);
-                if (inv == null || inv.value == valueOf(ec.variable(), pb)) {
+                InstanceRef inv = invariantOf(ec.sv(), gPb);
+                if (inv == null || inv == valueOf(ec.variable(), pb)) {
                     throw new NotValidGroundAction("Action not valid2");
                 }
             } else if (as instanceof AbstractVarEqualityConstraint) {
@@ -276,7 +274,7 @@ public class GAction implements Identifiable {
     }
 
     public int evaluate(IntExpression e) {
-        java.util.function.Function<IntExpression,IntExpression> t = expr -> {
+        Function<IntExpression,IntExpression> t = expr -> {
                 if(expr instanceof LStateVariable) {
                     List<InstanceRef> params = ((LStateVariable) expr).lsv().jArgs().stream()
                             .map(v -> valueOf(v, ggpb.liftedPb))
@@ -524,9 +522,56 @@ public class GAction implements Identifiable {
             mergeReceiver.merge(partialBindingses.get(i));
         }
 
+        // static constraints, checked on partial instantiations as soon as all their variables have a value
+        List<List<PartialBindings.Check>> checks = new ArrayList<>(vars.size());
+        for(int i=0 ; i<vars.size() ; i++)
+            checks.add(new ArrayList<>());
+        for(AbstractConstraint s : aa.jConstraints()) {
+            List<LVarRef> involved = new ArrayList<>();
+            PartialBindings.Check check = null;
+            if(s instanceof AbstractEqualityConstraint || s instanceof AbstractInequalityConstraint) {
+                final boolean equality = s instanceof AbstractEqualityConstraint;
+                final AbstractParameterizedStateVariable sv = equality ?
+                        ((AbstractEqualityConstraint) s).sv() : ((AbstractInequalityConstraint) s).sv();
+                final LVarRef variable = equality ?
+                        ((AbstractEqualityConstraint) s).variable() : ((AbstractInequalityConstraint) s).variable();
+                involved.addAll(sv.jArgs());
+                involved.add(variable);
+                final List<Function<InstanceRef[],InstanceRef>> args = sv.jArgs().stream()
+                        .map(v -> valueGetter(v, vars, pb))
+                        .collect(Collectors.toList());
+                final Function<InstanceRef[],InstanceRef> value = valueGetter(variable, vars, pb);
+                check = binding -> {
+                    List<InstanceRef> params = new ArrayList<>(args.size());
+                    for(Function<InstanceRef[],InstanceRef> arg : args)
+                        params.add(arg.apply(binding));
+                    InstanceRef inv = gPb.invariantValue(sv.func(), params);
+                    return inv != null && (inv == value.apply(binding)) == equality;
+                };
+            } else if(s instanceof AbstractVarInequalityConstraint) {
+                AbstractVarInequalityConstraint c = (AbstractVarInequalityConstraint) s;
+                involved.add(c.leftVar());
+                involved.add(c.rightVar());
+                final Function<InstanceRef[],InstanceRef> left = valueGetter(c.leftVar(), vars, pb);
+                final Function<InstanceRef[],InstanceRef> right = valueGetter(c.rightVar(), vars, pb);
+                check = binding -> left.apply(binding) != right.apply(binding);
+            }
+            if(check != null) {
+                int lastPosition = 0;
+                for(LVarRef v : involved)
+                    lastPosition = Math.max(lastPosition, vars.indexOf(v));
+                if(vars.isEmpty()) {
+                    if(!check.test(new InstanceRef[0]))
+                        return Collections.emptyList();
+                } else {
+                    checks.get(lastPosition).add(check);
+                }
+            }
+        }
+
         // get all possible instantiations from our partial binding
-        List<InstanceRef[]> instantiations = mergeReceiver.instantiations();
-        List<Map<LVarRef, InstanceRef>> paramsLists = new LinkedList<>();
+        List<InstanceRef[]> instantiations = mergeReceiver.instantiations(checks);
+        List<Map<LVarRef, InstanceRef>> paramsLists = new ArrayList<>(instantiations.size());
 
         for(InstanceRef[] instantiation : instantiations) {
             Map<LVarRef, InstanceRef> params = new HashMap<>();
@@ -540,11 +585,24 @@ public class GAction implements Identifiable {
         return paramsLists;
     }
 
+    /** Returns a function giving the value of v in an instantiation of vars. v might also be a constant of the problem. */
+    private static Function<InstanceRef[],InstanceRef> valueGetter(LVarRef v, List<LVarRef> vars, AnmlProblem pb) {
+        final int pos = vars.indexOf(v);
+        if(pos >= 0)
+            return binding -> binding[pos];
+        final InstanceRef constant = (InstanceRef) pb.context().getDefinition(v);
+        return binding -> constant;
+    }
+
     public static List<GAction> groundActions(GroundProblem gPb, AbstractAction aa, Planner planner) {
+        return groundActions(gPb, aa, getPossibleInstantiations(gPb, aa), planner);
+    }
+
+    /** Builds a ground action for each of the given instantiations of aa (typically given by getPossibleInstantiations). */
+    public static List<GAction> groundActions(GroundProblem gPb, AbstractAction aa, List<Map<LVarRef, InstanceRef>> paramsLists, Planner planner) {
         // all ground actions corresponding to aa
-        List<GAction> actions = new LinkedList<>();
+        List<GAction> actions = new ArrayList<>(paramsLists.size());
 
-        List<Map<LVarRef, InstanceRef>> paramsLists = getPossibleInstantiations(gPb, aa);
         for(Map<LVarRef, InstanceRef> params : paramsLists) {
             try {
                 actions.add(new GAction(aa, params, gPb, planner));
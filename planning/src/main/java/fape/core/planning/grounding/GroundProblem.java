@@ -17,6 +17,7 @@ import planstack.anml.model.concrete.statements.Persistence;
 import planstack.anml.model.concrete.statements.Transition;
 
 import java.util.*;
+import java.util.stream.Collectors;
 
 public class GroundProblem {
 
@@ -25,8 +26,22 @@ public class GroundProblem {
 
     public final List<GAction> gActions;
 
+    /** Number of chronicles of the lifted problem that were accounted for in this ground problem. */
+    private int numProcessedChronicles;
+
+    /** Values (in the order of allVars()) of the grounded instantiations of each lifted action.
+     *  Lazily built on the first extension of the problem. */
+    private Map<AbstractAction, Set<List<InstanceRef>>> groundedInstantiations = null;
+
     final List<Invariant> invariants = new LinkedList<>();
     public final Map<IntegerInvariantKey, Integer> intInvariants = new HashMap<>();
+    /** Value of each invariant, indexed by its function and parameters. */
+    private final Map<IntegerInvariantKey, InstanceRef> invariantValues = new HashMap<>();
+
+    /** Returns the value of the invariant on f(params), null if there is none. */
+    public InstanceRef invariantValue(Function f, List<InstanceRef> params) {
+        return invariantValues.get(new IntegerInvariantKey(f, params));
+    }
 
     public class Invariant {
         public final Function f;
@@ -122,23 +137,95 @@ public class GroundProblem {
         this.gActions = new LinkedList<>();
         this.planner = planner;
 
-        for(Chronicle c : liftedPb.chronicles()) {
-            for(BindingConstraint bc : c.bindingConstraints()) {
-                if(bc instanceof AssignmentConstraint) {
-                    AssignmentConstraint ac = (AssignmentConstraint) bc;
-                    invariants.add(new Invariant(ac.sv().func(), ac.sv().args(), ac.variable()));
-                }
-                if(bc instanceof IntegerAssignmentConstraint) {
-                    IntegerAssignmentConstraint iac = (IntegerAssignmentConstraint) bc;
-                    intInvariants.put(new IntegerInvariantKey(iac.sv().func(), iac.sv().args()), iac.value());
-                }
+        for(Chronicle c : liftedPb.chronicles())
+            recordInvariants(c);
+        numProcessedChronicles = liftedPb.chronicles().size();
+
+        // Instantiations of the different lifted actions are computed concurrently (unless they are in the cache).
+        // Ground actions are then built sequentially, in the order of the lifted actions, so that ground actions,
+        // state variables and fluents always get the same IDs.
+        List<AbstractAction> liftedActions = new ArrayList<>(liftedPb.abstractActions());
+        List<List<Map<LVarRef, InstanceRef>>> instantiations = GroundingCache.load(liftedPb, liftedActions);
+        final boolean fromCache = instantiations != null;
+        if(!fromCache)
+            instantiations = liftedActions.parallelStream()
+                    .map(aa -> GAction.getPossibleInstantiations(this, aa))
+                    .collect(Collectors.toList());
+        List<List<GAction>> groundedByAction = new ArrayList<>(liftedActions.size());
+        for(int i=0 ; i<liftedActions.size() ; i++) {
+            List<GAction> grounded = GAction.groundActions(this, liftedActions.get(i), instantiations.get(i), planner);
+            groundedByAction.add(grounded);
+            this.gActions.addAll(grounded);
+        }
+        if(!fromCache)
+            GroundingCache.save(liftedPb, liftedActions, groundedByAction);
+    }
+
+    private void recordInvariants(Chronicle c) {
+        for(BindingConstraint bc : c.bindingConstraints()) {
+            if(bc instanceof AssignmentConstraint) {
+                AssignmentConstraint ac = (AssignmentConstraint) bc;
+                Invariant inv = new Invariant(ac.sv().func(), ac.sv().args(), ac.variable());
+                invariants.add(inv);
+                invariantValues.putIfAbsent(new IntegerInvariantKey(inv.f, inv.params), inv.value);
+            }
+            if(bc instanceof IntegerAssignmentConstraint) {
+                IntegerAssignmentConstraint iac = (IntegerAssignmentConstraint) bc;
+                intInvariants.put(new IntegerInvariantKey(iac.sv().func(), iac.sv().args()), iac.value());
             }
         }
+    }
 
-        for(AbstractAction liftedAct : liftedPb.abstractActions()) {
-            List<GAction> grounded = GAction.groundActions(this, liftedAct, planner);
-            this.gActions.addAll(grounded);
+    /**
+     * Grounds the part of the lifted problem that appeared since the last call (or since the creation of this
+     * ground problem): chronicles added to the lifted problem (e.g. through AnmlProblem.extendWithAnmlText)
+     * might declare new instances and invariants, making new instantiations of the lifted actions possible.
+     *
+     * Only the ground actions that did not exist before are created. As ground actions, state variables and
+     * fluents get their IDs in the order of their creation, all previously allocated IDs remain valid.
+     *
+     * @return The ground actions that were created, in the order of their IDs. Those are appended to allActions().
+     */
+    public List<GAction> extendWithNewChronicles() {
+        if(numProcessedChronicles == liftedPb.chronicles().size())
+            return Collections.emptyList();
+        for(int i=numProcessedChronicles ; i<liftedPb.chronicles().size() ; i++)
+            recordInvariants(liftedPb.chronicles().get(i));
+        numProcessedChronicles = liftedPb.chronicles().size();
+
+        if(groundedInstantiations == null) {
+            groundedInstantiations = new HashMap<>();
+            for(GAction ga : gActions)
+                groundedInstantiations.computeIfAbsent(ga.abs, x -> new HashSet<>()).add(Arrays.asList(ga.values));
         }
+
+        // instantiations are enumerated again (this is cheap compared to the construction of ground actions)
+        // and only the ones that were not grounded before are turned into ground actions
+        List<AbstractAction> liftedActions = new ArrayList<>(liftedPb.abstractActions());
+        List<List<Map<LVarRef, InstanceRef>>> instantiations = liftedActions.parallelStream()
+                .map(aa -> GAction.getPossibleInstantiations(this, aa))
+                .collect(Collectors.toList());
+        List<GAction> newActions = new ArrayList<>();
+        for(int i=0 ; i<liftedActions.size() ; i++) {
+            final AbstractAction aa = liftedActions.get(i);
+            final Set<List<InstanceRef>> known = groundedInstantiations.computeIfAbsent(aa, x -> new HashSet<>());
+            List<Map<LVarRef, InstanceRef>> unknown = instantiations.get(i).stream()
+                    .filter(params -> !known.contains(valuesOf(aa, params)))
+                    .collect(Collectors.toList());
+            for(GAction ga : GAction.groundActions(this, aa, unknown, planner)) {
+                known.add(Arrays.asList(ga.values));
+                newActions.add(ga);
+            }
+        }
+        gActions.addAll(newActions);
+        return newActions;
+    }
+
+    private static List<InstanceRef> valuesOf(AbstractAction aa, Map<LVarRef, InstanceRef> params) {
+        List<InstanceRef> values = new ArrayList<>(aa.allVars().length);
+        for(LVarRef v : aa.allVars())
+            values.add(params.get(v));
+        return values;
     }
 
     public List<GAction> allActions() {
@@ -0,0 +1,158 @@
+package fape.core.planning.grounding;
+
+import fape.core.planning.planner.GlobalOptions;
+import fape.util.Telemetry;
+import planstack.anml.model.AnmlProblem;
+import planstack.anml.model.LVarRef;
+import planstack.anml.model.abs.AbstractAction;
+import planstack.anml.model.concrete.InstanceRef;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * On-disk cache of the valid instantiations of all lifted actions of a problem.
+ *
+ * A cache file is identified by the hash of the ANML inputs of the problem (AnmlProblem.inputsHash()) and stored in
+ * the directory given by the option "grounding-cache-dir" (the cache is disabled if this option is empty).
+ * On a cache hit, ground actions are directly built from the recorded instantiations: the enumeration of
+ * instantiations and the rejection of invalid ones are skipped.
+ *
+ * File layout (big endian): magic, version, hash (length + UTF-8 bytes), table of instance names (count, then
+ * length + UTF-8 bytes for each), then for each lifted action in the order of the problem:
+ * its name, its number of variables, the name of each variable, its number of instantiations and for each
+ * instantiation the index of the value of each variable (in the same order) in the table of instances.
+ */
+class GroundingCache {
+
+    private static final int MAGIC = 0x46415045; // "FAPE"
+    private static final int VERSION = 1;
+
+    static File cacheFile(AnmlProblem pb) {
+        String dir = GlobalOptions.getStringOption("grounding-cache-dir");
+        if(dir.isEmpty())
+            return null;
+        return new File(dir, "grounding-"+pb.inputsHash()+".bin");
+    }
+
+    /**
+     * Returns the instantiations of each of the lifted actions (in the same order) as recorded in the cache.
+     * Returns null if the cache is disabled, if there is no entry for this problem or if the entry does not
+     * match the given actions.
+     */
+    static List<List<Map<LVarRef, InstanceRef>>> load(AnmlProblem pb, List<AbstractAction> liftedActions) {
+        File f = cacheFile(pb);
+        if(f == null || !f.isFile())
+            return null;
+
+        try (RandomAccessFile raf = new RandomAccessFile(f, "r"); FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer buff = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if(buff.getInt() != MAGIC || buff.getInt() != VERSION || !readString(buff).equals(pb.inputsHash()))
+                return null;
+
+            InstanceRef[] instances = new InstanceRef[buff.getInt()];
+            for(int i=0 ; i<instances.length ; i++)
+                instances[i] = pb.instance(readString(buff));
+
+            List<List<Map<LVarRef, InstanceRef>>> all = new ArrayList<>(liftedActions.size());
+            for(AbstractAction aa : liftedActions) {
+                if(!readString(buff).equals(aa.name()) || buff.getInt() != aa.allVars().length)
+                    return null;
+                // variables in the order in which their values were recorded
+                LVarRef[] vars = new LVarRef[aa.allVars().length];
+                for(int i=0 ; i<vars.length ; i++) {
+                    String varName = readString(buff);
+                    for(LVarRef v : aa.allVars())
+                        if(v.id().equals(varName))
+                            vars[i] = v;
+                    if(vars[i] == null)
+                        return null;
+                }
+                final int numInstantiations = buff.getInt();
+                List<Map<LVarRef, InstanceRef>> instantiations = new ArrayList<>(numInstantiations);
+                for(int i=0 ; i<numInstantiations ; i++) {
+                    Map<LVarRef, InstanceRef> params = new HashMap<>();
+                    for(LVarRef var : vars)
+                        params.put(var, instances[buff.getInt()]);
+                    instantiations.add(params);
+                }
+                all.add(instantiations);
+            }
+            return all;
+        } catch (IOException | RuntimeException e) {
+            // unreadable or corrupted entry (or one that refers to unknown instances), just ground the problem
+            return null;
+        }
+    }
+
+    /**
+     * Records the ground actions of each lifted action (in the same order) in the cache.
+     * Returns true if the entry was written. A failure (e.g. a cache directory that is not writable) does not prevent
+     * planning: it is reported on the error output and counted in the telemetry ("grounding-cache-write-failure"),
+     * and no partial entry is left in the cache directory.
+     */
+    static boolean save(AnmlProblem pb, List<AbstractAction> liftedActions, List<List<GAction>> groundActions) {
+        File f = cacheFile(pb);
+        if(f == null)
+            return false;
+
+        Map<InstanceRef, Integer> instanceIndex = new LinkedHashMap<>();
+        for(List<GAction> gas : groundActions)
+            for(GAction ga : gas)
+                for(InstanceRef value : ga.values)
+                    instanceIndex.putIfAbsent(value, instanceIndex.size());
+
+        File tmp = null;
+        try {
+            f.getParentFile().mkdirs();
+            // write to a temporary file first so that concurrent planners never read a partial entry
+            tmp = File.createTempFile("grounding-", ".tmp", f.getParentFile());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writeString(out, pb.inputsHash());
+                out.writeInt(instanceIndex.size());
+                for(InstanceRef instance : instanceIndex.keySet())
+                    writeString(out, instance.instance());
+                for(int i=0 ; i<liftedActions.size() ; i++) {
+                    AbstractAction aa = liftedActions.get(i);
+                    writeString(out, aa.name());
+                    out.writeInt(aa.allVars().length);
+                    for(LVarRef var : aa.allVars())
+                        writeString(out, var.id());
+                    out.writeInt(groundActions.get(i).size());
+                    for(GAction ga : groundActions.get(i)) {
+                        assert ga.abs == aa && Arrays.equals(ga.variables, aa.allVars());
+                        for(InstanceRef value : ga.values)
+                            out.writeInt(instanceIndex.get(value));
+                    }
+                }
+            }
+            Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            Telemetry.count("grounding-cache-write-failure");
+            System.err.println("Unable to write the grounding cache "+f+" (the problem will be grounded again on the next run): "+e);
+            if(tmp != null)
+                tmp.delete();
+            return false;
+        }
+    }
+
+    private static String readString(MappedByteBuffer buff) {
+        byte[] bytes = new byte[buff.getInt()];
+        buff.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -5,6 +5,7 @@ import planstack.anml.model.LVarRef;
 import planstack.anml.model.concrete.InstanceRef;
 
 import java.util.*;
+import java.util.function.Predicate;
 
 /**
  * This class is used to represent partial bindings of a set of variables.
@@ -12,6 +13,10 @@ import java.util.*;
  * bindings that are likely to be valid.
  */
 public class PartialBindings {
+
+    /** A test on a (partial) instantiation, whose values are given in the order of allVars. */
+    public interface Check extends Predicate<InstanceRef[]> {}
+
     /** All vars for which a value will be needed */
     final LVarRef[] allVars;
 
@@ -287,33 +292,52 @@ public class PartialBindings {
      * This is done by giving a value to all free variables.
      */
     public List<InstanceRef[]> instantiations() {
+        return instantiations(null);
+    }
+
+    /**
+     * Get all possible instantiations fulfiling this partial bindings and the given checks.
+     * Variables are given a value in the order of allVars. checks.get(i) (if checks is not null) contains
+     * predicates involving only variables up to i: they are evaluated as soon as variable i is bound so that
+     * invalid partial instantiations are discarded before being extended.
+     */
+    public List<InstanceRef[]> instantiations(List<List<Check>> checks) {
         int[] eqs = equalitiesPositions();
 
-        List<InstanceRef[]> currentBindings = new LinkedList<>(partialBindings);
+        List<InstanceRef[]> currentBindings = new ArrayList<>(partialBindings);
         for(int i=0 ; i<allVars.length ; i++) {
-            if(focusesOn(allVars[i]))
-                continue; // already contained in initial bindings
-            List<InstanceRef[]> extendedBindings = new LinkedList<>();
-            for(InstanceRef[] currentBinding : currentBindings) {
-                // current binding is the possible bindings of all variables before i
-                if(eqs[i] != -1) {
-                    assert eqs[i] < i;
-                    // variable at i is equal to variable at eqs[i], only one binding possible
-                    InstanceRef[] extendedBinding = Arrays.copyOf(currentBinding, currentBinding.length);
-                    extendedBinding[i] = extendedBinding[eqs[i]];
-                    assert extendedBinding[i] != null;
-                    extendedBindings.add(extendedBinding);
-                } else {
-                    // no equality constraints, create a new extendedBinding for each value in the domain of allVars[i]
-                    for (InstanceRef val : possibleValues.get(i)) {
+            if(!focusesOn(allVars[i])) { // otherwise, already contained in initial bindings
+                List<InstanceRef[]> extendedBindings = new ArrayList<>();
+                for (InstanceRef[] currentBinding : currentBindings) {
+                    // current binding is the possible bindings of all variables before i
+                    if (eqs[i] != -1) {
+                        assert eqs[i] < i;
+                        // variable at i is equal to variable at eqs[i], only one binding possible
                         InstanceRef[] extendedBinding = Arrays.copyOf(currentBinding, currentBinding.length);
-                        extendedBinding[i] = val;
+                        extendedBinding[i] = extendedBinding[eqs[i]];
+                        assert extendedBinding[i] != null;
                         extendedBindings.add(extendedBinding);
+                    } else {
+                        // no equality constraints, create a new extendedBinding for each value in the domain of allVars[i]
+                        for (InstanceRef val : possibleValues.get(i)) {
+                            InstanceRef[] extendedBinding = Arrays.copyOf(currentBinding, currentBinding.length);
+                            extendedBinding[i] = val;
+                            extendedBindings.add(extendedBinding);
+                        }
                     }
                 }
+                //  bindings of all variables until i
+                currentBindings = extendedBindings;
+            }
+            if(checks != null && !checks.get(i).isEmpty()) {
+                final List<Check> checksOfI = checks.get(i);
+                currentBindings.removeIf(binding -> {
+                    for(Check check : checksOfI)
+                        if(!check.test(binding))
+                            return true;
+                    return false;
+                });
             }
-            //  bindings of all variables until i
-            currentBindings = extendedBindings;
         }
         return currentBindings;
     }
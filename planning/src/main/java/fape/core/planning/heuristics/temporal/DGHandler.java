@@ -10,6 +10,7 @@ import fape.core.planning.states.State;
 import fape.core.planning.timelines.Timeline;
 import fape.util.EffSet;
 import fape.util.TinyLogger;
+import fr.laas.fape.structures.IR2IntMap;
 import fr.laas.fape.structures.IRSet;
 import fr.laas.fape.structures.IntRep;
 import planstack.anml.model.LVarRef;
@@ -20,6 +21,7 @@ import planstack.anml.model.concrete.VarRef;
 import planstack.constraints.bindings.Domain;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 public class DGHandler extends fape.core.planning.search.Handler {
@@ -49,22 +51,8 @@ public class DGHandler extends fape.core.planning.search.Handler {
             }
         }
 
-        for (GAction ga : pl.preprocessor.getAllActions()) {
-            // values for all variables of this action
-            List<String> values = new LinkedList<>();
-            for (LVarRef var : ga.variables)
-                values.add(ga.valueOf(var).instance());
-            // add possible tuple to instantiation constraints
-            st.csp.bindings().addAllowedTupleToNAryConstraint(ga.abs.name(), values, ga.id);
-
-            // values for arguments of this action
-            List<String> argValues = new LinkedList<>();
-            for (LVarRef var : ga.abs.args())
-                argValues.add(ga.valueOf(var).instance());
-            argValues.add(ga.abs.name());
-            // add possible tuple to supporter constraints
-            st.csp.bindings().addAllowedTupleToNAryConstraint(ga.abs.taskName(), argValues, ga.id);
-        }
+        for (GAction ga : pl.preprocessor.getAllActions())
+            recordAllowedTuples(st, ga);
 
         // notify ourselves of the presence of any actions and tasks in the plan
         for (Action a : st.getAllActions())
@@ -78,6 +66,49 @@ public class DGHandler extends fape.core.planning.search.Handler {
         st.checkConsistency();
     }
 
+    /** Adds the ground action as a possible instantiation of its lifted action and as a possible supporter of its task. */
+    private static void recordAllowedTuples(State st, GAction ga) {
+        // values for all variables of this action
+        List<String> values = new LinkedList<>();
+        for (LVarRef var : ga.variables)
+            values.add(ga.valueOf(var).instance());
+        // add possible tuple to instantiation constraints
+        st.csp.bindings().addAllowedTupleToNAryConstraint(ga.abs.name(), values, ga.id);
+
+        // values for arguments of this action
+        List<String> argValues = new LinkedList<>();
+        for (LVarRef var : ga.abs.args())
+            argValues.add(ga.valueOf(var).instance());
+        argValues.add(ga.abs.name());
+        // add possible tuple to supporter constraints
+        st.csp.bindings().addAllowedTupleToNAryConstraint(ga.abs.taskName(), argValues, ga.id);
+    }
+
+    /**
+     * Records the new ground actions in the CSP and extends the dependency graph of the state with them.
+     * The domains of the variables already in the state are not extended: actions and tasks already in the plan
+     * keep their previous ground versions and supporters while the new ground actions are available to any
+     * action and task inserted from now on.
+     */
+    @Override
+    public void problemExtended(State st, Planner pl, Collection<GAction> newActions) {
+        if(newActions.isEmpty())
+            return;
+        for (GAction ga : newActions) {
+            st.csp.bindings().addPossibleValue(ga.id);
+            recordAllowedTuples(st, ga);
+        }
+
+        Set<GAction> added = new HashSet<>(newActions);
+        List<RAct> newRelaxedActions = pl.preprocessor.getRelaxedActions().stream()
+                .filter(ra -> added.contains(ra.act))
+                .collect(Collectors.toList());
+        st.getExtension(DepGraphCore.StateExt.class).extendWith(newRelaxedActions);
+
+        propagateNetwork(st, pl);
+        st.checkConsistency();
+    }
+
     @Override
     protected void apply(State st, StateLifeTime time, Planner planner) {
         if (time == StateLifeTime.SELECTION) {
@@ -140,40 +171,63 @@ public class DGHandler extends fape.core.planning.search.Handler {
         final Preprocessor pp = st.pl.preprocessor;
         final GroundProblem gpb = pp.getGroundProblem();
 
-        List<TempFluent> tempFluents = new ArrayList<>();
+        // earliest time of each fact (fluents and open tasks) in the current state, indexed by the ID of its node.
+        // Only the earliest occurrence of a fact matters for propagation so any other one is discarded
+        final IR2IntMap<DependencyGraph.Node> factsTimes = new IR2IntMap<>(pp.store.getIntRep(DependencyGraph.Node.class));
+
         // gather all fluents appearing in the partial plan
         // those fluents can not be used to support changes
-        gpb.tempsFluents(st).stream()
-                .flatMap(tfs -> tfs.fluents.stream().map(f -> new TempFluent(
-                        st.getEarliestStartTime(tfs.timepoints.iterator().next()),
-                        TempFluent.DGFluent.getBasicFluent(f, pp.store))))
-                .forEach(tempFluents::add);
+        for(TempFluents tfs : gpb.tempsFluents(st)) {
+            final int est = st.getEarliestStartTime(tfs.timepoints.iterator().next());
+            for(Fluent f : tfs.fluents)
+                recordFact(factsTimes, basicFluents.get(f, pp.store), est);
+        }
 
         // gather all fluents achieved and not involved in any causal link
         // those cn be used to support transitions
-        gpb.tempsFluentsThatCanSupportATransition(st).stream()
-                .flatMap(tfs -> tfs.fluents.stream().map(f -> new TempFluent(
-                        st.getEarliestStartTime(tfs.timepoints.iterator().next()),
-                        TempFluent.DGFluent.getFluentWithChange(f, pp.store))))
-                .forEach(tempFluents::add);
+        for(TempFluents tfs : gpb.tempsFluentsThatCanSupportATransition(st)) {
+            final int est = st.getEarliestStartTime(tfs.timepoints.iterator().next());
+            for(Fluent f : tfs.fluents)
+                recordFact(factsTimes, fluentsWithChange.get(f, pp.store), est);
+        }
 
-        Set<TempFluent> tasks = new HashSet<>();
+        // gather all tasks that might be achieved by the supporters of open tasks
+        // (many supporters typically share the same task, hence the look up of the previously seen ones)
+        final IR2IntMap<GTask> tasksTimes = new IR2IntMap<>(pp.store.getIntRep(GTask.class));
         for(Task t : st.getOpenTasks()) {
-            int est = st.getEarliestStartTime(t.start());
-            for(GAction ga : new EffSet<>(pp.groundActionIntRepresentation(), st.csp.bindings().rawDomain(t.groundSupportersVar()).toBitSet())) {
-                tasks.add(new TempFluent(est, TempFluent.DGFluent.from(ga.task, st.pb, pp.store)));
+            final int est = st.getEarliestStartTime(t.start());
+            final BitSet supporters = st.csp.bindings().rawDomain(t.groundSupportersVar()).toBitSet();
+            for(int gaID = supporters.nextSetBit(0) ; gaID >= 0 ; gaID = supporters.nextSetBit(gaID+1)) {
+                final GTask task = pp.getGroundAction(gaID).task;
+                if(!tasksTimes.containsKey(task.getID()) || tasksTimes.get(task.getID()) > est) {
+                    tasksTimes.put(task.getID(), est);
+                    recordFact(factsTimes, taskFluents.get(task, st, pp.store), est);
+                }
             }
         }
 
-        // all facts (fluents an open tasks) in the current state
-        List<TempFluent> allFacts = new ArrayList<>();
-        allFacts.addAll(tempFluents);
-        allFacts.addAll(tasks);
+        // all facts (fluents an open tasks) in the current state, ordered by node ID so that two states
+        // with the same facts yield the same list (and thus the same interned fact action)
+        final List<TempFluent> allFacts = new ArrayList<>(factsTimes.size());
+        final IntRep<DependencyGraph.Node> nodesRep = pp.store.getIntRep(DependencyGraph.Node.class);
+        for(PrimitiveIterator.OfInt it = factsTimes.keysIterator() ; it.hasNext() ; ) {
+            final int nodeID = it.nextInt();
+            allFacts.add(new TempFluent(factsTimes.get(nodeID), (TempFluent.DGFluent) nodesRep.fromInt(nodeID)));
+        }
 
-        // create new graph from the core graph (actions) and the facts
-        StateDepGraph graph = new StateDepGraph(ext.getCoreGraph(), allFacts, pl);
-        ext.currentGraph = graph;
-        graph.propagate(ext.prevGraph);
+        final StateDepGraph graph;
+        if(ext.prevGraph.isPresent()
+                && ext.prevGraph.get().core == ext.getCoreGraph()
+                && ext.prevGraph.get().facts.getEffects().equals(allFacts)) {
+            // same facts on the same core as our ancestor, the result of propagation would be identical
+            graph = ext.prevGraph.get();
+            ext.currentGraph = graph;
+        } else {
+            // create new graph from the core graph (actions) and the facts
+            graph = new StateDepGraph(ext.getCoreGraph(), allFacts, pl);
+            ext.currentGraph = graph;
+            graph.propagate(ext.prevGraph);
+        }
 
         if(!pp.fluentsInitialized()) {
             IRSet<Fluent> fluents = new IRSet<>(pp.store.getIntRep(Fluent.class));
@@ -197,7 +251,7 @@ public class DGHandler extends fape.core.planning.search.Handler {
             st.csp.bindings().restrictDomain(t.groundSupportersVar(), taskSupportersDom);
 
         // all task that can be added to the plan
-        Set<GTask> addableTasks = new HashSet<>(); // FIXME: use specialized implementation
+        IRSet<GTask> addableTasks = new IRSet<>(pp.store.getIntRep(GTask.class));
         for(GAction ga : graph.addableActs) {
             addableTasks.addAll(ga.subTasks);
         }
@@ -252,12 +306,64 @@ public class DGHandler extends fape.core.planning.search.Handler {
                 st.enforceDelay(st.pb.start(), og.getConsumeTimePoint(), optimisticEarliestTime);
             initialMakespan = Math.max(initialMakespan, optimisticEarliestTime);
         }
-        if(!Planning.quiet && isFirstPass && GlobalOptions.getBooleanOption("reachability-instrumentation")) {
+        if(!Planning.quiet && isFirstPass.getAndSet(false) && GlobalOptions.getBooleanOption("reachability-instrumentation")) {
             System.out.println("Initial Makespan: "+initialMakespan);
         }
 
         st.checkConsistency();
-        isFirstPass = false;
     }
-    private boolean isFirstPass = true;
+
+    /** True until the first propagation. Atomic as the handler is shared by all search threads. */
+    private final AtomicBoolean isFirstPass = new AtomicBoolean(true);
+
+    /** Records that the given fact is true at the given time, unless it was already known to be true earlier. */
+    private static void recordFact(IR2IntMap<DependencyGraph.Node> factsTimes, TempFluent.DGFluent fact, int time) {
+        if(!factsTimes.containsKey(fact.getID()) || factsTimes.get(fact.getID()) > time)
+            factsTimes.put(fact.getID(), time);
+    }
+
+    private final DGFluentCache basicFluents = new DGFluentCache(false);
+    private final DGFluentCache fluentsWithChange = new DGFluentCache(true);
+    private final DGFluentCache taskFluents = new DGFluentCache(false);
+
+    /**
+     * Associates fluents and tasks (by ID) to their node in the dependency graph, to avoid a
+     * look up in the store (and the allocation of its key) for every fact of every state.
+     */
+    private static final class DGFluentCache {
+        /** If true, fluents are associated to their SVFluentWithChange node rather than to their SVFluent one. */
+        private final boolean withChange;
+        private GStore store = null;
+        private TempFluent.DGFluent[] nodes = new TempFluent.DGFluent[0];
+
+        private TempFluent.DGFluent lookup(int id, GStore store) {
+            if(this.store != store) {
+                this.store = store;
+                nodes = new TempFluent.DGFluent[0];
+            }
+            if(id >= nodes.length)
+                nodes = Arrays.copyOf(nodes, Math.max(id+1, nodes.length*2));
+            return nodes[id];
+        }
+
+        DGFluentCache(boolean withChange) { this.withChange = withChange; }
+
+        synchronized TempFluent.DGFluent get(Fluent f, GStore store) {
+            TempFluent.DGFluent n = lookup(f.getID(), store);
+            if(n == null) {
+                n = withChange ? TempFluent.DGFluent.getFluentWithChange(f, store) : TempFluent.DGFluent.getBasicFluent(f, store);
+                nodes[f.getID()] = n;
+            }
+            return n;
+        }
+
+        synchronized TempFluent.DGFluent get(GTask t, State st, GStore store) {
+            TempFluent.DGFluent n = lookup(t.getID(), store);
+            if(n == null) {
+                n = TempFluent.DGFluent.from(t, st.pb, store);
+                nodes[t.getID()] = n;
+            }
+            return n;
+        }
+    }
 }
\ No newline at end of file
@@ -38,6 +38,28 @@ public class DepGraphCore implements DependencyGraph {
         }
     }
 
+    /**
+     * Creates a copy of a (non-reduced) core graph extended with new actions, typically the ones made possible
+     * by an extension of the problem. The base graph is left untouched and can still be used by other states.
+     */
+    public DepGraphCore(DepGraphCore base, Collection<RAct> newActions) {
+        assert !base.wasReduced : "Only a complete graph can be extended with new actions.";
+        this.store = base.store;
+        this.wasReduced = false;
+        this.dmax = base.dmax;
+
+        // edges lists of actions are never modified once created while those of fluents might be extended
+        actOut.putAll(base.actOut);
+        actIn.putAll(base.actIn);
+        for(Map.Entry<DGFluent, List<MaxEdge>> e : base.fluentOut.entrySet())
+            fluentOut.put(e.getKey(), new ArrayList<>(e.getValue()));
+        for(Map.Entry<DGFluent, List<MinEdge>> e : base.fluentIn.entrySet())
+            fluentIn.put(e.getKey(), new ArrayList<>(e.getValue()));
+
+        for(RAct act : newActions)
+            addAction(act);
+    }
+
     public IR2IntMap<Node> getDefaultEarliestApprearances() {
         IR2IntMap<Node> eas = new IR2IntMap<Node>(store.getIntRep(Node.class));
         for(DGFluent f : fluentIn.keySet())
@@ -118,21 +140,44 @@ public class DepGraphCore implements DependencyGraph {
      */
     public static class StateExt implements StateExtension {
 
-        private final DepGraphCore core;
-        public final Optional<StateDepGraph> prevGraph;
+        private DepGraphCore core;
+        public Optional<StateDepGraph> prevGraph;
+
+        /** Complete (non-reduced) graph from which the core of this state was derived. */
+        private DepGraphCore completeCore;
 
         public StateDepGraph currentGraph = null;
 
         public StateExt(DepGraphCore core) {
+            assert !core.wasReduced;
             this.core = core;
+            this.completeCore = core;
             prevGraph = Optional.empty();
         }
 
-        private StateExt(StateDepGraph prevGraph) {
+        private StateExt(StateDepGraph prevGraph, DepGraphCore completeCore) {
             this.core = prevGraph.core;
+            this.completeCore = completeCore;
             this.prevGraph = Optional.of(prevGraph);
         }
 
+        private StateExt(DepGraphCore core, DepGraphCore completeCore) {
+            this.core = core;
+            this.completeCore = completeCore;
+            this.prevGraph = Optional.empty();
+        }
+
+        /**
+         * Replaces the core of this state by the complete graph extended with the given actions.
+         * Previous reductions are dropped as they might have removed actions made reachable by the new ones.
+         */
+        public void extendWith(Collection<RAct> newActions) {
+            completeCore = new DepGraphCore(completeCore, newActions);
+            core = completeCore;
+            prevGraph = Optional.empty();
+            currentGraph = null;
+        }
+
         public DepGraphCore getCoreGraph() {
             if(currentGraph != null)
                 return currentGraph.core; // this version might be more recent
@@ -143,9 +188,9 @@ public class DepGraphCore implements DependencyGraph {
         @Override
         public StateExt clone(State st) {
             if(currentGraph != null)
-                return new StateExt(currentGraph);
+                return new StateExt(currentGraph, completeCore);
             else
-                return new StateExt(core);
+                return new StateExt(core, completeCore);
         }
     }
 
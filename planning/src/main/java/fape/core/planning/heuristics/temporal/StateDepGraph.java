@@ -447,10 +447,22 @@ public class StateDepGraph implements DependencyGraph {
                 labelsPred.remove(ancestorGraph.get().facts);
                 setPred(facts, facts);
 
-                // for all nodes, achieved by the ancestor's FactAction, check if we need to update it
-                // (and if necessary put it in the queue)
+                // earliest time of each of our facts
+                final IR2IntMap<Node> factsTimes = new IR2IntMap<>(core.store.getIntRep(Node.class));
+                for(TempFluent tf : facts.getEffects())
+                    if(!factsTimes.containsKey(tf.fluent) || factsTimes.get(tf.fluent) > tf.getTime())
+                        factsTimes.put(tf.fluent, tf.getTime());
+
+                // only propagate the difference with the ancestor's facts: a node achieved by the ancestor's
+                // FactAction that we still achieve no later keeps its value and is simply attached to our FactAction.
+                // Other ones (the fact was removed or delayed) are updated and put in the queue if necessary.
+                // New facts need no processing as they cannot make any node earlier than in the ancestor's graph.
                 for(TempFluent tf : ancestorGraph.get().facts.getEffects()) {
                     if(possible(tf.fluent) && pred(tf.fluent) == ancestorGraph.get().facts) {
+                        if(factsTimes.containsKey(tf.fluent) && factsTimes.get(tf.fluent) <= cost(tf.fluent)) {
+                            setPred(tf.fluent, facts);
+                            continue;
+                        }
                         int bestCost = Integer.MAX_VALUE;
                         Node bestPred = null;
                         for(MinEdge e : inEdges(tf.fluent)) {
@@ -0,0 +1,93 @@
+package fape.core.planning.planner;
+
+import fape.core.planning.grounding.GAction;
+import fape.core.planning.states.State;
+import planstack.anml.model.concrete.ActRef;
+
+import java.util.List;
+
+/**
+ * Follows the execution of a plan found by a planner and repairs it when execution deviates from it.
+ *
+ * Execution updates (start, end or failure of actions, current time) are applied to a copy of the current plan.
+ * A call to repair() then restarts search from this updated copy: all actions, causal links and the task network
+ * of the plan are kept and only the flaws introduced by execution (e.g. open goals left by a failed action) are
+ * to be solved. The planner is reused, hence preprocessing is not done again.
+ *
+ * Updates might raise an InconsistencyException if they contradict the plan (e.g. an action started earlier than
+ * allowed by its constraints).
+ */
+public class ExecutionMonitor {
+
+    private final Planner planner;
+
+    /** Last plan found, never modified. */
+    private State plan;
+
+    /** Copy of the plan on which updates are applied, null if there was no update since the last plan. */
+    private State updated = null;
+
+    public ExecutionMonitor(Planner planner, State solution) {
+        assert solution.pl == planner : "The solution was not found by this planner.";
+        this.planner = planner;
+        this.plan = solution;
+    }
+
+    /** Returns the last plan found (not including updates that happened since then). */
+    public State getPlan() { return plan; }
+
+    /** Returns true if some updates were applied since the last plan was found. */
+    public boolean hasPendingUpdates() { return updated != null; }
+
+    private State updated() {
+        if(updated == null)
+            updated = plan.cc();
+        return updated;
+    }
+
+    public void actionStarted(ActRef action, int startTime) {
+        updated().setActionExecuting(action, startTime);
+    }
+
+    public void actionSucceeded(ActRef action, int endTime) {
+        updated().setActionSuccess(action, endTime);
+    }
+
+    public void actionFailed(ActRef action, int failureTime) {
+        updated().setActionFailed(action, failureTime);
+    }
+
+    public void setCurrentTime(int currentTime) {
+        updated().setCurrentTime(currentTime);
+    }
+
+    /**
+     * Extends the problem with the given ANML (typically new instances and facts about them) and applies this
+     * extension to the plan being updated. Only the part of the problem affected by the extension is grounded.
+     */
+    public void extendProblem(String anml) {
+        planner.pb.extendWithAnmlText(anml);
+        List<GAction> newActions = planner.preprocessor.problemExtended();
+        updated().problemExtended(newActions);
+    }
+
+    /**
+     * Searches for a plan that accounts for all updates since the last plan.
+     * If there is none, updates are kept and can be completed before trying again.
+     *
+     * @param deadline Absolute time (in ms) at which the planner must stop.
+     * @return The new plan or null if none was found before the deadline (see planner.planState).
+     */
+    public State repair(long deadline) {
+        if(updated == null)
+            return plan;
+
+        // search might modify the state given to it, keep the updated one for another attempt
+        State sol = planner.repair(updated.cc(), deadline, Integer.MAX_VALUE, false);
+        if(sol != null) {
+            plan = sol;
+            updated = null;
+        }
+        return sol;
+    }
+}
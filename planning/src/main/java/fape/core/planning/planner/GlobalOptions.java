@@ -3,8 +3,8 @@ package fape.core.planning.planner;
 import lombok.Value;
 
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -32,10 +32,15 @@ public class GlobalOptions {
             new Option("use-causal-network", "boolean", "true", ""),
             new Option("use-decomposition-variables", "boolean", "true", ""),
             new Option("check-delay-from-task-to-og", "boolean", "true", ""),
-            new Option("reachability-instrumentation", "boolean", "true", "")
+            new Option("reachability-instrumentation", "boolean", "true", ""),
+            new Option("compact-stn", "boolean", "false", "Use an STN with copy-on-write distance rows and constant time temporal queries."),
+            new Option("search-max-nodes-in-memory", "int", "0", "Maximal number of partial plans kept in memory by the queue of the planner, others are spilled to disk. No limit if 0."),
+            new Option("search-lazy-children", "boolean", "false", "Insert children in the queue with the priority of their parent and only apply their resolver when they are extracted from it."),
+            new Option("search-prune-duplicates", "boolean", "false", "Discard partial plans obtained by applying the same resolvers as an already expanded one, in a different order."),
+            new Option("grounding-cache-dir", "string", "", "Directory in which the instantiations of the actions of a problem are cached, keyed by a hash of its ANML files. No cache if empty.")
     ).stream().collect(Collectors.toMap(Option::getKey, Function.identity()));
 
-    private static Map<String,String> overriddenValues = new HashMap<>();
+    private static Map<String,String> overriddenValues = new ConcurrentHashMap<>();
 
     public static void setOption(String key, String value) {
         assert opts.containsKey(key) : "Unknown option: "+key;
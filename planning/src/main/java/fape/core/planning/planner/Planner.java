@@ -4,27 +4,34 @@ import fape.core.planning.preprocessing.ActionSupporterFinder;
 import fape.core.planning.preprocessing.LiftedDTG;
 import fape.core.planning.preprocessing.Preprocessor;
 import fape.core.planning.search.Handler;
+import fape.core.planning.search.OpenList;
 import fape.core.planning.search.flaws.flaws.Flaw;
-import fape.core.planning.search.flaws.flaws.Flaws;
 import fape.core.planning.search.flaws.resolvers.Resolver;
 import fape.core.planning.search.strategies.flaws.FlawCompFactory;
+import fape.core.planning.search.strategies.flaws.FlawSelector;
 import fape.core.planning.search.strategies.plans.PlanCompFactory;
 import fape.core.planning.search.strategies.plans.SeqPlanComparator;
+import fape.core.planning.states.Decisions;
 import fape.core.planning.states.Printer;
 import fape.core.planning.states.State;
 import fape.core.planning.states.SearchNode;
 import fape.drawing.gui.ChartWindow;
-import fape.exceptions.FlawOrderingAnomaly;
+import fape.exceptions.FAPEException;
 import fape.exceptions.FlawWithNoResolver;
 import fape.exceptions.ResolverResultedInInconsistency;
 import fape.gui.SearchView;
+import fape.util.Telemetry;
 import fape.util.TinyLogger;
 import fape.util.Utils;
 import fr.laas.fape.exceptions.InconsistencyException;
 import planstack.anml.model.AnmlProblem;
 import planstack.constraints.stnu.Controllability;
 
+import java.lang.ref.SoftReference;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Base for any planner in FAPE.
@@ -41,7 +48,13 @@ public class Planner {
         this.pb = initialState.pb;
         this.controllability = initialState.controllability;
         this.dtg = new LiftedDTG(this.pb);
-        queue = new PriorityQueue<>(100, this.heuristicComputer().comparator(options));
+        // built eagerly as they are shared by all search threads
+        this.heuristic = PlanCompFactory.get(this, options.planSelStrategies);
+        this.flawSelector = FlawCompFactory.compile(options.flawSelStrategies);
+        this.lazyChildren = options.lazyChildren && !options.displaySearch && !options.useAEpsilon;
+        // nodes are never spilled when they might be looked up by the search view or A-Epsilon
+        queue = new OpenList(this::priority, this::rematerialize,
+                options.displaySearch || options.useAEpsilon ? 0 : options.maxNodesInMemory);
         SearchNode root = new SearchNode(initialState);
 
         root.addOperation(s -> {
@@ -50,6 +63,8 @@ public class Planner {
         });
         queue.add(root);
 
+        if(options.displaySearch && options.numThreads > 1)
+            throw new FAPEException("Search cannot be displayed when running on several threads.");
         if(options.displaySearch) {
             searchView = new SearchView(this);
             searchView.addNode(root);
@@ -61,9 +76,9 @@ public class Planner {
 
     public static boolean debugging = false;
 
-    public int numGeneratedStates = 1; //count the initial state
-    public int numExpandedStates = 0;
-    public int numFastForwardedStates = 0;
+    public final AtomicInteger numGeneratedStates = new AtomicInteger(1); //count the initial state
+    public final AtomicInteger numExpandedStates = new AtomicInteger(0);
+    public final AtomicInteger numFastForwardedStates = new AtomicInteger(0);
 
     public final Controllability controllability;
 
@@ -75,7 +90,51 @@ public class Planner {
         return dtg;
     }
 
-    private final PriorityQueue<SearchNode> queue;
+    private final OpenList queue;
+
+    /** If true, children are inserted in the queue before being built (see PlanningOptions.lazyChildren). */
+    private final boolean lazyChildren;
+
+    /**
+     * Snapshots of the partial plans expanded since the beginning of the current search, indexed by their fingerprint
+     * (if duplicates are pruned). Snapshots are softly referenced: a collected snapshot is simply forgotten.
+     */
+    private final Map<Long, List<SoftReference<Decisions.Snapshot>>> closed = new ConcurrentHashMap<>();
+
+    /**
+     * Returns true if the same partial plan (i.e. obtained by applying the same resolvers, possibly in a different
+     * order, and with the same content) was already expanded since the beginning of the current search.
+     * Otherwise, records this node and returns false.
+     *
+     * This must be called before the handlers process the selection of the node: expanded nodes are recorded as
+     * they were before being modified by the handlers, so that they are compared with nodes in the same situation.
+     */
+    private boolean isDuplicate(SearchNode n) {
+        if(!options.pruneDuplicates)
+            return false;
+        final Decisions.Snapshot snapshot = n.getState().snapshot();
+        final List<SoftReference<Decisions.Snapshot>> sameFingerprint =
+                closed.computeIfAbsent(snapshot.fingerprint(), x -> new ArrayList<>());
+        synchronized (sameFingerprint) {
+            for(Iterator<SoftReference<Decisions.Snapshot>> it = sameFingerprint.iterator() ; it.hasNext() ; ) {
+                final Decisions.Snapshot other = it.next().get();
+                if(other == null) {
+                    it.remove();
+                } else if(snapshot.isSamePlanAs(other)) {
+                    Telemetry.count("duplicate-pruned");
+                    if(options.displaySearch) {
+                        searchView.setDeadEnd(n);
+                        searchView.setProperty(n, SearchView.COMMENT, "Duplicate of the expanded partial plan "+other.stateID+".");
+                    }
+                    return true;
+                } else {
+                    Telemetry.count("duplicate-fingerprint-mismatch");
+                }
+            }
+            sameFingerprint.add(new SoftReference<>(snapshot));
+        }
+        return false;
+    }
 
     /**
      * All possible states of the planner.
@@ -92,7 +151,11 @@ public class Planner {
     public List<Handler> getHandlers() { return options.handlers; }
 
     public List<Flaw> getFlaws(SearchNode st) {
-        return st.getState().getFlaws(options.flawFinders, flawComparator(st.getState()));
+        if(options.chooseFlawManually)
+            // all flaws are displayed to the user, sort them
+            return st.getState().getFlaws(options.flawFinders, flawComparator(st.getState()));
+        else
+            return st.getState().getFlaws(options.flawFinders, flawSelector());
     }
 
     /**
@@ -119,15 +182,43 @@ public class Planner {
      */
     public State search(final long deadline, final int maxDepth, final boolean incrementalDeepening) {
         if (options.useAEpsilon) {
+            assert options.numThreads == 1 : "A-Epsilon search cannot run on several threads.";
             return aEpsilonSearch(deadline, maxDepth, incrementalDeepening);
         } else {
             return bestFirstSearch(deadline, maxDepth, incrementalDeepening);
         }
     }
 
+    /**
+     * Restarts search from a state derived from a state of this planner, typically a copy of a previous solution
+     * updated with the outcome of execution (see ExecutionMonitor).
+     *
+     * All partial plans currently in the queue are dropped and replaced by the given state, that keeps all
+     * actions, task network and causal links of the plan it derives from. As the state is already attached to
+     * this planner, preprocessing and the initialization of handlers are not done again.
+     *
+     * @param maxDepth Maximal number of refinements of the repaired state.
+     * @return A solution plan if the planner founds one, null otherwise (check "planState" for details).
+     */
+    public State repair(State repaired, final long deadline, final int maxDepth, final boolean incrementalDeepening) {
+        assert repaired.pl == this : "The state to repair was not derived from a state of this planner.";
+        queue.clear();
+        planState = EPlanState.INCONSISTENT;
+
+        SearchNode root = new SearchNode(repaired);
+        root.addOperation(s -> {
+            s.checkConsistency();
+            s.notify(Handler.StateLifeTime.PRE_QUEUE_INSERTION);
+        });
+        queue.add(root);
+        if(options.displaySearch)
+            searchView.addNode(root);
+        return search(deadline, maxDepth, incrementalDeepening);
+    }
+
     public State bestFirstSearch(final long deadline, final int maxDepth, final boolean incrementalDeepening){
 
-        List<SearchNode> toRestore = new LinkedList<>(queue);
+        List<SearchNode> toRestore = queue.getAll();
 
         int currentMaxDepth;
         if(incrementalDeepening)
@@ -140,13 +231,17 @@ public class Planner {
         {
             queue.clear();
             queue.addAll(toRestore);
-            solution = depthBoundedAStar(deadline, currentMaxDepth);
+            closed.clear();
+            if(options.numThreads > 1)
+                solution = parallelDepthBoundedAStar(deadline, currentMaxDepth);
+            else
+                solution = depthBoundedAStar(deadline, currentMaxDepth);
 
             if (currentMaxDepth == Integer.MAX_VALUE) // make sure we don't overflow
                 break;
             currentMaxDepth += 1;
             if (debugging && incrementalDeepening)
-                System.out.println("Current max depth: "+currentMaxDepth+". Expanded nodes: "+ numExpandedStates);
+                System.out.println("Current max depth: "+currentMaxDepth+". Expanded nodes: "+ numExpandedStates.get());
         }
         return solution;
     }
@@ -162,7 +257,16 @@ public class Planner {
         return FlawCompFactory.get(st, this, options.flawSelStrategies);
     }
 
-    private SeqPlanComparator heuristic = null;
+    private final FlawSelector flawSelector;
+
+    /**
+     * Selects the flaw to be solved in a state, following the same strategy as the one given by flawComparator().
+     */
+    private FlawSelector flawSelector() {
+        return flawSelector;
+    }
+
+    private final SeqPlanComparator heuristic;
 
     /**
      * The comparator used to order the queue. THe first state in the queue
@@ -171,9 +275,6 @@ public class Planner {
      * @return The comparator to use for ordering the queue.
      */
     public final SeqPlanComparator heuristicComputer() {
-        if(heuristic == null) {
-            heuristic = PlanCompFactory.get(this, options.planSelStrategies);
-        }
         return heuristic;
     }
 
@@ -201,6 +302,15 @@ public class Planner {
             SearchNode st = queue.remove();
 
             try {
+                if (st.isLazy()) {
+                    // first extraction, build it and put it back with its actual priority
+                    if (materialize(st))
+                        queue.add(st);
+                    continue;
+                }
+                if (isDuplicate(st))
+                    continue;
+
                 // let all handlers know that this state was selected for expansion
                 for (Handler h : options.handlers)
                     h.addOperation(st, Handler.StateLifeTime.SELECTION, this);
@@ -235,6 +345,116 @@ public class Planner {
         }
     }
 
+    /**
+     * Same as depthBoundedAStar, except that `options.numThreads` workers concurrently extract partial plans from
+     * the queue, expand them and push their children back into the queue.
+     *
+     * The search terminates when (i) a worker finds a solution, (ii) the deadline is reached or (iii) the queue
+     * is empty and no worker is expanding a partial plan (i.e. no more node can be generated).
+     * Note that, unlike the sequential version, the returned solution is not necessarily the first according
+     * to the plan selection strategy, but the first one found by any worker.
+     */
+    private State parallelDepthBoundedAStar(final long deadLine, final int maxDepth) {
+        final AtomicReference<State> solution = new AtomicReference<>(null);
+        final AtomicReference<Throwable> error = new AtomicReference<>(null);
+        // number of workers currently processing a node extracted from the queue, guarded by the queue's monitor.
+        final int[] numBusyWorkers = { 0 };
+
+        Runnable worker = () -> {
+            while (true) {
+                SearchNode st;
+                synchronized (queue) {
+                    while (true) {
+                        if (solution.get() != null || error.get() != null || System.currentTimeMillis() > deadLine)
+                            return;
+                        if (!queue.isEmpty()) {
+                            st = queue.remove();
+                            numBusyWorkers[0]++;
+                            break;
+                        } else if (numBusyWorkers[0] == 0) {
+                            return; // nothing left to expand
+                        }
+                        try {
+                            queue.wait(10);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                }
+
+                List<SearchNode> children = Collections.emptyList();
+                try {
+                    if (st.isLazy()) {
+                        if (materialize(st)) {
+                            priority(st); // computed before taking the queue's lock
+                            children = Collections.singletonList(st);
+                        }
+                        continue;
+                    }
+                    if (isDuplicate(st))
+                        continue;
+
+                    for (Handler h : options.handlers)
+                        h.addOperation(st, Handler.StateLifeTime.SELECTION, this);
+
+                    if (st.getState().isConsistent()) {
+                        List<Flaw> flaws = getFlaws(st);
+                        if (flaws.isEmpty()) {
+                            if (solution.compareAndSet(null, st.getState())) {
+                                TinyLogger.LogInfo("Plan found:");
+                                TinyLogger.LogInfo(st.getState());
+                            }
+                        } else if (st.getDepth() < maxDepth) {
+                            children = expand(st);
+                            // make sure the priorities are cached before taking the queue's lock
+                            for (SearchNode child : children)
+                                priority(child);
+                        }
+                    }
+                } catch (InconsistencyException e) {
+                    // dead end, nothing to add to the queue
+                } catch (RuntimeException | Error e) {
+                    error.compareAndSet(null, e);
+                } finally {
+                    synchronized (queue) {
+                        queue.addAll(children);
+                        numBusyWorkers[0]--;
+                        queue.notifyAll();
+                    }
+                }
+            }
+        };
+
+        List<Thread> workers = new ArrayList<>(options.numThreads);
+        for (int i = 0; i < options.numThreads; i++) {
+            Thread t = new Thread(worker, "fape-search-" + i);
+            t.setDaemon(true);
+            workers.add(t);
+            t.start();
+        }
+        try {
+            for (Thread t : workers)
+                t.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (error.get() instanceof Error)
+            throw (Error) error.get();
+        else if (error.get() != null)
+            throw (RuntimeException) error.get();
+
+        if (solution.get() != null) {
+            this.planState = EPlanState.CONSISTENT;
+        } else if (System.currentTimeMillis() > deadLine) {
+            TinyLogger.LogInfo("Timeout.");
+            this.planState = EPlanState.TIMEOUT;
+        } else {
+            this.planState = EPlanState.INFEASIBLE;
+        }
+        return solution.get();
+    }
+
     /**
      * Expand a partial plan by selecting a flaw and generating resolvers for this flaw.
      * @param st    Partial plan to expand
@@ -256,7 +476,7 @@ public class Planner {
                 preprocessor.restrictPossibleActions(st.getState().addableActions);
             }
 
-            numExpandedStates++;
+            numExpandedStates.incrementAndGet();
 
             TinyLogger.LogInfo(st.getState(), "\nCurrent state: [%s]", st.getID());
 
@@ -275,9 +495,14 @@ public class Planner {
             } else {
                 f = flaws.get(0);
             }
+            final long start = Telemetry.start();
             List<Resolver> resolvers = f.getResolvers(st.getState(), this);
+            Telemetry.record("resolvers", f, start);
             // make sure resolvers are always in the same order (for reproducibility)
             Collections.sort(resolvers);
+            if(options.maxNodesInMemory > 0)
+                // children might be spilled to disk by the open list and recreated from st
+                st.setChildrenResolvers(resolvers);
 
 
             if (options.displaySearch)
@@ -297,39 +522,31 @@ public class Planner {
             TinyLogger.LogInfo(st.getState(), " Flaw: %s", f);
 
             List<SearchNode> children = new LinkedList<>();
-
-            final Object flawsHash = Flaws.hash(flaws);
+            if (lazyChildren)
+                priority(st); // make sure the heuristic values to be inherited by the children are computed
 
             // compute all valid children
             for (int resolverID = 0; resolverID < resolvers.size(); resolverID++) {
                 SearchNode next = new SearchNode(st);
                 final int currentResolver = resolverID;
+                if(children.isEmpty() && resolverID == resolvers.size()-1 && !options.displaySearch)
+                    // no other child will ever need the state of st, let this one modify it instead of copying it.
+                    // This is the only case where a state is reused: states have no undo trail, so every other
+                    // child still works on a full copy (State.cc()).
+                    st.handOverStateToNextChild();
+                if (lazyChildren) {
+                    // the resolver will only be applied if the child is ever extracted from the queue
+                    addResolverOperation(next, currentResolver, resolvers.get(currentResolver));
+                    next.setLazy(true);
+                    next.setG(st.getG());
+                    next.setH(st.getH());
+                    next.setHC(st.getHC());
+                    next.setPriority(st.getPriority());
+                    children.add(next);
+                    continue;
+                }
                 try {
-                    next.addOperation(s -> {
-                        List<Flaw> fs = s.getFlaws(options.flawFinders, flawComparator(s));
-//                        assert Flaws.hash(fs).equals(flawsHash) : "There is a problem with the generated flaws.";
-
-                        Flaw selectedFlaw = fs.get(0);
-                        List<Resolver> possibleResolvers = selectedFlaw.getResolvers(s, this);
-                        Collections.sort(possibleResolvers);
-                        Resolver res;
-                        try {
-                            res = possibleResolvers.get(currentResolver);
-                        } catch (IndexOutOfBoundsException e) {
-                            // apparently we tried to access a resolver that did not exists, either a
-                            // resolver disapeared or the flaw is not the one we expected
-                            throw new FlawOrderingAnomaly(flaws, 0, currentResolver);
-                        }
-                        if (!applyResolver(s, res, false))
-                            s.setDeadEnd();
-                        else {
-                            s.checkConsistency();
-                            if (s.isConsistent() && options.useFastForward)
-                                fastForward(s, 10);
-                        }
-                        s.checkConsistency();
-                        s.notify(Handler.StateLifeTime.PRE_QUEUE_INSERTION);
-                    });
+                    addResolverOperation(next, currentResolver, resolvers.get(currentResolver));
 
                     boolean success = next.getState().isConsistent();
                     String hrComment = "";
@@ -339,9 +556,9 @@ public class Planner {
 
                     if (success) {
                         children.add(next);
-                        numGeneratedStates++;
+                        numGeneratedStates.incrementAndGet();
                     } else {
-                        TinyLogger.LogInfo(st.getState(), "     Dead-end reached for state: %s", next.getID());
+                        TinyLogger.LogInfo("     Dead-end reached for state: " + next.getID());
                         //inconsistent state, doing nothing
                     }
                     if (options.displaySearch) {
@@ -379,7 +596,7 @@ public class Planner {
         if(maxForwardStates == 0)
             return true;
 
-        List<Flaw> flaws = st.getFlaws(options.flawFinders, flawComparator(st));
+        List<Flaw> flaws = st.getFlaws(options.flawFinders, flawSelector());
 
         if (flaws.isEmpty()) {
             return true;
@@ -387,7 +604,9 @@ public class Planner {
 
         //we just take the first flaw and its resolvers
         Flaw flaw = flaws.get(0);
+        final long start = Telemetry.start();
         List<Resolver> resolvers = flaw.getResolvers(st, this);
+        Telemetry.record("resolvers", flaw, start);
 
         if (resolvers.isEmpty()) {
             throw new FlawWithNoResolver(flaw);
@@ -401,7 +620,7 @@ public class Planner {
                 st.checkConsistency();
             TinyLogger.LogInfo(st, "     [%s] ff: Adding %s", st.mID, res);
             if(st.isConsistent()) {
-                numFastForwardedStates++;
+                numFastForwardedStates.incrementAndGet();
                 return fastForward(st, maxForwardStates-1);
             } else {
                 throw new ResolverResultedInInconsistency(flaw, res);
@@ -412,6 +631,78 @@ public class Planner {
         }
     }
 
+    /**
+     * Records in a child node the operation building its state from its parent's one: applying the
+     * resolverID-th resolver of the flaw selected in the parent (followed by fast forwarding if enabled).
+     *
+     * Resolvers only refer to the elements of a state through their identifiers (or immutable objects shared by
+     * all copies of a state), the resolver computed on the parent's state is thus directly applied on the copy
+     * given to the child. Neither flaws nor resolvers are recomputed when the child's state is (re)built.
+     */
+    private void addResolverOperation(SearchNode next, final int resolverID, final Resolver res) {
+        next.setResolverIndex(resolverID);
+        next.addOperation(s -> applyResolverOperation(s, res));
+    }
+
+    /** Operation building the state of a child: applies the resolver on a copy of the parent's state and fast forwards. */
+    private void applyResolverOperation(State s, Resolver res) {
+        if (!applyResolver(s, res, false))
+            s.setDeadEnd();
+        else {
+            s.checkConsistency();
+            if (s.isConsistent() && options.useFastForward)
+                fastForward(s, 10);
+        }
+        s.checkConsistency();
+        s.notify(Handler.StateLifeTime.PRE_QUEUE_INSERTION);
+    }
+
+    /**
+     * Builds the state of a lazy child (applying its resolver and fast forwarding) and discards the estimated
+     * heuristic values inherited from its parent.
+     * @return True if the resulting state is consistent.
+     */
+    private boolean materialize(SearchNode n) {
+        n.setLazy(false);
+        n.clearHeuristicValues();
+        Telemetry.count("lazy-child-materialized");
+        if (!n.getState().isConsistent()) {
+            TinyLogger.LogInfo("     Dead-end reached for state: " + n.getID());
+            return false;
+        }
+        numGeneratedStates.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Recreates a node of the search tree that was spilled to disk by the open list (or one of its ancestors if expanded
+     * is true). Only operations are recorded: the resolver of the node is looked up when its state is first built.
+     */
+    private SearchNode rematerialize(SearchNode parent, int id, int resolverID, boolean expanded) {
+        SearchNode n = new SearchNode(parent, id);
+        n.setResolverIndex(resolverID);
+        n.addOperation(s -> applyResolverOperation(s, childrenResolvers(parent).get(resolverID)));
+        if(expanded)
+            for(Handler h : options.handlers)
+                h.addOperation(n, Handler.StateLifeTime.SELECTION, this);
+        return n;
+    }
+
+    /**
+     * Returns the sorted resolvers of the flaw selected when expanding the given node. If they were not recorded
+     * (the node was recreated by the open list), they are computed again from its state as in expand().
+     */
+    private List<Resolver> childrenResolvers(SearchNode n) {
+        synchronized (n) {
+            if(n.getChildrenResolvers() == null) {
+                List<Resolver> resolvers = getFlaws(n).get(0).getResolvers(n.getState(), this);
+                Collections.sort(resolvers);
+                n.setChildrenResolvers(resolvers);
+            }
+            return n.getChildrenResolvers();
+        }
+    }
+
     /**
      * Applies a resolver to the given state. This state will be modified to integrate the resolver.
      *
@@ -421,7 +712,9 @@ public class Planner {
      *         False otherwise.
      */
     private boolean applyResolver(State st, Resolver resolver, boolean isFastForwarding) {
-        boolean result = resolver.apply(st, this, isFastForwarding) && st.csp.propagateMixedConstraints() && st.checkConsistency();
+        final long start = Telemetry.start();
+        boolean result = st.applyResolver(resolver, this, isFastForwarding) && st.csp.propagateMixedConstraints() && st.checkConsistency();
+        Telemetry.record("apply-resolver", resolver, start);
         return result;
     }
 
@@ -438,6 +731,7 @@ public class Planner {
             return null;
         }
         double fThreshold = (1f + options.epsilon) * f(queue.peek());
+        closed.clear();
 
         int numStatesExploredInDepth = 0;
         int numStatesToExploreInBest = 0;
@@ -472,6 +766,9 @@ public class Planner {
             }
 
             try {
+                if(isDuplicate(current))
+                    continue;
+
                 // let all handlers know that this state was selected for expansion
                 for(Handler h : options.handlers)
                     h.addOperation(current, Handler.StateLifeTime.SELECTION, this);
@@ -517,6 +814,9 @@ public class Planner {
     public double g(SearchNode st){ return heuristic.g(st); }
     public double f(SearchNode st) { return g(st) + h(st); }
 
+    /** Priority of a node in the queue, computed once and cached in the node (see SeqPlanComparator). */
+    public double[] priority(SearchNode st) { return heuristic.priority(st, options.heuristicWeight); }
+
     private ChartWindow chartWindow = null;
     public void drawState(State st) {
         if(chartWindow == null)
@@ -25,6 +25,7 @@ public class PlanningOptions {
             new UnrefinedTaskFinder(),
             new UnmotivatedActionFinder(),
             new AllThreatFinder(),
+            new ResourceConflictFinder(),
             new UnboundVariableFinder()
     ));
 
@@ -76,6 +77,33 @@ public class PlanningOptions {
 
     public boolean displaySearch = true;
 
+    /**
+     * Number of worker threads expanding nodes of the search tree.
+     * If greater than one, workers share the queue of partial plans and expand them concurrently.
+     */
+    public int numThreads = 1;
+
+    /**
+     * Maximal number of partial plans kept in memory by the queue of the planner.
+     * When exceeded, the worst ones are spilled to disk and rebuilt from their parent when needed.
+     * No limit if less or equal to 0. Ignored with A-Epsilon and when the search is displayed.
+     */
+    public int maxNodesInMemory = GlobalOptions.getIntOption("search-max-nodes-in-memory");
+
+    /**
+     * If true, children of an expanded partial plan are inserted in the queue without applying their resolver,
+     * with the heuristic values of their parent. A child is only built (and fast-forwarded) when extracted from the
+     * queue and then reinserted with its actual heuristic values. Ignored with A-Epsilon and when the search
+     * is displayed.
+     */
+    public boolean lazyChildren = GlobalOptions.getBooleanOption("search-lazy-children");
+
+    /**
+     * If true, a partial plan is not expanded if the same one (i.e. obtained by applying the same resolvers,
+     * possibly in a different order, and with the same content) was already expanded.
+     */
+    public boolean pruneDuplicates = GlobalOptions.getBooleanOption("search-prune-duplicates");
+
     /** the weight of weighted A*:  f = g + w * h */
     public float heuristicWeight = GlobalOptions.getFloatOption("heur-h-weight");
 
@@ -28,8 +28,6 @@ import java.util.stream.Collectors;
 */
 public class AbstractionHierarchy {
 
-    final AnmlProblem problem;
-
     /**
      * Maps every fluent type to its group.
      */
@@ -38,10 +36,8 @@ public class AbstractionHierarchy {
     private UnlabeledDigraph<Function> dag = GraphFactory.getSimpleUnlabeledDigraph();
 
     public AbstractionHierarchy(AnmlProblem pb) {
-        this.problem = pb;
-
         // build the constraint between fluents types
-        for(AbstractAction aa : problem.abstractActions()) {
+        for(AbstractAction aa : pb.abstractActions()) {
             Set<Function> effects = getEffects(aa);
             Set<Function> preconditions = getPreconditions(aa);
             // given an effect t1 of action a
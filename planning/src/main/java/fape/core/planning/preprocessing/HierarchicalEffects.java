@@ -387,7 +387,7 @@ public class HierarchicalEffects {
      * A task can indirectly support an open goal if it can be decomposed in an action
      * producing a statement (i) that can support the open goal (ii) that can be early enough to support it
      */
-    public boolean canIndirectlySupport(Timeline og, Task t, State st) {
+    public synchronized boolean canIndirectlySupport(Timeline og, Task t, State st) {
         DomainList dl = DomainList.from(og.stateVariable, og.getGlobalConsumeValue(), st);
         Map<LVarRef, VarRef> bindings = new HashMap<>();
         for(int i=0 ; i<t.args().size() ; i++) {
@@ -405,7 +405,7 @@ public class HierarchicalEffects {
      * A task can indirectly support an open goal if it can be decomposed in an action
      * producing a statement (i) that can support the open goal (ii) that can be early enough to support it
      */
-    public boolean canSupport(Timeline og, AbstractAction aa, State st) {
+    public synchronized boolean canSupport(Timeline og, AbstractAction aa, State st) {
         DomainList dl = DomainList.from(og.stateVariable, og.getGlobalConsumeValue(), st);
 
         return effectsOf(aa).stream()
@@ -416,7 +416,7 @@ public class HierarchicalEffects {
 
     private HashMap<Function,Boolean> _hasAssignmentInAction = new HashMap<>();
 
-    public boolean hasAssignmentsInAction(Function func) {
+    public synchronized boolean hasAssignmentsInAction(Function func) {
         return _hasAssignmentInAction.computeIfAbsent(func, f ->
                 pb.abstractActions().stream().flatMap(a -> effectsOf(a).stream())
                         .filter(effect -> effect.f.func == f)
@@ -22,6 +22,12 @@ import planstack.anml.model.concrete.VarRef;
 import java.util.*;
 import java.util.stream.Collectors;
 
+/**
+ * Lazily computes and caches problem-wide structures (grounding, DTGs, reasoners, ...).
+ *
+ * Those are shared by all states of a planner and might be requested concurrently when search
+ * runs on several threads. All lazy initializations are thus synchronized on the preprocessor.
+ */
 public class Preprocessor {
 
     private final Planner planner;
@@ -58,7 +64,7 @@ public class Preprocessor {
         return new TaskDecompositionsReasoner(planner.pb);
     }
 
-    public GroundProblem getGroundProblem() {
+    public synchronized GroundProblem getGroundProblem() {
         if(gPb == null) {
             gPb = new GroundProblem(initialState.pb, planner);
             for(GAction ga : gPb.allActions()) {
@@ -71,7 +77,91 @@ public class Preprocessor {
         return gPb;
     }
 
-    public EffSet<GAction> getAllActions() {
+    /**
+     * Updates the structures computed so far with the chronicles that were added to the problem since they were
+     * computed (e.g. new instances and initial facts streamed through AnmlProblem.extendWithAnmlText).
+     *
+     * Only the ground actions made possible by those chronicles are created, with IDs (as for their fluents, state
+     * variables and dependency graph nodes) following the ones previously allocated. Hence any IRSet or EffSet
+     * built before the extension remains valid. Structures that can be extended (DTGs, relaxed actions, actions
+     * of each state variable) are extended with the new actions. The others are discarded and will be recomputed
+     * from scratch when requested.
+     *
+     * @return The new ground actions (empty if the problem was not grounded yet).
+     */
+    public synchronized List<GAction> problemExtended() {
+        if(gPb == null)
+            return Collections.emptyList(); // nothing was grounded, everything will be computed lazily
+
+        final List<GAction> newActions = gPb.extendWithNewChronicles();
+        for(GAction ga : newActions) {
+            if(ga.id >= groundActions.length)
+                groundActions = Arrays.copyOf(groundActions, Math.max(ga.id+1, groundActions.length*2));
+            assert groundActions[ga.id] == null;
+            groundActions[ga.id] = ga;
+        }
+
+        // set of possible actions might have been restricted to the ones reachable in the initial problem
+        if(allActions != null) {
+            allActions = new EffSet<>(groundActionIntRepresentation());
+            allActions.addAll(gPb.allActions());
+        }
+
+        if(relaxedActions != null) {
+            for(AbstractAction aa : planner.pb.abstractActions()) {
+                List<GAction> gacts = newActions.stream().filter(ga -> ga.abs == aa).collect(Collectors.toList());
+                if(!gacts.isEmpty())
+                    relaxedActions.addAll(new DeleteFreeActionsFactory().getDeleteFrees(aa, gacts, planner));
+            }
+        }
+
+        // state variables whose DTG might have changed: those of new actions and those whose
+        // type of value has new instances
+        Set<GStateVariable> affected = new HashSet<>();
+        for(GAction ga : newActions)
+            for(GAction.GLogStatement s : ga.getStatements())
+                affected.add(s.sv);
+        if(actionUsingStateVariable != null) {
+            for(GAction ga : newActions) {
+                for(GAction.GLogStatement statement : ga.getStatements()) {
+                    actionUsingStateVariable.putIfAbsent(statement.getStateVariable(), new HashSet<>());
+                    actionUsingStateVariable.get(statement.getStateVariable()).add(ga);
+                }
+            }
+        }
+        if(dtgs != null) {
+            for(DTG dtg : dtgs.values())
+                dtg.extendDomain(dtg.sv.f.valueType().jInstances());
+            for(GAction ga : newActions) {
+                for(GAction.GLogStatement s : ga.gStatements.stream().map(p -> p.value2).collect(Collectors.toList())) {
+                    if(!dtgs.containsKey(s.sv))
+                        dtgs.put(s.sv, initDTGForStateVariable(s.sv));
+                    if(s instanceof GAction.GAssignment)
+                        dtgs.get(s.sv).extendWith((GAction.GAssignment) s, ga);
+                    else if(s instanceof GAction.GTransition)
+                        dtgs.get(s.sv).extendWith((GAction.GTransition) s, ga);
+                }
+            }
+        }
+        // temporal DTGs are post-processed and are rebuilt when their domain or transitions changed
+        temporalDTGs.keySet().removeIf(sv -> affected.contains(sv)
+                || sv.f.valueType().jInstances().stream().anyMatch(val -> temporalDTGs.get(sv).getBaseNode(val) == null));
+
+        if(isHierarchical != null && !isHierarchical)
+            isHierarchical = null;
+
+        // reasoners are locked once cloned and fluents reachable from the initial state might have changed
+        baseCausalReasoner = null;
+        baseDecomposabilityReasoner = null;
+        baseDerivabilityReasoner = null;
+        allFluents = null;
+        allStateVariables = null;
+        authorizedSupportersCache.clear();
+
+        return newActions;
+    }
+
+    public synchronized EffSet<GAction> getAllActions() {
         if(allActions == null) {
             allActions = new EffSet<>(groundActionIntRepresentation());
             allActions.addAll(getGroundProblem().allActions());
@@ -79,12 +169,12 @@ public class Preprocessor {
         return allActions;
     }
 
-    public void restrictPossibleActions(EffSet<GAction> actions) {
+    public synchronized void restrictPossibleActions(EffSet<GAction> actions) {
         assert allActions != null;
         allActions = actions.clone();
     }
 
-    public HierarchicalEffects getHierarchicalEffects() {
+    public synchronized HierarchicalEffects getHierarchicalEffects() {
         if(hierarchicalEffects == null) {
             hierarchicalEffects = new HierarchicalEffects(planner.pb);
         }
@@ -93,7 +183,7 @@ public class Preprocessor {
 
     public boolean fluentsInitialized() { return allFluents != null; }
 
-    public void setPossibleFluents(IRSet<Fluent> fluents) {
+    public synchronized void setPossibleFluents(IRSet<Fluent> fluents) {
         assert !fluentsInitialized() : "Possible fluents were already set.";
         allFluents = fluents;
         allStateVariables = new IRSet<>(store.getIntRep(GStateVariable.class));
@@ -119,7 +209,7 @@ public class Preprocessor {
         return groundActions[groundActionID];
     }
 
-    public Collection<RAct> getRelaxedActions() {
+    public synchronized Collection<RAct> getRelaxedActions() {
         if(relaxedActions == null) {
             relaxedActions = new ArrayList<>();
             for(AbstractAction aa : planner.pb.abstractActions()) {
@@ -139,7 +229,7 @@ public class Preprocessor {
         };
     }
 
-    public Set<GAction> getActionsInvolving(GStateVariable sv) {
+    public synchronized Set<GAction> getActionsInvolving(GStateVariable sv) {
         if(actionUsingStateVariable == null) {
             actionUsingStateVariable = new HashMap<>();
             for(GAction ga : getAllActions()) {
@@ -160,7 +250,7 @@ public class Preprocessor {
         return new DTG(missingSV, missingSV.f.valueType().jInstances());
     }
 
-    public DTG getDTG(GStateVariable gStateVariable) {
+    public synchronized DTG getDTG(GStateVariable gStateVariable) {
         if (dtgs == null) {
             dtgs = new HashMap<>();
 
@@ -186,7 +276,7 @@ public class Preprocessor {
         return dtgs.get(gStateVariable);
     }
 
-    public TemporalDTG getTemporalDTG(GStateVariable sv) {
+    public synchronized TemporalDTG getTemporalDTG(GStateVariable sv) {
         if(!temporalDTGs.containsKey(sv)) {
             TemporalDTG dtg = new TemporalDTG(sv, sv.f.valueType().jInstances(), planner);
             for(GAction ga : getActionsInvolving(sv))
@@ -197,7 +287,7 @@ public class Preprocessor {
         return temporalDTGs.get(sv);
     }
 
-    public boolean isHierarchical() {
+    public synchronized boolean isHierarchical() {
         if(isHierarchical == null) {
             isHierarchical = false;
             for(GAction ga : getAllActions()) {
@@ -214,7 +304,7 @@ public class Preprocessor {
         return isHierarchical;
     }
 
-    public HLeveledReasoner<GAction, Fluent> getRestrictedCausalReasoner(EffSet<GAction> allowedActions) {
+    public synchronized HLeveledReasoner<GAction, Fluent> getRestrictedCausalReasoner(EffSet<GAction> allowedActions) {
         if(baseCausalReasoner == null) {
             baseCausalReasoner = new HLeveledReasoner<>(this.groundActionIntRepresentation(), this.fluentIntRepresentation());
             for(GAction ga : getAllActions()) {
@@ -226,7 +316,7 @@ public class Preprocessor {
 
     HLeveledReasoner<GAction, GTask> baseDecomposabilityReasoner = null;
     /** initial "facts" are actions with no subtasks */
-    public HLeveledReasoner<GAction, GTask> getRestrictedDecomposabilityReasoner(EffSet<GAction> allowedActions) {
+    public synchronized HLeveledReasoner<GAction, GTask> getRestrictedDecomposabilityReasoner(EffSet<GAction> allowedActions) {
         if(baseDecomposabilityReasoner == null) {
             baseDecomposabilityReasoner = new HLeveledReasoner<>(planner.preprocessor.groundActionIntRepresentation(), new DefaultIntRepresentation<>());
             for (GAction ga : this.getAllActions()) {
@@ -241,7 +331,7 @@ public class Preprocessor {
     HLeveledReasoner<GAction, GTask> baseDerivabilityReasoner = null;
 
     /** initial facts opened tasks and initial clauses are non-motivated actions*/
-    public HLeveledReasoner<GAction, GTask> getRestrictedDerivabilityReasoner(EffSet<GAction> allowedActions) {
+    public synchronized HLeveledReasoner<GAction, GTask> getRestrictedDerivabilityReasoner(EffSet<GAction> allowedActions) {
         if(baseDerivabilityReasoner == null) {
             baseDerivabilityReasoner = new HLeveledReasoner<>(planner.preprocessor.groundActionIntRepresentation(), new DefaultIntRepresentation<>());
             for (GAction ga : getAllActions()) {
@@ -0,0 +1,74 @@
+package fape.core.planning.resources;
+
+import fape.core.planning.states.State;
+import fape.core.planning.states.StateExtension;
+import planstack.anml.model.ParameterizedStateVariable;
+import planstack.anml.model.concrete.VarRef;
+import planstack.anml.model.concrete.statements.ResourceStatement;
+
+import java.util.*;
+
+/**
+ * Keeps track of all resource statements of a state.
+ *
+ * Statements are attached to the profile of their resource as soon as all arguments of their state variable are
+ * bound. Until then, they are kept pending (a plan with unbound variables is never a solution, so those are
+ * eventually accounted for). Profiles are copied along with the state and extended as statements are added.
+ */
+public class ResourceManager implements StateExtension {
+
+    private final State st;
+
+    private final List<ResourceStatement> pending;
+
+    /** Profile of each resource, indexed by its function and the values of its arguments */
+    private final Map<List<Object>, ResourceProfile> profiles;
+
+    public ResourceManager(State st) {
+        this.st = st;
+        this.pending = new ArrayList<>();
+        this.profiles = new HashMap<>();
+    }
+
+    private ResourceManager(ResourceManager toCopy, State st) {
+        this.st = st;
+        this.pending = new ArrayList<>(toCopy.pending);
+        this.profiles = new HashMap<>();
+        for(Map.Entry<List<Object>, ResourceProfile> e : toCopy.profiles.entrySet())
+            profiles.put(e.getKey(), e.getValue().copy());
+    }
+
+    @Override
+    public ResourceManager clone(State st) {
+        return new ResourceManager(this, st);
+    }
+
+    public void addStatement(ResourceStatement s) {
+        pending.add(s);
+    }
+
+    /** Returns the identifier of the resource on which this statement applies, null if it is not known yet. */
+    private List<Object> resourceOf(ParameterizedStateVariable sv) {
+        List<Object> key = new ArrayList<>(sv.args().length +1);
+        key.add(sv.func());
+        for(VarRef arg : sv.args()) {
+            if(st.domainSizeOf(arg) != 1)
+                return null;
+            key.add(st.domainOf(arg).get(0));
+        }
+        return key;
+    }
+
+    /** Returns the profiles of all resources, after attaching the pending statements that are now on a known resource. */
+    public Collection<ResourceProfile> getProfiles() {
+        for(Iterator<ResourceStatement> it = pending.iterator() ; it.hasNext() ; ) {
+            final ResourceStatement s = it.next();
+            final List<Object> resource = resourceOf(s.sv());
+            if(resource != null) {
+                profiles.computeIfAbsent(resource, x -> new ResourceProfile(s.sv())).addStatement(s);
+                it.remove();
+            }
+        }
+        return profiles.values();
+    }
+}
@@ -0,0 +1,321 @@
+package fape.core.planning.resources;
+
+import fape.core.planning.planner.Planner;
+import fape.core.planning.search.flaws.flaws.ResourceConflict;
+import fape.core.planning.search.flaws.resolvers.Resolver;
+import fape.core.planning.search.flaws.resolvers.ResourceSupportingAction;
+import fape.core.planning.search.flaws.resolvers.TemporalConstraint;
+import fape.core.planning.states.State;
+import planstack.anml.model.IntFunction;
+import planstack.anml.model.ParameterizedStateVariable;
+import planstack.anml.model.abs.AbstractAction;
+import planstack.anml.model.abs.statements.AbstractConsumeResource;
+import planstack.anml.model.abs.statements.AbstractProduceResource;
+import planstack.anml.model.abs.statements.AbstractResourceStatement;
+import planstack.anml.model.concrete.TPRef;
+import planstack.anml.model.concrete.statements.*;
+
+import java.util.*;
+
+/**
+ * All statements on a single resource (a numeric function with bound arguments) of a partial plan.
+ *
+ * Statements are turned into events: changes of the level of the resource (consumptions at the start of a
+ * statement, productions at its end), assignments and markers delimiting the interval of requirements.
+ * Bounds on the level of the resource right after each event are computed from the temporal relations between
+ * events that necessarily hold in the STN. A conflict is raised when the bounds admit a level that violates the
+ * range of the function or a requirement.
+ *
+ * Temporal relations are monotonic: two events that are necessarily ordered will remain so in all descendants of a
+ * state. Relations are thus inherited from the profile of the parent state and only undecided ones are checked
+ * against the STN. Conflicts are only recomputed when an event was added or a relation was decided since the last
+ * check.
+ */
+public class ResourceProfile {
+
+    private static final int DELTA = 0;
+    private static final int SET = 1;
+    private static final int MARKER = 2;
+
+    private static final class Event {
+        final int kind;
+        final TPRef tp;
+        final float value;
+        Event(int kind, TPRef tp, float value) { this.kind = kind; this.tp = tp; this.value = value; }
+    }
+
+    /** A requirement on the level between two markers. */
+    private static final class Requirement {
+        final int start;
+        final int end;
+        final String operator;
+        final float value;
+        Requirement(int start, int end, String operator, float value) {
+            this.start = start; this.end = end; this.operator = operator; this.value = value;
+        }
+    }
+
+    /** A violation of the range of the resource or of a requirement, see ResourceConflict. */
+    private static final class Violation {
+        final int at;
+        final int horizon;
+        final boolean tooLow;
+        final float threshold;
+        Violation(int at, int horizon, boolean tooLow, float threshold) {
+            this.at = at; this.horizon = horizon; this.tooLow = tooLow; this.threshold = threshold;
+        }
+    }
+
+    /** State variable of one of the statements, used to unify the statements of new actions with this resource. */
+    public final ParameterizedStateVariable sv;
+    private final float min;
+    private final float max;
+
+    private final ArrayList<Event> events;
+    private final ArrayList<Requirement> requirements;
+
+    /** notBefore.get(i).get(j) is true if event i cannot be before or at the same time as event j */
+    private final ArrayList<BitSet> notBefore;
+    /** notStrictlyBefore.get(i).get(j) is true if event i cannot be strictly before event j */
+    private final ArrayList<BitSet> notStrictlyBefore;
+
+    /** Violations found on the last check, null if events or relations changed since then */
+    private List<Violation> violations = null;
+
+    ResourceProfile(ParameterizedStateVariable sv) {
+        this.sv = sv;
+        if(sv.func() instanceof IntFunction) {
+            min = ((IntFunction) sv.func()).minValue();
+            max = ((IntFunction) sv.func()).maxValue();
+        } else {
+            min = Float.NEGATIVE_INFINITY;
+            max = Float.POSITIVE_INFINITY;
+        }
+        events = new ArrayList<>();
+        requirements = new ArrayList<>();
+        notBefore = new ArrayList<>();
+        notStrictlyBefore = new ArrayList<>();
+    }
+
+    private ResourceProfile(ResourceProfile toCopy) {
+        sv = toCopy.sv;
+        min = toCopy.min;
+        max = toCopy.max;
+        events = new ArrayList<>(toCopy.events);
+        requirements = new ArrayList<>(toCopy.requirements);
+        notBefore = new ArrayList<>(toCopy.notBefore.size());
+        for(BitSet bs : toCopy.notBefore)
+            notBefore.add((BitSet) bs.clone());
+        notStrictlyBefore = new ArrayList<>(toCopy.notStrictlyBefore.size());
+        for(BitSet bs : toCopy.notStrictlyBefore)
+            notStrictlyBefore.add((BitSet) bs.clone());
+        violations = toCopy.violations;
+    }
+
+    ResourceProfile copy() { return new ResourceProfile(this); }
+
+    private int addEvent(int kind, TPRef tp, float value) {
+        events.add(new Event(kind, tp, value));
+        notBefore.add(new BitSet());
+        notStrictlyBefore.add(new BitSet());
+        violations = null;
+        return events.size() -1;
+    }
+
+    void addStatement(ResourceStatement s) {
+        if(s instanceof SetResource) {
+            addEvent(SET, s.end(), s.param());
+        } else if(s instanceof ProduceResource) {
+            addEvent(DELTA, s.end(), s.param());
+        } else if(s instanceof ConsumeResource) {
+            addEvent(DELTA, s.start(), -s.param());
+        } else if(s instanceof UseResource) {
+            addEvent(DELTA, s.start(), -s.param());
+            addEvent(DELTA, s.end(), s.param());
+        } else if(s instanceof LendResource) {
+            addEvent(DELTA, s.start(), s.param());
+            addEvent(DELTA, s.end(), -s.param());
+        } else {
+            assert s instanceof RequireResource;
+            int start = addEvent(MARKER, s.start(), 0);
+            int end = addEvent(MARKER, s.end(), 0);
+            requirements.add(new Requirement(start, end, ((RequireResource) s).operator(), s.param()));
+        }
+    }
+
+    /** Checks all undecided relations between events against the STN of the state. */
+    private void updateRelations(State st) {
+        for(int i=0 ; i<events.size() ; i++) {
+            final BitSet nb = notBefore.get(i);
+            final BitSet nsb = notStrictlyBefore.get(i);
+            for(int j=0 ; j<events.size() ; j++) {
+                if(i == j || nb.get(j))
+                    continue;
+                if(!st.canBeBefore(events.get(i).tp, events.get(j).tp)) {
+                    nb.set(j);
+                    nsb.set(j);
+                    violations = null;
+                } else if(!nsb.get(j) && !st.canBeStrictlyBefore(events.get(i).tp, events.get(j).tp)) {
+                    nsb.set(j);
+                    violations = null;
+                }
+            }
+        }
+    }
+
+    private boolean necessarilyBeforeOrAt(int y, int x) { return y == x || notStrictlyBefore.get(x).get(y); }
+    private boolean possiblyBeforeOrAt(int y, int x) { return y == x || !notBefore.get(y).get(x); }
+    private boolean necessarilyStrictlyAfter(int y, int x) { return y != x && notBefore.get(y).get(x); }
+    private boolean possiblyStrictlyAfter(int y, int x) { return y != x && !notStrictlyBefore.get(x).get(y); }
+
+    /**
+     * Returns a lower (or upper) bound on the level of the resource right after event x.
+     *
+     * The level is given by the last assignment before x, or 0 if there might be none, and the changes between
+     * this assignment and x. Changes that necessarily happen in between are always accounted for, those that
+     * might happen in between are only accounted for if they lower (raise) the level.
+     */
+    private float bound(int x, boolean lower) {
+        float best = lower ? Float.POSITIVE_INFINITY : Float.NEGATIVE_INFINITY;
+        boolean initialPossible = true;
+        for(int s=0 ; s<events.size() ; s++) {
+            if(events.get(s).kind != SET || !possiblyBeforeOrAt(s, x))
+                continue;
+            if(events.get(x).kind == SET && s != x)
+                continue; // x is the last assignment
+            if(necessarilyBeforeOrAt(s, x))
+                initialPossible = false;
+
+            boolean overridden = false; // another assignment is necessarily between s and x
+            for(int s2=0 ; s2<events.size() && !overridden ; s2++)
+                overridden = events.get(s2).kind == SET && necessarilyStrictlyAfter(s2, s) && necessarilyBeforeOrAt(s2, x);
+            if(overridden)
+                continue;
+
+            float level = events.get(s).value;
+            for(int y=0 ; y<events.size() ; y++) {
+                if(events.get(y).kind != DELTA || !possiblyBeforeOrAt(y, x) || !possiblyStrictlyAfter(y, s))
+                    continue;
+                level += contribution(y, necessarilyBeforeOrAt(y, x) && necessarilyStrictlyAfter(y, s), lower);
+            }
+            best = lower ? Math.min(best, level) : Math.max(best, level);
+        }
+        if(initialPossible) {
+            float level = 0;
+            for(int y=0 ; y<events.size() ; y++) {
+                if(events.get(y).kind != DELTA || !possiblyBeforeOrAt(y, x))
+                    continue;
+                level += contribution(y, necessarilyBeforeOrAt(y, x), lower);
+            }
+            best = lower ? Math.min(best, level) : Math.max(best, level);
+        }
+        return best;
+    }
+
+    private float contribution(int y, boolean necessary, boolean lower) {
+        final float delta = events.get(y).value;
+        if(necessary)
+            return delta;
+        else if(lower)
+            return Math.min(delta, 0);
+        else
+            return Math.max(delta, 0);
+    }
+
+    /** Events (except markers) that might happen in the interval [start, end] */
+    private boolean possiblyWithin(int y, int start, int end) {
+        return events.get(y).kind != MARKER && possiblyBeforeOrAt(start, y) && possiblyBeforeOrAt(y, end);
+    }
+
+    private List<Violation> findViolations() {
+        List<Violation> found = new ArrayList<>();
+        for(int x=0 ; x<events.size() ; x++) {
+            if(events.get(x).kind == MARKER)
+                continue;
+            if(min > Float.NEGATIVE_INFINITY && bound(x, true) < min)
+                found.add(new Violation(x, x, true, min));
+            if(max < Float.POSITIVE_INFINITY && bound(x, false) > max)
+                found.add(new Violation(x, x, false, max));
+        }
+        for(Requirement r : requirements) {
+            final boolean lower = r.operator.startsWith(">");
+            // the level during [start, end] is either the one at start or the one after an event in this interval
+            int worst = r.start;
+            float worstLevel = bound(r.start, lower);
+            for(int y=0 ; y<events.size() ; y++) {
+                if(!possiblyWithin(y, r.start, r.end))
+                    continue;
+                float level = bound(y, lower);
+                if(lower ? level < worstLevel : level > worstLevel) {
+                    worst = y;
+                    worstLevel = level;
+                }
+            }
+            final boolean violated;
+            switch (r.operator) {
+                case ">=": violated = worstLevel < r.value; break;
+                case ">":  violated = worstLevel <= r.value; break;
+                case "<=": violated = worstLevel > r.value; break;
+                case "<":  violated = worstLevel >= r.value; break;
+                default: throw new IllegalArgumentException("Unknown operator in requirement: "+r.operator);
+            }
+            if(violated)
+                found.add(new Violation(worst, r.end, lower, r.value));
+        }
+        return found;
+    }
+
+    /** Returns all conflicts on this resource in the given state. */
+    public List<ResourceConflict> getConflicts(State st) {
+        updateRelations(st);
+        if(violations == null)
+            violations = findViolations();
+        List<ResourceConflict> conflicts = new ArrayList<>(violations.size());
+        for(Violation v : violations)
+            conflicts.add(new ResourceConflict(this, v.at, v.horizon, events.get(v.at).tp, events.get(v.horizon).tp, v.tooLow, v.threshold));
+        return conflicts;
+    }
+
+    /**
+     * Resolvers for a conflict where the level might be too low (high) after event at:
+     *  - postponing changes that lower (raise) the level after horizon;
+     *  - enforcing changes that raise (lower) the level to happen before at;
+     *  - inserting a new action that raises (lowers) the level before at.
+     */
+    public List<Resolver> getResolvers(ResourceConflict conflict, State st, Planner planner) {
+        final int at = conflict.atEvent;
+        final int horizon = conflict.horizonEvent;
+        assert events.get(at).tp.equals(conflict.at) && events.get(horizon).tp.equals(conflict.horizon);
+        final boolean tooLow = conflict.tooLow;
+        List<Resolver> resolvers = new LinkedList<>();
+        Set<TPRef> postponed = new HashSet<>();
+        Set<TPRef> advanced = new HashSet<>();
+
+        for(int y=0 ; y<events.size() ; y++) {
+            final Event e = events.get(y);
+            if(e.kind != DELTA || y == at)
+                continue;
+            final boolean harmful = tooLow ? e.value < 0 : e.value > 0;
+            final TPRef h = events.get(horizon).tp;
+            if(harmful && !necessarilyStrictlyAfter(y, horizon) && st.canBeStrictlyBefore(h, e.tp) && postponed.add(e.tp))
+                resolvers.add(new TemporalConstraint(Collections.singletonList(h), Collections.singletonList(e.tp), 1, Integer.MAX_VALUE));
+            if(!harmful && !necessarilyBeforeOrAt(y, at) && st.canBeBefore(e.tp, conflict.at) && advanced.add(e.tp))
+                resolvers.add(new TemporalConstraint(Collections.singletonList(e.tp), Collections.singletonList(conflict.at), 0, Integer.MAX_VALUE));
+        }
+
+        for(AbstractAction aa : planner.pb.abstractActions()) {
+            if(aa.mustBeMotivated() || !st.isAddable(aa))
+                continue;
+            for(AbstractResourceStatement s : aa.jResStatements()) {
+                if(s.sv().func() != sv.func())
+                    continue;
+                if(tooLow && s instanceof AbstractProduceResource || !tooLow && s instanceof AbstractConsumeResource)
+                    resolvers.add(new ResourceSupportingAction(aa, s.id(), sv, conflict.at));
+            }
+        }
+        return resolvers;
+    }
+
+    @Override
+    public String toString() { return sv.toString(); }
+}
@@ -1,11 +1,15 @@
 package fape.core.planning.search;
 
+import fape.core.planning.grounding.GAction;
 import fape.core.planning.planner.Planner;
 import fape.core.planning.states.State;
 import fape.core.planning.states.SearchNode;
+import fape.util.Telemetry;
 import planstack.anml.model.concrete.Action;
 import planstack.anml.model.concrete.Task;
 
+import java.util.Collection;
+
 /**
  * A handler is a computation unit that implements specific (and usually optional) aspects of the
  * planning process.
@@ -32,6 +36,13 @@ public abstract class Handler {
      */
     public void stateBindedToPlanner(State st, Planner pl) {}
 
+    /**
+     * Invoked on a state attached to a planner after the problem was extended (see Preprocessor.problemExtended)
+     * and the new chronicles were applied to the state. newActions are the ground actions made possible by
+     * the extension.
+     */
+    public void problemExtended(State st, Planner pl, Collection<GAction> newActions) {}
+
     /**
      * Informs the handler that the given state has reached a given point in its life.
      * The handler can start any computation he wants to do at that point.
@@ -40,7 +51,9 @@ public abstract class Handler {
 
     public final void addOperation(SearchNode n, StateLifeTime time, Planner planner) {
         n.addOperation(s -> {
+            final long start = Telemetry.start();
             apply(s, time, planner);
+            Telemetry.record("handler", this, start);
             s.checkConsistency();
         });
     }
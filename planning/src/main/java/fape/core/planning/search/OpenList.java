@@ -0,0 +1,540 @@
+package fape.core.planning.search;
+
+import fape.core.planning.states.SearchNode;
+import fape.exceptions.FAPEException;
+import fape.util.Telemetry;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Queue of the partial plans that remain to be expanded, ordered by increasing priority (compared lexicographically,
+ * ties are broken on the ID of the search nodes, as in PartialPlanComparator).
+ *
+ * Nodes in memory are kept in a binary heap whose keys are stored in flat primitive arrays: the priority of each node
+ * is copied once, when it is inserted, and comparisons never go through the nodes themselves.
+ *
+ * The number of search nodes kept in memory can be bounded. When this bound is exceeded, the worst half
+ * of the nodes in memory are spilled to a memory-mapped file in a compact form: their ID, the ID of their parent,
+ * the index of the resolver that was applied to their parent, whether they are lazy and their cached heuristic values.
+ * A spilled node is recreated from its parent when it is about to be extracted from the queue.
+ *
+ * The ancestors of spilled nodes are only weakly referenced: for each of them, the open list only keeps the ID of its parent
+ * and the index of the resolver it was built with. An ancestor that was garbage collected is recreated from its own
+ * ancestor when one of its spilled descendants is extracted.
+ *
+ * Each spill writes a run of records sorted by increasing priority. The best spilled node is thus always at the head of one
+ * of the runs. The space of a run is reused by later runs once all its nodes have been extracted. When runs that are
+ * partially extracted take more space than the nodes they still contain, they are merged into a single run.
+ *
+ * This class is not thread safe. Only nodes that know the resolver they were created from (see
+ * SearchNode.getResolverIndex()) are spilled, other ones are always kept in memory and do not count in the bound.
+ * Removing an arbitrary node (done by A-Epsilon on each expansion) takes logarithmic time: each node in memory knows
+ * its position in the heap (see SearchNode.getHeapIndex()).
+ */
+public class OpenList {
+
+    /** Recreates a spilled node (or one of its ancestors) from its parent. */
+    public interface Rematerializer {
+        /**
+         * This is called while the queue is locked by parallel search: implementations should only record the
+         * operations building the node's state, the state itself being built when the node is processed.
+         *
+         * @param expanded True if the node was expanded: the operations done when selecting it should be recorded as well.
+         */
+        SearchNode rematerialize(SearchNode parent, int id, int resolverIndex, boolean expanded);
+    }
+
+    /** Size of a record on disk: the priority, g, h, hc (doubles) then id, parent id, resolver index and lazy flag (ints) */
+    private int recordSize() { return (keyLength + 3) * 8 + 4 * 4; }
+
+    private final Function<SearchNode, double[]> priority;
+    private final Rematerializer rematerializer;
+    /** Maximal number of nodes that can be spilled kept in memory before spilling. No spilling if less or equal to 0. */
+    private final int maxInMemory;
+
+    /** Number of values in the priority of a node, -1 until the first node is inserted. */
+    private int keyLength = -1;
+
+    /** Binary heap of the nodes in memory: the i-th node has the priority keys[i*keyLength .. (i+1)*keyLength[ */
+    private SearchNode[] nodes = new SearchNode[64];
+    private double[] keys = null;
+    private int[] ids = new int[64];
+    private int size = 0;
+
+    /** A sorted sequence of spilled nodes. */
+    private final class Run {
+        final MappedByteBuffer buffer;
+        /** Position of the run in the file */
+        final long offset;
+        final int size;
+        int next = 0;
+        Run(MappedByteBuffer buffer, long offset, int size) { this.buffer = buffer; this.offset = offset; this.size = size; }
+        boolean isEmpty() { return next >= size; }
+        double headKey(int i) { return buffer.getDouble(next * recordSize() + i * 8); }
+        int headID() { return buffer.getInt(next * recordSize() + (keyLength + 3) * 8); }
+    }
+
+    private final PriorityQueue<Run> runs = new PriorityQueue<>((r1, r2) -> {
+        for(int i=0 ; i<keyLength ; i++) {
+            int ret = compare(r1.headKey(i), r2.headKey(i));
+            if(ret != 0)
+                return ret;
+        }
+        return r1.headID() - r2.headID();
+    });
+    private int numSpilled = 0;
+
+    /** Number of nodes in memory that can not be spilled */
+    private int numUnspillable = 0;
+
+    /**
+     * Parent (or ancestor) of a spilled node. The node is only weakly referenced and recreated from its own parent
+     * when needed, unless it can not be recreated (typically the root of the search tree).
+     */
+    private static final class Ancestor {
+        final int id;
+        final int parentID;
+        final int resolverIndex;
+        /** Strong reference to a node that can not be recreated, null otherwise */
+        final SearchNode pinned;
+        WeakReference<SearchNode> node;
+        /** Number of spilled nodes and recorded ancestors that have this node as parent */
+        int refs = 0;
+
+        Ancestor(SearchNode n) {
+            id = n.getID();
+            if(isSpillable(n)) {
+                parentID = n.getParent().getID();
+                pinned = null;
+            } else {
+                parentID = -1;
+                pinned = n;
+            }
+            resolverIndex = n.getResolverIndex();
+            node = new WeakReference<>(n);
+        }
+
+        /** Returns the node if it is still in memory, null otherwise. */
+        SearchNode get() { return pinned != null ? pinned : node.get(); }
+    }
+
+    /** Ancestors of spilled nodes, indexed by ID */
+    private final Map<Integer, Ancestor> ancestors = new HashMap<>();
+
+    private File file = null;
+    private FileChannel channel = null;
+    /** Size of the used part of the file, new runs are written after it if they do not fit in a free region */
+    private long fileEnd = 0;
+    /** Regions of the file (before fileEnd) that are not used by any run: length indexed by offset. Adjacent regions are merged. */
+    private final TreeMap<Long, Long> freeRegions = new TreeMap<>();
+
+    public OpenList(Function<SearchNode, double[]> priority, Rematerializer rematerializer, int maxInMemory) {
+        this.priority = priority;
+        this.rematerializer = rematerializer;
+        this.maxInMemory = maxInMemory;
+    }
+
+    public boolean isEmpty() { return size == 0 && numSpilled == 0; }
+
+    public int size() { return size + numSpilled; }
+
+    /** Number of nodes that are currently on disk. */
+    public int numSpilled() { return numSpilled; }
+
+    public void add(SearchNode n) {
+        push(n);
+        if(maxInMemory > 0 && size - numUnspillable > maxInMemory)
+            spill();
+    }
+
+    public void addAll(Collection<SearchNode> nodes) {
+        for(SearchNode n : nodes)
+            add(n);
+    }
+
+    /** Returns the best node without removing it. Null if the list is empty. */
+    public SearchNode peek() {
+        loadBestSpilled();
+        return size == 0 ? null : nodes[0];
+    }
+
+    /** Removes and returns the best node. Null if the list is empty. */
+    public SearchNode poll() {
+        loadBestSpilled();
+        return size == 0 ? null : removeAt(0);
+    }
+
+    /** Removes and returns the best node. */
+    public SearchNode remove() {
+        SearchNode n = poll();
+        if(n == null)
+            throw new NoSuchElementException();
+        return n;
+    }
+
+    /** Removes the given node if it is in memory. Spilled nodes are not considered. */
+    public boolean remove(SearchNode n) {
+        final int i = n.getHeapIndex();
+        if(i < 0 || i >= size || nodes[i] != n)
+            return false;
+        removeAt(i);
+        return true;
+    }
+
+    public void clear() {
+        for(int i=0 ; i<size ; i++)
+            nodes[i].setHeapIndex(-1);
+        Arrays.fill(nodes, 0, size, null);
+        size = 0;
+        numUnspillable = 0;
+        runs.clear();
+        numSpilled = 0;
+        ancestors.clear();
+        fileEnd = 0;
+        freeRegions.clear();
+    }
+
+    /** Size of the part of the spill file that is in use or available for reuse (in bytes). */
+    long spillFileLength() { return fileEnd; }
+
+    /** A node can be spilled if it can be recreated from its parent. */
+    private static boolean isSpillable(SearchNode n) {
+        return n.getResolverIndex() >= 0 && n.getParent() != null;
+    }
+
+    /** Returns all nodes in the list, recreating the spilled ones. The content of the list is unchanged. */
+    public List<SearchNode> getAll() {
+        while(numSpilled > 0)
+            push(loadHead(runs.poll()));
+        return new ArrayList<>(Arrays.asList(nodes).subList(0, size));
+    }
+
+    /** Inserts a node in the heap, without spilling. */
+    private void push(SearchNode n) {
+        final double[] key = priority.apply(n);
+        if(keyLength == -1) {
+            keyLength = key.length;
+            keys = new double[nodes.length * keyLength];
+        }
+        assert key.length == keyLength : "All nodes must have priorities of the same length.";
+        if(size == nodes.length) {
+            nodes = Arrays.copyOf(nodes, size * 2);
+            ids = Arrays.copyOf(ids, size * 2);
+            keys = Arrays.copyOf(keys, size * 2 * keyLength);
+        }
+        nodes[size] = n;
+        n.setHeapIndex(size);
+        ids[size] = n.getID();
+        System.arraycopy(key, 0, keys, size * keyLength, keyLength);
+        if(!isSpillable(n))
+            numUnspillable++;
+        siftUp(size++);
+    }
+
+    /** Removes the node at the given position of the heap. */
+    private SearchNode removeAt(int i) {
+        final SearchNode n = nodes[i];
+        if(!isSpillable(n))
+            numUnspillable--;
+        size--;
+        if(i != size) {
+            move(size, i);
+            siftDown(i);
+            siftUp(i);
+        }
+        nodes[size] = null;
+        n.setHeapIndex(-1);
+        return n;
+    }
+
+    private static int compare(double v1, double v2) {
+        return v1 < v2 ? -1 : (v1 > v2 ? 1 : 0);
+    }
+
+    /** True if the node at position i of the heap is before the one at position j. */
+    private boolean before(int i, int j) {
+        final int ki = i * keyLength;
+        final int kj = j * keyLength;
+        for(int k=0 ; k<keyLength ; k++) {
+            if(keys[ki+k] < keys[kj+k])
+                return true;
+            else if(keys[ki+k] > keys[kj+k])
+                return false;
+        }
+        return ids[i] < ids[j];
+    }
+
+    private void move(int from, int to) {
+        nodes[to] = nodes[from];
+        nodes[to].setHeapIndex(to);
+        ids[to] = ids[from];
+        System.arraycopy(keys, from * keyLength, keys, to * keyLength, keyLength);
+    }
+
+    private void swap(int i, int j) {
+        final SearchNode n = nodes[i]; nodes[i] = nodes[j]; nodes[j] = n;
+        nodes[i].setHeapIndex(i);
+        nodes[j].setHeapIndex(j);
+        final int id = ids[i]; ids[i] = ids[j]; ids[j] = id;
+        final int ki = i * keyLength;
+        final int kj = j * keyLength;
+        for(int k=0 ; k<keyLength ; k++) {
+            final double tmp = keys[ki+k];
+            keys[ki+k] = keys[kj+k];
+            keys[kj+k] = tmp;
+        }
+    }
+
+    private void siftUp(int i) {
+        while(i > 0) {
+            final int parent = (i-1) / 2;
+            if(!before(i, parent))
+                return;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while(true) {
+            final int left = 2*i +1;
+            if(left >= size)
+                return;
+            int best = left;
+            if(left+1 < size && before(left+1, left))
+                best = left+1;
+            if(!before(best, i))
+                return;
+            swap(i, best);
+            i = best;
+        }
+    }
+
+    /** If the best spilled node is better than the best node in memory, brings it back in memory. */
+    private void loadBestSpilled() {
+        if(numSpilled == 0)
+            return;
+        Run best = runs.poll();
+        if(size == 0 || compareHeadToRun(best) > 0)
+            push(loadHead(best));
+        else
+            runs.add(best);
+    }
+
+    /** Compares the best node in memory with the first one of the run. */
+    private int compareHeadToRun(Run run) {
+        for(int k=0 ; k<keyLength ; k++) {
+            int ret = compare(keys[k], run.headKey(k));
+            if(ret != 0)
+                return ret;
+        }
+        return ids[0] - run.headID();
+    }
+
+    /** Recreates the first node of the given run (that must have been removed from runs) and advances the run. */
+    private SearchNode loadHead(Run run) {
+        int pos = run.next * recordSize();
+        final double[] key = new double[keyLength];
+        for(int k=0 ; k<keyLength ; k++, pos += 8)
+            key[k] = run.buffer.getDouble(pos);
+        final double g = run.buffer.getDouble(pos);
+        final double h = run.buffer.getDouble(pos + 8);
+        final double hc = run.buffer.getDouble(pos + 16);
+        final int id = run.buffer.getInt(pos + 24);
+        final int parentID = run.buffer.getInt(pos + 28);
+        final int resolverIndex = run.buffer.getInt(pos + 32);
+        final boolean lazy = run.buffer.getInt(pos + 36) != 0;
+        run.next++;
+        if(!run.isEmpty())
+            runs.add(run);
+        else
+            free(run.offset, (long) run.size * recordSize());
+
+        final SearchNode parent = ancestor(parentID);
+        release(parentID);
+        numSpilled--;
+
+        SearchNode n = rematerializer.rematerialize(parent, id, resolverIndex, false);
+        n.setResolverIndex(resolverIndex);
+        n.setLazy(lazy);
+        n.setG(g);
+        n.setH(h);
+        n.setHC(hc);
+        n.setPriority(key);
+        Telemetry.count("open-list-rematerialized");
+        return n;
+    }
+
+    /** Merges all runs into a single one, freeing the space of the records that were already extracted. */
+    private void compact() throws IOException {
+        final long length = (long) numSpilled * recordSize();
+        final long offset = allocate(length);
+        final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, offset, length);
+        final List<Run> merged = new ArrayList<>(runs);
+        final byte[] record = new byte[recordSize()];
+        while(!runs.isEmpty()) {
+            final Run r = runs.poll();
+            final ByteBuffer src = r.buffer.duplicate();
+            src.position(r.next * recordSize());
+            src.get(record);
+            buffer.put(record);
+            r.next++;
+            if(!r.isEmpty())
+                runs.add(r);
+        }
+        for(Run r : merged)
+            free(r.offset, (long) r.size * recordSize());
+        runs.add(new Run(buffer, offset, numSpilled));
+        Telemetry.count("open-list-compactions");
+    }
+
+    /** Returns the ancestor with the given ID, recreating it (and its own ancestors) if it was garbage collected. */
+    private SearchNode ancestor(int id) {
+        Ancestor a = ancestors.get(id);
+        SearchNode n = a.get();
+        if(n != null)
+            return n;
+
+        // go up until an ancestor still in memory and recreate all the ones below it
+        final List<Ancestor> collected = new ArrayList<>();
+        while(n == null) {
+            collected.add(a);
+            a = ancestors.get(a.parentID);
+            n = a.get();
+        }
+        for(int i=collected.size()-1 ; i>=0 ; i--) {
+            final Ancestor toRebuild = collected.get(i);
+            n = rematerializer.rematerialize(n, toRebuild.id, toRebuild.resolverIndex, true);
+            toRebuild.node = new WeakReference<>(n);
+            Telemetry.count("open-list-rematerialized-ancestors");
+        }
+        return n;
+    }
+
+    /** Records that a newly spilled node has n as parent. */
+    private void retain(SearchNode n) {
+        while(true) {
+            Ancestor a = ancestors.get(n.getID());
+            if(a != null) {
+                a.refs++;
+                return;
+            }
+            a = new Ancestor(n);
+            a.refs = 1;
+            ancestors.put(a.id, a);
+            if(a.pinned != null)
+                return;
+            n = n.getParent(); // this ancestor refers to its parent
+        }
+    }
+
+    /** Records that a node referring to the ancestor with the given ID is no longer spilled. */
+    private void release(int id) {
+        while(true) {
+            final Ancestor a = ancestors.get(id);
+            if(--a.refs > 0)
+                return;
+            ancestors.remove(id);
+            if(a.pinned != null)
+                return;
+            id = a.parentID; // this ancestor no longer refers to its parent
+        }
+    }
+
+    /** Returns the position of a region of the file of the given length, reusing free regions if possible. */
+    private long allocate(long length) {
+        for(Map.Entry<Long, Long> region : freeRegions.entrySet()) {
+            final long offset = region.getKey();
+            final long available = region.getValue();
+            if(available >= length) {
+                freeRegions.remove(offset);
+                if(available > length)
+                    freeRegions.put(offset + length, available - length);
+                return offset;
+            }
+        }
+        final long offset = fileEnd;
+        fileEnd += length;
+        return offset;
+    }
+
+    /** Marks a region of the file as reusable. */
+    private void free(long offset, long length) {
+        final Map.Entry<Long, Long> before = freeRegions.lowerEntry(offset);
+        if(before != null && before.getKey() + before.getValue() == offset) {
+            freeRegions.remove(before.getKey());
+            offset = before.getKey();
+            length += before.getValue();
+        }
+        final Long after = freeRegions.remove(offset + length);
+        if(after != null)
+            length += after;
+        if(offset + length == fileEnd)
+            fileEnd = offset; // last region of the file
+        else
+            freeRegions.put(offset, length);
+    }
+
+    /**
+     * Writes the worst half of the nodes in memory to disk. Nodes that can not be spilled are kept in memory,
+     * which is why spilling is only triggered by the number of nodes that can.
+     */
+    private void spill() {
+        // extract all nodes from the best to the worst, the best half is put back in the heap
+        final List<SearchNode> sorted = new ArrayList<>(size);
+        while(size > 0)
+            sorted.add(removeAt(0));
+        final List<SearchNode> toSpill = new ArrayList<>();
+        for(int i=0 ; i<sorted.size() ; i++) {
+            SearchNode n = sorted.get(i);
+            if(i < maxInMemory / 2 || !isSpillable(n))
+                push(n);
+            else
+                toSpill.add(n);
+        }
+        if(toSpill.isEmpty())
+            return;
+
+        try {
+            if(channel == null) {
+                file = File.createTempFile("fape-open-list", ".bin");
+                file.deleteOnExit();
+                channel = new RandomAccessFile(file, "rw").getChannel();
+            }
+            final long offset = allocate((long) toSpill.size() * recordSize());
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, offset, (long) toSpill.size() * recordSize());
+            // nodes are written in increasing order
+            for(SearchNode n : toSpill) {
+                for(double v : priority.apply(n))
+                    buffer.putDouble(v);
+                buffer.putDouble(n.getG());
+                buffer.putDouble(n.getH());
+                buffer.putDouble(n.getHC());
+                buffer.putInt(n.getID());
+                buffer.putInt(n.getParent().getID());
+                buffer.putInt(n.getResolverIndex());
+                buffer.putInt(n.isLazy() ? 1 : 0);
+                retain(n.getParent());
+            }
+            runs.add(new Run(buffer, offset, toSpill.size()));
+            numSpilled += toSpill.size();
+            Telemetry.count("open-list-spilled-runs");
+
+            long used = 0;
+            for(Run r : runs)
+                used += (long) r.size * recordSize();
+            if(used > 2 * (long) numSpilled * recordSize())
+                compact();
+        } catch (IOException e) {
+            throw new FAPEException("Unable to spill the open list to disk: "+e);
+        }
+    }
+}
@@ -133,6 +133,11 @@ public class NeededObservationsFinder implements FlawFinder {
                 return true;
             }
 
+            @Override
+            public Object[] parameters() {
+                return new Object[] { toObserve };
+            }
+
             @Override
             public int compareWithSameClass(Resolver e) {
                 throw new UnsupportedOperationException("Not supported yet.");
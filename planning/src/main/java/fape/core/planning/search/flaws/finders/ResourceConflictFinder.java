@@ -0,0 +1,24 @@
+package fape.core.planning.search.flaws.finders;
+
+import fape.core.planning.planner.Planner;
+import fape.core.planning.resources.ResourceManager;
+import fape.core.planning.resources.ResourceProfile;
+import fape.core.planning.search.flaws.flaws.Flaw;
+import fape.core.planning.states.State;
+
+import java.util.LinkedList;
+import java.util.List;
+
+public class ResourceConflictFinder implements FlawFinder {
+
+    @Override
+    public List<Flaw> getFlaws(State st, Planner planner) {
+        List<Flaw> flaws = new LinkedList<>();
+        if(!st.hasExtension(ResourceManager.class))
+            return flaws;
+
+        for(ResourceProfile profile : st.getExtension(ResourceManager.class).getProfiles())
+            flaws.addAll(profile.getConflicts(st));
+        return flaws;
+    }
+}
@@ -36,6 +36,16 @@ public abstract class Flaw {
         return resolvers.size();
     }
 
+    /**
+     * Returns the number of resolvers for this flaw if it is no greater than `bound`, or any number
+     * greater than `bound` otherwise.
+     * This is meant for flaw selection where the exact number of resolvers of a flaw is not needed once it
+     * is known to have more resolvers than the best flaw so far. By default, all resolvers are computed.
+     */
+    public int getNumResolvers(State st, Planner planner, int bound) {
+        return getNumResolvers(st, planner);
+    }
+
     /**
      * Finds and returns all resolvers for the flaw.
      * Best effort is done to make sure all resolvers are applicable in the state which might
@@ -0,0 +1,62 @@
+package fape.core.planning.search.flaws.flaws;
+
+import fape.core.planning.planner.Planner;
+import fape.core.planning.resources.ResourceProfile;
+import fape.core.planning.search.flaws.resolvers.Resolver;
+import fape.core.planning.states.State;
+import planstack.anml.model.concrete.TPRef;
+
+import java.util.List;
+
+/**
+ * A resource whose level might leave its allowed range (or might not meet a requirement) at time point `at`.
+ * The violation lasts until `horizon`: changes that can happen in ]at, horizon] are involved in it.
+ */
+public class ResourceConflict extends Flaw {
+
+    public final ResourceProfile profile;
+    /** Index of the events of `at` and `horizon` in the profile. */
+    public final int atEvent;
+    public final int horizonEvent;
+    public final TPRef at;
+    public final TPRef horizon;
+    /** True if the level might be below the threshold, false if it might be above it. */
+    public final boolean tooLow;
+    public final float threshold;
+
+    public ResourceConflict(ResourceProfile profile, int atEvent, int horizonEvent, TPRef at, TPRef horizon,
+                            boolean tooLow, float threshold) {
+        this.profile = profile;
+        this.atEvent = atEvent;
+        this.horizonEvent = horizonEvent;
+        this.at = at;
+        this.horizon = horizon;
+        this.tooLow = tooLow;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public List<Resolver> getResolvers(State st, Planner planner) {
+        if(resolvers != null)
+            return resolvers;
+
+        resolvers = profile.getResolvers(this, st, planner);
+        return resolvers;
+    }
+
+    @Override
+    public int compareTo(Flaw o) {
+        assert o instanceof ResourceConflict;
+        ResourceConflict c = (ResourceConflict) o;
+        if(at.id() != c.at.id())
+            return c.at.id() - at.id();
+        if(horizon.id() != c.horizon.id())
+            return c.horizon.id() - horizon.id();
+        return Boolean.compare(c.tooLow, tooLow);
+    }
+
+    @Override
+    public String toString() {
+        return "ResourceConflict: "+profile+(tooLow ? " < " : " > ")+threshold+" at "+at;
+    }
+}
@@ -46,6 +46,24 @@ public class Threat extends Flaw {
         return resolvers;
     }
 
+    /** Counts resolvers as getResolvers would, without building them and stopping as soon as `bound` is exceeded. */
+    @Override
+    public int getNumResolvers(State st, Planner planner, int bound) {
+        if(resolvers != null)
+            return resolvers.size();
+
+        int num = 0;
+        if(st.canBeBefore(db1.getLastTimePoints().getFirst(), db2.getFirstTimePoints().getFirst()))
+            num++;
+        if(st.canBeBefore(db2.getLastTimePoints().getFirst(), db1.getFirstTimePoints().getFirst()))
+            num++;
+        for (int i = 0; i < db1.stateVariable.args().length && num <= bound; i++) {
+            if(st.separable(db1.stateVariable.arg(i), db2.stateVariable.arg(i)))
+                num++;
+        }
+        return num;
+    }
+
     @Override
     public int compareTo(Flaw o) {
         assert o instanceof Threat;
@@ -23,6 +23,11 @@ public class BindingSeparation implements Resolver {
         return true;
     }
 
+    @Override
+    public Object[] parameters() {
+        return new Object[] { a, b };
+    }
+
     @Override
     public int compareWithSameClass(Resolver e) {
         assert e instanceof BindingSeparation;
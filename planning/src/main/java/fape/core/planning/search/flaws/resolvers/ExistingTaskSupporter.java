@@ -39,6 +39,11 @@ public class ExistingTaskSupporter implements Resolver {
         return true;
     }
 
+    @Override
+    public Object[] parameters() {
+        return new Object[] { task, act };
+    }
+
     @Override
     public int compareWithSameClass(Resolver e) {
         assert e instanceof ExistingTaskSupporter;
@@ -25,6 +25,11 @@ public class FutureActionSupport implements Resolver {
         return true;
     }
 
+    @Override
+    public Object[] parameters() {
+        return new Object[] { consumer, act };
+    }
+
     @Override
     public int compareWithSameClass(Resolver e) {
         assert e instanceof FutureActionSupport;
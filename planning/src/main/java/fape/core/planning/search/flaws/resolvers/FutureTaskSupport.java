@@ -18,6 +18,11 @@ public class FutureTaskSupport implements Resolver {
         return true;
     }
 
+    @Override
+    public Object[] parameters() {
+        return new Object[] { consumer, task };
+    }
+
     @Override
     public int compareWithSameClass(Resolver e) {
         assert e instanceof FutureTaskSupport;
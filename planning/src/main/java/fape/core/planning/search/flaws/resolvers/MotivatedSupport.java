@@ -26,7 +26,7 @@ public class MotivatedSupport implements Resolver {
     /**
      * Action providing the support. If null, it should be created by instantiating abs.
      */
-    public Action act;
+    public final Action act;
 
     /**
      * ID of the action condition we want for support.
@@ -66,13 +66,17 @@ public class MotivatedSupport implements Resolver {
         assert toSupport.mustBeMotivated();
 
         // action that will be decomposed. Either it is already in the plan or we add it now
+        // (the resolver itself is left untouched so that it can be applied again on another copy of the state)
+        final Action decomposed;
         if(act == null) {
-            act = Factory.getStandaloneAction(st.pb, abs, st.refCounter);
-            st.insert(act);
+            decomposed = Factory.getStandaloneAction(st.pb, abs, st.refCounter);
+            st.insert(decomposed);
+        } else {
+            decomposed = act;
         }
 
         // Look for the action condition with ID actRef
-        Task ac = act.context().tasks().apply(actRef);
+        Task ac = decomposed.context().tasks().apply(actRef);
 
         // add equality constraint between all args
         for (int i = 0; i < ac.args().size(); i++) {
@@ -84,6 +88,11 @@ public class MotivatedSupport implements Resolver {
         return true;
     }
 
+    @Override
+    public Object[] parameters() {
+        return new Object[] { toSupport, act, abs, actRef };
+    }
+
     @Override
     public int compareWithSameClass(Resolver e) {
         assert e instanceof MotivatedSupport;
@@ -39,6 +39,11 @@ public class NewTaskSupporter implements Resolver {
         return true;
     }
 
+    @Override
+    public Object[] parameters() {
+        return new Object[] { unrefined, abs };
+    }
+
     @Override
     public int compareWithSameClass(Resolver e) {
         assert e instanceof NewTaskSupporter;
@@ -21,6 +21,16 @@ public interface Resolver extends Comparable<Resolver> {
      */
     boolean apply(State st, Planner planner, boolean isFastForwarding);
 
+    /**
+     * Objects this resolver is built from (variables, time points, actions, timelines, abstract actions, ...):
+     * two resolvers of the same class with equal parameters must have the same effect when applied to the same state.
+     * Timelines must be given as a Timeline or through their ID wrapped with Decisions.timeline(int). Parameters
+     * must not depend on the state this resolver is applied to.
+     * This is used to recognize partial plans that were obtained by applying the same resolvers in different orders
+     * (see Decisions).
+     */
+    Object[] parameters();
+
     /**
      * Should provide a comparison with another resolver of the same class.
      * This is used to sort resolvers for reproducibility.
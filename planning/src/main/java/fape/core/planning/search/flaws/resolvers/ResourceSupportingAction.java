@@ -0,0 +1,69 @@
+package fape.core.planning.search.flaws.resolvers;
+
+import fape.core.planning.planner.Planner;
+import fape.core.planning.states.State;
+import planstack.anml.model.LStatementRef;
+import planstack.anml.model.ParameterizedStateVariable;
+import planstack.anml.model.abs.AbstractAction;
+import planstack.anml.model.concrete.Action;
+import planstack.anml.model.concrete.Factory;
+import planstack.anml.model.concrete.TPRef;
+import planstack.anml.model.concrete.statements.ProduceResource;
+import planstack.anml.model.concrete.statements.ResourceStatement;
+import planstack.anml.model.concrete.statements.Statement;
+
+/**
+ * A resolver for a resource conflict: inserts a new action whose resource statement (a production or a consumption)
+ * applies on the conflicting resource before the time point of the conflict.
+ */
+public class ResourceSupportingAction implements Resolver {
+
+    public final AbstractAction act;
+    /** id of the resource statement in the action */
+    public final LStatementRef statementRef;
+    public final ParameterizedStateVariable resource;
+    public final TPRef before;
+
+    public ResourceSupportingAction(AbstractAction act, LStatementRef statementRef, ParameterizedStateVariable resource, TPRef before) {
+        this.act = act;
+        this.statementRef = statementRef;
+        this.resource = resource;
+        this.before = before;
+    }
+
+    @Override
+    public String toString() {
+        return "Resource supporting action: "+act+" on "+resource;
+    }
+
+    @Override
+    public boolean apply(State st, Planner planner, boolean isFastForwarding) {
+        Action action = Factory.getStandaloneAction(st.pb, act, st.refCounter);
+        st.insert(action);
+
+        Statement s = action.context().getStatement(statementRef);
+        assert s != null && s instanceof ResourceStatement;
+        ResourceStatement rs = (ResourceStatement) s;
+
+        st.addUnificationConstraint(rs.sv(), resource);
+        st.enforceBefore(rs instanceof ProduceResource ? rs.end() : rs.start(), before);
+        return st.checkConsistency();
+    }
+
+    @Override
+    public Object[] parameters() {
+        return new Object[] { act, statementRef, resource, before };
+    }
+
+    @Override
+    public int compareWithSameClass(Resolver e) {
+        assert e instanceof ResourceSupportingAction;
+        ResourceSupportingAction o = (ResourceSupportingAction) e;
+        if(act != o.act)
+            return act.name().compareTo(o.act.name());
+        if(!statementRef.equals(o.statementRef))
+            return statementRef.id().compareTo(o.statementRef.id());
+        assert before.id() != o.before.id() : "Error: trying to compare to identical resolvers";
+        return before.id() - o.before.id();
+    }
+}
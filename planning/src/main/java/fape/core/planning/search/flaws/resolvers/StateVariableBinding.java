@@ -33,6 +33,11 @@ public class StateVariableBinding implements Resolver {
         return true;
     }
 
+    @Override
+    public Object[] parameters() {
+        return new Object[] { a, b };
+    }
+
     @Override
     public int compareWithSameClass(Resolver e) {
         throw new UnsupportedOperationException("Not supported yet.");
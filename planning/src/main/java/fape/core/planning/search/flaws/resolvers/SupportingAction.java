@@ -1,6 +1,7 @@
 package fape.core.planning.search.flaws.resolvers;
 
 import fape.core.planning.planner.Planner;
+import fape.core.planning.states.Decisions;
 import fape.core.planning.states.State;
 import fape.core.planning.timelines.Timeline;
 import fape.util.TinyLogger;
@@ -60,6 +61,11 @@ public class SupportingAction implements Resolver {
 
     }
 
+    @Override
+    public Object[] parameters() {
+        return new Object[] { act, Decisions.timeline(consumerID), statementRef };
+    }
+
     @Override
     public int compareWithSameClass(Resolver e) {
         assert e instanceof SupportingAction;
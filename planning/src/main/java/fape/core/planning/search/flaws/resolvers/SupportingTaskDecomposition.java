@@ -34,6 +34,11 @@ public class SupportingTaskDecomposition implements Resolver {
         throw new UnsupportedOperationException("Not supported yet.");
     }
 
+    @Override
+    public Object[] parameters() {
+        return new Object[] { task, abs, tl };
+    }
+
     @Override
     public int compareWithSameClass(Resolver e) {
         throw new UnsupportedOperationException("Not supported yet.");
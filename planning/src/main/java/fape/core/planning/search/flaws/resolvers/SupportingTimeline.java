@@ -1,6 +1,7 @@
 package fape.core.planning.search.flaws.resolvers;
 
 import fape.core.planning.planner.Planner;
+import fape.core.planning.states.Decisions;
 import fape.core.planning.states.State;
 import fape.core.planning.timelines.ChainComponent;
 import fape.core.planning.timelines.Timeline;
@@ -47,6 +48,11 @@ public class SupportingTimeline implements Resolver {
         return true;
     }
 
+    @Override
+    public Object[] parameters() {
+        return new Object[] { Decisions.timeline(supporterID), supportingComponent, Decisions.timeline(consumerID) };
+    }
+
     @Override
     public int compareWithSameClass(Resolver e) {
         assert e instanceof SupportingTimeline;
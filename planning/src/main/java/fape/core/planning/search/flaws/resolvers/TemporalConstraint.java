@@ -6,7 +6,6 @@ import planstack.anml.model.concrete.TPRef;
 
 import java.util.Collections;
 import java.util.List;
-
 /**
  * Enforces a temporal constraints between two time points.
  */
@@ -30,6 +29,11 @@ public class TemporalConstraint implements Resolver {
         return true;
     }
 
+    @Override
+    public Object[] parameters() {
+        return new Object[] { firsts, seconds, min, max };
+    }
+
     @Override
     public int compareWithSameClass(Resolver e) {
         assert e instanceof TemporalConstraint;
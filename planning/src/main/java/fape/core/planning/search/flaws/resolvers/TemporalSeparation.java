@@ -1,6 +1,7 @@
 package fape.core.planning.search.flaws.resolvers;
 
 import fape.core.planning.planner.Planner;
+import fape.core.planning.states.Decisions;
 import fape.core.planning.states.State;
 import fape.core.planning.timelines.Timeline;
 
@@ -32,6 +33,11 @@ public class TemporalSeparation implements Resolver {
         return st.checkConsistency();
     }
 
+    @Override
+    public Object[] parameters() {
+        return new Object[] { Decisions.timeline(firstDbID), Decisions.timeline(secondDbID) };
+    }
+
     @Override
     public int compareWithSameClass(Resolver e) {
         assert e instanceof TemporalSeparation;
@@ -6,7 +6,6 @@ import planstack.anml.model.concrete.VarRef;
 
 import java.util.LinkedList;
 import java.util.List;
-
 /**
  * Binds a variable to the given value.
  */
@@ -29,6 +28,11 @@ public class VarBinding implements Resolver {
         return true;
     }
 
+    @Override
+    public Object[] parameters() {
+        return new Object[] { var, value };
+    }
+
     @Override
     public int compareWithSameClass(Resolver e) {
         assert e instanceof VarBinding;
@@ -8,8 +8,8 @@ import fape.core.planning.states.State;
 import fape.util.Pair;
 import planstack.anml.model.AnmlProblem;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.WeakHashMap;
 
 /**
  * A comparator for flaws and their resolvers that uses lifted abstraction hierarchies.
@@ -24,22 +24,33 @@ public class AbsHierarchyComp implements FlawComparator {
 
     /**
      * Map AnmlProblems to a pair (n, h) where h is the abstraction hierarchy for the nth revision
-     * of the problem.
+     * of the problem. Keys are weak to let problems be collected in long-lived processes.
      */
-    static Map<AnmlProblem, Pair<Integer, AbstractionHierarchy>> hierarchies = new HashMap<>();
+    static Map<AnmlProblem, Pair<Integer, AbstractionHierarchy>> hierarchies = new WeakHashMap<>();
 
     public AbsHierarchyComp(State st) {
-        if(!hierarchies.containsKey(st.pb) || hierarchies.get(st.pb).value1 != st.pb.chronicles().size()) {
-            hierarchies.put(st.pb, new Pair<>(st.pb.chronicles().size(), new AbstractionHierarchy(st.pb)));
+        this.hierarchy = hierarchyOf(st.pb);
+    }
+
+    /** Returns the abstraction hierarchy of the current revision of the problem. */
+    static AbstractionHierarchy hierarchyOf(AnmlProblem pb) {
+        synchronized (hierarchies) {
+            if (!hierarchies.containsKey(pb) || hierarchies.get(pb).value1 != pb.chronicles().size()) {
+                hierarchies.put(pb, new Pair<>(pb.chronicles().size(), new AbstractionHierarchy(pb)));
+            }
+            return hierarchies.get(pb).value2;
         }
-        this.hierarchy = hierarchies.get(st.pb).value2;
     }
 
-    private int priority(UnsupportedTimeline og) {
+    static int priority(UnsupportedTimeline og, AbstractionHierarchy hierarchy) {
         // open goal, order them according to their level in the abstraction hierarchy
         return hierarchy.getLevel(og.consumer.stateVariable.func());
     }
 
+    private int priority(UnsupportedTimeline og) {
+        return priority(og, hierarchy);
+    }
+
 
     @Override
     public int compare(Flaw o1, Flaw o2) {
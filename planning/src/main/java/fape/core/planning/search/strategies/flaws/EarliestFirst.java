@@ -1,6 +1,7 @@
 package fape.core.planning.search.strategies.flaws;
 
 import fape.core.planning.search.flaws.flaws.Flaw;
+import fape.core.planning.search.flaws.flaws.ResourceConflict;
 import fape.core.planning.search.flaws.flaws.Threat;
 import fape.core.planning.search.flaws.flaws.UnrefinedTask;
 import fape.core.planning.search.flaws.flaws.UnsupportedTimeline;
@@ -18,6 +19,10 @@ public class EarliestFirst implements FlawComparator {
     }
 
     private float priority(Flaw f) {
+        return priority(f, st);
+    }
+
+    static int priority(Flaw f, State st) {
         if(f instanceof UnrefinedTask)
             return st.getEarliestStartTime(((UnrefinedTask) f).task.start());
         else if(f instanceof UnsupportedTimeline)
@@ -27,6 +32,8 @@ public class EarliestFirst implements FlawComparator {
                     st.getEarliestStartTime(((Threat) f).db1.getConsumeTimePoint()),
                     st.getEarliestStartTime(((Threat) f).db2.getConsumeTimePoint()));
         }
+        else if(f instanceof ResourceConflict)
+            return st.getEarliestStartTime(((ResourceConflict) f).at);
         else
             return Integer.MAX_VALUE /2;
     }
@@ -21,6 +21,10 @@ public class EarliestOpenGoalFirst implements FlawComparator {
     }
 
     int priority(UnsupportedTimeline db) {
+        return priority(db, st);
+    }
+
+    static int priority(UnsupportedTimeline db, State st) {
         int start = 99999999;
         for(TPRef tp : db.consumer.getFirstTimePoints()) {
             start = start < st.getEarliestStartTime(tp) ? start : st.getEarliestStartTime(tp);
@@ -16,6 +16,10 @@ public class ExtendPlanFirst implements FlawComparator {
     }
 
     public boolean willExtendPlan(Flaw f) {
+        return willExtendPlan(f, st, planner);
+    }
+
+    static boolean willExtendPlan(Flaw f, State st, Planner planner) {
         for(Resolver r : f.getResolvers(st, planner)) {
             if(r instanceof BindingSeparation ||
                     r instanceof MotivatedSupport ||
@@ -1,12 +1,17 @@
 package fape.core.planning.search.strategies.flaws;
 
 import fape.core.planning.planner.Planner;
+import fape.core.planning.search.flaws.flaws.Threat;
+import fape.core.planning.search.flaws.flaws.UnboundVariable;
+import fape.core.planning.search.flaws.flaws.UnsupportedTimeline;
 import fape.core.planning.states.State;
 import fape.exceptions.FAPEException;
 
 import java.util.LinkedList;
 import java.util.List;
 
+import static fape.core.planning.search.strategies.flaws.FlawSelector.UNORDERED;
+
 public class FlawCompFactory {
 
     /**
@@ -65,4 +70,55 @@ public class FlawCompFactory {
         }
         return new SeqFlawComparator(st, planner, compList);
     }
+
+    /**
+     * Compiles a strategy (as described in get()) into a FlawSelector that always selects the flaw that would come
+     * first with the comparator returned by get(). Unlike the comparator, the selector does not depend on
+     * any state and is meant to be built once per planner.
+     */
+    public static FlawSelector compile(List<String> comparators) {
+        List<FlawSelector.Priority> priorities = new LinkedList<>();
+        for (String compID : comparators) {
+            switch (compID) {
+                case "abs":
+                    priorities.add((f, st, planner, bound) -> f instanceof UnsupportedTimeline ?
+                            AbsHierarchyComp.priority((UnsupportedTimeline) f, AbsHierarchyComp.hierarchyOf(st.pb)) : UNORDERED);
+                    break;
+                case "lcf":
+                    priorities.add((f, st, planner, bound) -> f.getNumResolvers(st, planner, (int) Math.min(bound, Integer.MAX_VALUE)));
+                    break;
+                case "hier":
+                    priorities.add((f, st, planner, bound) -> HierarchicalFirstComp.priority(f, st, st.pb.allActionsAreMotivated()));
+                    break;
+                case "hier-fifo":
+                    priorities.add((f, st, planner, bound) -> HierFIFO.priority(f, st));
+                    break;
+                case "ogf":
+                    priorities.add((f, st, planner, bound) -> f instanceof UnsupportedTimeline ? 0 : 1);
+                    break;
+                case "eogf":
+                    priorities.add((f, st, planner, bound) -> f instanceof UnsupportedTimeline ?
+                            EarliestOpenGoalFirst.priority((UnsupportedTimeline) f, st) : UNORDERED);
+                    break;
+                case "extfirst":
+                    priorities.add((f, st, planner, bound) -> ExtendPlanFirst.willExtendPlan(f, st, planner) ? 0 : 1);
+                    break;
+                case "threats":
+                    priorities.add((f, st, planner, bound) -> f instanceof Threat ? 0 : 1);
+                    break;
+                case "unbound":
+                    priorities.add((f, st, planner, bound) -> f instanceof UnboundVariable ? 0 : 1);
+                    break;
+                case "earliest":
+                    priorities.add((f, st, planner, bound) -> EarliestFirst.priority(f, st));
+                    break;
+                case "minspan":
+                    priorities.add((f, st, planner, bound) -> MinSpanFailFirst.priority(f, st));
+                    break;
+                default:
+                    throw new FAPEException("Unrecognized flaw comparator option: " + compID);
+            }
+        }
+        return new FlawSelector(priorities);
+    }
 }
@@ -0,0 +1,95 @@
+package fape.core.planning.search.strategies.flaws;
+
+import fape.core.planning.planner.Planner;
+import fape.core.planning.search.flaws.flaws.Flaw;
+import fape.core.planning.states.State;
+
+import java.util.List;
+
+/**
+ * Selects the flaw to be solved next in a state. It gives the same flaw as the first one of a list sorted
+ * with the SeqFlawComparator built for the same strategies, but is built once per planner (see FlawCompFactory.compile).
+ *
+ * Each strategy is given as a numeric priority (lower first) and the selection is a single pass over the flaws
+ * keeping the best one. The priorities of a flaw are computed lazily: the priority of the i-th strategy is only
+ * computed if the flaw ties with the best one on all previous strategies. Priorities based on the number of resolvers
+ * are given the value of the current best one as a bound, so that the resolvers of a flaw are not all computed
+ * when it is known to have more than the best flaw (see Flaw.getNumResolvers(State, Planner, int)).
+ *
+ * A selector is shared by all threads of a planner, each of them keeping its own buffers for the priorities.
+ */
+public class FlawSelector {
+
+    /**
+     * Priority of a flaw for a given strategy.
+     */
+    @FunctionalInterface
+    interface Priority {
+        /**
+         * @param bound The value against which the priority is going to be compared. If the priority is known
+         *              to be greater than `bound`, any value greater than `bound` can be returned.
+         * @return The priority of the flaw or UNORDERED if the strategy does not order this flaw.
+         */
+        long of(Flaw f, State st, Planner planner, long bound);
+    }
+
+    /** Priority of a flaw that is not ordered by a strategy: it ties with any other flaw. */
+    static final long UNORDERED = Long.MIN_VALUE;
+
+    /** Flaws with no resolvers come first and flaws with one resolver come second */
+    private static final Priority NUM_RESOLVERS_CLASS =
+            (f, st, planner, bound) -> Math.min(f.getNumResolvers(st, planner, 1), 2);
+
+    private static final TieBreaker TIE_BREAKER = new TieBreaker();
+
+    private final Priority[] priorities;
+
+    /** Arrays for the priorities of the best flaw and of the candidate, reused across selections */
+    private final ThreadLocal<long[][]> buffers;
+
+    FlawSelector(List<Priority> priorities) {
+        this.priorities = new Priority[priorities.size() +1];
+        this.priorities[0] = NUM_RESOLVERS_CLASS;
+        for(int i=0 ; i<priorities.size() ; i++)
+            this.priorities[i+1] = priorities.get(i);
+        final int n = this.priorities.length;
+        this.buffers = ThreadLocal.withInitial(() -> new long[2][n]);
+    }
+
+    /**
+     * Returns the index of the flaw that should be solved first, -1 if the list is empty.
+     */
+    public int select(List<Flaw> flaws, State st, Planner planner) {
+        if(flaws.isEmpty())
+            return -1;
+
+        final int n = priorities.length;
+        // priorities of the best flaw so far, only the first `bestComputed` are known.
+        final long[] best = buffers.get()[0];
+        final long[] candidate = buffers.get()[1];
+        int bestComputed = 0;
+        int bestIndex = 0;
+
+        for(int i=1 ; i<flaws.size() ; i++) {
+            final Flaw f = flaws.get(i);
+            int cmp = 0;
+            int s = 0;
+            for( ; s<n && cmp == 0 ; s++) {
+                if(s == bestComputed)
+                    best[bestComputed++] = priorities[s].of(flaws.get(bestIndex), st, planner, Long.MAX_VALUE);
+                candidate[s] = priorities[s].of(f, st, planner, best[s]);
+                if(best[s] != UNORDERED && candidate[s] != UNORDERED)
+                    cmp = Long.compare(candidate[s], best[s]);
+            }
+            if(cmp == 0)
+                cmp = TIE_BREAKER.compare(f, flaws.get(bestIndex));
+            if(cmp < 0) {
+                // the candidate is better, keep its priorities (they are exact since they were no greater than the bounds)
+                System.arraycopy(candidate, 0, best, 0, s);
+                bestComputed = s;
+                bestIndex = i;
+            }
+        }
+        return bestIndex;
+    }
+}
@@ -6,6 +6,8 @@ import fape.core.planning.search.flaws.flaws.UnrefinedTask;
 import fape.core.planning.states.State;
 import planstack.anml.model.concrete.Task;
 
+import java.util.Collections;
+import java.util.Map;
 import java.util.WeakHashMap;
 
 public class HierFIFO implements FlawComparator {
@@ -18,7 +20,7 @@ public class HierFIFO implements FlawComparator {
         this.planner = planner;
     }
 
-    public static WeakHashMap<Task, Integer> encounterDepth = new WeakHashMap<>();
+    public static Map<Task, Integer> encounterDepth = Collections.synchronizedMap(new WeakHashMap<>());
 
     @Override
     public String shortName() {
@@ -26,6 +28,10 @@ public class HierFIFO implements FlawComparator {
     }
 
     private int priority(Flaw flaw) {
+        return priority(flaw, st);
+    }
+
+    static int priority(Flaw flaw, State st) {
         if(!(flaw instanceof UnrefinedTask))
             return 99999;
 
@@ -24,20 +24,24 @@ public class HierarchicalFirstComp implements FlawComparator {
         return "hier";
     }
 
-    private double priority(Flaw flaw) {
+    /**
+     * Threats (if all actions are motivated) first, then unrefined tasks by earliest start, then unmotivated actions.
+     * The category is in the upper 32 bits and the earliest start time (if any) in the lower ones.
+     */
+    static long priority(Flaw flaw, State st, boolean threatsFirst) {
         if(threatsFirst && flaw instanceof Threat)
-            return 0.;
+            return 0L;
         else if(flaw instanceof UnrefinedTask)
-            return 1. + ((double) st.getEarliestStartTime(((UnrefinedTask) flaw).task.start())) / Integer.MAX_VALUE; // ((double) st.getEarliestStartTime(st.pb.end()) + 1);
+            return (1L << 32) + st.getEarliestStartTime(((UnrefinedTask) flaw).task.start());
         else if(flaw instanceof UnmotivatedAction)
-            return 4.;
+            return 4L << 32;
         else
-            return 5.;
+            return 5L << 32;
     }
 
 
     @Override
     public int compare(Flaw o1, Flaw o2) {
-        return (int) Math.signum(priority(o1) - priority(o2));
+        return Long.compare(priority(o1, st, threatsFirst), priority(o2, st, threatsFirst));
     }
 }
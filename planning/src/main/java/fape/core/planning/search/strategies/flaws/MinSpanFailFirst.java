@@ -9,7 +9,7 @@ import fape.core.planning.states.State;
 import fape.core.planning.timelines.Timeline;
 import lombok.Value;
 
-import java.util.Collections;
+import java.util.List;
 
 @Value
 public class MinSpanFailFirst implements FlawComparator {
@@ -22,31 +22,42 @@ public class MinSpanFailFirst implements FlawComparator {
     }
 
     private MinSpanTreeExtFull getExt() {
+        return getExt(st);
+    }
+
+    private static MinSpanTreeExtFull getExt(State st) {
         if(!st.hasExtension(MinSpanTreeExtFull.class))
             st.addExtension(new MinSpanTreeExtFull(st));
         return st.getExtension(MinSpanTreeExtFull.class);
     }
 
     public int associatedCost(Timeline tl) {
+        return associatedCost(tl, st);
+    }
+
+    static int associatedCost(Timeline tl, State st) {
 //        if(true)
 //            return 0;
 //        if(!getExt().hasBeenProcessed())
 //            return 0;
 //        else
-            return getExt().allCosts
-                    .computeIfAbsent(tl, (x) -> Collections.singletonList(0))
-                    .stream()
+            List<Integer> costs = getExt(st).getCosts(tl);
+            return costs == null ? 0 : costs.stream()
                     .mapToInt(x -> x)
                     .sum();
     }
 
     private float priority(Flaw f) {
+        return priority(f, st);
+    }
+
+    static int priority(Flaw f, State st) {
 //        if(f instanceof UnrefinedTask)
 //            return 9999;//st.getEarliestStartTime(((UnrefinedTask) f).task.start());
         if(f instanceof UnsupportedTimeline)
-            return - associatedCost(((UnsupportedTimeline) f).getConsumer());
+            return - associatedCost(((UnsupportedTimeline) f).getConsumer(), st);
         else if(f instanceof Threat) {
-            return - Math.max(associatedCost(((Threat) f).db1), associatedCost(((Threat) f).db2));
+            return - Math.max(associatedCost(((Threat) f).db1, st), associatedCost(((Threat) f).db2, st));
         }
         else
             return Integer.MAX_VALUE /2;
@@ -29,6 +29,10 @@ public class TieBreaker implements FlawComparator {
             return -1;
         if(f2 instanceof Threat && !(f1 instanceof Threat))
             return 1;
+        if(f1 instanceof ResourceConflict && !(f2 instanceof ResourceConflict))
+            return -1;
+        if(f2 instanceof ResourceConflict && !(f1 instanceof ResourceConflict))
+            return 1;
         if(f1 instanceof UnboundVariable && !(f2 instanceof UnboundVariable))
             return -1;
         if(f2 instanceof UnboundVariable && !(f1 instanceof UnboundVariable))
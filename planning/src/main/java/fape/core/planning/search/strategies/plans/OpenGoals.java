@@ -2,16 +2,15 @@ package fape.core.planning.search.strategies.plans;
 
 import fape.core.planning.states.State;
 
-import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class OpenGoals extends PartialPlanComparator {
 
-    private HashMap<Integer, Integer> numOpenGoals = new HashMap<>();
+    private Map<Integer, Integer> numOpenGoals = new ConcurrentHashMap<>();
 
     private int numOpenGoals(State st) {
-        if(!numOpenGoals.containsKey(st.mID))
-            numOpenGoals.put(st.mID, st.tdb.getConsumers().size());
-        return numOpenGoals.get(st.mID);
+        return numOpenGoals.computeIfAbsent(st.mID, id -> st.tdb.getConsumers().size());
     }
 
     @Override
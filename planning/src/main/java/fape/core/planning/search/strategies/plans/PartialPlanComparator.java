@@ -31,17 +31,35 @@ public abstract class PartialPlanComparator implements Heuristic {
         return sw.getHC();
     }
 
+    /**
+     * Priority of a search node in the queue, cached in the node. Priorities are compared lexicographically
+     * (see comparePriorities()). By default, this is the single value g + weight * h.
+     */
+    public double[] priority(SearchNode sn, double weight) {
+        if(!sn.isRecordedPriority())
+            sn.setPriority(new double[] { g(sn) + weight * h(sn) });
+        return sn.getPriority();
+    }
+
+    /** Lexicographic comparison of two priorities of the same length, lower first. */
+    public static int comparePriorities(double[] p1, double[] p2) {
+        assert p1.length == p2.length;
+        for(int i=0 ; i<p1.length ; i++) {
+            if(p1[i] < p2[i])
+                return -1;
+            else if(p1[i] > p2[i])
+                return 1;
+        }
+        return 0;
+    }
+
     public final Comparator<SearchNode> comparator(PlanningOptions options) {
-        return new Comparator<SearchNode>() {
-            private double f(SearchNode sn) { return g(sn) + options.heuristicWeight * h(sn); }
-            @Override
-            public int compare(SearchNode st1, SearchNode st2) {
-                int ret = (int) Math.signum(f(st1) - f(st2));
-                if(ret != 0)
-                    return ret;
-                else
-                    return st1.getID() - st2.getID();
-            }
+        return (st1, st2) -> {
+            int ret = comparePriorities(priority(st1, options.heuristicWeight), priority(st2, options.heuristicWeight));
+            if(ret != 0)
+                return ret;
+            else
+                return st1.getID() - st2.getID();
         };
     }
 }
@@ -2,6 +2,7 @@ package fape.core.planning.search.strategies.plans;
 
 import fape.core.planning.states.State;
 import fape.core.planning.states.SearchNode;
+import fape.util.Telemetry;
 
 import java.util.LinkedList;
 import java.util.List;
@@ -11,6 +12,10 @@ import java.util.List;
  *
  * The basic algorithm for comparing two partial plans is to apply the comparators in sequence until it results in an ordering
  * between the two plans. If no comparator is found, the plans are left unordered.
+ *
+ * This is done exactly by the priority of a search node, that has one value (g + weight * h) per comparator.
+ * Values returned by g(), h() and hc() merge those of all comparators in a single number: they are only meant for
+ * display and lose precision with several comparators.
  */
 public class SeqPlanComparator extends PartialPlanComparator {
 
@@ -40,27 +45,70 @@ public class SeqPlanComparator extends PartialPlanComparator {
         return sb.toString();
     }
 
+    @Override
+    public double[] priority(SearchNode sn, double weight) {
+        if(sn.isRecordedPriority())
+            return sn.getPriority();
+
+        if(comparators.size() == 1 && sn.isRecordedG() && sn.isRecordedH()) {
+            // cached values are exactly those of the only comparator, the state is not needed
+            final double[] priority = { sn.getG() + weight * sn.getH() };
+            sn.setPriority(priority);
+            return priority;
+        }
+
+        final State st = sn.getState();
+        final double[] priority = new double[comparators.size()];
+        double g = 0;
+        double h = 0;
+        int i = 0;
+        for(PartialPlanComparator pc : comparators) {
+            final long start = Telemetry.start();
+            final double pcG = pc.g(st);
+            final double pcH = pc.h(st);
+            Telemetry.record("plan-comparator", pc, start);
+            priority[i++] = pcG + weight * pcH;
+            g = 1000000 * g + pcG;
+            h = 1000000 * h + pcH;
+        }
+        if(!sn.isRecordedG())
+            sn.setG(g);
+        if(!sn.isRecordedH())
+            sn.setH(h);
+        sn.setPriority(priority);
+        return priority;
+    }
+
     @Override
     public double g(State st) {
         double v = 0;
-        for(PartialPlanComparator pc : comparators)
+        for(PartialPlanComparator pc : comparators) {
+            final long start = Telemetry.start();
             v = 1000000 * v + pc.g(st);
+            Telemetry.record("plan-comparator", pc, start);
+        }
         return v;
     }
 
     @Override
     public double h(State st) {
         double v = 0;
-        for(PartialPlanComparator pc : comparators)
+        for(PartialPlanComparator pc : comparators) {
+            final long start = Telemetry.start();
             v = 1000000 * v + pc.h(st);
+            Telemetry.record("plan-comparator", pc, start);
+        }
         return v;
     }
 
     @Override
     public double hc(State st) {
         double v = 0;
-        for(PartialPlanComparator pc : comparators)
+        for(PartialPlanComparator pc : comparators) {
+            final long start = Telemetry.start();
             v = 1000000 * v + pc.hc(st);
+            Telemetry.record("plan-comparator", pc, start);
+        }
         return v;
     }
 }
@@ -2,16 +2,15 @@ package fape.core.planning.search.strategies.plans;
 
 import fape.core.planning.states.State;
 
-import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Threats extends PartialPlanComparator {
 
-    HashMap<Integer, Integer> numThreats = new HashMap<>();
+    Map<Integer, Integer> numThreats = new ConcurrentHashMap<>();
 
     int numThreats(State st) {
-        if(!numThreats.containsKey(st.mID))
-            numThreats.put(st.mID, st.getAllThreats().size());
-        return numThreats.get(st.mID);
+        return numThreats.computeIfAbsent(st.mID, id -> st.getAllThreats().size());
     }
 
     @Override
@@ -21,6 +21,12 @@ public class DTG {
         }
     }
 
+    /** Adds nodes for values of the domain that are not yet in this DTG (e.g. instances added to the problem). */
+    public void extendDomain(Collection<InstanceRef> domain) {
+        for(InstanceRef val : domain)
+            outGoingTransitions.putIfAbsent(val, new ArrayList<>());
+    }
+
     public void extendWith(GAction.GTransition trans, GAction container) {
         assert trans.sv == sv;
         outGoingTransitions.get(trans.startValue()).add(Pair.pair(trans, container));
@@ -17,6 +17,7 @@ import static fape.core.planning.grounding.GAction.*;
 import static fape.core.planning.search.strategies.plans.tsp.GoalNetwork.DisjunctiveGoal;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 public class Htsp extends PartialPlanComparator {
@@ -41,9 +42,13 @@ public class Htsp extends PartialPlanComparator {
     }
 
 
-    private Map<Integer,Integer> makespans = new HashMap<>();
-    private Map<Integer,Integer> additionalCosts = new HashMap<>();
-    private Map<Integer,Integer> existingCosts = new HashMap<>();
+    /**
+     * Values computed for each state, indexed by state ID. Concurrent as a comparator is shared by all search threads.
+     * additionalCosts is always filled last: a state with an additional cost has all its values recorded.
+     */
+    private final Map<Integer,Integer> makespans = new ConcurrentHashMap<>();
+    private final Map<Integer,Integer> additionalCosts = new ConcurrentHashMap<>();
+    private final Map<Integer,Integer> existingCosts = new ConcurrentHashMap<>();
 
     @Override
     public String shortName() {
@@ -140,9 +145,9 @@ public class Htsp extends PartialPlanComparator {
             log1("\n\n");
         }
 
-        additionalCosts.put(st.mID, additionalCost);
         existingCosts.put(st.mID, existingCost);
         makespans.put(st.mID, makespan);
+        additionalCosts.put(st.mID, additionalCost);
 
         return additionalCost;
     }
@@ -255,9 +260,9 @@ public class Htsp extends PartialPlanComparator {
             log1("\n\n");
         }
 
-        additionalCosts.put(st.mID, additionalCost);
         existingCosts.put(st.mID, existingCost);
         makespans.put(st.mID, makespan);
+        additionalCosts.put(st.mID, additionalCost);
 
         return additionalCost;
     }
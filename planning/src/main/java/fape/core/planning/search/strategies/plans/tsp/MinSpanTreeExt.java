@@ -21,6 +21,7 @@ import fape.core.planning.grounding.GAction.*;
 import planstack.constraints.bindings.Domain;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 @RequiredArgsConstructor
@@ -31,7 +32,7 @@ public class MinSpanTreeExt implements StateExtension {
     final State st;
     final boolean useNumChangesInAction;
 
-    private final HashMap<LogStatement, HashSet<GLogStatement>> groundStatements = new HashMap<>();
+    private final Map<LogStatement, Set<GLogStatement>> groundStatements = new ConcurrentHashMap<>();
 
     @Override
     public StateExtension clone(State st) {
@@ -196,11 +197,8 @@ public class MinSpanTreeExt implements StateExtension {
         return cost;
     }
 
-    private HashSet<GAction.GLogStatement> getGrounded(LogStatement s) {
-        if(!groundStatements.containsKey(s)) {
-            groundStatements.put(s, new HashSet<>(st.getGroundStatements(s)));
-        }
-        return groundStatements.get(s);
+    private Set<GAction.GLogStatement> getGrounded(LogStatement s) {
+        return groundStatements.computeIfAbsent(s, x -> new HashSet<>(st.getGroundStatements(x)));
     }
 
     private Fluent startFluent(GAction.GLogStatement s) {
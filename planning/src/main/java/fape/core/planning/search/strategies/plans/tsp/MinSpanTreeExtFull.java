@@ -24,6 +24,7 @@ import planstack.anml.model.ParameterizedStateVariable;
 import planstack.anml.model.concrete.statements.LogStatement;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 @RequiredArgsConstructor
@@ -33,12 +34,16 @@ public class MinSpanTreeExtFull implements StateExtension {
     private int dbgLvl = 0;
 
     final State st;
-    private final Map<Timeline,TimelineDTG> timelineDTGs = new HashMap<>();
-    private final Map<Timeline, Integer> minPreviousCost = new HashMap<>();
+    private final Map<Timeline,TimelineDTG> timelineDTGs = new ConcurrentHashMap<>();
+    private final Map<Timeline, Integer> minPreviousCost = new ConcurrentHashMap<>();
 
-    private final HashMap<LogStatement, HashSet<GLogStatement>> groundStatements = new HashMap<>();
+    private final Map<LogStatement, Set<GLogStatement>> groundStatements = new ConcurrentHashMap<>();
 
-    public final Map<Timeline,List<Integer>> allCosts;
+    /**
+     * Costs associated to each timeline by the last computation of the heuristic. This map is shared with the
+     * copies of this extension and must not be modified: it is replaced when the heuristic is recomputed.
+     */
+    private Map<Timeline,List<Integer>> allCosts;
 
     public MinSpanTreeExtFull(State st) {
         this.st = st;
@@ -47,7 +52,7 @@ public class MinSpanTreeExtFull implements StateExtension {
 
     public MinSpanTreeExtFull(State st, MinSpanTreeExtFull toCopy) {
         this.st = st;
-        this.allCosts = new HashMap<>(toCopy.allCosts);
+        this.allCosts = toCopy.allCosts;
     }
 
     @Override
@@ -71,12 +76,17 @@ public class MinSpanTreeExtFull implements StateExtension {
 
     private void computeHeuristic() {
         if(additionalCost == -1) {
-            allCosts.clear();
+            allCosts = new HashMap<>();
             processTimelines();
             computeDistance();
         }
     }
 
+    /** Returns the costs associated to a timeline by the heuristic or null if it has none. */
+    public List<Integer> getCosts(Timeline tl) {
+        return allCosts.get(tl);
+    }
+
     public int getCostToGo() {
         assert hasBeenProcessed();
         assert additionalCost != -1;
@@ -289,11 +299,8 @@ public class MinSpanTreeExtFull implements StateExtension {
         @Override public String toString() { return "["+f+", "+tl.mID+"]"; }
     }
 
-    private HashSet<GLogStatement> getGrounded(LogStatement s) {
-        if(!groundStatements.containsKey(s)) {
-            groundStatements.put(s, new HashSet<>(st.getGroundStatements(s)));
-        }
-        return groundStatements.get(s);
+    private Set<GLogStatement> getGrounded(LogStatement s) {
+        return groundStatements.computeIfAbsent(s, x -> new HashSet<>(st.getGroundStatements(x)));
     }
 
     private Fluent startFluent(GLogStatement s) {
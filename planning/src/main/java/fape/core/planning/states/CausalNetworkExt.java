@@ -10,6 +10,8 @@ import lombok.Value;
 import planstack.anml.model.ParameterizedStateVariable;
 import planstack.anml.model.concrete.TPRef;
 import planstack.anml.model.concrete.statements.LogStatement;
+import planstack.structures.IList;
+import planstack.structures.IMap;
 import planstack.structures.ISet;
 
 import java.util.*;
@@ -38,38 +40,40 @@ public class CausalNetworkExt implements StateExtension {
 
     private final State container;
 
+    // All collections are immutable, hence shared with copies of this extension until they are updated.
+
     // maps a timeline (by its ID) to a set of possibly indirectly supporting events
-    private final HashMap<Integer, ISet<Event>> potentialSupporters;
+    private IMap<Integer, ISet<Event>> potentialSupporters;
     // maps a timeline ID to number of the last event processed
-    private final HashMap<Integer,Integer> lastProcessedChange;
+    private IMap<Integer,Integer> lastProcessedChange;
     // respectively keep track of the IDs of timelines extended, added or removed since the last update
-    private final List<Integer> extendedTimelines;
-    private final Set<Integer> addedTimelines;
-    private final List<Integer> removedTimelines;
+    private IList<Integer> extendedTimelines;
+    private ISet<Integer> addedTimelines;
+    private IList<Integer> removedTimelines;
 
-    private final Map<Event, ISet<Integer>> possiblyInterferingTimelines;
-    private final Map<Event, ISet<Integer>> intermediateSteps;
+    private IMap<Event, ISet<Integer>> possiblyInterferingTimelines;
+    private IMap<Event, ISet<Integer>> intermediateSteps;
 
     CausalNetworkExt(State container) {
         this.container = container;
-        potentialSupporters = new HashMap<>();
-        lastProcessedChange = new HashMap<>();
-        extendedTimelines = new ArrayList<>();
-        removedTimelines = new ArrayList<>();
-        addedTimelines = new HashSet<>(container.tdb.getTimelinesStream().map(t -> t.mID).collect(Collectors.toList()));
-        possiblyInterferingTimelines = new HashMap<>();
-        intermediateSteps = new HashMap<>();
+        potentialSupporters = new IMap<>();
+        lastProcessedChange = new IMap<>();
+        extendedTimelines = new IList<>();
+        removedTimelines = new IList<>();
+        addedTimelines = new ISet<>(container.tdb.getTimelinesStream().map(t -> t.mID).collect(Collectors.toList()));
+        possiblyInterferingTimelines = new IMap<>();
+        intermediateSteps = new IMap<>();
     }
 
     private CausalNetworkExt(CausalNetworkExt toCopy, State container) {
         this.container = container;
-        potentialSupporters = new HashMap<>(toCopy.potentialSupporters);
-        lastProcessedChange = new HashMap<>(toCopy.lastProcessedChange);
-        extendedTimelines = new ArrayList<>(toCopy.extendedTimelines);
-        addedTimelines = new HashSet<>(toCopy.addedTimelines);
-        removedTimelines = new ArrayList<>(toCopy.removedTimelines);
-        possiblyInterferingTimelines = new HashMap<>(toCopy.possiblyInterferingTimelines);
-        intermediateSteps = new HashMap<>(toCopy.intermediateSteps);
+        potentialSupporters = toCopy.potentialSupporters;
+        lastProcessedChange = toCopy.lastProcessedChange;
+        extendedTimelines = toCopy.extendedTimelines;
+        addedTimelines = toCopy.addedTimelines;
+        removedTimelines = toCopy.removedTimelines;
+        possiblyInterferingTimelines = toCopy.possiblyInterferingTimelines;
+        intermediateSteps = toCopy.intermediateSteps;
     }
 
     @Override
@@ -102,14 +106,14 @@ public class CausalNetworkExt implements StateExtension {
             if(!tl.isConsumer())
                 continue;
             assert !potentialSupporters.containsKey(tlID);
-            potentialSupporters.put(tlID, new ISet<>());
+            potentialSupporters = potentialSupporters.with(tlID, new ISet<>());
 
             for(Timeline sup : container.tdb.getTimelines()) {
                 for(int i=0 ; i<sup.numChanges() ; i++) {
                     if (mightIndirectlySupport(sup, i, tl)) {
                         LogStatement ls = sup.getChangeNumber(i).getFirst();
                         Event pis = new Event(sup.mID, i, ls, tlID);
-                        potentialSupporters.put(tlID, potentialSupporters.get(tlID).with(pis));
+                        potentialSupporters = potentialSupporters.with(tlID, potentialSupporters.get(tlID).with(pis));
                     }
                 }
             }
@@ -121,7 +125,7 @@ public class CausalNetworkExt implements StateExtension {
         for(int tlID : potentialSupporters.keySet()) {
             if(!container.tdb.containsTimelineWithID(tlID)) {
                 // timeline was deleted, remove any reference we might have
-                potentialSupporters.remove(tlID);
+                potentialSupporters = potentialSupporters.without(tlID);
                 continue;
             }
             Timeline tl = tlMan.getTimeline(tlID);
@@ -137,7 +141,7 @@ public class CausalNetworkExt implements StateExtension {
                                 if (mightIndirectlySupport(sup, i, tl)) {
                                     LogStatement ls = sup.getChangeNumber(i).getFirst();
                                     Event pis = new Event(sup.mID, i, ls, tlID);
-                                    potentialSupporters.put(tlID, potentialSupporters.get(tlID).with(pis));
+                                    potentialSupporters = potentialSupporters.with(tlID, potentialSupporters.get(tlID).with(pis));
                                 }
                             }
                         });
@@ -151,7 +155,7 @@ public class CausalNetworkExt implements StateExtension {
                                 if (mightIndirectlySupport(sup, i, tl)) {
                                     LogStatement ls = sup.getChangeNumber(i).getFirst();
                                     Event pis = new Event(sup.mID, i, ls, tlID);
-                                    potentialSupporters.put(tlID, potentialSupporters.get(tlID).with(pis));
+                                    potentialSupporters = potentialSupporters.with(tlID, potentialSupporters.get(tlID).with(pis));
                                 }
                             }
                         });
@@ -199,7 +203,7 @@ public class CausalNetworkExt implements StateExtension {
                             .withoutAll(toRemoveFromInitialList)
                             .withAll(toAddToInitialList)
                             .filter((Predicate<Integer>) id -> id != pis.supporterID && id != tlID);
-                    possiblyInterferingTimelines.put(pis, updatedList);
+                    possiblyInterferingTimelines = possiblyInterferingTimelines.with(pis, updatedList);
 
                     for (int threatID : updatedList) {
                         Timeline threat = tlMan.getTimeline(threatID);
@@ -209,24 +213,23 @@ public class CausalNetworkExt implements StateExtension {
                         }
                     }
 
-                    intermediateSteps.put(pis, new ISet<>());
+                    ISet<Integer> steps = new ISet<>();
                     for (int threatID : updatedList) {
                         Timeline inter = tlMan.getTimeline(threatID);
                         if (necessarilyIntermediateStep(sup, tl, inter)) {
-                            intermediateSteps.put(pis, intermediateSteps.get(pis).with(inter.mID));
+                            steps = steps.with(inter.mID);
 //                            System.out.println("coucou"+container.domainOf(sup.getGlobalSupportValue())+
 //                            "   "+container.domainOf(inter.getGlobalConsumeValue())+
 //                            "   "+container.domainOf(tl.getGlobalConsumeValue()));
                         }
                     }
+                    intermediateSteps = intermediateSteps.with(pis, steps);
                 }
             }
 
-            for(Event pis : toRemove) {
-                possiblyInterferingTimelines.remove(pis);
-                intermediateSteps.remove(pis);
-            }
-            potentialSupporters.put(tlID, potentialSupporters.get(tlID).withoutAll(toRemove));
+            possiblyInterferingTimelines = possiblyInterferingTimelines.withoutAll(toRemove);
+            intermediateSteps = intermediateSteps.withoutAll(toRemove);
+            potentialSupporters = potentialSupporters.with(tlID, potentialSupporters.get(tlID).withoutAll(toRemove));
 
             // infer any possible temporal constraints from the need for indirect supporters
             if(!container.pl.preprocessor.getHierarchicalEffects().hasAssignmentsInAction(tl.stateVariable.func())) {
@@ -254,13 +257,14 @@ public class CausalNetworkExt implements StateExtension {
             }
         }
 
-        addedTimelines.clear();
-        extendedTimelines.clear();
-        removedTimelines.clear();
-        lastProcessedChange.clear();
+        addedTimelines = new ISet<>();
+        extendedTimelines = new IList<>();
+        removedTimelines = new IList<>();
+        IMap<Integer,Integer> processed = new IMap<>();
         for(Timeline tl : tlMan.getTimelines()) {
-            lastProcessedChange.put(tl.mID, tl.numChanges()-1);
+            processed = processed.with(tl.mID, tl.numChanges()-1);
         }
+        lastProcessedChange = processed;
     }
 
     /** Returns true if either (i) there can be a temporal gap between the event and the timeline;
@@ -391,23 +395,22 @@ public class CausalNetworkExt implements StateExtension {
     @Override
     public void timelineRemoved(Timeline tl) {
         if(potentialSupporters.containsKey(tl.mID)) {
-            for (Event e : potentialSupporters.get(tl.mID)) {
-                possiblyInterferingTimelines.remove(e);
-                intermediateSteps.remove(e);
-            }
-            potentialSupporters.remove(tl.mID);
+            List<Event> events = potentialSupporters.get(tl.mID).stream().collect(Collectors.toList());
+            possiblyInterferingTimelines = possiblyInterferingTimelines.withoutAll(events);
+            intermediateSteps = intermediateSteps.withoutAll(events);
+            potentialSupporters = potentialSupporters.without(tl.mID);
         }
-        removedTimelines.add(tl.mID);
+        removedTimelines = removedTimelines.with(tl.mID);
     }
 
     @Override
     public void timelineAdded(Timeline a) {
-        addedTimelines.add(a.mID);
+        addedTimelines = addedTimelines.with(a.mID);
     }
 
     @Override
     public void timelineExtended(Timeline tl) {
-        extendedTimelines.add(tl.mID);
+        extendedTimelines = extendedTimelines.with(tl.mID);
     }
 
     public void report() {
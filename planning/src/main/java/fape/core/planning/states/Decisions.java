@@ -0,0 +1,364 @@
+package fape.core.planning.states;
+
+import fape.core.planning.search.flaws.resolvers.Resolver;
+import fape.core.planning.timelines.ChainComponent;
+import fape.core.planning.timelines.Timeline;
+import planstack.anml.model.ParameterizedStateVariable;
+import planstack.anml.model.concrete.*;
+import planstack.anml.model.concrete.statements.LogStatement;
+import planstack.constraints.bindings.BindingConstraintNetwork;
+import planstack.constraints.bindings.InSetConstraint;
+import planstack.constraints.bindings.NAryConstraint;
+import scala.collection.JavaConversions;
+
+import java.util.*;
+
+/**
+ * Decisions (applied resolvers) that led to a state. They are used to recognize partial plans that were reached by
+ * applying the same decisions in different orders.
+ *
+ * Objects created when applying a resolver (time points, actions, variables and timelines) get their IDs from
+ * counters that a state copies from its parent: sibling branches give the same ID to different objects, and the
+ * same object gets different IDs when decisions are applied in a different order. Raw IDs are thus replaced by
+ * canonical references:
+ *  - an object of the initial state is identified by its ID;
+ *  - an object created by a decision is identified by this decision (its resolver class and canonical parameters)
+ *    and its rank among the objects of the same kind it created;
+ *  - an object created between two decisions (e.g. by a handler) is identified by the ordered sequence of
+ *    decisions that preceded it and its rank. Reorderings are never recognized for those.
+ *
+ * This is an immutable list (most recent decision first) that a state shares with its descendants. States
+ * are only compared with states of the same search, i.e. with the same initial state.
+ */
+public final class Decisions {
+
+    /** Kinds of objects whose IDs are given by counters of a state. */
+    enum Kind { TP, ACT, VAR, TL }
+
+    /** Resolver class and canonical parameters of a decision. */
+    static final class Step {
+        final Class<?> resolverClass;
+        final List<Object> parameters;
+        private final int hash;
+
+        Step(Class<?> resolverClass, List<Object> parameters) {
+            this.resolverClass = resolverClass;
+            this.parameters = parameters;
+            this.hash = 31 * resolverClass.getName().hashCode() + parameters.hashCode();
+        }
+
+        @Override
+        public int hashCode() { return hash; }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o)
+                return true;
+            if(!(o instanceof Step))
+                return false;
+            final Step s = (Step) o;
+            return hash == s.hash && resolverClass == s.resolverClass && parameters.equals(s.parameters);
+        }
+
+        @Override
+        public String toString() { return resolverClass.getSimpleName() + parameters; }
+    }
+
+    /** Ordered sequence of decisions, used to identify objects created between two decisions. */
+    private static final class Trail {
+        final Decisions last;
+
+        Trail(Decisions last) { this.last = last; }
+
+        @Override
+        public int hashCode() { return last.orderedHash; }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof Trail))
+                return false;
+            Decisions d1 = last;
+            Decisions d2 = ((Trail) o).last;
+            if(d1.size != d2.size || d1.orderedHash != d2.orderedHash)
+                return false;
+            for( ; d1 != d2 ; d1 = d1.previous, d2 = d2.previous)
+                if(!d1.step.equals(d2.step))
+                    return false;
+            return true;
+        }
+    }
+
+    /** Canonical reference to a time point, action, variable or timeline. */
+    static final class Ref {
+        final Kind kind;
+        /** null for an object of the initial state, otherwise the Step that created it or the Trail after which it was created. */
+        final Object origin;
+        /** Number of equal steps before the one that created this object (0 if origin is not a Step). */
+        final int occurrence;
+        /** Raw ID for an object of the initial state, rank among the objects of the same kind created by its origin otherwise. */
+        final int rank;
+
+        Ref(Kind kind, Object origin, int occurrence, int rank) {
+            this.kind = kind;
+            this.origin = origin;
+            this.occurrence = occurrence;
+            this.rank = rank;
+        }
+
+        @Override
+        public int hashCode() {
+            return ((Objects.hashCode(origin) * 31 + occurrence) * 31 + rank) * 31 + kind.ordinal();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o)
+                return true;
+            if(!(o instanceof Ref))
+                return false;
+            final Ref r = (Ref) o;
+            return kind == r.kind && rank == r.rank && occurrence == r.occurrence && Objects.equals(origin, r.origin);
+        }
+
+        @Override
+        public String toString() { return kind + (origin == null ? "" : "@" + origin) + "#" + rank; }
+    }
+
+    /** Raw ID of a timeline given as a parameter of a resolver (see Resolver.parameters()). */
+    private static final class TimelineID {
+        final int id;
+        TimelineID(int id) { this.id = id; }
+    }
+
+    /** Wraps the ID of a timeline, to be given as a parameter of a resolver. */
+    public static Object timeline(int timelineID) { return new TimelineID(timelineID); }
+
+    final Step step;
+    /** Number of decisions with an equal step before this one. */
+    final int occurrence;
+    /** Previous decision, null if this is the first one. */
+    final Decisions previous;
+    /** Number of decisions in this list. */
+    final int size;
+    /** Values of the counters of the state (indexed by Kind) before and after applying the decision. */
+    private final int[] before, after;
+    /** Hash of the ordered sequence of steps. */
+    private final int orderedHash;
+    /** Sum of the hashes of all (step, occurrence) of this list, independent of their order. */
+    final long fingerprint;
+
+    /**
+     * @param before Counters of the state (see counters(State)) before the decision was applied.
+     * @param after Counters of the state after the decision was applied.
+     */
+    Decisions(Step step, Decisions previous, int[] before, int[] after) {
+        this.step = step;
+        this.previous = previous;
+        this.before = before;
+        this.after = after;
+        this.size = previous == null ? 1 : previous.size +1;
+        int occ = 0;
+        for(Decisions d = previous ; d != null ; d = d.previous)
+            if(d.step.equals(step))
+                occ++;
+        this.occurrence = occ;
+        this.orderedHash = (previous == null ? 0 : previous.orderedHash * 31) + step.hashCode();
+        long h = ((long) step.hashCode() << 32) | (occurrence & 0xFFFFFFFFL);
+        // spread the bits (finalizer of SplitMix64) so that the sum of hashes is well distributed
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        this.fingerprint = (previous == null ? 0 : previous.fingerprint) + (h ^ (h >>> 31));
+    }
+
+    /** Values of the ID counters of a state, indexed by Kind. */
+    static int[] counters(State st) {
+        return new int[] { st.refCounter.peekTP(), st.refCounter.peekAct(), st.refCounter.peekVar(), st.tdb.getNextTimelineID() };
+    }
+
+    /** Returns the step of a resolver, applied after the given decisions. */
+    static Step step(Decisions decisions, Resolver res) {
+        return new Step(res.getClass(), new Canonicalizer(decisions).canonicalList(Arrays.asList(res.parameters())));
+    }
+
+    /** Gives the canonical references of the objects of a state. */
+    static final class Canonicalizer {
+        /** All decisions, the oldest first. */
+        private final Decisions[] decisions;
+
+        Canonicalizer(Decisions last) {
+            decisions = new Decisions[last == null ? 0 : last.size];
+            for(Decisions d = last ; d != null ; d = d.previous)
+                decisions[d.size -1] = d;
+        }
+
+        Ref ref(Kind kind, int id) {
+            final int k = kind.ordinal();
+            // last decision that was started before this object was created (counters never decrease)
+            int lo = 0, hi = decisions.length -1, last = -1;
+            while(lo <= hi) {
+                final int mid = (lo + hi) >>> 1;
+                if(decisions[mid].before[k] <= id) {
+                    last = mid;
+                    lo = mid +1;
+                } else {
+                    hi = mid -1;
+                }
+            }
+            if(last == -1)
+                return new Ref(kind, null, 0, id);
+            final Decisions d = decisions[last];
+            if(id < d.after[k])
+                return new Ref(kind, d.step, d.occurrence, id - d.before[k]);
+            else
+                return new Ref(kind, new Trail(d), 0, id - d.after[k]);
+        }
+
+        Object canonical(Object o) {
+            if(o instanceof TPRef)
+                return ref(Kind.TP, ((TPRef) o).id());
+            else if(o instanceof VarRef)
+                return ref(Kind.VAR, ((VarRef) o).id());
+            else if(o instanceof ActRef)
+                return ref(Kind.ACT, ((ActRef) o).id());
+            else if(o instanceof Action)
+                return ref(Kind.ACT, ((Action) o).id().id());
+            else if(o instanceof Task)
+                return canonical(((Task) o).start());
+            else if(o instanceof Timeline)
+                return ref(Kind.TL, ((Timeline) o).mID);
+            else if(o instanceof TimelineID)
+                return ref(Kind.TL, ((TimelineID) o).id);
+            else if(o instanceof ParameterizedStateVariable) {
+                final ParameterizedStateVariable sv = (ParameterizedStateVariable) o;
+                final List<Object> l = new ArrayList<>();
+                l.add(sv.func());
+                l.addAll(canonicalList(Arrays.asList(sv.args())));
+                return l;
+            } else if(o instanceof Object[])
+                return canonicalList(Arrays.asList((Object[]) o));
+            else if(o instanceof Set) {
+                final Set<Object> s = new HashSet<>();
+                for(Object x : (Set<?>) o)
+                    s.add(canonical(x));
+                return s;
+            } else if(o instanceof Collection)
+                return canonicalList((Collection<?>) o);
+            else
+                return o; // immutable value (abstract action, local reference, number, ...)
+        }
+
+        List<Object> canonicalList(Collection<?> objects) {
+            final List<Object> l = new ArrayList<>(objects.size());
+            for(Object o : objects)
+                l.add(canonical(o));
+            return l;
+        }
+    }
+
+    /** Returns true if both lists contain the same decisions, regardless of their order. */
+    static boolean sameDecisions(Decisions d1, Decisions d2) {
+        if(d1 == null || d2 == null)
+            return d1 == d2;
+        if(d1.size != d2.size || d1.fingerprint != d2.fingerprint)
+            return false;
+        final Map<Step,Integer> count = new HashMap<>();
+        for(Decisions d = d1 ; d != null ; d = d.previous)
+            count.merge(d.step, 1, Integer::sum);
+        for(Decisions d = d2 ; d != null ; d = d.previous)
+            if(count.merge(d.step, -1, Integer::sum) < 0)
+                return false;
+        return true;
+    }
+
+    /**
+     * Decisions and content of a state, taken at a given time. The snapshot is not affected by later modifications
+     * of the state (e.g. by the handlers when it is selected for expansion).
+     */
+    public static final class Snapshot {
+        private final Decisions decisions;
+        private final List<Object> content;
+        /** ID of the state this snapshot was taken from. */
+        public final int stateID;
+
+        Snapshot(State st) {
+            this.decisions = st.decisions;
+            this.content = content(st);
+            this.stateID = st.mID;
+        }
+
+        /** Fingerprint of the state at the time of the snapshot (see State.getFingerprint()). */
+        public long fingerprint() { return decisions == null ? 0 : decisions.fingerprint; }
+
+        /** True if both snapshots are of the same partial plan (see State.isSamePlanAs(State)). */
+        public boolean isSamePlanAs(Snapshot other) {
+            return sameDecisions(decisions, other.decisions) && content.equals(other.content);
+        }
+    }
+
+    /**
+     * Canonical description of the content of a state: its actions, tasks, timelines, unified and separated
+     * variables and binding constraints where all IDs are replaced by canonical references. Two states reached by
+     * the same decisions and with equal contents are the same partial plan.
+     *
+     * Domains of variables and temporal constraints are not part of the content: besides the decisions (that are
+     * compared separately), they are restricted by the handlers each time a state is selected for expansion
+     * (e.g. DGHandler), and thus depend on the order in which the decisions were made.
+     */
+    static List<Object> content(State st) {
+        final Canonicalizer c = new Canonicalizer(st.decisions);
+
+        final Set<Object> actions = new HashSet<>();
+        for(Action a : st.getAllActions())
+            actions.add(Arrays.asList(c.canonical(a), a.abs(), a.status(), c.canonical(a.args())));
+
+        final Set<Object> tasks = new HashSet<>();
+        for(Task t : st.taskNet.getAllTasks())
+            tasks.add(Arrays.asList(c.canonical(t), t.name(), c.canonical(t.args()), st.taskNet.isSupported(t)));
+
+        final Set<Object> timelines = new HashSet<>();
+        for(Timeline tl : st.getTimelines()) {
+            final List<Object> chain = new ArrayList<>(tl.size());
+            for(ChainComponent cc : tl.chain) {
+                final Set<Object> statements = new HashSet<>();
+                for(LogStatement s : cc.statements)
+                    statements.add(c.canonical(s.start()));
+                chain.add(statements);
+            }
+            timelines.add(chain);
+        }
+
+        // unified variables, with the groups they are separated from
+        final BindingConstraintNetwork bindings = st.csp.bindings();
+        final Map<Object,Set<Object>> groupOf = new HashMap<>();
+        for(List<VarRef> group : bindings.variableGroups()) {
+            final Set<Object> vars = new HashSet<>();
+            for(VarRef v : group)
+                vars.add(c.canonical(v));
+            for(Object v : vars)
+                groupOf.put(v, vars);
+        }
+        final Map<Set<Object>,Set<Object>> variables = new HashMap<>();
+        for(List<VarRef> group : bindings.variableGroups()) {
+            final VarRef v = group.get(0);
+            final Set<Object> separated = new HashSet<>();
+            for(VarRef o : bindings.separatedFrom(v))
+                separated.add(groupOf.get(c.canonical(o)));
+            variables.put(groupOf.get(c.canonical(v)), separated);
+        }
+        final Set<Object> bindingConstraints = new HashSet<>();
+        for(planstack.constraints.bindings.Constraint bc : bindings.allConstraints()) {
+            if(bc instanceof NAryConstraint)
+                bindingConstraints.add(Arrays.asList(
+                        c.canonicalList(JavaConversions.seqAsJavaList(((NAryConstraint) bc).vars())),
+                        ((NAryConstraint) bc).allowedTuple()));
+            else if(bc instanceof InSetConstraint)
+                bindingConstraints.add(Arrays.asList(
+                        c.canonical(((InSetConstraint) bc).left()),
+                        c.canonical(JavaConversions.setAsJavaSet(((InSetConstraint) bc).right()))));
+            else
+                bindingConstraints.add(bc); // only equal to itself
+        }
+
+        return Arrays.asList(actions, tasks, timelines, variables, bindingConstraints);
+    }
+}
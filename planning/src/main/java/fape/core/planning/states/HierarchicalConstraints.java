@@ -6,25 +6,27 @@ import planstack.anml.model.abs.AbstractAction;
 import planstack.anml.model.concrete.Action;
 import planstack.anml.model.concrete.Task;
 import planstack.anml.model.concrete.statements.LogStatement;
+import planstack.structures.IMap;
 
 import java.util.*;
 import java.util.stream.Collectors;
 
 public class HierarchicalConstraints implements StateExtension {
-    private final Map<Integer, TNNode> timelineSupportConstraints;
+    // both maps are immutable and shared with copies of this extension
+    private IMap<Integer, TNNode> timelineSupportConstraints;
     private final State st;
-    private final Map<Task, Set<AbstractAction>> possibleRefinements;
+    private IMap<Task, Set<AbstractAction>> possibleRefinements;
 
     public HierarchicalConstraints(State st) {
         this.st = st;
-        timelineSupportConstraints = new HashMap<>();
-        possibleRefinements = new HashMap<>();
+        timelineSupportConstraints = new IMap<>();
+        possibleRefinements = new IMap<>();
     }
 
     public HierarchicalConstraints(HierarchicalConstraints toCopy, State st) {
         this.st = st;
-        timelineSupportConstraints = new HashMap<>(toCopy.timelineSupportConstraints);
-        possibleRefinements = new HashMap<>(toCopy.possibleRefinements);
+        timelineSupportConstraints = toCopy.timelineSupportConstraints;
+        possibleRefinements = toCopy.possibleRefinements;
     }
 
     public boolean isConstrained(Timeline tl) {
@@ -33,7 +35,7 @@ public class HierarchicalConstraints implements StateExtension {
 
     public void setSupportConstraint(Timeline consumer, Action a) {
         assert !isConstrained(consumer) || st.taskNet.isDescendantOf(a, timelineSupportConstraints.get(consumer.mID));
-        timelineSupportConstraints.put(consumer.mID, new TNNode(a));
+        timelineSupportConstraints = timelineSupportConstraints.with(consumer.mID, new TNNode(a));
     }
 
     public void setSupportConstraint(Timeline consumer, Task task) {
@@ -42,7 +44,7 @@ public class HierarchicalConstraints implements StateExtension {
                 || st.taskNet.isDescendantOf(task, timelineSupportConstraints.get(consumer.mID));
 
         st.enforceStrictlyBefore(task.start(), consumer.getConsumeTimePoint());
-        timelineSupportConstraints.put(consumer.mID, new TNNode(task));
+        timelineSupportConstraints = timelineSupportConstraints.with(consumer.mID, new TNNode(task));
 
         // all actions with a statements affecting this state variable of the consumer
         Collection<AbstractAction> potentiallySupportingAction =
@@ -57,7 +59,7 @@ public class HierarchicalConstraints implements StateExtension {
         possibleSupportersForTask.retainAll(getPossibleRefinements(task));
 
         if(possibleSupportersForTask.size() < getPossibleRefinements(task).size())
-            possibleRefinements.put(task, Collections.unmodifiableSet(possibleSupportersForTask));
+            possibleRefinements = possibleRefinements.with(task, Collections.unmodifiableSet(possibleSupportersForTask));
     }
 
     public boolean isValidTaskSupport(Task t, Timeline consumer) {
@@ -79,7 +81,9 @@ public class HierarchicalConstraints implements StateExtension {
     }
 
     public Set<AbstractAction> getPossibleRefinements(Task t) {
-        return possibleRefinements.computeIfAbsent(t, task -> Collections.unmodifiableSet(new HashSet<>(st.pb.getSupportersForTask(task.name()))));
+        if(!possibleRefinements.containsKey(t))
+            possibleRefinements = possibleRefinements.with(t, Collections.unmodifiableSet(new HashSet<>(st.pb.getSupportersForTask(t.name()))));
+        return possibleRefinements.get(t);
     }
 
     @Override
@@ -6,9 +6,8 @@ import fape.core.planning.search.flaws.flaws.UnsupportedTimeline;
 import fape.core.planning.search.flaws.resolvers.*;
 import fape.core.planning.timelines.Timeline;
 import fape.exceptions.FAPEException;
-import planstack.anml.model.ParameterizedStateVariable;
-import planstack.anml.model.concrete.TPRef;
 import planstack.structures.IList;
+import planstack.structures.IMap;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -17,20 +16,18 @@ import java.util.stream.Stream;
 class OpenGoalSupportersCache implements StateExtension {
 
     private final State container;
-    private final Map<ParameterizedStateVariable, TPRef> locked;
 
-    private final HashMap<Integer, IList<Resolver>> potentialActionSupporters;
+    /** Action resolvers of each open goal (by ID). The map is immutable and thus shared with copies of the cache. */
+    private IMap<Integer, IList<Resolver>> potentialActionSupporters;
 
     OpenGoalSupportersCache(State container) {
         this.container = container;
-        potentialActionSupporters = new HashMap<>();
-        locked = new HashMap<>();
+        potentialActionSupporters = new IMap<>();
     }
 
     private OpenGoalSupportersCache(OpenGoalSupportersCache toCopy, State container) {
         this.container = container;
-        potentialActionSupporters = new HashMap<>(toCopy.potentialActionSupporters);
-        locked = new HashMap<>(toCopy.locked);
+        potentialActionSupporters = toCopy.potentialActionSupporters;
     }
 
     @Override
@@ -40,7 +37,7 @@ class OpenGoalSupportersCache implements StateExtension {
 
     @Override
     public void timelineRemoved(Timeline tl) {
-        potentialActionSupporters.remove(tl.mID);
+        potentialActionSupporters = potentialActionSupporters.without(tl.mID);
     }
 
     List<Resolver> getResolversForOpenGoal(Timeline og, PlanningOptions.ActionInsertionStrategy strategy) {
@@ -78,7 +75,7 @@ class OpenGoalSupportersCache implements StateExtension {
                 if(UnsupportedTimeline.isValidResolver(res, og, container))
                     resolvers = resolvers.with(res);
             }
-            potentialActionSupporters.put(og.mID, resolvers);
+            potentialActionSupporters = potentialActionSupporters.with(og.mID, resolvers);
         } else {
             // we already have a set of resolvers, simply filter the invalid ones
             List<Resolver> toRemove = new ArrayList<>();
@@ -89,7 +86,7 @@ class OpenGoalSupportersCache implements StateExtension {
 
             if(!toRemove.isEmpty()) {
                 IList<Resolver> onlyValidResolvers = potentialActionSupporters.get(og.mID).withoutAll(toRemove);
-                potentialActionSupporters.put(og.mID, onlyValidResolvers);
+                potentialActionSupporters = potentialActionSupporters.with(og.mID, onlyValidResolvers);
             }
             toRemove.clear();
         }
@@ -59,6 +59,9 @@ public class Printer {
         else if(o instanceof MutexThreat)
             return "MutexThreat: "+fluent(st, ((MutexThreat) o).getCl1().getSv(), ((MutexThreat) o).getCl1().getValue())+" <-> "+
                     fluent(st, ((MutexThreat) o).getCl2().getSv(), ((MutexThreat) o).getCl2().getValue());
+        else if(o instanceof ResourceConflict)
+            return "ResourceConflict: "+stateVariable(st, ((ResourceConflict) o).profile.sv)
+                    +(((ResourceConflict) o).tooLow ? " < " : " > ")+((ResourceConflict) o).threshold;
 
         // Resolvers
         else if(o instanceof TemporalSeparation)
@@ -74,6 +77,8 @@ public class Printer {
             return "NewTaskSupporter: "+((NewTaskSupporter) o).abs.name();
         else if(o instanceof ExistingTaskSupporter)
             return "ExistingTaskSupporter: "+action(st, ((ExistingTaskSupporter) o).act);
+        else if(o instanceof ResourceSupportingAction)
+            return "ResourceSupportingAction: "+((ResourceSupportingAction) o).act.name();
         else if(o instanceof FutureTaskSupport) {
             return "FutureTaskSupport: "+taskCondition(st, ((FutureTaskSupport) o).getTask());
         }
@@ -1,7 +1,8 @@
 package fape.core.planning.states;
 
+import fape.core.planning.search.flaws.resolvers.Resolver;
 import fape.util.StrongReference;
-import jdk.nashorn.internal.ir.ThrowNode;
+import fape.util.Telemetry;
 
 import java.lang.ref.Reference;
 import java.lang.ref.SoftReference;
@@ -22,13 +23,22 @@ import java.util.function.Consumer;
  *
  * The search node also provides a caching mechanism for heuristic values
  * (to avoid rebuilding a complete state to extract the heuristic value).
+ *
+ * When search is performed on several threads, sibling nodes might concurrently rebuild their parent's state.
+ * Methods that (re)build or modify the state are thus synchronized on the node. Locks are always taken from
+ * a child to its parent, which prevents any deadlock.
  */
 public class SearchNode {
 
     public SearchNode(SearchNode parent) {
+        this(parent, State.idCounter.getAndIncrement());
+    }
+
+    /** Recreates a child of the given node with a known identifier (typically a node that was spilled to disk). */
+    public SearchNode(SearchNode parent, int id) {
         this.parent = parent;
         state = null;
-        this.mID = State.idCounter++;
+        this.mID = id;
         this.depth = parent.depth +1;
     }
     public SearchNode(State initialState) {
@@ -44,6 +54,40 @@ public class SearchNode {
     /** Depth of this search node */
     final int depth;
 
+    /**
+     * Index of the resolver that was applied to the parent's state to get this node (-1 if unknown).
+     * With the parent and its children resolvers, this is enough to recreate the node.
+     */
+    private int resolverIndex = -1;
+
+    public int getResolverIndex() { return resolverIndex; }
+    public void setResolverIndex(int index) { resolverIndex = index; }
+
+    /**
+     * Sorted resolvers of the flaw that was selected when expanding this node, the i-th child being built by
+     * applying the i-th resolver. Only recorded when children might have to be recreated (null otherwise).
+     * Ancestors of spilled nodes recreated by the open list compute them again when needed.
+     */
+    private List<Resolver> childrenResolvers = null;
+
+    public List<Resolver> getChildrenResolvers() { return childrenResolvers; }
+    public void setChildrenResolvers(List<Resolver> resolvers) { childrenResolvers = resolvers; }
+
+    /**
+     * True if the operations of this node were not applied yet and its heuristic values are only estimates
+     * (inherited from its parent). Such a node must be materialized (see Planner) when extracted from the queue.
+     */
+    private boolean lazy = false;
+
+    public boolean isLazy() { return lazy; }
+    public void setLazy(boolean isLazy) { lazy = isLazy; }
+
+    /** Position of this node in the heap of the open list, -1 if it is not in it. Only maintained by OpenList. */
+    private int heapIndex = -1;
+
+    public int getHeapIndex() { return heapIndex; }
+    public void setHeapIndex(int index) { heapIndex = index; }
+
     /** A soft, strong or weak reference to a state. */
     private Reference<State> state = null;
 
@@ -59,8 +103,27 @@ public class SearchNode {
      */
     private int nextOperation = 0;
 
-    public void setExpanded() {
-        State s = state.get();
+    /**
+     * If true, the next child to build its state will take over the state of this node instead of working on a copy.
+     * Set when this node is known to have a single child.
+     */
+    private boolean handOverToNextChild = false;
+
+    /**
+     * Notifies the node that the next child to request a base state will be its only live child.
+     * This child will directly modify the state of this node rather than a copy of it. The state of this node
+     * will be rebuilt from its own parent if it is ever needed again.
+     *
+     * States can not be rolled back (there is no trail of their mutations): a state can only be reused by the
+     * last child of a node, all other children are built on a copy of it.
+     */
+    public synchronized void handOverStateToNextChild() {
+        if(depth != 0) // the root state can not be rebuilt
+            handOverToNextChild = true;
+    }
+
+    public synchronized void setExpanded() {
+        State s = state != null ? state.get() : null;
         if(s != null && depth != 0) {
             // switch to a weak reference
             state = new WeakReference<>(s);
@@ -84,6 +147,24 @@ public class SearchNode {
     public boolean isRecordedHC() { return hc >= 0; }
     public void setHC(double value) { hc = value; }
 
+    /**
+     * Priority of this node in the queue: values compared lexicographically, lower first (see SeqPlanComparator).
+     * Null if not computed yet. The array is never modified once set and can be shared with other nodes.
+     */
+    private double[] priority = null;
+
+    public double[] getPriority() { return priority; }
+    public boolean isRecordedPriority() { return priority != null; }
+    public void setPriority(double[] value) { priority = value; }
+
+    /** Forgets all cached heuristic values, they will be recomputed from the state when needed. */
+    public void clearHeuristicValues() {
+        h = -1;
+        g = -1;
+        hc = -1;
+        priority = null;
+    }
+
     /**
      * Returns the base state from which the complete state can be built.
      */
@@ -93,7 +174,8 @@ public class SearchNode {
         } else {
             assert depth != 0;
             assert parent != null;
-            State st = parent.getState(true).cc(mID);
+            Telemetry.count(state != null ? "state-rebuild-after-eviction" : "state-build-from-parent");
+            State st = parent.getStateForChild(mID);
             st.depth = depth;
             nextOperation = 0;
             if(!isForChild) // directly request, save the reference
@@ -106,11 +188,23 @@ public class SearchNode {
 
     public SearchNode getParent() { return parent; }
 
+    /** Returns a state for a child of this node: either a copy of this node's state or the state itself if handed over. */
+    private synchronized State getStateForChild(int childID) {
+        if(handOverToNextChild) {
+            handOverToNextChild = false;
+            State st = getState(true);
+            state = null; // will be rebuilt from the parent if needed
+            return st.moveToChild(childID);
+        } else {
+            return getState(true).cc(childID);
+        }
+    }
+
     public State getState() {
         return getState(false);
     }
 
-    private State getState(boolean isForChild) {
+    private synchronized State getState(boolean isForChild) {
         State s = getBaseState(isForChild);
         s.depth = depth;
         while(nextOperation < operations.size()) {
@@ -124,7 +218,7 @@ public class SearchNode {
     /**
      * Appends a new operation necessary to build the complete state.
      */
-    public void addOperation(Consumer<State> operation) {
+    public synchronized void addOperation(Consumer<State> operation) {
         operations.add(operation);
     }
 
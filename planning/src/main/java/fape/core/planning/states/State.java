@@ -1,12 +1,15 @@
 package fape.core.planning.states;
 
 import fape.core.planning.grounding.*;
+import fape.core.planning.planner.GlobalOptions;
 import fape.core.planning.planner.Planner;
 import fape.core.planning.planner.PlanningOptions;
+import fape.core.planning.resources.ResourceManager;
 import fape.core.planning.search.Handler;
 import fape.core.planning.search.flaws.finders.FlawFinder;
 import fape.core.planning.search.flaws.flaws.*;
 import fape.core.planning.search.flaws.resolvers.Resolver;
+import fape.core.planning.search.strategies.flaws.FlawSelector;
 import fape.core.planning.search.strategies.plans.tsp.MinSpanTreeExtFull;
 import fape.core.planning.tasknetworks.TaskNetworkManager;
 import fape.core.planning.timelines.ChainComponent;
@@ -20,6 +23,7 @@ import fape.exceptions.FAPEException;
 import fape.util.EffSet;
 import fape.util.Pair;
 import fape.util.Reporter;
+import fape.util.Telemetry;
 import fr.laas.fape.structures.IRSet;
 import lombok.Getter;
 import lombok.Setter;
@@ -40,13 +44,15 @@ import scala.Option;
 import scala.Tuple2;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class State implements Reporter {
 
-    static int idCounter = 0;
+    /** Source of unique IDs for states and search nodes. Atomic as several workers might generate states concurrently. */
+    static final AtomicInteger idCounter = new AtomicInteger(0);
     public final int mID;
     int depth;
 
@@ -71,6 +77,9 @@ public class State implements Reporter {
     private boolean isDeadEnd = false;
     private boolean isConsistent = true;
 
+    /** Resolvers applied since the initial state (null if none). */
+    Decisions decisions = null;
+
     /**
      * Keep tracks of statements that must be supported by a particular
      * decomposition. (e.g. by a statements which is a consequence of that
@@ -114,13 +123,13 @@ public class State implements Reporter {
      * constructed from from the existing states
      */
     public State(AnmlProblem pb, Controllability controllability) {
-        this.mID = idCounter++;
+        this.mID = idCounter.getAndIncrement();
         this.pb = pb;
         this.depth = 0;
         this.controllability = controllability;
         this.refCounter = new RefCounter(pb.refCounter());
         tdb = new TimelinesManager(this);
-        csp = planstack.constraints.Factory.getMetaWithGivenControllability(controllability);
+        csp = planstack.constraints.Factory.getMetaWithGivenControllability(controllability, GlobalOptions.getBooleanOption("compact-stn"));
         taskNet = new TaskNetworkManager();
 
         addableActions = null;
@@ -152,6 +161,7 @@ public class State implements Reporter {
         this.controllability = st.controllability;
         this.refCounter = new RefCounter(st.refCounter);
         isDeadEnd = st.isDeadEnd;
+        decisions = st.decisions;
         problemRevision = st.problemRevision;
         csp = new MetaCSP<>(st.csp);
         tdb = new TimelinesManager(st.tdb, this); //st.tdb.deepCopy();
@@ -164,6 +174,34 @@ public class State implements Reporter {
         extensions = st.extensions.stream().map(ext -> ext.clone(this)).collect(Collectors.toList());
     }
 
+    /**
+     * Builds a child state with the given ID that takes over the components of `toMove` instead of copying them:
+     * the constraint networks, task network and reference counter are shared and will be modified in place.
+     * Timelines (copy-on-write) and extensions are copied as they refer to their containing state.
+     *
+     * `toMove` must never be used again (see moveToChild).
+     */
+    private State(int id, State toMove) {
+        this.mID = id;
+        this.depth = toMove.depth +1;
+        pb = toMove.pb;
+        pl = toMove.pl;
+        this.controllability = toMove.controllability;
+        this.refCounter = toMove.refCounter;
+        isDeadEnd = toMove.isDeadEnd;
+        decisions = toMove.decisions;
+        problemRevision = toMove.problemRevision;
+        csp = toMove.csp;
+        tdb = new TimelinesManager(toMove.tdb, this);
+        taskNet = toMove.taskNet;
+        supportConstraints = toMove.supportConstraints;
+        stateVarsToVariables = toMove.stateVarsToVariables;
+        addableActions = toMove.addableActions;
+        addableTemplates = toMove.addableTemplates;
+
+        extensions = toMove.extensions.stream().map(ext -> ext.clone(this)).collect(Collectors.toList());
+    }
+
     /** Returns the depth of this node in the search space */
     public int getDepth() { return depth; }
 
@@ -176,10 +214,58 @@ public class State implements Reporter {
 
     public void setDeadEnd() { isDeadEnd = true; }
 
+    /**
+     * Applies a resolver to this state and records it in the decisions that led to this state.
+     * See Resolver.apply(State, Planner, boolean).
+     */
+    public boolean applyResolver(Resolver res, Planner planner, boolean isFastForwarding) {
+        final Decisions.Step step = Decisions.step(decisions, res);
+        final int[] before = Decisions.counters(this);
+        final boolean result = res.apply(this, planner, isFastForwarding);
+        decisions = new Decisions(step, decisions, before, Decisions.counters(this));
+        return result;
+    }
+
+    /**
+     * Returns a hash of the resolvers applied to reach this state, independent of the order in which they were
+     * applied. Use isSamePlanAs to check whether two states with the same fingerprint are the same partial plan.
+     */
+    public long getFingerprint() { return decisions == null ? 0 : decisions.fingerprint; }
+
+    /**
+     * Returns true if both states were reached by applying the same resolvers (possibly in a different order) and
+     * have the same content: actions, tasks, timelines and binding constraints. Both states must come
+     * from the same initial state.
+     */
+    public boolean isSamePlanAs(State other) {
+        return Decisions.sameDecisions(decisions, other.decisions)
+                && Decisions.content(this).equals(Decisions.content(other));
+    }
+
+    /** Records the decisions and content of this state, to compare it with other states once it was modified. */
+    public Decisions.Snapshot snapshot() { return new Decisions.Snapshot(this); }
+
     public State cc(int newID) {
         return new State(this, newID);
     }
 
+    /** Returns a copy of this state with a fresh identifier. */
+    public State cc() {
+        return cc(idCounter.getAndIncrement());
+    }
+
+    /**
+     * Returns a child state with the given ID. Unlike `cc`, the constraint networks and task network are not
+     * copied: the child takes them over and will modify them in place. Extensions are still cloned as
+     * most of them hold per-state caches that must be reset for the child.
+     *
+     * This state must never be accessed again afterwards. This is typically used when it is the base of
+     * the only child of a search node (a depth-first path).
+     */
+    State moveToChild(int childID) {
+        return new State(childID, this);
+    }
+
     private List<Handler> getHandlers() {
         return pl != null ? pl.getHandlers() : Collections.emptyList();
     }
@@ -232,7 +318,9 @@ public class State implements Reporter {
      * This method propagates the constraint neworks
      */
     public boolean checkConsistency() {
+        final long start = Telemetry.start();
         isConsistent &= !isDeadEnd && csp.isConsistent();
+        Telemetry.record("check-consistency", start);
         return isConsistent;
     }
 
@@ -426,6 +514,17 @@ public class State implements Reporter {
         }
     }
 
+    /**
+     * Applies the chronicles that were added to the problem since the last update and notifies the handlers
+     * of the ground actions made possible by those (as returned by Preprocessor.problemExtended).
+     */
+    public void problemExtended(Collection<GAction> newActions) {
+        assert pl != null : "This state is not attached to any planner.";
+        update();
+        for(Handler h : getHandlers())
+            h.problemExtended(this, pl, newActions);
+    }
+
     /**
      * Inserts a logical statement into a state
      *
@@ -503,7 +602,10 @@ public class State implements Reporter {
      * @param s Statement to insert
      */
     private void apply(ResourceStatement s) {
-        throw new RuntimeException("Resource statements are not supported.");
+        csp.stn().enforceBefore(s.start(), s.end());
+        if(!hasExtension(ResourceManager.class))
+            addExtension(new ResourceManager(this));
+        getExtension(ResourceManager.class).addStatement(s);
     }
 
     /**
@@ -667,12 +769,37 @@ public class State implements Reporter {
      * Flaws are identified using the provided finders and sorted with the provided comparator.
      */
     public List<Flaw> getFlaws(List<FlawFinder> finders, Comparator<Flaw> comparator) {
+        List<Flaw> flaws = findFlaws(finders);
+
+        final long start = Telemetry.start();
+        Collections.sort(flaws, comparator);
+        Telemetry.record("flaw-sorting", start);
+        return flaws;
+    }
+
+    /**
+     * Returns the list of flaws in this state, the first one being the one chosen by the selector.
+     * Other flaws are in no particular order.
+     */
+    public List<Flaw> getFlaws(List<FlawFinder> finders, FlawSelector selector) {
+        List<Flaw> flaws = findFlaws(finders);
+
+        final long start = Telemetry.start();
+        final int selected = selector.select(flaws, this, pl);
+        if(selected > 0)
+            Collections.swap(flaws, 0, selected);
+        Telemetry.record("flaw-selection", start);
+        return flaws;
+    }
+
+    private List<Flaw> findFlaws(List<FlawFinder> finders) {
         List<Flaw> flaws = new ArrayList<>();
 
-        for (FlawFinder fd : finders)
+        for (FlawFinder fd : finders) {
+            final long start = Telemetry.start();
             flaws.addAll(fd.getFlaws(this, pl));
-
-        Collections.sort(flaws, comparator);
+            Telemetry.record("flaw-finder", fd, start);
+        }
         return flaws;
     }
 
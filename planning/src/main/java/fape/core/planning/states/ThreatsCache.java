@@ -3,100 +3,186 @@ package fape.core.planning.states;
 import fape.core.planning.search.flaws.flaws.Flaw;
 import fape.core.planning.search.flaws.flaws.Threat;
 import fape.core.planning.timelines.Timeline;
+import planstack.anml.model.Function;
 
 import java.util.*;
 
+/**
+ * Keeps track of all pairs of timelines that might be threatening each other.
+ *
+ * Timelines are bucketed by the function of their state variable: only timelines in the same bucket can be
+ * unifiable and are thus compared when a timeline is added or extended.
+ *
+ * Pairs are packed in a long array (the lowest ID in the 32 high bits) that is shared with copies of the cache until
+ * one of them modifies it. A pair is removed as soon as it is found not to be a threat anymore (which never changes
+ * since constraints are only added). The remaining pairs are verified again when threats are requested, unless
+ * neither the timelines nor the temporal and binding networks changed since the last verification.
+ */
 class ThreatsCache implements StateExtension {
 
-    private final HashSet<PotentialThreat> threats;
     private final State st;
 
+    /** Pairs of timelines that might be threatening each other. Only the first numPairs elements are meaningful. */
+    private long[] pairs;
+    private int numPairs;
+    /** If true, pairs is shared with another cache and must be copied before being modified. */
+    private boolean pairsShared;
+
+    /**
+     * IDs of the timelines whose state variable is on a given function. Arrays are never modified, and the map
+     * is shared with other caches until modified (bucketsShared).
+     */
+    private HashMap<Function, int[]> buckets;
+    private boolean bucketsShared;
+
+    /**
+     * Number of changes of the temporal and binding networks when all pairs were last verified to be threats.
+     * Set to -1 when the pairs are modified.
+     */
+    private long verifiedAtSTNChanges = -1;
+    private long verifiedAtBindingsChanges = -1;
+
     ThreatsCache(State initialState) {
         this.st = initialState;
-        this.threats = new HashSet<>();
+        this.pairs = new long[16];
+        this.numPairs = 0;
+        this.pairsShared = false;
+        this.buckets = new HashMap<>();
+        this.bucketsShared = false;
 
         st.tdb.getTimelinesStream().forEach(tl -> timelineAdded(tl));
     }
 
     private ThreatsCache(ThreatsCache toCopy, State st) {
         this.st = st;
-        this.threats = new HashSet<>(toCopy.threats);
+        this.pairs = toCopy.pairs;
+        this.numPairs = toCopy.numPairs;
+        this.buckets = toCopy.buckets;
+        this.verifiedAtSTNChanges = toCopy.verifiedAtSTNChanges;
+        this.verifiedAtBindingsChanges = toCopy.verifiedAtBindingsChanges;
+        // arrays are now shared by both caches
+        this.pairsShared = true;
+        this.bucketsShared = true;
+        toCopy.pairsShared = true;
+        toCopy.bucketsShared = true;
     }
 
-    private class PotentialThreat {
-        private final int id1, id2;
-        private PotentialThreat(Timeline tl1, Timeline tl2) {
-            assert tl1 != tl2;
-            if(tl1.mID < tl2.mID) {
-                id1 = tl1.mID;
-                id2 = tl2.mID;
-            } else {
-                id1 = tl2.mID;
-                id2 = tl1.mID;
-            }
-        }
-        @Override public int hashCode() { return id1 + 42*id2; }
-        @Override public boolean equals(Object o) {
-            return o instanceof PotentialThreat && id1 == ((PotentialThreat) o).id1 && id2 == ((PotentialThreat) o).id2;
-        }
+    private static long pair(int id1, int id2) {
+        assert id1 != id2;
+        return id1 < id2 ? ((long) id1 << 32) | id2 : ((long) id2 << 32) | id1;
     }
+    private static int first(long pair) { return (int) (pair >>> 32); }
+    private static int second(long pair) { return (int) pair; }
 
     @Override
     public StateExtension clone(State st) {
         return new ThreatsCache(this, st);
     }
 
-    @Override
-    public void timelineAdded(Timeline a) {
-        for(Timeline b : st.tdb.getTimelines()) {
-            if(!st.unifiable(a.stateVariable, b.stateVariable))
-                continue;
+    private void addPair(Timeline a, Timeline b) {
+        if(pairsShared || numPairs == pairs.length) {
+            pairs = Arrays.copyOf(pairs, numPairs == pairs.length ? pairs.length * 2 : pairs.length);
+            pairsShared = false;
+        }
+        pairs[numPairs++] = pair(a.mID, b.mID);
+        verifiedAtSTNChanges = -1;
+    }
 
-            if(isThreatening(st, a, b)) {
-                threats.add(new PotentialThreat(a, b));
+    /** Removes all pairs for which keep returns false. */
+    private void retainPairs(java.util.function.LongPredicate keep) {
+        int kept = 0;
+        for(int i=0 ; i<numPairs ; i++) {
+            if(keep.test(pairs[i])) {
+                if(kept != i) {
+                    if(pairsShared) {
+                        pairs = Arrays.copyOf(pairs, pairs.length);
+                        pairsShared = false;
+                    }
+                    pairs[kept] = pairs[i];
+                }
+                kept++;
             }
         }
+        numPairs = kept;
+    }
+
+    private void removePairsOf(Timeline tl) {
+        retainPairs(p -> first(p) != tl.mID && second(p) != tl.mID);
+        verifiedAtSTNChanges = -1;
+    }
+
+    private int[] bucket(Timeline tl) {
+        int[] bucket = buckets.get(tl.stateVariable.func());
+        return bucket != null ? bucket : new int[0];
+    }
+
+    private void setBucket(Timeline tl, int[] bucket) {
+        if(bucketsShared) {
+            buckets = new HashMap<>(buckets);
+            bucketsShared = false;
+        }
+        buckets.put(tl.stateVariable.func(), bucket);
+    }
+
+    @Override
+    public void timelineAdded(Timeline a) {
+        int[] bucket = bucket(a);
+        for(int id : bucket) {
+            Timeline b = st.getTimeline(id);
+            if(isThreatening(st, a, b))
+                addPair(a, b);
+        }
+        int[] newBucket = Arrays.copyOf(bucket, bucket.length+1);
+        newBucket[bucket.length] = a.mID;
+        setBucket(a, newBucket);
     }
 
     @Override
     public void timelineRemoved(Timeline tl) {
-        List<PotentialThreat> toRemove = new ArrayList<>();
-        for(PotentialThreat t : threats)
-            if(t.id1 == tl.mID || t.id2 == tl.mID)
-                toRemove.add(t);
-        threats.removeAll(toRemove);
+        removePairsOf(tl);
+        int[] bucket = bucket(tl);
+        int[] newBucket = new int[bucket.length-1];
+        int i = 0;
+        for(int id : bucket)
+            if(id != tl.mID)
+                newBucket[i++] = id;
+        assert i == newBucket.length : "Removed timeline was not recorded.";
+        setBucket(tl, newBucket);
     }
 
     @Override
     public void timelineExtended(Timeline tl) {
-        List<PotentialThreat> toRemove = new ArrayList<>();
-        for(PotentialThreat pt : threats)
-            if(pt.id1 == tl.mID || pt.id2 == tl.mID)
-                toRemove.add(pt);
-        threats.removeAll(toRemove);
-
-        for(Timeline b : st.tdb.getTimelines()) {
-            if(isThreatening(st, tl, b)) {
-                threats.add(new PotentialThreat(tl, b));
-            }
+        removePairsOf(tl);
+        for(int id : bucket(tl)) {
+            if(id == tl.mID)
+                continue;
+            Timeline b = st.getTimeline(id);
+            if(isThreatening(st, tl, b))
+                addPair(tl, b);
         }
     }
 
     List<Flaw> getAllThreats() {
-        List<PotentialThreat> toRemove = new ArrayList<>();
-        List<Flaw> verifiedThreats = new ArrayList<>();
-        for(PotentialThreat pt : threats) {
-            Timeline tl1 = st.getTimeline(pt.id1);
-            Timeline tl2 = st.getTimeline(pt.id2);
-            if(isThreatening(st, tl1, tl2)) {
-                verifiedThreats.add(new Threat(tl1, tl2));
-            } else {
+        final long stnChanges = st.csp.stn().numChanges();
+        final long bindingsChanges = st.csp.bindings().numChanges();
+        if(stnChanges != verifiedAtSTNChanges || bindingsChanges != verifiedAtBindingsChanges) {
+            // some constraints were added since the last verification, remove pairs that are not threats anymore
+            retainPairs(p -> {
+                Timeline tl1 = st.getTimeline(first(p));
+                Timeline tl2 = st.getTimeline(second(p));
+                if(isThreatening(st, tl1, tl2))
+                    return true;
                 assert !isThreatening(st, tl2, tl1);
-                toRemove.add(pt);
-            }
+                return false;
+            });
+            verifiedAtSTNChanges = stnChanges;
+            verifiedAtBindingsChanges = bindingsChanges;
         }
-        threats.removeAll(toRemove);
 
+        // flaws cache their resolvers, always build new ones
+        List<Flaw> verifiedThreats = new ArrayList<>(numPairs);
+        for(int i=0 ; i<numPairs ; i++)
+            verifiedThreats.add(new Threat(st.getTimeline(first(pairs[i])), st.getTimeline(second(pairs[i]))));
         return verifiedThreats;
     }
 
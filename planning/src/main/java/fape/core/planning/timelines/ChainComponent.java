@@ -7,6 +7,7 @@ import planstack.anml.model.concrete.statements.Persistence;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -28,7 +29,7 @@ public class ChainComponent {
     public final int mID;
 
     /** Next mID for newly created ChainComponents. */
-    private static int nextID=0;
+    private static final AtomicInteger nextID = new AtomicInteger(0);
 
     /** All statements in this chain component. */
     public final LogStatement[] statements;
@@ -38,7 +39,7 @@ public class ChainComponent {
      * @param s Statement to be included in the component
      */
     public ChainComponent(LogStatement s) {
-        mID = nextID++;
+        mID = nextID.getAndIncrement();
         statements = new LogStatement[1];
         statements[0] = s;
         change = !(s instanceof Persistence);
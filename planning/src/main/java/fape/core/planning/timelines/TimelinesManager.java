@@ -4,6 +4,7 @@ import fape.core.planning.planner.Planner;
 import fape.core.planning.states.State;
 import fape.exceptions.FAPEException;
 import fape.util.Reporter;
+import fr.laas.fape.structures.CowArray;
 import planstack.anml.model.concrete.statements.Assignment;
 import planstack.anml.model.concrete.statements.LogStatement;
 import planstack.anml.model.concrete.statements.Persistence;
@@ -17,41 +18,60 @@ import java.util.stream.StreamSupport;
 public class TimelinesManager implements Reporter, Iterable<Timeline> {
 
 
-    /** All timelines, indexed by their ID */
-    private Timeline[] timelines;
+    /** All timelines, indexed by their ID. Chunks of the array are shared with copies of this manager. */
+    private final CowArray<Timeline> timelines;
     private final State listener;
 
-    private final List<Timeline> consumers;
+    /** Timelines that need support, in the order they were added. Only the first numConsumers are meaningful. */
+    private final CowArray<Timeline> consumers;
+    private int numConsumers;
 
     private int nextTimelineID;
 
     public TimelinesManager(TimelinesManager toCopy, State containingState) {
         listener = containingState;
-        this.consumers = new LinkedList<>(toCopy.consumers);
-        this.timelines = Arrays.copyOf(toCopy.timelines, toCopy.timelines.length);
+        this.consumers = toCopy.consumers.copy();
+        this.numConsumers = toCopy.numConsumers;
+        this.timelines = toCopy.timelines.copy();
         this.nextTimelineID = toCopy.nextTimelineID;
 
         if(Planner.debugging) {
-            for (Timeline a : consumers) assert hasTimeline(a);
-            for (Timeline a : timelines) if (a != null && a.isConsumer()) assert consumers.contains(a);
+            for (Timeline a : getConsumers()) assert hasTimeline(a);
+            for (Timeline a : this) if (a.isConsumer()) assert getConsumers().contains(a);
         }
     }
 
     public TimelinesManager(State containingState) {
-        timelines = new Timeline[100];
+        timelines = new CowArray<>();
         listener = containingState;
-        consumers = new LinkedList<>();
+        consumers = new CowArray<>();
     }
 
+    /** ID that will be given to the next timeline created. */
+    public int getNextTimelineID() { return nextTimelineID; }
+
     private boolean hasTimeline(Timeline tl) {
-        for(Timeline o : timelines)
-            if(o == tl)
-                return true;
-        return false;
+        return timelines.get(tl.mID) == tl;
     }
 
     public Collection<Timeline> getConsumers() {
-        return Collections.unmodifiableList(consumers);
+        return new AbstractList<Timeline>() {
+            @Override public Timeline get(int i) {
+                assert i < numConsumers;
+                return consumers.get(i);
+            }
+            @Override public int size() { return numConsumers; }
+        };
+    }
+
+    private void addConsumer(Timeline tl) {
+        consumers.set(numConsumers++, tl);
+    }
+
+    private void removeConsumer(int i) {
+        for(int j=i+1 ; j<numConsumers ; j++)
+            consumers.set(j-1, consumers.get(j));
+        consumers.set(--numConsumers, null);
     }
 
     /**
@@ -71,54 +91,57 @@ public class TimelinesManager implements Reporter, Iterable<Timeline> {
 
     public void addTimeline(Timeline tl) {
         assert !hasTimeline(tl);
-        if(tl.mID >= timelines.length)
-            timelines = Arrays.copyOf(timelines, timelines.length*2);
-        timelines[tl.mID] = tl;
+        timelines.set(tl.mID, tl);
         if(tl.isConsumer())
-            consumers.add(tl);
+            addConsumer(tl);
 
         listener.timelineAdded(tl);
     }
 
     public void removeTimeline(Timeline tl) {
-        assert timelines[tl.mID] == tl;
-        timelines[tl.mID] = null;
-        consumers.remove(tl);
+        assert timelines.get(tl.mID) == tl;
+        timelines.set(tl.mID, null);
+        for(int i=0 ; i<numConsumers ; i++) {
+            if(consumers.get(i) == tl) {
+                removeConsumer(i);
+                break;
+            }
+        }
 
         listener.timelineRemoved(tl);
     }
 
     public Timeline getTimeline(int tdbID) {
-        assert timelines[tdbID].mID == tdbID;
-        return timelines[tdbID];
+        assert timelines.get(tdbID).mID == tdbID;
+        return timelines.get(tdbID);
     }
 
     public boolean containsTimelineWithID(int tlID) {
-        return tlID < timelines.length && timelines[tlID] != null;
+        return timelines.get(tlID) != null;
     }
 
     public Timeline getTimelineContaining(LogStatement s) {
-        for(Timeline tl : timelines) {
-            if(tl != null && tl.contains(s))
+        for(Timeline tl : this) {
+            if(tl.contains(s))
                 return tl;
         }
         throw new FAPEException("Unable to find a timeline containing the statement "+s);
     }
 
     private void update(Timeline tl) {
-        assert timelines[tl.mID] != null;
-        assert timelines[tl.mID].mID == tl.mID;
+        assert timelines.get(tl.mID) != null;
+        assert timelines.get(tl.mID).mID == tl.mID;
 
         // replace var with the same ID
-        timelines[tl.mID] = tl;
+        timelines.set(tl.mID, tl);
 
         // update consumer list if necessary
         if(tl.size() == 0 || tl.isConsumer()) {
             boolean found = false;
-            for(int i=0 ; i<consumers.size() ; i++) {
+            for(int i=0 ; i<numConsumers ; i++) {
                 if(tl.mID == consumers.get(i).mID) {
                     if(tl.size() == 0) {
-                        consumers.remove(i);
+                        removeConsumer(i);
                     } else {
                         consumers.set(i, tl);
                     }
@@ -127,7 +150,7 @@ public class TimelinesManager implements Reporter, Iterable<Timeline> {
                 }
             }
             if(!found)
-                consumers.add(tl);
+                addConsumer(tl);
         }
     }
 
@@ -366,10 +389,8 @@ public class TimelinesManager implements Reporter, Iterable<Timeline> {
     public String report() {
         String ret = "";
 
-        for (Timeline b : timelines) {
-            if(b != null)
-                ret += b.Report();
-        }
+        for (Timeline b : this)
+            ret += b.Report();
         ret += "\n";
 
         return ret;
@@ -388,13 +409,13 @@ public class TimelinesManager implements Reporter, Iterable<Timeline> {
             int next = 0;
             @Override
             public boolean hasNext() {
-                while(next < timelines.length && timelines[next] == null) next++;
-                return next < timelines.length;
+                while(next < timelines.capacity() && timelines.get(next) == null) next++;
+                return next < timelines.capacity();
             }
 
             @Override
             public Timeline next() {
-                Timeline ret = timelines[next];
+                Timeline ret = timelines.get(next);
                 next += 1;
                 return ret;
             }
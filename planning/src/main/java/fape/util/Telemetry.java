@@ -0,0 +1,141 @@
+package fape.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records the number of calls and the time spent in the different phases of search
+ * (flaw finders, resolvers, handlers, heuristics, ...).
+ *
+ * Telemetry is disabled by default: recording methods then return immediately without reading the clock,
+ * building any string or touching any shared structure. A typical use is:
+ * <pre>
+ *     final long start = Telemetry.start();
+ *     ... // code to measure
+ *     Telemetry.record("phase", start);
+ * </pre>
+ *
+ * Records are shared by all threads and kept until the next call to reset().
+ *
+ * Times are inclusive: the time of a phase includes the one of all phases measured while it was running.
+ * For instance the time of "apply-resolver" includes the one spent in "check-consistency" and in handlers
+ * called by the resolver. Times of different phases should thus not be summed.
+ */
+public class Telemetry {
+
+    /** If false, nothing is recorded. Should be set before search starts (volatile as it is read by all search threads). */
+    public static volatile boolean enabled = false;
+
+    private static final class Stat {
+        final LongAdder calls = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+    }
+
+    private static final ConcurrentHashMap<String, Stat> stats = new ConcurrentHashMap<>();
+
+    private static Stat stat(String key) {
+        Stat s = stats.get(key);
+        if(s == null)
+            s = stats.computeIfAbsent(key, k -> new Stat());
+        return s;
+    }
+
+    /** Returns the time to be given to record(...) at the end of the measured phase (0 if telemetry is disabled). */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Records a call to the given phase, that started at the given time (as given by start()).
+     * Nothing is recorded if telemetry was disabled when the phase started.
+     */
+    public static void record(String phase, long start) {
+        if(enabled && start != 0L) {
+            Stat s = stat(phase);
+            s.nanos.add(System.nanoTime() - start);
+            s.calls.increment();
+        }
+    }
+
+    /**
+     * Records a call to a phase that is specific to an object (flaw finder, resolver, handler, ...).
+     * The phase is identified as "category:SimpleClassName".
+     */
+    public static void record(String category, Object source, long start) {
+        if(enabled && start != 0L) {
+            String name = source.getClass().getSimpleName();
+            if(name.isEmpty()) // anonymous class
+                name = source.getClass().getName();
+            record(category + ":" + name, start);
+        }
+    }
+
+    /** Increments a counter for an event that is not timed. */
+    public static void count(String event) {
+        if(enabled)
+            stat(event).calls.increment();
+    }
+
+    /** Forgets everything that was recorded so far. */
+    public static void reset() {
+        stats.clear();
+    }
+
+    /**
+     * Returns, for each phase, its number of calls and the total time spent in it (in nanoseconds, including nested
+     * phases), sorted by phase name.
+     */
+    public static Map<String, long[]> snapshot() {
+        Map<String, long[]> res = new TreeMap<>();
+        for(Map.Entry<String, Stat> e : stats.entrySet())
+            res.put(e.getKey(), new long[] { e.getValue().calls.sum(), e.getValue().nanos.sum() });
+        return res;
+    }
+
+    /** Header of the CSV report. */
+    public static final String CSV_HEADER = "iter, anml-file, phase, calls, time-ms\n";
+
+    /** Writes one CSV line per phase, prefixed by the iteration number and the problem file. */
+    public static void writeCSV(Writer writer, int iteration, String problem) throws IOException {
+        for(Map.Entry<String, long[]> e : snapshot().entrySet()) {
+            writer.write(iteration + ", " + problem + ", " + e.getKey() + ", "
+                    + e.getValue()[0] + ", " + (e.getValue()[1] / 1000000f) + "\n");
+        }
+    }
+
+    /**
+     * Writes a JSON object describing a run: the given counters (e.g. number of expanded states)
+     * and all recorded phases.
+     */
+    public static void writeJSON(Writer writer, int iteration, String problem, Map<String, ?> counters) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"iter\": ").append(iteration);
+        sb.append(", \"anml-file\": \"").append(escape(problem)).append("\"");
+        for(Map.Entry<String, ?> e : counters.entrySet()) {
+            sb.append(", \"").append(escape(e.getKey())).append("\": ");
+            if(e.getValue() instanceof Number || e.getValue() instanceof Boolean)
+                sb.append(e.getValue());
+            else
+                sb.append("\"").append(escape(String.valueOf(e.getValue()))).append("\"");
+        }
+        sb.append(", \"phases\": {");
+        boolean first = true;
+        for(Map.Entry<String, long[]> e : snapshot().entrySet()) {
+            if(!first)
+                sb.append(", ");
+            first = false;
+            sb.append("\n    \"").append(escape(e.getKey())).append("\": {\"calls\": ").append(e.getValue()[0])
+                    .append(", \"time-ms\": ").append(e.getValue()[1] / 1000000f).append("}");
+        }
+        sb.append("}}");
+        writer.write(sb.toString());
+    }
+
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
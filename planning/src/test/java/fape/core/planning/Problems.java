@@ -0,0 +1,66 @@
+package fape.core.planning;
+
+import fape.core.planning.planner.Planner;
+import fape.core.planning.planner.PlanningOptions;
+import fape.core.planning.search.Handler;
+import fape.core.planning.states.State;
+import fape.exceptions.FAPEException;
+import planstack.anml.model.AnmlProblem;
+import planstack.constraints.stnu.Controllability;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Problems from planning/domains and planners to solve them, shared by the tests.
+ */
+public class Problems {
+
+    public static final List<String> PLAN_SEL = Arrays.asList("soca");
+    public static final List<String> FLAW_SEL = Arrays.asList("hier","ogf","abs","lcf","eogf");
+
+    public static File domainsDir() {
+        for(String candidate : Arrays.asList("planning/domains", "domains", "../planning/domains"))
+            if(new File(candidate).isDirectory())
+                return new File(candidate);
+        throw new FAPEException("Unable to find the planning/domains folder.");
+    }
+
+    public static AnmlProblem load(String problem) {
+        AnmlProblem pb = new AnmlProblem();
+        pb.extendWithAnmlFile(new File(domainsDir(), problem).getAbsolutePath());
+        return pb;
+    }
+
+    public static AnmlProblem fromText(String anml) {
+        AnmlProblem pb = new AnmlProblem();
+        pb.extendWithAnmlText(anml);
+        return pb;
+    }
+
+    public static PlanningOptions defaultOptions() {
+        return options(PLAN_SEL);
+    }
+
+    /** Options with the given plan selection strategies, and without displaying the search. */
+    public static PlanningOptions options(List<String> planSel) {
+        PlanningOptions options = new PlanningOptions(planSel, FLAW_SEL);
+        options.displaySearch = false;
+        return options;
+    }
+
+    /** Returns a planner whose queue contains the initial state of the problem. */
+    public static Planner planner(AnmlProblem pb, PlanningOptions options) {
+        return new Planner(new State(pb, Controllability.PSEUDO_CONTROLLABILITY), options);
+    }
+
+    /** Returns the initial state of the problem, bound to a planner with the given options. */
+    public static State initialState(AnmlProblem pb, PlanningOptions options) {
+        State st = new State(pb, Controllability.PSEUDO_CONTROLLABILITY);
+        Planner planner = new Planner(st, options);
+        st.setPlanner(planner);
+        st.notify(Handler.StateLifeTime.PRE_QUEUE_INSERTION);
+        return st;
+    }
+}
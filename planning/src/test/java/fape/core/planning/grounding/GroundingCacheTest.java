@@ -0,0 +1,131 @@
+package fape.core.planning.grounding;
+
+import fape.core.planning.Problems;
+import fape.core.planning.planner.GlobalOptions;
+import fape.util.Telemetry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import planstack.anml.model.AnmlProblem;
+import planstack.anml.model.concrete.InstanceRef;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that ground actions read from the grounding cache are the ones that were recorded, and that an entry
+ * is never used for another problem.
+ */
+public class GroundingCacheTest {
+
+    private static final String OPTION = "grounding-cache-dir";
+
+    private String previousCacheDir;
+    private File cacheDir;
+
+    @Before
+    public void setUp() throws IOException {
+        previousCacheDir = GlobalOptions.getStringOption(OPTION);
+        cacheDir = Files.createTempDirectory("grounding-cache").toFile();
+        GlobalOptions.setOption(OPTION, cacheDir.getPath());
+    }
+
+    @After
+    public void tearDown() {
+        GlobalOptions.setOption(OPTION, previousCacheDir);
+        delete(cacheDir);
+    }
+
+    private static void delete(File f) {
+        File[] content = f.listFiles();
+        if(content != null)
+            for(File child : content)
+                delete(child);
+        f.delete();
+    }
+
+    private static AnmlProblem blocks(String... extensions) {
+        AnmlProblem pb = Problems.load("blocks_ipc2/blocks_ipc2.p04-0.pb.anml");
+        for(String anml : extensions)
+            pb.extendWithAnmlText(anml);
+        return pb;
+    }
+
+    /** Grounds the problem and returns its ground actions, each as its name followed by the values of its variables. */
+    private static Set<List<String>> groundActions(AnmlProblem pb) {
+        GroundProblem gpb = new GroundProblem(pb, Problems.planner(pb, Problems.defaultOptions()));
+        Set<List<String>> actions = new HashSet<>();
+        for(GAction ga : gpb.allActions()) {
+            List<String> action = new ArrayList<>();
+            action.add(ga.abs.name());
+            for(InstanceRef value : ga.values)
+                action.add(value.instance());
+            actions.add(action);
+        }
+        return actions;
+    }
+
+    private int numEntries() {
+        return cacheDir.listFiles((dir, name) -> name.endsWith(".bin")).length;
+    }
+
+    @Test
+    public void roundTrip() {
+        final Set<List<String>> grounded = groundActions(blocks());
+        assertEquals(1, numEntries());
+
+        AnmlProblem pb = blocks();
+        assertNotNull(GroundingCache.load(pb, new ArrayList<>(pb.abstractActions())));
+        assertEquals(grounded, groundActions(pb));
+        assertEquals(1, numEntries());
+    }
+
+    @Test
+    public void staleEntryIsIgnored() throws IOException {
+        final Set<List<String>> grounded = groundActions(blocks());
+        final File entry = GroundingCache.cacheFile(blocks());
+
+        // a new block makes new instantiations possible: the previous entry must not be used
+        final String newBlock = "instance Block e;";
+        AnmlProblem extended = blocks(newBlock);
+        assertNull(GroundingCache.load(extended, new ArrayList<>(extended.abstractActions())));
+        final Set<List<String>> groundedExtended = groundActions(extended);
+        assertTrue(groundedExtended.containsAll(grounded));
+        assertTrue(groundedExtended.contains(Arrays.asList("pickup", "e")));
+        assertEquals(2, numEntries());
+
+        // an entry recorded for another problem is rejected even if it is found under the name of this one
+        extended = blocks(newBlock);
+        Files.copy(entry.toPath(), GroundingCache.cacheFile(extended).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        assertNull(GroundingCache.load(extended, new ArrayList<>(extended.abstractActions())));
+        assertEquals(groundedExtended, groundActions(extended));
+    }
+
+    @Test
+    public void failedWriteIsReported() throws IOException {
+        // the cache directory can not be created under a regular file
+        File notADirectory = new File(cacheDir, "not-a-directory");
+        assertTrue(notADirectory.createNewFile());
+        GlobalOptions.setOption(OPTION, new File(notADirectory, "cache").getPath());
+
+        final boolean telemetry = Telemetry.enabled;
+        Telemetry.enabled = true;
+        Telemetry.reset();
+        try {
+            // planning is not prevented, the problem is simply grounded on each run
+            assertEquals(groundActions(blocks()), groundActions(blocks()));
+            final long[] failures = Telemetry.snapshot().get("grounding-cache-write-failure");
+            assertNotNull(failures);
+            assertEquals(2, failures[0]);
+        } finally {
+            Telemetry.enabled = telemetry;
+            Telemetry.reset();
+        }
+        assertEquals(1, cacheDir.listFiles().length);
+    }
+}
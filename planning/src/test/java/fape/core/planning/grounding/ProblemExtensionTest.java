@@ -0,0 +1,126 @@
+package fape.core.planning.grounding;
+
+import fape.core.planning.Problems;
+import fape.core.planning.preprocessing.Preprocessor;
+import fape.core.planning.search.strategies.plans.tsp.DTG;
+import fape.util.EffSet;
+import fape.util.Pair;
+import fr.laas.fape.structures.IRSet;
+import org.junit.Test;
+import planstack.anml.model.AnmlProblem;
+import planstack.anml.model.concrete.InstanceRef;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Extends a grounded problem with new instances and facts, and checks that the ground actions and DTGs obtained
+ * incrementally are the ones obtained by grounding the extended problem from scratch, without invalidating
+ * anything that was built before the extension.
+ */
+public class ProblemExtensionTest {
+
+    private static final String PROBLEM = "blocks_ipc2/blocks_ipc2.p04-0.pb.anml";
+
+    private static final String EXTENSION =
+            "instance Block e;\n" +
+            "[start] { clear(e) := true; on(e) := TABLE; };\n";
+
+    private static Preprocessor preprocessor(AnmlProblem pb) {
+        return Problems.initialState(pb, Problems.defaultOptions()).pl.preprocessor;
+    }
+
+    /** Name of the ground action followed by the values of its variables. */
+    private static String describe(GAction ga) {
+        StringBuilder sb = new StringBuilder(ga.abs.name());
+        for(InstanceRef value : ga.values)
+            sb.append(" ").append(value.instance());
+        return sb.toString();
+    }
+
+    private static Set<String> describe(Collection<GAction> actions) {
+        Set<String> descs = new HashSet<>();
+        for(GAction ga : actions)
+            descs.add(describe(ga));
+        return descs;
+    }
+
+    /** Edges of the DTG, each as the transition followed by the action containing it. */
+    private static Set<String> describe(DTG dtg) {
+        Set<String> edges = new HashSet<>();
+        for(Map.Entry<InstanceRef, ArrayList<Pair<GAction.GTransition, GAction>>> e : dtg.outGoingTransitions.entrySet()) {
+            edges.add("node "+e.getKey().instance());
+            for(Pair<GAction.GTransition, GAction> p : e.getValue())
+                edges.add(p.value1+" "+describe(p.value2));
+        }
+        for(Pair<GAction.GAssignment, GAction> p : dtg.unconditionalTransitions)
+            edges.add(p.value1+" "+describe(p.value2));
+        return edges;
+    }
+
+    /** DTGs of all state variables appearing in the actions, indexed by the name of the state variable. */
+    private static Map<String, Set<String>> dtgs(Preprocessor pp) {
+        Map<String, Set<String>> dtgs = new HashMap<>();
+        for(GAction ga : pp.getAllActions())
+            for(GAction.GLogStatement s : ga.getStatements())
+                dtgs.put(s.sv.toString(), describe(pp.getDTG(s.sv)));
+        return dtgs;
+    }
+
+    @Test
+    public void extensionIsGroundedAsFromScratch() {
+        final AnmlProblem pb = Problems.load(PROBLEM);
+        final Preprocessor pp = preprocessor(pb);
+
+        final List<GAction> before = new ArrayList<>(pp.getGroundProblem().allActions());
+        final EffSet<GAction> actionsBefore = pp.getAllActions().clone();
+        final IRSet<Fluent> fluentsBefore = new IRSet<>(pp.store.getIntRep(Fluent.class));
+        for(GAction ga : before)
+            fluentsBefore.addAll(ga.add);
+        final Map<String, Set<String>> dtgsBefore = dtgs(pp);
+        int maxID = -1;
+        for(GAction ga : before)
+            maxID = Math.max(maxID, ga.id);
+
+        pb.extendWithAnmlText(EXTENSION);
+        final List<GAction> added = pp.problemExtended();
+        assertFalse(added.isEmpty());
+        assertTrue(describe(added).contains("pickup e"));
+
+        // new actions get fresh and contiguous IDs, after the ones of the actions grounded before
+        for(int i=0 ; i<added.size() ; i++) {
+            assertEquals(maxID + 1 + i, added.get(i).id);
+            assertSame(added.get(i), pp.getGroundAction(added.get(i).id));
+        }
+
+        // previous IDs remain valid, as well as the sets built on them
+        assertEquals(before, pp.getGroundProblem().allActions().subList(0, before.size()));
+        for(GAction ga : before) {
+            assertSame(ga, pp.getGroundAction(ga.id));
+            assertTrue(actionsBefore.contains(ga));
+        }
+        assertEquals(before.size(), actionsBefore.size());
+        for(GAction ga : added)
+            assertFalse(actionsBefore.contains(ga));
+        assertTrue(pp.getAllActions().containsAll(before));
+        assertTrue(pp.getAllActions().containsAll(added));
+        for(Fluent f : fluentsBefore) {
+            assertSame(f, pp.getFluent(f.getID()));
+            assertSame(f, pp.getFluent(f.sv, f.value));
+        }
+
+        // DTGs are extended with the new actions and values
+        final Map<String, Set<String>> dtgsAfter = dtgs(pp);
+        for(String sv : dtgsBefore.keySet())
+            assertTrue(sv, dtgsAfter.get(sv).containsAll(dtgsBefore.get(sv)));
+
+        // same result as for the extended problem grounded from scratch
+        final AnmlProblem extended = Problems.load(PROBLEM);
+        extended.extendWithAnmlText(EXTENSION);
+        final Preprocessor scratch = preprocessor(extended);
+        assertEquals(describe(scratch.getGroundProblem().allActions()), describe(pp.getGroundProblem().allActions()));
+        assertEquals(describe(scratch.getAllActions()), describe(pp.getAllActions()));
+        assertEquals(dtgs(scratch), dtgsAfter);
+    }
+}
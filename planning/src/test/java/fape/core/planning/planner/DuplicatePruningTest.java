@@ -0,0 +1,46 @@
+package fape.core.planning.planner;
+
+import fape.core.planning.Problems;
+import fape.core.planning.heuristics.temporal.DGHandler;
+import fape.core.planning.states.State;
+import fape.util.Telemetry;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Solves problems with duplicate pruning and the reachability handler, that modifies partial plans when they are
+ * selected for expansion, and checks that duplicates are actually found and pruned.
+ */
+public class DuplicatePruningTest {
+
+    private static final String[] PROBLEMS = {
+            "blocks_ipc2/blocks_ipc2.p04-0.pb.anml",
+            "logistics_ipc2/logistics_ipc2.p04-0.pb.anml",
+            "dwr/dwr.1.pb.anml"
+    };
+
+    @Test
+    public void duplicatesArePruned() {
+        final boolean telemetry = Telemetry.enabled;
+        Telemetry.enabled = true;
+        Telemetry.reset();
+        try {
+            for(String problem : PROBLEMS) {
+                PlanningOptions options = Problems.defaultOptions();
+                options.handlers.add(new DGHandler());
+                options.pruneDuplicates = true;
+                Planner planner = Problems.planner(Problems.load(problem), options);
+                State solution = planner.search(System.currentTimeMillis() + 30000);
+                assertEquals(problem, Planner.EPlanState.CONSISTENT, planner.planState);
+                assertTrue(problem, solution.isSolution(options.flawFinders));
+            }
+            final long[] pruned = Telemetry.snapshot().get("duplicate-pruned");
+            assertNotNull("No duplicate was pruned", pruned);
+            assertTrue(pruned[0] > 0);
+        } finally {
+            Telemetry.enabled = telemetry;
+            Telemetry.reset();
+        }
+    }
+}
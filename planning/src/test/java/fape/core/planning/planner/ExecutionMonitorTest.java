@@ -0,0 +1,135 @@
+package fape.core.planning.planner;
+
+import fape.core.planning.Problems;
+import fape.core.planning.states.State;
+import fape.core.planning.timelines.ChainComponent;
+import fape.core.planning.timelines.Timeline;
+import org.junit.Test;
+import planstack.anml.model.concrete.Action;
+import planstack.anml.model.concrete.ActRef;
+import planstack.anml.model.concrete.statements.LogStatement;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Repairs plans after execution updates, and checks that the repaired plans keep what was not invalidated
+ * by execution.
+ */
+public class ExecutionMonitorTest {
+
+    private static final String PROBLEM = "blocks_ipc2/blocks_ipc2.p04-0.pb.anml";
+
+    private Planner planner;
+
+    private State solve(PlanningOptions options) {
+        planner = Problems.planner(Problems.load(PROBLEM), options);
+        State sol = planner.search(System.currentTimeMillis() + 30000);
+        assertEquals(Planner.EPlanState.CONSISTENT, planner.planState);
+        return sol;
+    }
+
+    /** Causal links of the plan: the statements supported by a statement, through the timeline they are in. */
+    private static Map<LogStatement, Set<LogStatement>> causalLinks(State st) {
+        final Map<LogStatement, Set<LogStatement>> links = new HashMap<>();
+        for(Timeline tl : st.getTimelines()) {
+            ChainComponent lastChange = null;
+            for(int i=0 ; i<tl.size() ; i++) {
+                final ChainComponent cc = tl.get(i);
+                if(lastChange != null) {
+                    for(LogStatement supporter : lastChange.statements)
+                        for(LogStatement s : cc.statements)
+                            links.computeIfAbsent(supporter, x -> new HashSet<>()).add(s);
+                }
+                if(cc.change)
+                    lastChange = cc;
+            }
+        }
+        return links;
+    }
+
+    /** Returns the action of the plan that starts first. */
+    private static Action firstAction(State st) {
+        return st.getAllActions().stream()
+                .min(Comparator.comparingInt(a -> st.getEarliestStartTime(a.start())))
+                .get();
+    }
+
+    @Test
+    public void repairWithoutUpdateGivesSamePlan() {
+        final PlanningOptions options = Problems.defaultOptions();
+        final State sol = solve(options);
+        final ExecutionMonitor monitor = new ExecutionMonitor(planner, sol);
+        assertFalse(monitor.hasPendingUpdates());
+        assertSame(sol, monitor.repair(System.currentTimeMillis() + 30000));
+        assertSame(sol, monitor.getPlan());
+    }
+
+    @Test
+    public void repairAfterFailureKeepsSurvivingActionsAndLinks() {
+        final PlanningOptions options = Problems.defaultOptions();
+        final State sol = solve(options);
+        final ExecutionMonitor monitor = new ExecutionMonitor(planner, sol);
+
+        final Action failed = firstAction(sol);
+        final Set<ActRef> surviving = new HashSet<>();
+        for(Action a : sol.getAllActions())
+            if(a != failed)
+                surviving.add(a.id());
+        final Map<LogStatement, Set<LogStatement>> links = causalLinks(sol);
+        for(LogStatement s : failed.logStatements()) {
+            links.remove(s);
+            links.values().forEach(supported -> supported.remove(s));
+        }
+
+        monitor.actionStarted(failed.id(), sol.getEarliestStartTime(failed.start()));
+        monitor.actionFailed(failed.id(), sol.getEarliestStartTime(failed.end()));
+        assertTrue(monitor.hasPendingUpdates());
+        assertSame(sol, monitor.getPlan());
+
+        final State repaired = monitor.repair(System.currentTimeMillis() + 30000);
+        assertNotNull(repaired);
+        assertEquals(Planner.EPlanState.CONSISTENT, planner.planState);
+        assertTrue(repaired.isSolution(options.flawFinders));
+        assertSame(repaired, monitor.getPlan());
+        assertFalse(monitor.hasPendingUpdates());
+
+        final Set<ActRef> actions = new HashSet<>();
+        for(Action a : repaired.getAllActions())
+            actions.add(a.id());
+        assertTrue(actions.containsAll(surviving));
+
+        final Map<LogStatement, Set<LogStatement>> repairedLinks = causalLinks(repaired);
+        for(LogStatement supporter : links.keySet()) {
+            assertTrue(repairedLinks.containsKey(supporter));
+            assertTrue(repairedLinks.get(supporter).containsAll(links.get(supporter)));
+        }
+    }
+
+    @Test
+    public void failedRepairKeepsUpdates() {
+        final PlanningOptions options = Problems.defaultOptions();
+        final State sol = solve(options);
+        final ExecutionMonitor monitor = new ExecutionMonitor(planner, sol);
+
+        final Action failed = firstAction(sol);
+        monitor.actionStarted(failed.id(), sol.getEarliestStartTime(failed.start()));
+        monitor.actionFailed(failed.id(), sol.getEarliestStartTime(failed.end()));
+
+        // no time to search
+        assertNull(monitor.repair(System.currentTimeMillis() - 1));
+        assertEquals(Planner.EPlanState.TIMEOUT, planner.planState);
+        assertTrue(monitor.hasPendingUpdates());
+        assertSame(sol, monitor.getPlan());
+
+        // the updates are still there for the next attempt
+        final State repaired = monitor.repair(System.currentTimeMillis() + 30000);
+        assertNotNull(repaired);
+        assertTrue(repaired.isSolution(options.flawFinders));
+        for(LogStatement s : failed.logStatements())
+            if(!s.sv().func().isConstant())
+                for(Timeline tl : repaired.getTimelines())
+                    assertFalse(tl.contains(s));
+    }
+}
@@ -0,0 +1,68 @@
+package fape.core.planning.planner;
+
+import fape.core.planning.Problems;
+import fape.core.planning.states.State;
+import fape.util.Telemetry;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Solves problems with lazy children (only built when extracted from the queue) under the sequential search,
+ * the parallel search and with an open list spilling to disk, and checks that the same problems are solved
+ * as when children are built eagerly.
+ */
+public class LazyChildrenTest {
+
+    private static final String[] PROBLEMS = {
+            "blocks_ipc2/blocks_ipc2.p04-0.pb.anml",
+            "logistics_ipc2/logistics_ipc2.p04-0.pb.anml",
+            "dwr/dwr.1.pb.anml"
+    };
+
+    /** Solves the problem and returns the telemetry counters recorded meanwhile. */
+    private static Map<String, long[]> solve(String problem, boolean lazy, int numThreads, int maxNodesInMemory) {
+        final boolean telemetry = Telemetry.enabled;
+        Telemetry.enabled = true;
+        Telemetry.reset();
+        try {
+            PlanningOptions options = Problems.defaultOptions();
+            options.lazyChildren = lazy;
+            options.numThreads = numThreads;
+            options.maxNodesInMemory = maxNodesInMemory;
+            Planner planner = Problems.planner(Problems.load(problem), options);
+            State solution = planner.search(System.currentTimeMillis() + 30000);
+            final String config = problem+" lazy:"+lazy+" threads:"+numThreads+" max-in-memory:"+maxNodesInMemory;
+            assertEquals(config, Planner.EPlanState.CONSISTENT, planner.planState);
+            assertTrue(config, solution.isSolution(options.flawFinders));
+            return Telemetry.snapshot();
+        } finally {
+            Telemetry.enabled = telemetry;
+            Telemetry.reset();
+        }
+    }
+
+    private static long count(Map<String, long[]> counters, String event) {
+        return counters.containsKey(event) ? counters.get(event)[0] : 0;
+    }
+
+    @Test
+    public void sameProblemsSolved() {
+        for(String problem : PROBLEMS) {
+            assertEquals(0, count(solve(problem, false, 1, 0), "lazy-child-materialized"));
+            assertTrue(count(solve(problem, true, 1, 0), "lazy-child-materialized") > 0);
+            assertTrue(count(solve(problem, true, 4, 0), "lazy-child-materialized") > 0);
+        }
+    }
+
+    @Test
+    public void sameProblemsSolvedWhenSpilling() {
+        for(String problem : PROBLEMS) {
+            final Map<String, long[]> counters = solve(problem, true, 1, 4);
+            assertTrue(count(counters, "lazy-child-materialized") > 0);
+            assertTrue(problem+" was solved without spilling", count(counters, "open-list-spilled-runs") > 0);
+        }
+    }
+}
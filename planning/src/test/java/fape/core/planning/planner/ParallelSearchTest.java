@@ -0,0 +1,47 @@
+package fape.core.planning.planner;
+
+import fape.core.planning.Problems;
+import fape.core.planning.heuristics.temporal.DGHandler;
+import fape.core.planning.states.State;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Solves problems with several threads sharing the plan comparators, flaw selector and handlers,
+ * and checks that the outcome is the same as with a sequential search.
+ */
+public class ParallelSearchTest {
+
+    /** A small problem for each plan selection strategy, so that every solve is short. */
+    private static final String[][] PROBLEMS = {
+            { "soca", "blocks_ipc2/blocks_ipc2.p04-0.pb.anml" },
+            { "tsp", "logistics_ipc2/logistics_ipc2.p04-0.pb.anml" },
+            { "minspan", "blocks_ipc2/blocks_ipc2.p04-1.pb.anml" }
+    };
+
+    private static Planner.EPlanState solve(String problem, int numThreads, String planSel) {
+        PlanningOptions options = Problems.options(Collections.singletonList(planSel));
+        options.handlers.add(new DGHandler());
+        options.numThreads = numThreads;
+        Planner planner = Problems.planner(Problems.load(problem), options);
+        State solution = planner.search(System.currentTimeMillis() + 10000);
+        if(solution != null)
+            assertTrue("Solution of "+problem+" with "+numThreads+" threads has flaws",
+                    solution.isSolution(options.flawFinders));
+        return planner.planState;
+    }
+
+    @Test
+    public void sameOutcomeAsSequentialSearch() {
+        for(String[] planSelAndProblem : PROBLEMS) {
+            final String planSel = planSelAndProblem[0];
+            final String problem = planSelAndProblem[1];
+            assertEquals(Planner.EPlanState.CONSISTENT, solve(problem, 1, planSel));
+            assertEquals(problem + " with 4 threads and " + planSel,
+                    Planner.EPlanState.CONSISTENT, solve(problem, 4, planSel));
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package fape.core.planning.resources;
+
+import fape.core.planning.Problems;
+import fape.core.planning.planner.Planner;
+import fape.core.planning.search.flaws.flaws.ResourceConflict;
+import fape.core.planning.states.State;
+import org.junit.Before;
+import org.junit.Test;
+import planstack.anml.model.AnmlProblem;
+import planstack.anml.model.concrete.Action;
+import planstack.anml.model.concrete.Factory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the conflicts found on resource profiles as statements and temporal constraints are added to a state
+ * and its copies.
+ */
+public class ResourceProfileTest {
+
+    private static final String CHARGE =
+            "action charge() {\n" +
+            "  duration := 2;\n" +
+            "  [all] battery :produce 5;\n" +
+            "};\n";
+
+    private static final String DOMAIN =
+            "function integer [0,10] battery();\n" +
+            CHARGE +
+            "action discharge() {\n" +
+            "  duration := 2;\n" +
+            "  [all] battery :consume 4;\n" +
+            "};\n" +
+            "[start] battery := 5;\n";
+
+    /** Two tasks that must both consume 4 units of a battery that initially holds 5. */
+    private static final String TASKS =
+            "function integer [0,10] battery();\n" +
+            "predicate done1();\n" +
+            "predicate done2();\n" +
+            "action task1() {\n" +
+            "  duration := 2;\n" +
+            "  [all] battery :consume 4;\n" +
+            "  [end] done1 := true;\n" +
+            "};\n" +
+            "action task2() {\n" +
+            "  duration := 2;\n" +
+            "  [all] battery :consume 4;\n" +
+            "  [end] done2 := true;\n" +
+            "};\n" +
+            "[start] { battery := 5; done1 := false; done2 := false; };\n" +
+            "[end] { done1 == true; done2 == true; };\n";
+
+    private State initial;
+
+    @Before
+    public void setUp() {
+        initial = Problems.initialState(Problems.fromText(DOMAIN), Problems.defaultOptions());
+    }
+
+    private static Action insert(State st, String action) {
+        Action a = Factory.getStandaloneAction(st.pb, st.pb.getAction(action), st.refCounter);
+        st.insert(a);
+        return a;
+    }
+
+    private static List<ResourceConflict> conflicts(State st) {
+        List<ResourceConflict> conflicts = new ArrayList<>();
+        for(ResourceProfile profile : st.getExtension(ResourceManager.class).getProfiles())
+            conflicts.addAll(profile.getConflicts(st));
+        return conflicts;
+    }
+
+    private static void assertTooLow(List<ResourceConflict> conflicts) {
+        assertFalse(conflicts.isEmpty());
+        for(ResourceConflict c : conflicts) {
+            assertTrue(c.tooLow);
+            assertEquals(0, c.threshold, 0);
+        }
+    }
+
+    @Test
+    public void profileIsUpdated() {
+        final State st = initial.cc();
+        assertEquals(1, st.getExtension(ResourceManager.class).getProfiles().size());
+        assertTrue(conflicts(st).isEmpty());
+
+        final Action d1 = insert(st, "discharge");
+        assertTrue(conflicts(st).isEmpty());
+        final Action d2 = insert(st, "discharge");
+        assertTooLow(conflicts(st));
+
+        // a charge that might happen after the discharges does not help
+        final Action charge = insert(st, "charge");
+        assertTooLow(conflicts(st));
+        assertEquals(1, st.getExtension(ResourceManager.class).getProfiles().size());
+
+        st.enforceBefore(charge.end(), d1.start());
+        assertTooLow(conflicts(st)); // d2 might still happen before the charge
+        st.enforceBefore(charge.end(), d2.start());
+        assertTrue(conflicts(st).isEmpty());
+    }
+
+    @Test
+    public void overProductionIsDetected() {
+        final State st = initial.cc();
+        insert(st, "charge");
+        assertTrue(conflicts(st).isEmpty());
+        insert(st, "charge");
+        final List<ResourceConflict> conflicts = conflicts(st);
+        assertFalse(conflicts.isEmpty());
+        for(ResourceConflict c : conflicts) {
+            assertFalse(c.tooLow);
+            assertEquals(10, c.threshold, 0);
+        }
+    }
+
+    @Test
+    public void copiesHaveIndependentProfiles() {
+        final State st = initial.cc();
+        final Action d1 = insert(st, "discharge");
+        assertTrue(conflicts(st).isEmpty()); // the result is cached in the profile, and copied with it
+
+        final State child = st.cc();
+        final Action d2 = insert(child, "discharge");
+        assertTooLow(conflicts(child));
+        assertTrue(conflicts(st).isEmpty());
+
+        final State sibling = child.cc();
+        final Action charge = insert(child, "charge");
+        child.enforceBefore(charge.end(), d1.start());
+        child.enforceBefore(charge.end(), d2.start());
+        assertTrue(conflicts(child).isEmpty());
+        assertTooLow(conflicts(sibling));
+        assertTrue(conflicts(st).isEmpty());
+
+        // the parent is extended independently of its copies
+        insert(st, "discharge");
+        assertTooLow(conflicts(st));
+        assertTrue(conflicts(child).isEmpty());
+    }
+
+    private static Planner solve(AnmlProblem pb) {
+        Planner planner = Problems.planner(pb, Problems.defaultOptions());
+        State sol = planner.search(System.currentTimeMillis() + 30000, Integer.MAX_VALUE, false);
+        if(sol != null)
+            assertTrue(conflicts(sol).isEmpty());
+        return planner;
+    }
+
+    @Test
+    public void overConsumptionIsRejected() {
+        Planner planner = solve(Problems.fromText(TASKS));
+        assertEquals(Planner.EPlanState.INFEASIBLE, planner.planState);
+    }
+
+    @Test
+    public void chargeIsInsertedToAvoidOverConsumption() {
+        final Planner planner = solve(Problems.fromText(TASKS + CHARGE));
+        assertEquals(Planner.EPlanState.CONSISTENT, planner.planState);
+    }
+}
@@ -0,0 +1,291 @@
+package fape.core.planning.search;
+
+import fape.core.planning.Problems;
+import fape.core.planning.states.SearchNode;
+import fape.core.planning.states.State;
+import fape.util.Telemetry;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import planstack.constraints.stnu.Controllability;
+
+import java.lang.ref.WeakReference;
+import java.util.*;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Checks that the open list gives nodes in the same order as a list sorted on their priorities (ties broken on IDs),
+ * whether or not nodes are spilled to disk.
+ */
+public class OpenListTest {
+
+    private static State initialState;
+
+    @BeforeClass
+    public static void loadProblem() {
+        initialState = new State(Problems.load("blocks_ipc2/blocks_ipc2.p04-0.pb.anml"), Controllability.PSEUDO_CONTROLLABILITY);
+    }
+
+    private static final Comparator<SearchNode> ORDER = (n1, n2) -> {
+        for(int i=0 ; i<n1.getPriority().length ; i++) {
+            int ret = Double.compare(n1.getPriority()[i], n2.getPriority()[i]);
+            if(ret != 0)
+                return ret;
+        }
+        return Integer.compare(n1.getID(), n2.getID());
+    };
+
+    /** Records the nodes recreated by an open list. */
+    private static class Recorder implements OpenList.Rematerializer {
+        final List<SearchNode> rebuilt = new ArrayList<>();
+        final List<SearchNode> rebuiltAncestors = new ArrayList<>();
+
+        @Override
+        public SearchNode rematerialize(SearchNode parent, int id, int resolverIndex, boolean expanded) {
+            SearchNode n = new SearchNode(parent, id);
+            n.setResolverIndex(resolverIndex);
+            (expanded ? rebuiltAncestors : rebuilt).add(n);
+            return n;
+        }
+    }
+
+    private static OpenList openList(Recorder recorder, int maxInMemory) {
+        return new OpenList(SearchNode::getPriority, recorder, maxInMemory);
+    }
+
+    /** Returns a new child of the given node, with a priority made of two small integers (to have many ties). */
+    private static SearchNode child(SearchNode parent, int resolverIndex, Random rand) {
+        SearchNode n = new SearchNode(parent);
+        n.setResolverIndex(resolverIndex);
+        n.setPriority(new double[] { rand.nextInt(10), rand.nextInt(5) });
+        n.setG(rand.nextInt(100));
+        n.setH(rand.nextInt(100));
+        n.setHC(rand.nextInt(100));
+        return n;
+    }
+
+    /** Adds and removes random nodes, and checks that the open list always gives the best one. */
+    private static void checkRandomOperations(int maxInMemory, long seed) {
+        final Random rand = new Random(seed);
+        final Recorder recorder = new Recorder();
+        final OpenList queue = openList(recorder, maxInMemory);
+        final TreeSet<SearchNode> expected = new TreeSet<>(ORDER);
+        final List<SearchNode> parents = new ArrayList<>();
+        parents.add(new SearchNode(initialState));
+
+        for(int i=0 ; i<3000 ; i++) {
+            if(expected.isEmpty() || rand.nextInt(3) != 0) {
+                final SearchNode parent = parents.get(rand.nextInt(parents.size()));
+                final SearchNode n = child(parent, rand.nextInt(4), rand);
+                queue.add(n);
+                expected.add(n);
+            } else {
+                final SearchNode best = expected.pollFirst();
+                final SearchNode n = queue.poll();
+                assertEquals(best.getID(), n.getID());
+                assertSame(best.getParent(), n.getParent());
+                assertEquals(best.getResolverIndex(), n.getResolverIndex());
+                assertArrayEquals(best.getPriority(), n.getPriority(), 0);
+                assertEquals(best.getG(), n.getG(), 0);
+                assertEquals(best.getH(), n.getH(), 0);
+                assertEquals(best.getHC(), n.getHC(), 0);
+                parents.add(n); // expanded, it might be the parent of future nodes
+            }
+            assertEquals(expected.size(), queue.size());
+        }
+        while(!expected.isEmpty())
+            assertEquals(expected.pollFirst().getID(), queue.poll().getID());
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+
+        if(maxInMemory > 0)
+            assertFalse("No node was spilled", recorder.rebuilt.isEmpty());
+        else
+            assertTrue(recorder.rebuilt.isEmpty());
+    }
+
+    @Test
+    public void sameOrderAsSortedList() {
+        for(long seed = 0 ; seed < 5 ; seed++) {
+            checkRandomOperations(0, seed);
+            checkRandomOperations(10, seed);
+            checkRandomOperations(101, seed);
+        }
+    }
+
+    @Test
+    public void removeArbitraryNodes() {
+        final Random rand = new Random(0);
+        final OpenList queue = openList(new Recorder(), 0);
+        final TreeSet<SearchNode> expected = new TreeSet<>(ORDER);
+        final List<SearchNode> added = new ArrayList<>();
+        final SearchNode root = new SearchNode(initialState);
+        for(int i=0 ; i<3000 ; i++) {
+            final int op = rand.nextInt(4);
+            if(added.isEmpty() || op < 2) {
+                final SearchNode n = child(root, i, rand);
+                queue.add(n);
+                expected.add(n);
+                added.add(n);
+            } else if(op == 2) {
+                // also nodes that were already removed or polled
+                final SearchNode n = added.get(rand.nextInt(added.size()));
+                assertEquals(expected.remove(n), queue.remove(n));
+            } else if(!expected.isEmpty()) {
+                assertSame(expected.pollFirst(), queue.poll());
+            }
+            assertEquals(expected.size(), queue.size());
+        }
+        assertFalse(queue.remove(child(root, 0, rand)));
+        while(!expected.isEmpty())
+            assertSame(expected.pollFirst(), queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void lazyFlagIsKeptWhenSpilled() {
+        final Random rand = new Random(0);
+        final Recorder recorder = new Recorder();
+        final OpenList queue = openList(recorder, 10);
+        final SearchNode root = new SearchNode(initialState);
+        final Map<Integer, Boolean> lazy = new HashMap<>();
+        for(int i=0 ; i<100 ; i++) {
+            SearchNode n = child(root, i, rand);
+            n.setLazy(i % 3 == 0);
+            lazy.put(n.getID(), n.isLazy());
+            queue.add(n);
+        }
+        assertTrue(queue.numSpilled() > 0);
+        while(!queue.isEmpty()) {
+            final SearchNode n = queue.poll();
+            assertEquals(lazy.get(n.getID()), n.isLazy());
+        }
+        assertTrue(recorder.rebuilt.stream().anyMatch(SearchNode::isLazy));
+        assertTrue(recorder.rebuilt.stream().anyMatch(n -> !n.isLazy()));
+    }
+
+    @Test
+    public void getAllKeepsContent() {
+        final Random rand = new Random(0);
+        final OpenList queue = openList(new Recorder(), 8);
+        final SearchNode root = new SearchNode(initialState);
+        final Set<Integer> ids = new HashSet<>();
+        for(int i=0 ; i<100 ; i++) {
+            SearchNode n = child(root, i, rand);
+            ids.add(n.getID());
+            queue.add(n);
+        }
+        assertTrue(queue.numSpilled() > 0);
+
+        final Set<Integer> all = new HashSet<>();
+        for(SearchNode n : queue.getAll())
+            all.add(n.getID());
+        assertEquals(ids, all);
+        assertEquals(100, queue.size());
+        assertEquals(0, queue.numSpilled());
+    }
+
+    @Test
+    public void spillFileIsReused() {
+        final Random rand = new Random(0);
+        final OpenList queue = openList(new Recorder(), 20);
+        final SearchNode root = new SearchNode(initialState);
+        long maxLength = -1;
+        for(int cycle=0 ; cycle<20 ; cycle++) {
+            for(int i=0 ; i<200 ; i++)
+                queue.add(child(root, i, rand));
+            // keep some nodes in the queue, the file can not be reset
+            while(queue.size() > 50)
+                queue.poll();
+            if(maxLength == -1)
+                maxLength = queue.spillFileLength();
+            assertTrue("The spill file grows with each cycle", queue.spillFileLength() <= 3 * maxLength);
+        }
+        while(!queue.isEmpty())
+            queue.poll();
+        assertEquals(0, queue.spillFileLength());
+    }
+
+    @Test
+    public void unspillableNodesAreKeptInMemory() {
+        final Random rand = new Random(0);
+        final OpenList queue = openList(new Recorder(), 10);
+        final SearchNode root = new SearchNode(initialState);
+        final TreeSet<SearchNode> expected = new TreeSet<>(ORDER);
+        final boolean telemetry = Telemetry.enabled;
+        Telemetry.enabled = true;
+        Telemetry.reset();
+        try {
+            for (int i = 0; i < 500; i++) {
+                // a node without resolver index can not be recreated from its parent
+                SearchNode n = child(root, i % 2 == 0 ? -1 : i, rand);
+                queue.add(n);
+                expected.add(n);
+            }
+            // 250 nodes can be spilled, at least 5 of them at each spill
+            final long[] runs = Telemetry.snapshot().get("open-list-spilled-runs");
+            assertNotNull(runs);
+            assertTrue("Too many spills: " + runs[0], runs[0] <= 50);
+            assertTrue(queue.numSpilled() <= 250);
+        } finally {
+            Telemetry.enabled = telemetry;
+            Telemetry.reset();
+        }
+        while(!expected.isEmpty())
+            assertEquals(expected.pollFirst().getID(), queue.poll().getID());
+    }
+
+    /** Adds many children to `parent` so that most of them are spilled. */
+    private static List<Integer> addSpilledChildren(OpenList queue, SearchNode parent) {
+        final Random rand = new Random(0);
+        final List<Integer> ids = new ArrayList<>();
+        for(int i=0 ; i<50 ; i++) {
+            SearchNode n = child(parent, i, rand);
+            n.setPriority(new double[] { 1, 0 });
+            ids.add(n.getID());
+            queue.add(n);
+        }
+        return ids;
+    }
+
+    @Test
+    public void collectedAncestorsAreRebuilt() {
+        final Recorder recorder = new Recorder();
+        final OpenList queue = openList(recorder, 4);
+        final SearchNode root = new SearchNode(initialState);
+        SearchNode a = new SearchNode(root);
+        a.setResolverIndex(3);
+        SearchNode b = new SearchNode(a);
+        b.setResolverIndex(5);
+        final int aID = a.getID();
+        final int bID = b.getID();
+        final List<Integer> ids = addSpilledChildren(queue, b);
+        assertTrue(queue.numSpilled() > 40);
+
+        // only the open list refers to the ancestors of spilled nodes, which should not prevent their collection
+        final WeakReference<SearchNode> aRef = new WeakReference<>(a);
+        final WeakReference<SearchNode> bRef = new WeakReference<>(b);
+        a = null;
+        b = null;
+        while(queue.size() > queue.numSpilled())
+            queue.poll(); // drop the children that were kept in memory
+        for(int i=0 ; i<10 && (aRef.get() != null || bRef.get() != null) ; i++)
+            System.gc();
+        assumeTrue("Ancestors were not garbage collected", aRef.get() == null && bRef.get() == null);
+
+        final SearchNode n = queue.poll();
+        assertTrue(ids.contains(n.getID()));
+        assertEquals(bID, n.getParent().getID());
+        assertEquals(5, n.getParent().getResolverIndex());
+        assertEquals(aID, n.getParent().getParent().getID());
+        assertEquals(3, n.getParent().getParent().getResolverIndex());
+        assertSame(root, n.getParent().getParent().getParent());
+        assertEquals(2, recorder.rebuiltAncestors.size());
+
+        // siblings of n share the same recreated parent
+        final SearchNode sibling = queue.poll();
+        assertSame(n.getParent(), sibling.getParent());
+        assertEquals(2, recorder.rebuiltAncestors.size());
+    }
+}
@@ -0,0 +1,95 @@
+package fape.core.planning.search.strategies.flaws;
+
+import fape.core.planning.Problems;
+import fape.core.planning.planner.PlanningOptions;
+import fape.core.planning.search.flaws.flaws.Flaw;
+import fape.core.planning.search.flaws.resolvers.Resolver;
+import fape.core.planning.states.State;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that a FlawSelector selects the flaw that comes first when sorting with the SeqFlawComparator of the same
+ * strategies, on random sets of flaws of states met along random branches of the search tree.
+ */
+public class FlawSelectorTest {
+
+    private static final String[] PROBLEMS = {
+            "blocks_ipc2/blocks_ipc2.p04-0.pb.anml",
+            "rovers_ipc5-hier/rovers_ipc5-hier.p01.pb.anml",
+            "handover-hier/handover-hier.1.pb.anml"
+    };
+
+    /**
+     * Every strategy, alone or in the combinations used by the planner. "abs" and "eogf" only order open goals,
+     * they are preceded by "ogf" so that the comparator defines a total order.
+     */
+    private static final String[] STRATEGIES = {
+            "lcf", "hier", "hier-fifo", "ogf", "extfirst", "threats", "unbound", "earliest", "minspan",
+            "ogf,abs", "ogf,eogf", "hier,ogf,abs,lcf,eogf", "threats,ogf,lcf", "hier,ogf,abs,lcf,eogf,earliest"
+    };
+
+    /** Returns the states met on a random branch of the search tree, starting from the initial state. */
+    private static List<State> randomBranch(String problem, PlanningOptions options, Random rand) {
+        final List<State> states = new ArrayList<>();
+        final FlawSelector selector = FlawCompFactory.compile(options.flawSelStrategies);
+        State st = Problems.initialState(Problems.load(problem), options);
+        for(int depth=0 ; depth<20 ; depth++) {
+            states.add(st);
+            final List<Flaw> flaws = st.getFlaws(options.flawFinders, selector);
+            if(flaws.isEmpty())
+                break;
+            final List<Resolver> resolvers = flaws.get(0).getResolvers(st, st.pl);
+            if(resolvers.isEmpty())
+                break;
+            final State child = st.cc();
+            final Resolver res = resolvers.get(rand.nextInt(resolvers.size()));
+            if(!(child.applyResolver(res, child.pl, false) && child.csp.propagateMixedConstraints() && child.checkConsistency()))
+                break;
+            st = child;
+        }
+        return states;
+    }
+
+    @Test
+    public void sameFlawAsSortedList() {
+        final Random rand = new Random(0);
+        final PlanningOptions options = Problems.defaultOptions();
+        for(String problem : PROBLEMS) {
+            for(int branch=0 ; branch<3 ; branch++) {
+                for(State st : randomBranch(problem, options, rand)) {
+                    final List<Flaw> all = st.getFlaws(options.flawFinders, (Comparator<Flaw>) (f1, f2) -> 0);
+                    for(int i=0 ; i<5 && all.size() > 1 ; i++) {
+                        final List<Flaw> flaws = new ArrayList<>(all);
+                        Collections.shuffle(flaws, rand);
+                        flaws.subList(2 + rand.nextInt(flaws.size() -1), flaws.size()).clear();
+
+                        for(String strategy : STRATEGIES) {
+                            final List<String> comparators = Arrays.asList(strategy.split(","));
+                            final List<Flaw> sorted = new ArrayList<>(flaws);
+                            sorted.sort(FlawCompFactory.get(st, st.pl, comparators));
+                            final int selected = FlawCompFactory.compile(comparators).select(flaws, st, st.pl);
+                            assertSame(strategy+" on "+problem, sorted.get(0), flaws.get(selected));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void emptyAndSingletonLists() {
+        final PlanningOptions options = Problems.defaultOptions();
+        final State st = Problems.initialState(Problems.load(PROBLEMS[0]), options);
+        final List<Flaw> flaws = st.getFlaws(options.flawFinders, (Comparator<Flaw>) (f1, f2) -> 0);
+        assertFalse(flaws.isEmpty());
+        for(String strategy : STRATEGIES) {
+            final FlawSelector selector = FlawCompFactory.compile(Arrays.asList(strategy.split(",")));
+            assertEquals(-1, selector.select(Collections.emptyList(), st, st.pl));
+            assertEquals(0, selector.select(flaws.subList(0, 1), st, st.pl));
+        }
+    }
+}
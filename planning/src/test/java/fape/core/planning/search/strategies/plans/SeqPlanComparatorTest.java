@@ -0,0 +1,155 @@
+package fape.core.planning.search.strategies.plans;
+
+import fape.core.planning.Problems;
+import fape.core.planning.planner.PlanningOptions;
+import fape.core.planning.search.OpenList;
+import fape.core.planning.states.SearchNode;
+import fape.core.planning.states.State;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the open list, ordered by the priorities of a SeqPlanComparator, gives nodes in the same order as the
+ * previous comparator that merged the values of all comparators in a single number (f = g + weight * h,
+ * with g = 1000000 * g1 + g2...) as long as this number is exact.
+ */
+public class SeqPlanComparatorTest {
+
+    private static State initialState;
+
+    @BeforeClass
+    public static void loadProblem() {
+        initialState = Problems.initialState(Problems.load("blocks_ipc2/blocks_ipc2.p04-0.pb.anml"), Problems.defaultOptions());
+    }
+
+    /** A comparator whose values are given for each state. */
+    private static class Fixed extends PartialPlanComparator {
+        final Map<State, double[]> values = new IdentityHashMap<>();
+        final int index;
+        int numCalls = 0;
+        Fixed(int index) { this.index = index; }
+
+        @Override public String shortName() { return "fixed"+index; }
+        @Override public double g(State st) { numCalls++; return values.get(st)[2*index]; }
+        @Override public double h(State st) { numCalls++; return values.get(st)[2*index+1]; }
+        @Override public double hc(State st) { return 0; }
+    }
+
+    private static List<Fixed> comparators(int n) {
+        final List<Fixed> comparators = new ArrayList<>();
+        for(int i=0 ; i<n ; i++)
+            comparators.add(new Fixed(i));
+        return comparators;
+    }
+
+    /** Returns a node whose state has the given values (g and h of each comparator, in sequence). */
+    private static SearchNode node(List<Fixed> comparators, double... values) {
+        final State st = initialState.cc();
+        for(Fixed comp : comparators)
+            comp.values.put(st, values);
+        return new SearchNode(st);
+    }
+
+    /** f value of the node with the comparator used before priorities were split by comparator. */
+    private static double mergedF(List<Fixed> comparators, SearchNode n, double weight) {
+        double g = 0;
+        double h = 0;
+        for(Fixed comp : comparators) {
+            double[] values = comp.values.get(n.getState());
+            g = 1000000 * g + values[2*comp.index];
+            h = 1000000 * h + values[2*comp.index+1];
+        }
+        return g + weight * h;
+    }
+
+    private static List<Integer> ids(List<SearchNode> nodes) {
+        final List<Integer> ids = new ArrayList<>();
+        for(SearchNode n : nodes)
+            ids.add(n.getID());
+        return ids;
+    }
+
+    private static List<SearchNode> pollAll(OpenList queue) {
+        final List<SearchNode> polled = new ArrayList<>();
+        while(!queue.isEmpty())
+            polled.add(queue.poll());
+        return polled;
+    }
+
+    @Test
+    public void sameOrderAsMergedComparator() {
+        final Random rand = new Random(0);
+        for(int numComparators=1 ; numComparators<=3 ; numComparators++) {
+            for(float weight : new float[] { 0, 1, 3 }) {
+                final List<Fixed> comparators = comparators(numComparators);
+                final SeqPlanComparator seq = new SeqPlanComparator(new ArrayList<>(comparators));
+                final PlanningOptions options = Problems.defaultOptions();
+                options.heuristicWeight = weight;
+
+                final List<SearchNode> nodes = new ArrayList<>();
+                final OpenList queue = new OpenList(n -> seq.priority(n, weight), null, 0);
+                for(int i=0 ; i<300 ; i++) {
+                    // small integers: many ties, and merged values that are exact
+                    final double[] values = new double[2*numComparators];
+                    for(int j=0 ; j<values.length ; j++)
+                        values[j] = rand.nextInt(5);
+                    final SearchNode n = node(comparators, values);
+                    nodes.add(n);
+                    queue.add(n);
+                }
+
+                final List<SearchNode> expected = new ArrayList<>(nodes);
+                expected.sort((n1, n2) -> {
+                    int ret = Double.compare(mergedF(comparators, n1, weight), mergedF(comparators, n2, weight));
+                    return ret != 0 ? ret : Integer.compare(n1.getID(), n2.getID());
+                });
+                final List<SearchNode> sorted = new ArrayList<>(nodes);
+                sorted.sort(seq.comparator(options));
+
+                final String msg = numComparators+" comparators, weight "+weight;
+                assertEquals(msg, ids(expected), ids(sorted));
+                assertEquals(msg, ids(expected), ids(pollAll(queue)));
+            }
+        }
+    }
+
+    @Test
+    public void laterComparatorsAreNotLost() {
+        final List<Fixed> comparators = comparators(3);
+        final SeqPlanComparator seq = new SeqPlanComparator(new ArrayList<>(comparators));
+        // with large values in the first comparators, the merged f can not tell those nodes apart
+        final SearchNode worse = node(comparators, 1e9, 0, 1e9, 0, 2, 0);
+        final SearchNode better = node(comparators, 1e9, 0, 1e9, 0, 1, 0);
+        assertEquals(mergedF(comparators, worse, 1), mergedF(comparators, better, 1), 0);
+
+        final OpenList queue = new OpenList(n -> seq.priority(n, 1), null, 0);
+        queue.add(worse);
+        queue.add(better);
+        assertSame(better, queue.poll());
+        assertSame(worse, queue.poll());
+    }
+
+    @Test
+    public void cachedValuesAreUsed() {
+        final List<Fixed> comparators = comparators(1);
+        final SeqPlanComparator seq = new SeqPlanComparator(new ArrayList<>(comparators));
+        final SearchNode n = new SearchNode(new SearchNode(initialState));
+        n.setG(3);
+        n.setH(4);
+        assertArrayEquals(new double[] { 11 }, seq.priority(n, 2), 0);
+        assertEquals(0, comparators.get(0).numCalls);
+
+        // several comparators: the cached values are merged and can not be used
+        final List<Fixed> two = comparators(2);
+        final SeqPlanComparator seq2 = new SeqPlanComparator(new ArrayList<>(two));
+        final SearchNode m = node(two, 1, 2, 3, 4);
+        m.setG(1000003);
+        m.setH(2000004);
+        assertArrayEquals(new double[] { 5, 11 }, seq2.priority(m, 2), 0);
+        assertEquals(2, two.get(0).numCalls);
+    }
+}
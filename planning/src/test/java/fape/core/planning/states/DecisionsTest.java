@@ -0,0 +1,128 @@
+package fape.core.planning.states;
+
+import fape.core.planning.Problems;
+import fape.core.planning.planner.PlanningOptions;
+import fape.core.planning.search.flaws.resolvers.Resolver;
+import fape.core.planning.search.flaws.resolvers.SupportingAction;
+import fape.core.planning.search.flaws.resolvers.VarBinding;
+import fape.core.planning.timelines.Timeline;
+import org.junit.Before;
+import org.junit.Test;
+import planstack.anml.model.concrete.Action;
+import planstack.anml.model.concrete.VarRef;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that partial plans are recognized as duplicates when they are reached by applying the same resolvers
+ * in different orders, and only then.
+ */
+public class DecisionsTest {
+
+    /** Two actions with the same structure: inserting them in different orders gives them swapped IDs. */
+    private static final String PROBLEM =
+            "type Loc;\n" +
+            "instance Loc l1, l2;\n" +
+            "predicate p();\n" +
+            "predicate q();\n" +
+            "action A(Loc x) {\n" +
+            "  duration := 1;\n" +
+            "  [end] p := true;\n" +
+            "};\n" +
+            "action B(Loc y) {\n" +
+            "  duration := 1;\n" +
+            "  [end] q := true;\n" +
+            "};\n" +
+            "[start] { p := false; q := false; };\n" +
+            "[end] { p == true; q == true; };\n";
+
+    private State initial;
+    private Resolver supportP, supportQ;
+
+    @Before
+    public void setUp() {
+        final PlanningOptions options = Problems.defaultOptions();
+        initial = Problems.initialState(Problems.fromText(PROBLEM), options);
+        supportP = supporter("p", options);
+        supportQ = supporter("q", options);
+    }
+
+    /** Returns a resolver inserting an action to support the goal on the given predicate. */
+    private Resolver supporter(String predicate, PlanningOptions options) {
+        for(Timeline og : initial.tdb.getConsumers())
+            if(og.stateVariable.func().name().equals(predicate))
+                for(Resolver res : initial.getResolversForOpenGoal(og, options.actionInsertionStrategy))
+                    if(res instanceof SupportingAction)
+                        return res;
+        throw new AssertionError("No action supporting "+predicate);
+    }
+
+    /** Returns a copy of the initial state on which the given resolvers were applied, in this order. */
+    private State apply(Resolver... resolvers) {
+        State st = initial.cc();
+        for(Resolver res : resolvers)
+            applyOn(st, res);
+        return st;
+    }
+
+    private static void applyOn(State st, Resolver res) {
+        assertTrue(st.applyResolver(res, st.pl, false) && st.csp.propagateMixedConstraints() && st.checkConsistency());
+    }
+
+    private static Action action(State st, String name) {
+        for(Action a : st.getAllActions())
+            if(a.name().equals(name))
+                return a;
+        throw new AssertionError("No action "+name);
+    }
+
+    private static VarRef parameterOf(State st, String action) {
+        return action(st, action).args().get(0);
+    }
+
+    @Test
+    public void reorderedResolversGiveTheSamePlan() {
+        final State pq = apply(supportP, supportQ);
+        final State qp = apply(supportQ, supportP);
+        // the same actions were given different IDs
+        assertNotEquals(action(pq, "A").id(), action(qp, "A").id());
+        assertEquals(action(pq, "A").id(), action(qp, "B").id());
+
+        assertEquals(pq.getFingerprint(), qp.getFingerprint());
+        assertTrue(pq.isSamePlanAs(qp));
+
+        // binding the parameter of the same action, whatever its ID
+        applyOn(pq, new VarBinding(parameterOf(pq, "A"), "l1"));
+        applyOn(qp, new VarBinding(parameterOf(qp, "A"), "l1"));
+        assertEquals(pq.getFingerprint(), qp.getFingerprint());
+        assertTrue(pq.isSamePlanAs(qp));
+    }
+
+    @Test
+    public void sameRawIDsInDifferentPlans() {
+        final State pq = apply(supportP, supportQ);
+        final State qp = apply(supportQ, supportP);
+        // the same resolver (same variable) binds the parameter of A in the first plan and the one of B in the second
+        final VarRef var = parameterOf(pq, "A");
+        applyOn(pq, new VarBinding(var, "l1"));
+        applyOn(qp, new VarBinding(var, "l1"));
+        assertEquals(1, (int) pq.domainSizeOf(parameterOf(pq, "A")));
+        assertEquals(2, (int) pq.domainSizeOf(parameterOf(pq, "B")));
+        assertEquals(2, (int) qp.domainSizeOf(parameterOf(qp, "A")));
+        assertEquals(1, (int) qp.domainSizeOf(parameterOf(qp, "B")));
+
+        assertNotEquals(pq.getFingerprint(), qp.getFingerprint());
+        assertFalse(pq.isSamePlanAs(qp));
+        assertFalse(qp.isSamePlanAs(pq));
+    }
+
+    @Test
+    public void differentValuesGiveDifferentPlans() {
+        final State st1 = apply(supportP, supportQ);
+        final State st2 = apply(supportQ, supportP);
+        applyOn(st1, new VarBinding(parameterOf(st1, "A"), "l1"));
+        applyOn(st2, new VarBinding(parameterOf(st2, "A"), "l2"));
+        assertFalse(st1.isSamePlanAs(st2));
+        assertFalse(st1.isSamePlanAs(apply(supportP)));
+    }
+}
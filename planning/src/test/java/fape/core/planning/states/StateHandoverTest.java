@@ -0,0 +1,107 @@
+package fape.core.planning.states;
+
+import fape.core.planning.Problems;
+import fape.core.planning.planner.PlanningOptions;
+import fape.core.planning.search.flaws.flaws.Flaw;
+import fape.core.planning.search.flaws.resolvers.Resolver;
+import fape.core.planning.timelines.Timeline;
+import org.junit.Test;
+import planstack.anml.model.concrete.Action;
+import planstack.anml.model.concrete.VarRef;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that a child that takes over the state of its parent (see SearchNode.handOverStateToNextChild()) ends up
+ * with the same state as a child working on a copy, and that neither the copy nor the rebuilt parent are affected.
+ */
+public class StateHandoverTest {
+
+    private static final String[] PROBLEMS = {
+            "blocks_ipc2/blocks_ipc2.p04-0.pb.anml",
+            "logistics_ipc2/logistics_ipc2.p04-0.pb.anml",
+            "handover-hier/handover-hier.1.pb.anml"
+    };
+
+    private static final Comparator<Flaw> NO_ORDER = (f1, f2) -> 0;
+
+    private static boolean apply(State st, Resolver res) {
+        return st.applyResolver(res, st.pl, false) && st.csp.propagateMixedConstraints() && st.checkConsistency();
+    }
+
+    private static SearchNode child(SearchNode parent, Resolver res) {
+        final SearchNode n = new SearchNode(parent);
+        n.addOperation(s -> assertTrue(apply(s, res)));
+        return n;
+    }
+
+    /** Content of the state: actions with the domains of their parameters and time windows, timelines and flaws. */
+    private static List<String> describe(State st, PlanningOptions options) {
+        final List<String> desc = new ArrayList<>();
+        desc.add("fingerprint: "+st.getFingerprint());
+        for(Action a : st.getAllActions()) {
+            final StringBuilder sb = new StringBuilder(a.id()+" "+a.name());
+            for(VarRef arg : a.args())
+                sb.append(" ").append(st.domainOf(arg));
+            sb.append(" [").append(st.getEarliestStartTime(a.start())).append(",").append(st.getLatestStartTime(a.start()))
+                    .append("] [").append(st.getEarliestStartTime(a.end())).append(",").append(st.getLatestStartTime(a.end()))
+                    .append("]");
+            desc.add(sb.toString());
+        }
+        for(Timeline tl : st.getTimelines())
+            desc.add(tl.toString());
+        desc.add("flaws: "+st.getFlaws(options.flawFinders, NO_ORDER).size());
+        return desc;
+    }
+
+    /** Returns a resolver of the state that can be applied without inconsistency, null if there is none. */
+    private static Resolver randomResolver(State st, PlanningOptions options, Random rand) {
+        final List<Flaw> flaws = st.getFlaws(options.flawFinders, NO_ORDER);
+        if(flaws.isEmpty())
+            return null;
+        final List<Resolver> resolvers = new ArrayList<>(flaws.get(rand.nextInt(flaws.size())).getResolvers(st, st.pl));
+        Collections.sort(resolvers);
+        Collections.shuffle(resolvers, rand);
+        for(Resolver res : resolvers)
+            if(apply(st.cc(), res))
+                return res;
+        return null;
+    }
+
+    @Test
+    public void handedOverChildIsIdenticalToCopy() {
+        final Random rand = new Random(0);
+        final PlanningOptions options = Problems.defaultOptions();
+        int numHandovers = 0;
+        for(String problem : PROBLEMS) {
+            for(int branch=0 ; branch<2 ; branch++) {
+                SearchNode node = new SearchNode(Problems.initialState(Problems.load(problem), options));
+                for(int depth=0 ; depth<15 ; depth++) {
+                    final List<String> parent = describe(node.getState(), options);
+                    final Resolver res = randomResolver(node.getState(), options, rand);
+                    if(res == null)
+                        break;
+
+                    final SearchNode copied = child(node, res);
+                    final List<String> expected = describe(copied.getState(), options);
+
+                    node.handOverStateToNextChild(); // ignored for the root
+                    final SearchNode handedOver = child(node, res);
+                    assertEquals(problem, expected, describe(handedOver.getState(), options));
+                    if(depth > 0)
+                        numHandovers++;
+
+                    // the copy does not share anything that the handed over child modified
+                    assertEquals(problem, expected, describe(copied.getState(), options));
+                    // the state of the parent is rebuilt from its own parent
+                    assertEquals(problem, parent, describe(node.getState(), options));
+
+                    node = handedOver;
+                }
+            }
+        }
+        assertTrue(numHandovers > 0);
+    }
+}
@@ -0,0 +1,165 @@
+package fape.core.planning.states;
+
+import fape.core.planning.Problems;
+import fape.core.planning.search.flaws.flaws.Flaw;
+import fape.core.planning.search.flaws.flaws.Threat;
+import fape.core.planning.timelines.Timeline;
+import org.junit.Before;
+import org.junit.Test;
+import planstack.anml.model.concrete.Action;
+import planstack.anml.model.concrete.Factory;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the threats given by the cache are the pairs of timelines that are actually threatening each other,
+ * as constraints are added to a state and its copies and as timelines are extended.
+ */
+public class ThreatsCacheTest {
+
+    private static final String DOMAIN =
+            "type Robot;\n" +
+            "type Loc;\n" +
+            "instance Robot r1, r2;\n" +
+            "instance Loc l1, l2, l3;\n" +
+            "function Loc at(Robot r);\n" +
+            "action move(Robot r, Loc a, Loc b) {\n" +
+            "  duration := 2;\n" +
+            "  [all] at(r) == a :-> b;\n" +
+            "};\n" +
+            "[start] { at(r1) := l1; at(r2) := l2; };\n";
+
+    private State initial;
+
+    @Before
+    public void setUp() {
+        initial = Problems.initialState(Problems.fromText(DOMAIN), Problems.defaultOptions());
+    }
+
+    private static Action insert(State st) {
+        Action a = Factory.getStandaloneAction(st.pb, st.pb.getAction("move"), st.refCounter);
+        st.insert(a);
+        return a;
+    }
+
+    /** The timeline containing the transition of a move action. */
+    private static Timeline timeline(State st, Action a) {
+        return st.getDBContaining(a.logStatements().get(0));
+    }
+
+    private static List<Integer> pair(Timeline tl1, Timeline tl2) {
+        return Arrays.asList(Math.min(tl1.mID, tl2.mID), Math.max(tl1.mID, tl2.mID));
+    }
+
+    /** Threats given by the cache of the state. */
+    private static Set<List<Integer>> threats(State st) {
+        final Set<List<Integer>> threats = new HashSet<>();
+        for(Flaw f : st.getAllThreats())
+            assertTrue("Duplicated threat", threats.add(pair(((Threat) f).db1, ((Threat) f).db2)));
+        return threats;
+    }
+
+    /** Threats found by checking all pairs of timelines of the state. */
+    private static Set<List<Integer>> allThreats(State st) {
+        final List<Timeline> timelines = new ArrayList<>();
+        st.getTimelines().forEach(timelines::add);
+        final Set<List<Integer>> threats = new HashSet<>();
+        for(int i=0 ; i<timelines.size() ; i++)
+            for(int j=i+1 ; j<timelines.size() ; j++)
+                if(ThreatsCache.isThreatening(st, timelines.get(i), timelines.get(j)))
+                    threats.add(pair(timelines.get(i), timelines.get(j)));
+        return threats;
+    }
+
+    private static void assertAccurate(State st) {
+        assertEquals(allThreats(st), threats(st));
+    }
+
+    @Test
+    public void constraintInCopyOnlyRemovesThreatInCopy() {
+        final State st = initial.cc();
+        final Action a1 = insert(st);
+        final Action a2 = insert(st);
+        final List<Integer> threat = pair(timeline(st, a1), timeline(st, a2));
+        assertTrue(threats(st).contains(threat));
+        assertAccurate(st);
+
+        // ordered in time
+        final State ordered = st.cc();
+        ordered.enforceStrictlyBefore(a1.end(), a2.start());
+        assertFalse(threats(ordered).contains(threat));
+        assertAccurate(ordered);
+
+        // on different robots
+        final State separated = st.cc();
+        separated.addSeparationConstraint(a1.args().get(0), a2.args().get(0));
+        assertFalse(threats(separated).contains(threat));
+        assertAccurate(separated);
+
+        assertTrue(threats(st).contains(threat));
+        assertAccurate(st);
+    }
+
+    @Test
+    public void extendedTimelineIsPairedAgain() {
+        final State st = initial.cc();
+        final Action a1 = insert(st);
+        final Action a2 = insert(st);
+        final Action a3 = insert(st);
+        st.enforceStrictlyBefore(a1.end(), a3.start());
+        final Timeline tl1 = timeline(st, a1);
+        final Timeline tl2 = timeline(st, a2);
+        final Timeline tl3 = timeline(st, a3);
+        assertFalse(threats(st).contains(pair(tl1, tl3)));
+        assertAccurate(st);
+
+        // the transition of a2 now follows the one of a1, and might be concurrent with the one of a3
+        final State extended = st.cc();
+        final Timeline supporter = timeline(extended, a1);
+        extended.insertTimelineAfter(supporter, timeline(extended, a2), supporter.getLast());
+        final Timeline tl12 = timeline(extended, a2);
+        assertEquals(tl1.mID, tl12.mID);
+        assertTrue(threats(extended).contains(pair(tl12, tl3)));
+        for(List<Integer> threat : threats(extended))
+            assertFalse(threat.contains(tl2.mID));
+        assertAccurate(extended);
+
+        assertFalse(threats(st).contains(pair(tl1, tl3)));
+        assertAccurate(st);
+    }
+
+    @Test
+    public void siblingsDoNotSeeEachOtherRemovals() {
+        final State st = initial.cc();
+        final Action a1 = insert(st);
+        final Action a2 = insert(st);
+        final Action a3 = insert(st);
+        final List<Integer> threat12 = pair(timeline(st, a1), timeline(st, a2));
+        final List<Integer> threat23 = pair(timeline(st, a2), timeline(st, a3));
+        assertTrue(threats(st).containsAll(Arrays.asList(threat12, threat23)));
+
+        // both copies share the pairs of their parent
+        final State sibling1 = st.cc();
+        final State sibling2 = st.cc();
+        sibling1.enforceStrictlyBefore(a1.end(), a2.start());
+        sibling2.enforceStrictlyBefore(a2.end(), a3.start());
+
+        assertFalse(threats(sibling1).contains(threat12));
+        assertTrue(threats(sibling1).contains(threat23));
+        assertFalse(threats(sibling2).contains(threat23));
+        assertTrue(threats(sibling2).contains(threat12));
+        assertAccurate(sibling1);
+        assertAccurate(sibling2);
+
+        // pairs added after a removal are not visible in the other copies either
+        final Action a4 = insert(sibling1);
+        assertTrue(threats(sibling1).contains(pair(timeline(sibling1, a1), timeline(sibling1, a4))));
+        assertAccurate(sibling1);
+        assertAccurate(sibling2);
+
+        assertTrue(threats(st).containsAll(Arrays.asList(threat12, threat23)));
+        assertAccurate(st);
+    }
+}
@@ -0,0 +1,72 @@
+package fr.laas.fape.structures;
+
+import java.util.Arrays;
+
+/**
+ * A growable array split in fixed size chunks that are shared between copies.
+ *
+ * Copying an array only copies the table of chunks. A chunk is cloned the first time it is written by an array that
+ * does not own it. Both the original and the copy lose the ownership of all chunks on copy, hence an array can
+ * be freely modified after being copied.
+ *
+ * Unset elements are null.
+ */
+public final class CowArray<T> {
+
+    static final int CHUNK_BITS = 6;
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private Object[][] chunks;
+    /** Token of the array that can modify each chunk in place */
+    private Object[] owners;
+    private Object owner = new Object();
+
+    public CowArray() {
+        chunks = new Object[1][];
+        owners = new Object[1];
+    }
+
+    private CowArray(CowArray<T> toCopy) {
+        chunks = toCopy.chunks.clone();
+        owners = toCopy.owners.clone();
+    }
+
+    /** Returns a copy of this array. Subsequent modifications of any of them are not visible in the other. */
+    public CowArray<T> copy() {
+        CowArray<T> copy = new CowArray<>(this);
+        owner = new Object(); // chunks are now shared
+        return copy;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(int i) {
+        final int c = i >>> CHUNK_BITS;
+        if(c >= chunks.length || chunks[c] == null)
+            return null;
+        return (T) chunks[c][i & CHUNK_MASK];
+    }
+
+    public void set(int i, T value) {
+        writableChunk(i >>> CHUNK_BITS)[i & CHUNK_MASK] = value;
+    }
+
+    /** Upper bound (exclusive) on the index of the elements of this array. */
+    public int capacity() { return chunks.length * CHUNK_SIZE; }
+
+    private Object[] writableChunk(int c) {
+        if(c >= chunks.length) {
+            final int newLength = Math.max(chunks.length * 2, c + 1);
+            chunks = Arrays.copyOf(chunks, newLength);
+            owners = Arrays.copyOf(owners, newLength);
+        }
+        if(chunks[c] == null) {
+            chunks[c] = new Object[CHUNK_SIZE];
+            owners[c] = owner;
+        } else if(owners[c] != owner) {
+            chunks[c] = chunks[c].clone();
+            owners[c] = owner;
+        }
+        return chunks[c];
+    }
+}
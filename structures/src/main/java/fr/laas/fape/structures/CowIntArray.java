@@ -0,0 +1,68 @@
+package fr.laas.fape.structures;
+
+import java.util.Arrays;
+
+import static fr.laas.fape.structures.CowArray.*;
+
+/**
+ * Primitive int version of CowArray: a growable array of ints split in chunks that are shared between copies
+ * and cloned on first write.
+ *
+ * Unset elements have the default value given at construction.
+ */
+public final class CowIntArray {
+
+    private final int defaultValue;
+    private int[][] chunks;
+    /** Token of the array that can modify each chunk in place */
+    private Object[] owners;
+    private Object owner = new Object();
+
+    public CowIntArray(int defaultValue) {
+        this.defaultValue = defaultValue;
+        chunks = new int[1][];
+        owners = new Object[1];
+    }
+
+    private CowIntArray(CowIntArray toCopy) {
+        defaultValue = toCopy.defaultValue;
+        chunks = toCopy.chunks.clone();
+        owners = toCopy.owners.clone();
+    }
+
+    /** Returns a copy of this array. Subsequent modifications of any of them are not visible in the other. */
+    public CowIntArray copy() {
+        CowIntArray copy = new CowIntArray(this);
+        owner = new Object(); // chunks are now shared
+        return copy;
+    }
+
+    public int get(int i) {
+        final int c = i >>> CHUNK_BITS;
+        if(c >= chunks.length || chunks[c] == null)
+            return defaultValue;
+        return chunks[c][i & CHUNK_MASK];
+    }
+
+    public void set(int i, int value) {
+        writableChunk(i >>> CHUNK_BITS)[i & CHUNK_MASK] = value;
+    }
+
+    private int[] writableChunk(int c) {
+        if(c >= chunks.length) {
+            final int newLength = Math.max(chunks.length * 2, c + 1);
+            chunks = Arrays.copyOf(chunks, newLength);
+            owners = Arrays.copyOf(owners, newLength);
+        }
+        if(chunks[c] == null) {
+            chunks[c] = new int[CHUNK_SIZE];
+            if(defaultValue != 0)
+                Arrays.fill(chunks[c], defaultValue);
+            owners[c] = owner;
+        } else if(owners[c] != owner) {
+            chunks[c] = chunks[c].clone();
+            owners[c] = owner;
+        }
+        return chunks[c];
+    }
+}
@@ -2,33 +2,76 @@ package fr.laas.fape.structures;
 
 import java.lang.reflect.Constructor;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
+/**
+ * Storage for uniquely identified values. A single instance can be shared by several threads: lookups
+ * do not take any lock, only the creation and recording of new values are synchronized on the storage.
+ */
 @SuppressWarnings({"rawtypes", "unchecked"})
 public class IRStorage {
 
-    Map<Class, Map<List<Object>, Identifiable>> instancesByParams = new HashMap<>();
-    Map<Class, ArrayList<Identifiable>> instances = new HashMap<>();
+    /**
+     * Append-only array of the values of a class, indexed by their ID. Values are written under the lock of the
+     * storage and the array is then (re)published through a volatile field, so that readers never need the lock.
+     */
+    static final class Values {
+        private volatile Identifiable[] values = new Identifiable[50];
+        private volatile int size = 0;
+
+        Identifiable get(int id) {
+            if(id >= size)
+                throw new IndexOutOfBoundsException("Index: "+id+", Size: "+size);
+            return values[id];
+        }
+
+        int size() { return size; }
+
+        /** Must be called while holding the lock of the storage. */
+        void set(int id, Identifiable o) {
+            Identifiable[] vals = values;
+            if(id >= vals.length)
+                vals = Arrays.copyOf(vals, Math.max(id+1, vals.length * 2));
+            vals[id] = o;
+            values = vals;
+            if(id >= size)
+                size = id+1;
+        }
+
+        List<Identifiable> asList() {
+            final int n = size;
+            return Arrays.asList(values).subList(0, n);
+        }
+    }
+
+    final Map<Class, Map<List<Object>, Identifiable>> instancesByParams = new ConcurrentHashMap<>();
+    final Map<Class, Values> instances = new ConcurrentHashMap<>();
 
     protected static Class getIdentClass(Class clazz) {
         assert clazz.getAnnotation(Ident.class) != null : clazz.toString()+" has no Ident annotation.";
         return ((Ident) clazz.getAnnotation(Ident.class)).value();
     }
 
-    public Object get(Class clazz, List<Object> params) {
-        try {
-            final Class identClazz = getIdentClass(clazz);
-
-            List<Object> paramsAndClass = new ImmutableList<>(params, clazz);
-
-            instancesByParams.computeIfAbsent(identClazz, x -> new HashMap<>());
-            instances.computeIfAbsent(identClazz, x -> new ArrayList<>());
-
-            if (instancesByParams.get(identClazz).containsKey(paramsAndClass)) {
-                return instancesByParams.get(identClazz).get(paramsAndClass);
-            }
+    private Values valuesOf(Class identClazz) {
+        return instances.computeIfAbsent(identClazz, x -> new Values());
+    }
 
-            else {
+    public Object get(Class clazz, List<Object> params) {
+        final Class identClazz = getIdentClass(clazz);
+        final List<Object> paramsAndClass = new ImmutableList<>(params, clazz);
+        final Map<List<Object>, Identifiable> byParams =
+                instancesByParams.computeIfAbsent(identClazz, x -> new ConcurrentHashMap<>());
+
+        final Identifiable existing = byParams.get(paramsAndClass);
+        if(existing != null)
+            return existing;
+
+        synchronized (this) {
+            // might have been created by another thread since the lookup
+            if (byParams.containsKey(paramsAndClass))
+                return byParams.get(paramsAndClass);
+            try {
                 Constructor c = null;
                 for(Constructor candidate : clazz.getDeclaredConstructors()) {
                     if(candidate.getAnnotationsByType(ValueConstructor.class).length > 0) {
@@ -40,14 +83,15 @@ public class IRStorage {
                 if(c == null)
                     throw new RuntimeException("No constructor annotated with @ValueConstructor in class: "+clazz.getName());
                 Identifiable n = (Identifiable) c.newInstance(params.toArray());
-                n.setID(instances.get(identClazz).size());
-                instances.get(identClazz).add(n);
-                instancesByParams.get(identClazz).put(paramsAndClass, n);
+                final Values vals = valuesOf(identClazz);
+                n.setID(vals.size());
+                vals.set(n.getID(), n);
+                byParams.put(paramsAndClass, n);
                 return n;
+            } catch (Exception e) {
+                e.printStackTrace();
+                throw new RuntimeException(e);
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new RuntimeException(e);
         }
     }
 
@@ -63,24 +107,19 @@ public class IRStorage {
         return instances.get(getIdentClass(clazz)).size();
     }
 
-    public void record(Identifiable o) {
+    public synchronized void record(Identifiable o) {
         assert o.getID() >= 0;
-        Class identClazz = getIdentClass(o.getClass());
-        instances.putIfAbsent(identClazz, new ArrayList<>(50));
-        ArrayList<Identifiable> allVals = instances.get(identClazz);
-        while(allVals.size() <= 1+o.getID())
-            allVals.add(null);
-        assert allVals.get(o.getID()) == null || allVals.get(o.getID()) == o;
+        Values allVals = valuesOf(getIdentClass(o.getClass()));
+        assert o.getID() >= allVals.size() || allVals.get(o.getID()) == null || allVals.get(o.getID()) == o;
         allVals.set(o.getID(), o);
     }
 
     public <T extends Identifiable> IntRep<T> getIntRep(Class<T> clazz) {
         final Class identClazz = getIdentClass(clazz);
-        instancesByParams.putIfAbsent(identClazz, new HashMap<>());
-        instances.putIfAbsent(identClazz, new ArrayList<>());
+        instancesByParams.computeIfAbsent(identClazz, x -> new ConcurrentHashMap<>());
+        final Values values = valuesOf(identClazz);
 
         return new IntRep<T>() {
-            final ArrayList<Identifiable> values = instances.get(identClazz);
             public int asInt(T t) { return t.getID(); }
 
             @Override @SuppressWarnings("unchecked")
@@ -94,10 +133,9 @@ public class IRStorage {
     @SuppressWarnings("unchecked")
     public <T> List<T> getInstances(Class<T> clazz) {
         final Class identClazz = getIdentClass(clazz);
-        instancesByParams.putIfAbsent(identClazz, new HashMap<>());
-        instances.putIfAbsent(identClazz, new ArrayList<>());
+        instancesByParams.computeIfAbsent(identClazz, x -> new ConcurrentHashMap<>());
 
-        return instances.get(identClazz).stream()
+        return valuesOf(identClazz).asList().stream()
                 .filter(o -> clazz.isInstance(o))
                 .map(o -> (T) o)
                 .collect(Collectors.toList());